@@ -0,0 +1,53 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The scale and crop arithmetic of CustomFilterFactory.prepareBitmap, the Bitmap
+ * operations themselves need a device and are not covered here
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackgroundGeometryBenchmark {
+
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String target;
+
+    @Param({"true", "false"})
+    public boolean isLandscape;
+
+    //A widescreen background larger than every target
+    private static final int SOURCE_WIDTH = 5760;
+    private static final int SOURCE_HEIGHT = 2400;
+
+    private int targetWidth;
+    private int targetHeight;
+
+    @Setup
+    public void setUp() {
+        String[] size = target.split("x");
+        targetWidth = Integer.parseInt(size[0]);
+        targetHeight = Integer.parseInt(size[1]);
+    }
+
+    @Benchmark
+    public BackgroundGeometry backgroundGeometry() {
+        return BackgroundGeometry.of(SOURCE_WIDTH, SOURCE_HEIGHT, targetWidth, targetHeight, isLandscape);
+    }
+}
@@ -0,0 +1,78 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The BitmapSaver path after JPEG compression, writing the encoded stream to a file, against
+ * the passthrough that writes the camera JPEG plane. Both set the portrait orientation as they write.
+ * Bitmap.compress is native and needs a device, synthetic payloads of typical quality 100 JPEG
+ * sizes stand in for its output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmapSaverBenchmark {
+
+    //Encoded sizes of 1080p, 12MP and 4K captures
+    @Param({"1048576", "4194304", "6291456"})
+    public int jpegSize;
+
+    private static final int ORIENTATION_ROTATE_90 = 6;
+
+    private BitmapSaver.JpegOutputStream encoded;
+    private ByteBuffer jpegPlane;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] payload = new byte[jpegSize];
+        new Random(42).nextBytes(payload);
+        //SOI and an Exif segment ahead of the payload, as a camera JPEG
+        payload[0] = (byte) 0xFF;
+        payload[1] = (byte) 0xD8;
+        JpegWriter.exifSegment(1).get(payload, 2, JpegWriter.exifSegment(1).remaining());
+
+        encoded = new BitmapSaver.JpegOutputStream(jpegSize);
+        encoded.write(payload);
+        jpegPlane = ByteBuffer.allocateDirect(jpegSize);
+        jpegPlane.put(payload).flip();
+        file = File.createTempFile("BitmapSaverBenchmark", ".jpg");
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public File writeEncoded() throws IOException {
+        BitmapSaver.writeEncoded(encoded, file, ORIENTATION_ROTATE_90);
+        return file;
+    }
+
+    @Benchmark
+    public File writePassthrough() throws IOException {
+        JpegWriter.write(jpegPlane, file, ORIENTATION_ROTATE_90);
+        return file;
+    }
+}
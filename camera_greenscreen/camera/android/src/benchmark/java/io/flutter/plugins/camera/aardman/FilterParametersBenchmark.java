@@ -0,0 +1,53 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the updateFilters method channel arguments and merging them into the current parameters
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterParametersBenchmark {
+
+    private HashMap<String, Object> arguments;
+    private FilterParameters current;
+
+    @Setup
+    public void setUp() {
+        //As decoded by the StandardMessageCodec
+        arguments = new HashMap<>();
+        arguments.put("colour", new ArrayList<>(Arrays.asList(0.0, 255.0, 0.0)));
+        arguments.put("sensitivity", 0.4);
+        arguments.put("backgroundPath", "/data/user/0/com.aardman.animator/files/background.png");
+        current = new FilterParameters();
+    }
+
+    @Benchmark
+    public FilterParameters parse() {
+        return new FilterParameters(arguments);
+    }
+
+    @Benchmark
+    public FilterParameters parseAndUpdate() {
+        current = current.updatedWith(new FilterParameters(arguments));
+        return current;
+    }
+}
@@ -0,0 +1,69 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Camera thread cost of copying a YUV_420_888 image into a pooled NV21 frame,
+ * for both the heap (NV21_NATIVE) and the direct buffer (YUV_PLANES) preview input modes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NV21ConversionBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    //1 for planar chroma (I420 like), 2 for interleaved chroma (NV12/NV21 like)
+    @Param({"1", "2"})
+    public int chromaPixelStride;
+
+    //Bytes of padding at the end of each row, 0 for tightly packed planes
+    @Param({"0", "64"})
+    public int rowPadding;
+
+    private SyntheticPlanes planes;
+    private byte[] data;
+    private ByteBuffer directPlanes;
+    private byte[] rowData;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        planes = SyntheticPlanes.of(resolution, chromaPixelStride, rowPadding);
+        int size = FrameBufferPool.nv21Size(planes.width, planes.height);
+        data = new byte[size];
+        directPlanes = ByteBuffer.allocateDirect(size);
+        rowData = new byte[0];
+    }
+
+    @Benchmark
+    public byte[] generateNV21Data() {
+        rowData = PreviewOnImageAvailableListener.generateNV21Data(planes.buffers, planes.rowStrides, planes.pixelStrides,
+                0, 0, planes.width, planes.height, data, rowData);
+        return data;
+    }
+
+    @Benchmark
+    public ByteBuffer generateNV21Planes() {
+        rowData = PreviewOnImageAvailableListener.generateNV21Planes(planes.buffers, planes.rowStrides, planes.pixelStrides,
+                0, 0, planes.width, planes.height, directPlanes, rowData);
+        return directPlanes;
+    }
+}
@@ -0,0 +1,87 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU cost of getting a filtered still capture to the GPU, for both still input modes
+ *
+ * JPEG stills are copied out of the image plane and decoded before the filter, YUV stills
+ * have their planes copied into a direct buffer. Both paths encode the filtered result once,
+ * so the encode is left out. BitmapFactory is native and needs a device, ImageIO decoding a
+ * camera sized JPEG stands in for it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StillInputBenchmark {
+
+    @Param({"1920x1080", "4000x3000"})
+    public String resolution;
+
+    private SyntheticPlanes planes;
+    private ByteBuffer jpegPlane;
+    private ByteBuffer directPlanes;
+    private byte[] rowData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        planes = SyntheticPlanes.of(resolution, 2, 0);
+        directPlanes = ByteBuffer.allocateDirect(FrameBufferPool.nv21Size(planes.width, planes.height));
+        rowData = new byte[0];
+
+        //smooth content with some noise, so the JPEG is closer to a photograph than random bytes
+        BufferedImage capture = new BufferedImage(planes.width, planes.height, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(42);
+        for (int y = 0; y < planes.height; y++) {
+            for (int x = 0; x < planes.width; x++) {
+                int r = (x * 255 / planes.width + random.nextInt(16)) & 0xFF;
+                int g = (y * 255 / planes.height + random.nextInt(16)) & 0xFF;
+                int b = ((x + y) & 0xFF);
+                capture.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        BitmapSaver.JpegOutputStream encoded = new BitmapSaver.JpegOutputStream(planes.width * planes.height / 4);
+        ImageIO.write(capture, "jpeg", encoded);
+        ByteBuffer bytes = encoded.asByteBuffer();
+        jpegPlane = ByteBuffer.allocateDirect(bytes.remaining());
+        jpegPlane.put(bytes).flip();
+    }
+
+    @Benchmark
+    public BufferedImage jpegDecode() throws IOException {
+        //as StillImageFilterProcessor copies the JPEG plane before decoding it
+        byte[] bytes = new byte[jpegPlane.remaining()];
+        jpegPlane.duplicate().get(bytes);
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public ByteBuffer yuvPlanes() {
+        rowData = PreviewOnImageAvailableListener.generateNV21Planes(planes.buffers, planes.rowStrides, planes.pixelStrides,
+                0, 0, planes.width, planes.height, directPlanes, rowData);
+        return directPlanes;
+    }
+}
@@ -0,0 +1,74 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * YUV_420_888 plane buffers laid out as a camera ImageReader delivers them
+ *
+ * The luma plane always has a pixel stride of 1. With a chroma pixel stride of 2 the U and V
+ * buffers are views one byte apart into a single interleaved buffer (semi-planar, as on most
+ * devices), with a pixel stride of 1 they are separate planar buffers. Rows are padded to
+ * width + rowPadding and the last row of each plane is not padded, matching the buffer limits
+ * of real images.
+ */
+final class SyntheticPlanes {
+
+    final int width;
+    final int height;
+    final ByteBuffer[] buffers = new ByteBuffer[3];
+    final int[] rowStrides = new int[3];
+    final int[] pixelStrides = new int[3];
+
+    SyntheticPlanes(int width, int height, int chromaPixelStride, int rowPadding) {
+        this.width = width;
+        this.height = height;
+        Random random = new Random(42);
+
+        int lumaRowStride = width + rowPadding;
+        buffers[0] = filledBuffer(lumaRowStride * (height - 1) + width, random);
+        rowStrides[0] = lumaRowStride;
+        pixelStrides[0] = 1;
+
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int chromaRowStride = chromaWidth * chromaPixelStride + rowPadding;
+        int chromaRowLength = (chromaWidth - 1) * chromaPixelStride + 1;
+        int chromaSize = chromaRowStride * (chromaHeight - 1) + chromaRowLength;
+        if (chromaPixelStride == 2) {
+            ByteBuffer interleaved = filledBuffer(chromaSize + 1, random);
+            //U starts at the first byte and V at the second byte of the interleaved plane
+            buffers[1] = slice(interleaved, 0, chromaSize);
+            buffers[2] = slice(interleaved, 1, chromaSize);
+        } else {
+            buffers[1] = filledBuffer(chromaSize, random);
+            buffers[2] = filledBuffer(chromaSize, random);
+        }
+        for (int i = 1; i <= 2; i++) {
+            rowStrides[i] = chromaRowStride;
+            pixelStrides[i] = chromaPixelStride;
+        }
+    }
+
+    /**
+     * @param resolution WIDTHxHEIGHT
+     */
+    static SyntheticPlanes of(String resolution, int chromaPixelStride, int rowPadding) {
+        String[] size = resolution.split("x");
+        return new SyntheticPlanes(Integer.parseInt(size[0]), Integer.parseInt(size[1]), chromaPixelStride, rowPadding);
+    }
+
+    private static ByteBuffer filledBuffer(int size, Random random) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset).limit(offset + size);
+        return view.slice();
+    }
+}
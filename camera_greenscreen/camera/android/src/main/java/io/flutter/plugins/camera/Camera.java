@@ -4,8 +4,22 @@
 
 package io.flutter.plugins.camera;
 
+import io.flutter.plugins.camera.aardman.AnalysisContent;
+import io.flutter.plugins.camera.aardman.AnalysisStream;
+import io.flutter.plugins.camera.aardman.CameraCapabilityCache;
+import io.flutter.plugins.camera.aardman.CameraExecutors;
 import io.flutter.plugins.camera.aardman.FilterParameters;
+import io.flutter.plugins.camera.aardman.FilteredVideoRecorder;
+import io.flutter.plugins.camera.aardman.ImageStreamTransport;
+import io.flutter.plugins.camera.aardman.JpegWriter;
+import io.flutter.plugins.camera.aardman.PipelineStats;
+import io.flutter.plugins.camera.aardman.RapidCaptureQueue;
+import io.flutter.plugins.camera.aardman.RepeatingRequestCoalescer;
+import io.flutter.plugins.camera.aardman.Constants;
 import io.flutter.plugins.camera.aardman.StillImageFilterProcessor;
+import io.flutter.plugins.camera.aardman.PreviewInputMode;
+import io.flutter.plugins.camera.aardman.StillInputMode;
+import io.flutter.plugins.camera.aardman.ZslRingBuffer;
 import jp.co.cyberagent.android.gpuimage.GPUImage;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
@@ -18,6 +32,7 @@ import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.OutputConfiguration;
@@ -35,7 +50,9 @@ import android.os.Build.VERSION_CODES;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.view.Display;
 import android.view.Surface;
@@ -71,14 +88,12 @@ import io.flutter.plugins.camera.types.CaptureTimeoutsWrapper;
 import io.flutter.view.TextureRegistry.SurfaceTextureEntry;
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.Executors;
 
 import io.flutter.plugins.camera.aardman.FilterPipelineController;
 
@@ -129,16 +144,28 @@ public class Camera
    */
   private HandlerThread backgroundHandlerThread;
 
+  /**
+   * Aardman-Animator: capture session callbacks, still processing and file writes, off the
+   * background thread that runs the 3A callbacks. Shut down when the camera closes.
+   */
+  private final CameraExecutors executors = new CameraExecutors();
+
   private CameraDevice cameraDevice;
   private CameraCaptureSession captureSession;
   private ImageReader pictureImageReader;
   private ImageReader imageStreamReader;
+  //Aardman-Animator: credit based, pooled delivery of image stream frames
+  private final ImageStreamTransport imageStreamTransport;
   /**
    * {@link CaptureRequest.Builder} for the camera preview
    */
   private CaptureRequest.Builder previewRequestBuilder;
 
   private MediaRecorder mediaRecorder;
+  /**
+   * Records the filtered preview instead of the mediaRecorder while the filter is enabled.
+   */
+  private FilteredVideoRecorder filteredVideoRecorder;
   /**
    * True when recording video.
    */
@@ -163,6 +190,70 @@ public class Camera
 
   //Aardman-Animator
   private FilterPipelineController filterPipelineController;
+
+  /**
+   * Aardman-Animator: in rapid capture mode focus and exposure are locked once and still
+   * requests are issued alongside the repeating preview request, several can be in flight.
+   */
+  private boolean rapidCaptureEnabled = false;
+  private ExposureMode exposureModeBeforeRapidCapture;
+  private final RapidCaptureQueue<PendingPicture> rapidCaptureQueue =
+      new RapidCaptureQueue<>(Constants.RAPID_CAPTURE_MAX_PENDING_SHOTS);
+  // Rapid capture images being saved, used on the background thread only.
+  private int rapidCaptureImagesHeld = 0;
+  // Whether the picture reader delivers its images to the rapid capture shots, which it keeps
+  // doing after the mode is turned off until a regular capture takes the reader over.
+  private boolean rapidCaptureListening = false;
+  // Sensor timestamp of the regular still capture, -1 until it has started. Set on the
+  // background thread, reset by takePicture on the platform thread.
+  private volatile long stillCaptureTimestamp = -1;
+  // Whether the regular still capture aborted rapid capture shots, whose images can still reach
+  // the picture reader. Only then are images older than the still capture discarded.
+  private volatile boolean rapidShotsAborted = false;
+  // Images that arrived before the still capture started while rapidShotsAborted, kept until
+  // its timestamp tells which is the still. Used on the background thread only.
+  private final List<Image> imagesBeforeStillCapture = new ArrayList<>();
+
+  /**
+   * Aardman-Animator: in zero shutter lag mode the repeating request also fills a ring of full
+   * resolution YUV frames, takePicture saves the one closest to the trigger. Null when off.
+   */
+  private ImageReader zslImageReader;
+  private ZslRingBuffer zslRingBuffer;
+
+  /**
+   * Aardman-Animator: settings changes send the repeating preview request at most once per
+   * frame interval, changes made within one interval share a single setRepeatingRequest.
+   */
+  private final RepeatingRequestCoalescer previewRequestCoalescer;
+
+  /** The file and result of a rapid capture shot. */
+  private static class PendingPicture {
+    final File file;
+    final Result result;
+
+    PendingPicture(File file, Result result) {
+      this.file = file;
+      this.result = result;
+    }
+  }
+
+  /** Aardman-Animator: when open was called, 0 once the first capture session is configured */
+  private volatile long openRequestedNanos = 0;
+
+  /** Sends the pipeline statistics to Dart every pipelineStatsIntervalMs, 0 when stopped */
+  private long pipelineStatsIntervalMs = 0;
+  private final Runnable pipelineStatsReporter =
+      new Runnable() {
+        @Override
+        public void run() {
+          if (pipelineStatsIntervalMs <= 0 || backgroundHandler == null) {
+            return;
+          }
+          dartMessenger.sendPipelineStatsEvent(getPipelineStats());
+          backgroundHandler.postDelayed(this, pipelineStatsIntervalMs);
+        }
+      };
   GPUImage gpuImage;
 
   public Camera(
@@ -195,6 +286,19 @@ public class Camera
 
     filterPipelineController = new FilterPipelineController(flutterTexture.surfaceTexture(), activity);
     filterPipelineController.setOrientation(getCurrentOrientation());
+    getDeviceOrientationManager().setOrientationChangeListener(this::onDeviceOrientationChanged);
+
+    imageStreamTransport =
+        new ImageStreamTransport(new Handler(Looper.getMainLooper()), this::addImageStreamMetadata);
+
+    previewRequestCoalescer =
+        new RepeatingRequestCoalescer(
+            new Handler(Looper.getMainLooper()),
+            callback -> refreshPreviewCaptureSession(callback::onSent, callback::onFailed));
+    Range<Integer> fpsRange = cameraFeatures.getFpsRange().getValue();
+    if (fpsRange != null) {
+      previewRequestCoalescer.setMaxFrameRate(fpsRange.getUpper());
+    }
 
     startBackgroundThread();
   }
@@ -216,11 +320,34 @@ public class Camera
    */
   private void updateBuilderSettings(CaptureRequest.Builder requestBuilder) {
     for (CameraFeature feature : cameraFeatures.getAllFeatures()) {
-      Log.d(TAG, "Updating builder with feature: " + feature.getDebugName());
       feature.updateBuilder(requestBuilder);
     }
   }
 
+  /**
+   * Aardman-Animator
+   *
+   * <p>Sends the repeating request with the current preview builder, together with the other
+   * settings changes of the same frame interval. Main thread.
+   */
+  private void requestPreviewRefresh(
+          @Nullable Runnable onSuccessCallback, @NonNull ErrorCallback onErrorCallback) {
+    previewRequestCoalescer.request(
+        new RepeatingRequestCoalescer.Callback() {
+          @Override
+          public void onSent() {
+            if (onSuccessCallback != null) {
+              onSuccessCallback.run();
+            }
+          }
+
+          @Override
+          public void onFailed(String errorCode, String errorMessage) {
+            onErrorCallback.onError(errorCode, errorMessage);
+          }
+        });
+  }
+
   private void prepareMediaRecorder(String outputFilePath) throws IOException {
     Log.i(TAG, "prepareMediaRecorder");
 
@@ -228,6 +355,10 @@ public class Camera
       mediaRecorder.release();
     }
 
+    mediaRecorder = createMediaRecorderBuilder(outputFilePath).build();
+  }
+
+  private MediaRecorderBuilder createMediaRecorderBuilder(String outputFilePath) {
     final PlatformChannel.DeviceOrientation lockedOrientation =
             ((SensorOrientationFeature) cameraFeatures.getSensorOrientation())
                     .getLockedCaptureOrientation();
@@ -240,18 +371,17 @@ public class Camera
       mediaRecorderBuilder = new MediaRecorderBuilder(getRecordingProfileLegacy(), outputFilePath);
     }
 
-    mediaRecorder =
-            mediaRecorderBuilder
-                    .setEnableAudio(enableAudio)
-                    .setMediaOrientation(
-                            lockedOrientation == null
-                                    ? getDeviceOrientationManager().getVideoOrientation()
-                                    : getDeviceOrientationManager().getVideoOrientation(lockedOrientation))
-                    .build();
+    return mediaRecorderBuilder
+            .setEnableAudio(enableAudio)
+            .setMediaOrientation(
+                    lockedOrientation == null
+                            ? getDeviceOrientationManager().getVideoOrientation()
+                            : getDeviceOrientationManager().getVideoOrientation(lockedOrientation));
   }
 
   @SuppressLint("MissingPermission")
   public void open(String imageFormatGroup) throws CameraAccessException {
+    openRequestedNanos = PipelineStats.now();
     final ResolutionFeature resolutionFeature = cameraFeatures.getResolution();
 
     if (!resolutionFeature.checkIsSupported()) {
@@ -265,15 +395,15 @@ public class Camera
       return;
     }
 
-    // Always capture using JPEG format.
+    // Capture using JPEG format, or YUV to filter the planes without a JPEG round trip.
     Size captureSize = new Size(resolutionFeature.getCaptureSize().getWidth(),
                             resolutionFeature.getCaptureSize().getHeight());
     pictureImageReader =
             ImageReader.newInstance(
                     captureSize.getWidth(),
                     captureSize.getHeight(),
-                    ImageFormat.JPEG,
-                    1);
+                    getStillImageFormat(),
+                    Constants.STILL_CAPTURE_MAX_IMAGES);
 
     //Capture size for openGL should match this size if using the
     //pictureImageReader as a source of the still captures
@@ -299,6 +429,11 @@ public class Camera
             new CameraDevice.StateCallback() {
               @Override
               public void onOpened(@NonNull CameraDevice device) {
+                long requestedNanos = openRequestedNanos;
+                if (requestedNanos != 0) {
+                  filterPipelineController.recordLatency(
+                      PipelineStats.Stage.CAMERA_OPEN, requestedNanos, PipelineStats.now());
+                }
                 cameraDevice = device;
                 try {
                   startPreview();
@@ -410,6 +545,7 @@ public class Camera
               @Override
               public void onConfigured(@NonNull CameraCaptureSession session) {
                 Log.i(TAG, "CameraCaptureSession onConfigured");
+                recordOpenToSessionLatency();
                 // Camera was already closed.
                 if (cameraDevice == null || captureSessionClosed) {
                   dartMessenger.sendCameraErrorEvent("The camera was closed during configuration.");
@@ -464,7 +600,7 @@ public class Camera
             new SessionConfiguration(
                     SessionConfiguration.SESSION_REGULAR,
                     outputConfigs,
-                    Executors.newSingleThreadExecutor(),
+                    executors.getCaptureControl(),
                     callback));
   }
 
@@ -507,6 +643,14 @@ public class Camera
   }
 
   public void takePicture(@NonNull final Result result) {
+    if (zslRingBuffer != null) {
+      takeZslPicture(result);
+      return;
+    }
+    if (rapidCaptureEnabled) {
+      takeRapidPicture(result);
+      return;
+    }
     // Only take one picture at a time.
     if (cameraCaptureCallback.getCameraState() != CameraState.STATE_PREVIEW) {
       result.error("captureAlreadyActive", "Picture is currently already being captured", null);
@@ -525,6 +669,16 @@ public class Camera
       return;
     }
 
+    // Shots left over from rapid capture mode are aborted by this capture, and the images they
+    // left in the reader discarded so that they cannot be taken for it.
+    stillCaptureTimestamp = -1;
+    rapidShotsAborted =
+        failRapidCaptureShots("captureAborted", "The picture was aborted by a regular capture") > 0;
+    if (rapidCaptureListening) {
+      rapidCaptureListening = false;
+      discardPictureImages(pictureImageReader);
+    }
+
     // Listen for picture being taken.
     pictureImageReader.setOnImageAvailableListener(this, backgroundHandler);
 
@@ -586,11 +740,47 @@ public class Camera
     // This is the CaptureRequest.Builder that is used to take a picture.
     CaptureRequest.Builder stillBuilder;
     try {
-      stillBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+      stillBuilder = createStillCaptureRequestBuilder();
     } catch (CameraAccessException e) {
       dartMessenger.error(flutterResult, "cameraAccess", e.getMessage(), null);
       return;
     }
+
+    CameraCaptureSession.CaptureCallback captureCallback =
+            new CameraCaptureSession.CaptureCallback() {
+              @Override
+              public void onCaptureStarted(
+                      @NonNull CameraCaptureSession session,
+                      @NonNull CaptureRequest request,
+                      long timestamp,
+                      long frameNumber) {
+                stillCaptureTimestamp = timestamp;
+                onStillCaptureStarted();
+              }
+
+              @Override
+              public void onCaptureCompleted(
+                      @NonNull CameraCaptureSession session,
+                      @NonNull CaptureRequest request,
+                      @NonNull TotalCaptureResult result) {
+                unlockAutoFocus();
+              }
+            };
+
+    try {
+      captureSession.stopRepeating();
+      captureSession.abortCaptures();
+      Log.i(TAG, "sending capture request");
+      captureSession.capture(stillBuilder.build(), captureCallback, backgroundHandler);
+    } catch (CameraAccessException e) {
+      dartMessenger.error(flutterResult, "cameraAccess", e.getMessage(), null);
+    }
+  }
+
+  /** Creates the still request with the current zoom, features and orientation. */
+  private CaptureRequest.Builder createStillCaptureRequestBuilder() throws CameraAccessException {
+    CaptureRequest.Builder stillBuilder =
+            cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
     stillBuilder.addTarget(pictureImageReader.getSurface());
 
     // Zoom.
@@ -610,32 +800,407 @@ public class Camera
           );
 
     /**
-     *  Belt and braces, should be the same as initial orientation because
-     *  camera restarts on device orientation
+     *  Belt and braces, should be the same as the orientation last set by
+     *  onDeviceOrientationChanged
      */
     filterPipelineController.setOrientation(stillOrientation);
+    return stillBuilder;
+  }
 
-    CameraCaptureSession.CaptureCallback captureCallback =
-            new CameraCaptureSession.CaptureCallback() {
+  /**
+   * Aardman-Animator
+   *
+   * <p>Chooses how preview frames reach the filters, set before the camera is opened. The
+   * camera draws into a SurfaceTexture of the preview context unless the ImageReader fallback
+   * is asked for.
+   */
+  public void setPreviewInputMode(PreviewInputMode previewInputMode) {
+    filterPipelineController.setPreviewInputMode(previewInputMode);
+  }
+
+  /**
+   * Aardman-Animator
+   *
+   * <p>Chooses how still captures reach the filters, set before the camera is opened as it
+   * decides the format of the still ImageReader. YUV stills fall back to JPEG on cameras
+   * without a full resolution YUV stream.
+   */
+  public void setStillInputMode(StillInputMode stillInputMode) {
+    filterPipelineController.setStillInputMode(stillInputMode);
+  }
+
+  /**
+   * Aardman-Animator
+   *
+   * <p>Turns rapid capture mode on or off. On, focus is triggered once and exposure locked, and
+   * takePicture no longer stops the preview or runs the precapture sequence. Shots still in
+   * flight when the mode is turned off are saved and complete, unless takePicture is called
+   * first, in which case they are aborted with captureAborted and their images discarded.
+   */
+  public void setRapidCaptureMode(boolean enabled, @NonNull final Result result) {
+    if (enabled == rapidCaptureEnabled) {
+      result.success(null);
+      return;
+    }
+    if (enabled && cameraCaptureCallback.getCameraState() != CameraState.STATE_PREVIEW) {
+      result.error("captureAlreadyActive", "Picture is currently already being captured", null);
+      return;
+    }
+    if (enabled && zslRingBuffer != null) {
+      result.error("zslActive", "Rapid capture is not available in zero shutter lag mode", null);
+      return;
+    }
+    if (captureSession == null) {
+      result.error("cameraAccess", "The capture session is not ready", null);
+      return;
+    }
+
+    final ExposureLockFeature exposureLockFeature = cameraFeatures.getExposureLock();
+    final boolean isAutoFocusSupported = cameraFeatures.getAutoFocus().checkIsSupported();
+    try {
+      if (enabled) {
+        exposureModeBeforeRapidCapture = exposureLockFeature.getValue();
+        exposureLockFeature.setValue(ExposureMode.locked);
+        if (isAutoFocusSupported) {
+          triggerAutoFocus(CameraMetadata.CONTROL_AF_TRIGGER_START);
+        }
+        pictureImageReader.setOnImageAvailableListener(
+            this::onRapidCaptureImageAvailable, backgroundHandler);
+        rapidCaptureListening = true;
+      } else {
+        exposureLockFeature.setValue(exposureModeBeforeRapidCapture);
+        if (isAutoFocusSupported) {
+          triggerAutoFocus(CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+        }
+      }
+    } catch (CameraAccessException e) {
+      result.error("setRapidCaptureModeFailed", e.getMessage(), null);
+      return;
+    }
+    exposureLockFeature.updateBuilder(previewRequestBuilder);
+    rapidCaptureEnabled = enabled;
+
+    refreshPreviewCaptureSession(
+        () -> result.success(null),
+        (code, message) -> result.error("setRapidCaptureModeFailed", message, null));
+  }
+
+  /**
+   * Aardman-Animator
+   *
+   * <p>Turns zero shutter lag mode on or off, the capture session is rebuilt either way. On,
+   * the JPEG stream is replaced by a full resolution YUV stream that is a target of the
+   * repeating request, as a preview and a maximum size YUV stream is a combination every FULL
+   * device supports.
+   */
+  public void setZslMode(boolean enabled, @NonNull final Result result) {
+    if (enabled == (zslRingBuffer != null)) {
+      result.success(null);
+      return;
+    }
+    if (cameraCaptureCallback.getCameraState() != CameraState.STATE_PREVIEW) {
+      result.error("captureAlreadyActive", "Picture is currently already being captured", null);
+      return;
+    }
+    if (enabled && rapidCaptureEnabled) {
+      result.error("rapidCaptureActive", "Zero shutter lag is not available in rapid capture mode", null);
+      return;
+    }
+    if (enabled && !supportsMaximumYuvStream()) {
+      result.error("zslNotSupported", "The camera cannot stream full resolution YUV frames", null);
+      return;
+    }
+
+    final ImageReader previousReader = zslImageReader;
+    final ZslRingBuffer previousRingBuffer = zslRingBuffer;
+    if (enabled) {
+      Size captureSize = cameraFeatures.getResolution().getCaptureSize();
+      zslRingBuffer =
+          new ZslRingBuffer(
+              Constants.ZSL_MAX_IMAGES,
+              Constants.ZSL_MAX_BYTES,
+              captureSize.getWidth(),
+              captureSize.getHeight());
+      zslImageReader =
+          ImageReader.newInstance(
+              captureSize.getWidth(),
+              captureSize.getHeight(),
+              ImageFormat.YUV_420_888,
+              zslRingBuffer.getReaderMaxImages());
+      zslImageReader.setOnImageAvailableListener(zslRingBuffer, backgroundHandler);
+    } else {
+      zslImageReader = null;
+      zslRingBuffer = null;
+    }
+
+    try {
+      startPreview(() -> result.success(null));
+    } catch (CameraAccessException e) {
+      result.error("setZslModeFailed", e.getMessage(), null);
+    }
+
+    if (previousReader != null) {
+      // Deferred so that a frame being saved is released before its reader is closed.
+      executors.getImaging().executeWhenIdle(
+          () -> {
+            previousRingBuffer.clear();
+            previousReader.close();
+          });
+    }
+  }
+
+  /**
+   * YUV stills need a maximum size YUV stream next to the preview stream, otherwise the stills
+   * are captured as JPEG.
+   */
+  private int getStillImageFormat() {
+    if (filterPipelineController.getStillInputMode() != StillInputMode.YUV_PLANES) {
+      return ImageFormat.JPEG;
+    }
+    if (!supportsMaximumYuvStream()) {
+      Log.w(TAG, "YUV stills are not supported by this camera. Defaulting to JPEG");
+      return ImageFormat.JPEG;
+    }
+    return ImageFormat.YUV_420_888;
+  }
+
+  private boolean supportsMaximumYuvStream() {
+    int hardwareLevel = cameraProperties.getHardwareLevel();
+    return hardwareLevel == CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_FULL
+        || hardwareLevel == CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_3;
+  }
+
+  /**
+   * Aardman-Animator
+   *
+   * <p>Saves the ring frame closest to now, there is no capture request and no precapture.
+   */
+  private void takeZslPicture(@NonNull final Result result) {
+    final Image image = zslRingBuffer.takeClosest(getSensorClockNanos());
+    if (image == null) {
+      dartMessenger.error(result, "zslNoFrame", "No frame has been captured yet", null);
+      return;
+    }
+
+    final File file;
+    try {
+      file = File.createTempFile("CAP", ".jpg", applicationContext.getCacheDir());
+    } catch (IOException | SecurityException e) {
+      image.close();
+      dartMessenger.error(result, "cannotCreateFile", e.getMessage(), null);
+      return;
+    }
+
+    filterPipelineController.setOrientation(getCurrentOrientation());
+    executors.getImaging().execute(
+        new StillImageFilterProcessor(
+            image,
+            file,
+            executors,
+            new ImageSaver.Callback() {
               @Override
-              public void onCaptureCompleted(
-                      @NonNull CameraCaptureSession session,
-                      @NonNull CaptureRequest request,
-                      @NonNull TotalCaptureResult result) {
-                unlockAutoFocus();
+              public void onComplete(String absolutePath) {
+                dartMessenger.finish(result, absolutePath);
               }
-            };
 
+              @Override
+              public void onError(String errorCode, String errorMessage) {
+                dartMessenger.error(result, errorCode, errorMessage, null);
+              }
+            },
+            filterPipelineController,
+            getStillExifOrientation()));
+  }
+
+  /** Now, in the time base of the sensor timestamps. */
+  private long getSensorClockNanos() {
+    return cameraProperties.getSensorInfoTimestampSource()
+            == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME
+        ? SystemClock.elapsedRealtimeNanos()
+        : System.nanoTime();
+  }
+
+  /** Sends a single AF trigger and sets the trigger of the preview request back to idle. */
+  private void triggerAutoFocus(int trigger) throws CameraAccessException {
+    previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, trigger);
+    captureSession.capture(previewRequestBuilder.build(), null, backgroundHandler);
+    previewRequestBuilder.set(
+        CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+  }
+
+  /**
+   * Aardman-Animator
+   *
+   * <p>Captures a still alongside the repeating preview request, with focus and exposure as
+   * locked by setRapidCaptureMode. The result completes once this shot has been saved, shots
+   * can overlap and each has a sequence number that is reported with its errors.
+   */
+  private void takeRapidPicture(@NonNull final Result result) {
+    if (cameraDevice == null || captureSession == null) {
+      result.error("cameraAccess", "The capture session is not ready", null);
+      return;
+    }
+
+    final File file;
     try {
-      captureSession.stopRepeating();
-      captureSession.abortCaptures();
-      Log.i(TAG, "sending capture request");
-      captureSession.capture(stillBuilder.build(), captureCallback, backgroundHandler);
-    } catch (CameraAccessException e) {
-      dartMessenger.error(flutterResult, "cameraAccess", e.getMessage(), null);
+      file = File.createTempFile("CAP", ".jpg", applicationContext.getCacheDir());
+    } catch (IOException | SecurityException e) {
+      dartMessenger.error(result, "cannotCreateFile", e.getMessage(), null);
+      return;
+    }
+
+    final RapidCaptureQueue.Shot<PendingPicture> shot =
+        rapidCaptureQueue.enqueue(new PendingPicture(file, result));
+    if (shot == null) {
+      file.delete();
+      dartMessenger.error(
+          result, "captureQueueFull", "Too many pictures are waiting to be captured", null);
+      return;
+    }
+
+    CameraCaptureSession.CaptureCallback captureCallback =
+        new CameraCaptureSession.CaptureCallback() {
+          @Override
+          public void onCaptureStarted(
+              @NonNull CameraCaptureSession session,
+              @NonNull CaptureRequest request,
+              long timestamp,
+              long frameNumber) {
+            rapidCaptureQueue.onCaptureStarted(shot, timestamp);
+          }
+
+          @Override
+          public void onCaptureFailed(
+              @NonNull CameraCaptureSession session,
+              @NonNull CaptureRequest request,
+              @NonNull CaptureFailure failure) {
+            failRapidCaptureShot(shot, "captureFailed", "The camera failed to capture the picture");
+          }
+        };
+
+    try {
+      captureSession.capture(
+          createStillCaptureRequestBuilder().build(), captureCallback, backgroundHandler);
+    } catch (CameraAccessException | IllegalStateException e) {
+      failRapidCaptureShot(shot, "cameraAccess", e.getMessage());
     }
   }
 
+  private void onRapidCaptureImageAvailable(ImageReader reader) {
+    // The reader holds the images beyond those being saved until a save releases its image.
+    while (rapidCaptureImagesHeld < Constants.STILL_CAPTURE_MAX_IMAGES) {
+      Image image = acquireNextImageIfAny(reader);
+      if (image == null) {
+        return;
+      }
+      final RapidCaptureQueue.Shot<PendingPicture> shot =
+          rapidCaptureQueue.takeForImage(image.getTimestamp());
+      if (shot == null) {
+        image.close();
+        continue;
+      }
+      rapidCaptureImagesHeld++;
+      final StillImageFilterProcessor processor = createRapidCaptureProcessor(image, shot);
+      final Handler handler = backgroundHandler;
+      executors
+          .getImaging()
+          .execute(
+              () -> {
+                try {
+                  processor.run();
+                } finally {
+                  // The image is closed once the processor returns.
+                  handler.post(() -> onRapidCaptureImageReleased(reader));
+                }
+              });
+    }
+  }
+
+  private void onRapidCaptureImageReleased(ImageReader reader) {
+    rapidCaptureImagesHeld--;
+    if (reader != pictureImageReader) {
+      return;
+    }
+    if (rapidCaptureListening) {
+      onRapidCaptureImageAvailable(reader);
+    } else if (cameraCaptureCallback.getCameraState() == CameraState.STATE_CAPTURING) {
+      // The regular capture could not acquire its image while the reader was full.
+      onImageAvailable(reader);
+    }
+  }
+
+  /** Closes the images queued in the reader, those being saved are closed by their saves. */
+  private void discardPictureImages(ImageReader reader) {
+    Image image;
+    while ((image = acquireNextImageIfAny(reader)) != null) {
+      image.close();
+    }
+  }
+
+  /** Returns null if the reader has no image, or if all the images it can hand out are held. */
+  @Nullable
+  private static Image acquireNextImageIfAny(ImageReader reader) {
+    try {
+      return reader.acquireNextImage();
+    } catch (IllegalStateException e) {
+      return null;
+    }
+  }
+
+  private StillImageFilterProcessor createRapidCaptureProcessor(
+      Image image, final RapidCaptureQueue.Shot<PendingPicture> shot) {
+    final PendingPicture picture = shot.payload;
+    return new StillImageFilterProcessor(
+        image,
+        picture.file,
+        executors,
+        new ImageSaver.Callback() {
+          @Override
+          public void onComplete(String absolutePath) {
+            dartMessenger.finish(picture.result, absolutePath);
+          }
+
+          @Override
+          public void onError(String errorCode, String errorMessage) {
+            dartMessenger.error(
+                picture.result, errorCode, errorMessage, getShotDetails(shot));
+          }
+        },
+        filterPipelineController,
+        getStillExifOrientation());
+  }
+
+  private void failRapidCaptureShot(
+      RapidCaptureQueue.Shot<PendingPicture> shot, String errorCode, String errorMessage) {
+    if (rapidCaptureQueue.fail(shot)) {
+      shot.payload.file.delete();
+      dartMessenger.error(shot.payload.result, errorCode, errorMessage, getShotDetails(shot));
+    }
+  }
+
+  /** Returns how many shots were failed. */
+  private int failRapidCaptureShots(String errorCode, String errorMessage) {
+    List<RapidCaptureQueue.Shot<PendingPicture>> shots = rapidCaptureQueue.drain();
+    for (RapidCaptureQueue.Shot<PendingPicture> shot : shots) {
+      shot.payload.file.delete();
+      dartMessenger.error(shot.payload.result, errorCode, errorMessage, getShotDetails(shot));
+    }
+    return shots.size();
+  }
+
+  private static Map<String, Object> getShotDetails(RapidCaptureQueue.Shot<?> shot) {
+    Map<String, Object> details = new HashMap<>();
+    details.put("sequence", shot.sequence);
+    return details;
+  }
+
+  /** Portrait captures are saved with a 90 degree EXIF orientation. */
+  private int getStillExifOrientation() {
+    return filterPipelineController.isLandscape()
+        ? JpegWriter.ORIENTATION_UNCHANGED
+        : ExifInterface.ORIENTATION_ROTATE_90;
+  }
+
   @SuppressWarnings("deprecation")
   private Display getDefaultDisplay() {
     return activity.getWindowManager().getDefaultDisplay();
@@ -741,6 +1306,10 @@ public class Camera
       result.error("cannotCreateFile", e.getMessage(), null);
       return;
     }
+    if (filterPipelineController.isFilterEnabled()) {
+      startFilteredVideoRecording(result);
+      return;
+    }
     try {
       prepareMediaRecorder(captureFile.getAbsolutePath());
     } catch (IOException e) {
@@ -764,11 +1333,56 @@ public class Camera
     }
   }
 
+  /**
+   * Aardman-Animator
+   *
+   * <p>Records the composited preview. The capture session is left as it is, the GLThread draws
+   * each new preview frame into the encoder surface as well as the Flutter texture.
+   */
+  private void startFilteredVideoRecording(@NonNull Result result) {
+    Size previewSize = cameraFeatures.getResolution().getPreviewSize();
+    boolean realtimeTimestamps =
+        cameraProperties.getSensorInfoTimestampSource()
+            == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+    try {
+      filteredVideoRecorder =
+          createMediaRecorderBuilder(captureFile.getAbsolutePath())
+              .buildFilteredVideoRecorder(
+                  previewSize.getWidth(), previewSize.getHeight(), realtimeTimestamps);
+    } catch (IOException e) {
+      recordingVideo = false;
+      captureFile = null;
+      result.error("videoRecordingFailed", e.getMessage(), null);
+      return;
+    }
+    filterPipelineController.startRecording(filteredVideoRecorder);
+    recordingVideo = true;
+    result.success(null);
+  }
+
+  private void stopFilteredVideoRecording(@NonNull final Result result) {
+    recordingVideo = false;
+    filteredVideoRecorder = null;
+    captureFile = null;
+    filterPipelineController.stopRecording(
+        (outputPath, error) -> {
+          if (error != null) {
+            dartMessenger.error(result, "videoRecordingFailed", error.getMessage(), null);
+          } else {
+            dartMessenger.finish(result, outputPath);
+          }
+        });
+  }
+
   public void stopVideoRecording(@NonNull final Result result) {
     if (!recordingVideo) {
       result.success(null);
       return;
     }
+    if (filteredVideoRecorder != null) {
+      stopFilteredVideoRecording(result);
+      return;
+    }
     // Re-create autofocus feature so it's using continuous capture focus mode now.
     cameraFeatures.setAutoFocus(
             cameraFeatureFactory.createAutoFocusFeature(cameraProperties, false));
@@ -796,6 +1410,12 @@ public class Camera
       return;
     }
 
+    if (filteredVideoRecorder != null) {
+      filterPipelineController.pauseRecording();
+      result.success(null);
+      return;
+    }
+
     try {
       if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
         mediaRecorder.pause();
@@ -817,6 +1437,12 @@ public class Camera
       return;
     }
 
+    if (filteredVideoRecorder != null) {
+      filterPipelineController.resumeRecording();
+      result.success(null);
+      return;
+    }
+
     try {
       if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
         mediaRecorder.resume();
@@ -845,7 +1471,7 @@ public class Camera
     flashFeature.setValue(newMode);
     flashFeature.updateBuilder(previewRequestBuilder);
 
-    refreshPreviewCaptureSession(
+    requestPreviewRefresh(
             () -> result.success(null),
             (code, message) -> result.error("setFlashModeFailed", "Could not set flash mode.", null));
   }
@@ -861,7 +1487,7 @@ public class Camera
     exposureLockFeature.setValue(newMode);
     exposureLockFeature.updateBuilder(previewRequestBuilder);
 
-    refreshPreviewCaptureSession(
+    requestPreviewRefresh(
             () -> result.success(null),
             (code, message) ->
                     result.error("setExposureModeFailed", "Could not set exposure mode.", null));
@@ -878,7 +1504,7 @@ public class Camera
     exposurePointFeature.setValue(point);
     exposurePointFeature.updateBuilder(previewRequestBuilder);
 
-    refreshPreviewCaptureSession(
+    requestPreviewRefresh(
             () -> result.success(null),
             (code, message) ->
                     result.error("setExposurePointFailed", "Could not set exposure point.", null));
@@ -968,7 +1594,7 @@ public class Camera
     focusPointFeature.setValue(point);
     focusPointFeature.updateBuilder(previewRequestBuilder);
 
-    refreshPreviewCaptureSession(
+    requestPreviewRefresh(
             () -> result.success(null),
             (code, message) -> result.error("setFocusPointFailed", "Could not set focus point.", null));
 
@@ -987,7 +1613,7 @@ public class Camera
     exposureOffsetFeature.setValue(offset);
     exposureOffsetFeature.updateBuilder(previewRequestBuilder);
 
-    refreshPreviewCaptureSession(
+    requestPreviewRefresh(
             () -> result.success(exposureOffsetFeature.getValue()),
             (code, message) ->
                     result.error("setExposureOffsetFailed", "Could not set exposure offset.", null));
@@ -1059,11 +1685,137 @@ public class Camera
     zoomLevel.setValue(zoom);
     zoomLevel.updateBuilder(previewRequestBuilder);
 
-    refreshPreviewCaptureSession(
+    requestPreviewRefresh(
             () -> result.success(null),
             (code, message) -> result.error("setZoomLevelFailed", "Could not set zoom level.", null));
   }
 
+  /**
+   * Aardman-Animator
+   *
+   * <p>Applies several settings from dart with one repeating request, as when a saved scene is
+   * restored. Every setting is checked before any is changed, an unknown mode or a zoom level
+   * out of bounds fails the call and leaves all of them as they were. A point given as null is
+   * reset.
+   *
+   * @param result   Flutter result.
+   * @param settings by name, each optional: flashMode, exposureMode, exposurePoint, focusMode,
+   *                 focusPoint, exposureOffset and zoomLevel.
+   */
+  public void applySettings(@NonNull final Result result, @NonNull Map<String, Object> settings) {
+    FlashMode flashMode = null;
+    ExposureMode exposureMode = null;
+    FocusMode focusMode = null;
+    Point exposurePoint = null;
+    Point focusPoint = null;
+    Double exposureOffset = null;
+    Double zoom = null;
+
+    try {
+      if (settings.containsKey("flashMode")) {
+        flashMode = FlashMode.getValueForString((String) settings.get("flashMode"));
+        if (flashMode == null) {
+          result.error("applySettingsFailed", "Unknown flash mode " + settings.get("flashMode"), null);
+          return;
+        }
+      }
+      if (settings.containsKey("exposureMode")) {
+        exposureMode = ExposureMode.getValueForString((String) settings.get("exposureMode"));
+        if (exposureMode == null) {
+          result.error(
+              "applySettingsFailed", "Unknown exposure mode " + settings.get("exposureMode"), null);
+          return;
+        }
+      }
+      if (settings.containsKey("focusMode")) {
+        focusMode = FocusMode.getValueForString((String) settings.get("focusMode"));
+        if (focusMode == null) {
+          result.error("applySettingsFailed", "Unknown focus mode " + settings.get("focusMode"), null);
+          return;
+        }
+      }
+      if (settings.containsKey("exposurePoint")) {
+        exposurePoint = pointSetting(settings.get("exposurePoint"));
+      }
+      if (settings.containsKey("focusPoint")) {
+        focusPoint = pointSetting(settings.get("focusPoint"));
+      }
+      if (settings.get("exposureOffset") != null) {
+        exposureOffset = ((Number) settings.get("exposureOffset")).doubleValue();
+      }
+      if (settings.get("zoomLevel") != null) {
+        zoom = ((Number) settings.get("zoomLevel")).doubleValue();
+        final ZoomLevelFeature zoomLevel = cameraFeatures.getZoomLevel();
+        if (zoom > zoomLevel.getMaximumZoomLevel() || zoom < zoomLevel.getMinimumZoomLevel()) {
+          result.error(
+              "applySettingsFailed",
+              String.format(
+                  Locale.ENGLISH,
+                  "Zoom level out of bounds (zoom level should be between %f and %f).",
+                  zoomLevel.getMinimumZoomLevel(),
+                  zoomLevel.getMaximumZoomLevel()),
+              null);
+          return;
+        }
+      }
+    } catch (ClassCastException e) {
+      result.error("applySettingsFailed", "Invalid setting: " + e.getMessage(), null);
+      return;
+    }
+
+    if (flashMode != null) {
+      cameraFeatures.getFlash().setValue(flashMode);
+      cameraFeatures.getFlash().updateBuilder(previewRequestBuilder);
+    }
+    if (exposureMode != null) {
+      cameraFeatures.getExposureLock().setValue(exposureMode);
+      cameraFeatures.getExposureLock().updateBuilder(previewRequestBuilder);
+    }
+    if (exposurePoint != null) {
+      cameraFeatures.getExposurePoint().setValue(exposurePoint);
+      cameraFeatures.getExposurePoint().updateBuilder(previewRequestBuilder);
+    }
+    if (exposureOffset != null) {
+      cameraFeatures.getExposureOffset().setValue(exposureOffset);
+      cameraFeatures.getExposureOffset().updateBuilder(previewRequestBuilder);
+    }
+    if (zoom != null) {
+      cameraFeatures.getZoomLevel().setValue(zoom.floatValue());
+      cameraFeatures.getZoomLevel().updateBuilder(previewRequestBuilder);
+    }
+    if (focusMode != null) {
+      cameraFeatures.getAutoFocus().setValue(focusMode);
+      cameraFeatures.getAutoFocus().updateBuilder(previewRequestBuilder);
+    }
+    if (focusPoint != null) {
+      cameraFeatures.getFocusPoint().setValue(focusPoint);
+      cameraFeatures.getFocusPoint().updateBuilder(previewRequestBuilder);
+    }
+
+    requestPreviewRefresh(
+        () -> result.success(null),
+        (code, message) -> result.error("applySettingsFailed", "Could not apply settings.", null));
+
+    // As in setFocusPoint, the focus is locked or unlocked again for the new mode or point.
+    if (focusMode != null || focusPoint != null) {
+      this.setFocusMode(null, cameraFeatures.getAutoFocus().getValue());
+    }
+  }
+
+  // A point setting, null or without coordinates resets the point.
+  private static Point pointSetting(@Nullable Object value) {
+    if (!(value instanceof Map)) {
+      return new Point(null, null);
+    }
+    Map<?, ?> point = (Map<?, ?>) value;
+    Number x = (Number) point.get("x");
+    Number y = (Number) point.get("y");
+    if (x == null || y == null) {
+      return new Point(null, null);
+    }
+    return new Point(x.doubleValue(), y.doubleValue());
+  }
+
   /**
    * Lock capture orientation from dart.
    *
@@ -1071,6 +1823,7 @@ public class Camera
    */
   public void lockCaptureOrientation(PlatformChannel.DeviceOrientation orientation) {
     cameraFeatures.getSensorOrientation().lockCaptureOrientation(orientation);
+    onDeviceOrientationChanged();
   }
 
   /**
@@ -1078,6 +1831,17 @@ public class Camera
    */
   public void unlockCaptureOrientation() {
     cameraFeatures.getSensorOrientation().unlockCaptureOrientation();
+    onDeviceOrientationChanged();
+  }
+
+  /**
+   * Aardman-Animator
+   *
+   * <p>Applies a rotation to the running preview, the camera session and the GL pipeline are
+   * kept. Main thread.
+   */
+  private void onDeviceOrientationChanged() {
+    filterPipelineController.setOrientation(getCurrentOrientation());
   }
 
   /**
@@ -1098,6 +1862,10 @@ public class Camera
   }
 
   public void startPreview() throws CameraAccessException {
+    startPreview(null);
+  }
+
+  private void startPreview(@Nullable Runnable onSuccessCallback) throws CameraAccessException {
     if (pictureImageReader == null || pictureImageReader.getSurface() == null) return;
     Log.i(TAG, "startPreview");
 
@@ -1108,12 +1876,17 @@ public class Camera
     FilterCameraConfigurations cameraConfigurations = new FilterCameraConfigurations(cameraDevice,cameraProperties,cameraFeatures);
 
 
+    //In zero shutter lag mode stills come from the ZSL stream instead of the JPEG stream
+    Surface stillSurface = zslImageReader != null
+            ? zslImageReader.getSurface()
+            : pictureImageReader.getSurface();
+
     startCaptureWithFiltering(
             this.filterPipelineController,
             cameraConfigurations,
-            null,
+            onSuccessCallback,
             this.dartMessenger,
-            pictureImageReader.getSurface());
+            stillSurface);
   }
 
   /**
@@ -1173,7 +1946,7 @@ public class Camera
 
     //Setup the rendering pipeline
     filterPipelineController.setSize(viewSize);
-    Surface captureSurface = filterPipelineController.getImageReaderSurface();
+    Surface captureSurface = filterPipelineController.getPreviewSurface(backgroundHandler);
 
     //setup the preview request this affects global state (not encapsulated)
     configurePreviewRequestBuilderForFilteredCapture(
@@ -1212,7 +1985,7 @@ public class Camera
     SessionConfiguration sessionConfiguration = new SessionConfiguration(
             SessionConfiguration.SESSION_REGULAR,
             configs,
-            Executors.newSingleThreadExecutor(),
+            executors.getCaptureControl(),
             captureStateCallback);
     cameraDevice.createCaptureSession(sessionConfiguration);
   }
@@ -1240,6 +2013,11 @@ public class Camera
     //set the surface for the still image capture if the current template is capture only
     //captureRequestBuilder.addTarget(stillPictureImageReaderSurface);
 
+    //the zero shutter lag ring is filled by the repeating request
+    if (zslImageReader != null) {
+      captureRequestBuilder.addTarget(zslImageReader.getSurface());
+    }
+
     //Set global state as this is used by different phases of operation, refreshing capture etc.
     this.previewRequestBuilder = captureRequestBuilder;
 
@@ -1270,6 +2048,7 @@ public class Camera
               @Override
               public void onConfigured(@NonNull CameraCaptureSession session) {
                 Log.i(TAG, "CameraCaptureSession onConfigured");
+                recordOpenToSessionLatency();
                 // Camera was already closed.
                 if (cameraDevice == null || captureSessionClosed) {
                   dartMessenger.sendCameraErrorEvent("The camera was closed during configuration.");
@@ -1305,6 +2084,15 @@ public class Camera
    */
   public void startPreviewWithImageStream(EventChannel imageStreamChannel)
       throws CameraAccessException {
+    startPreviewWithImageStream(imageStreamChannel, ImageStreamTransport.DEFAULT_CREDITS);
+  }
+
+  /**
+   * @param credits the number of frames Dart can hold before acknowledging them, further frames
+   *     are dropped
+   */
+  public void startPreviewWithImageStream(EventChannel imageStreamChannel, final int credits)
+      throws CameraAccessException {
     createCaptureSession(CameraDevice.TEMPLATE_RECORD, imageStreamReader.getSurface());
     Log.i(TAG, "startPreviewWithImageStream");
 
@@ -1312,16 +2100,71 @@ public class Camera
         new EventChannel.StreamHandler() {
           @Override
           public void onListen(Object o, EventChannel.EventSink imageStreamSink) {
-            setImageStreamImageAvailableListener(imageStreamSink);
+            imageStreamTransport.start(imageStreamSink, credits);
+            imageStreamReader.setOnImageAvailableListener(imageStreamTransport, backgroundHandler);
           }
 
           @Override
           public void onCancel(Object o) {
             imageStreamReader.setOnImageAvailableListener(null, backgroundHandler);
+            imageStreamTransport.stop();
+          }
+        });
+  }
+
+  /**
+   * Aardman-Animator: streams downscaled RGBA copies of the filtered preview, or of its key matte,
+   * rendered by the GLThread. The capture session is left as it is, unlike the camera image stream
+   * which needs its own session.
+   *
+   * @param maxFrameRate the most frames per second sent, at most one per camera frame
+   */
+  public void startAnalysisImageStream(
+      EventChannel imageStreamChannel,
+      final AnalysisContent content,
+      final int width,
+      final int height,
+      final double maxFrameRate,
+      final int credits) {
+    Log.i(TAG, "startAnalysisImageStream " + content + " " + width + "x" + height);
+    final AnalysisStream stream =
+        filterPipelineController.createAnalysisStream(
+            content, width, height, maxFrameRate, imageStreamTransport);
+
+    imageStreamChannel.setStreamHandler(
+        new EventChannel.StreamHandler() {
+          @Override
+          public void onListen(Object o, EventChannel.EventSink imageStreamSink) {
+            imageStreamTransport.start(imageStreamSink, credits);
+            filterPipelineController.startAnalysisStream(stream);
+          }
+
+          @Override
+          public void onCancel(Object o) {
+            filterPipelineController.stopAnalysisStream();
+            imageStreamTransport.stop();
           }
         });
   }
 
+  /**
+   * Stops an analysis stream in place, or restores the preview session after a camera image
+   * stream.
+   */
+  public void stopImageStream() throws CameraAccessException {
+    if (filterPipelineController.isAnalysisStreaming()) {
+      filterPipelineController.stopAnalysisStream();
+      imageStreamTransport.stop();
+      return;
+    }
+    startPreview();
+  }
+
+  /** Returns the credit of an image stream frame Dart has handled. */
+  public void acknowledgeImageStreamFrame() {
+    imageStreamTransport.acknowledge();
+  }
+
   /**
    * This a callback object for the {@link ImageReader}. "onImageAvailable" will be called when a
    * still image is ready to be saved.
@@ -1330,79 +2173,80 @@ public class Camera
   public void onImageAvailable(ImageReader reader) {
     Log.i(TAG, "onImageAvailable");
 
-     backgroundHandler.post(
+    Image image;
+    while ((image = acquireNextImageIfAny(reader)) != null) {
+      if (rapidShotsAborted) {
+        // Images of the aborted rapid capture shots can still arrive, they predate this capture.
+        long stillTimestamp = stillCaptureTimestamp;
+        if (stillTimestamp < 0) {
+          imagesBeforeStillCapture.add(image);
+          continue;
+        }
+        if (image.getTimestamp() < stillTimestamp) {
+          image.close();
+          continue;
+        }
+      }
+      processStillImage(image);
+      return;
+    }
+  }
+
+  /**
+   * Picks the still out of the images that arrived before its capture started, closing those of
+   * the aborted rapid capture shots. Called on the background thread.
+   */
+  private void onStillCaptureStarted() {
+    if (imagesBeforeStillCapture.isEmpty()) {
+      return;
+    }
+    Image stillImage = null;
+    for (Image image : imagesBeforeStillCapture) {
+      if (stillImage == null && image.getTimestamp() >= stillCaptureTimestamp) {
+        stillImage = image;
+      } else {
+        image.close();
+      }
+    }
+    imagesBeforeStillCapture.clear();
+    if (stillImage != null) {
+      processStillImage(stillImage);
+    } else if (pictureImageReader != null) {
+      // The still could not be acquired while the reader was full of held images.
+      onImageAvailable(pictureImageReader);
+    }
+  }
+
+  private void processStillImage(Image image) {
+     executors.getImaging().execute(
         new StillImageFilterProcessor(
-            // Use acquireNextImage since image reader is only for one image.
-            reader.acquireNextImage(),
+            image,
             captureFile,
-            this.backgroundHandler, //can use for saving the processed file
+            executors,
             new ImageSaver.Callback() {
               @Override
               public void onComplete(String absolutePath) {
-
-                //Required to ensure portrait images appear correctly
-                if (!filterPipelineController.isLandscape()) {
-                  try {
-                    ExifInterface exif = new ExifInterface(absolutePath);
-                    exif.setAttribute(ExifInterface.TAG_ORIENTATION, "6");
-                    exif.saveAttributes();
-                  } catch (Exception e) {
-                    dartMessenger.error(flutterResult, "0", e.getLocalizedMessage(), null);
-                  }
-                  dartMessenger.finish(flutterResult, absolutePath);
-                } else {
-                  dartMessenger.finish(flutterResult, absolutePath);
-                }
+                dartMessenger.finish(flutterResult, absolutePath);
               }
               @Override
               public void onError(String errorCode, String errorMessage) {
                 dartMessenger.error(flutterResult, errorCode, errorMessage, null);
               }
             },
-            filterPipelineController
+            filterPipelineController,
+            //Required to ensure portrait images appear correctly, written with the JPEG
+            getStillExifOrientation()
         ));
 
     cameraCaptureCallback.setCameraState(CameraState.STATE_PREVIEW);
   }
 
-  private void setImageStreamImageAvailableListener(final EventChannel.EventSink imageStreamSink) {
-    imageStreamReader.setOnImageAvailableListener(
-        reader -> {
-          Image img = reader.acquireNextImage();
-          // Use acquireNextImage since image reader is only for one image.
-          if (img == null) return;
-
-          List<Map<String, Object>> planes = new ArrayList<>();
-          for (Image.Plane plane : img.getPlanes()) {
-            ByteBuffer buffer = plane.getBuffer();
-
-            byte[] bytes = new byte[buffer.remaining()];
-            buffer.get(bytes, 0, bytes.length);
-
-            Map<String, Object> planeBuffer = new HashMap<>();
-            planeBuffer.put("bytesPerRow", plane.getRowStride());
-            planeBuffer.put("bytesPerPixel", plane.getPixelStride());
-            planeBuffer.put("bytes", bytes);
-
-            planes.add(planeBuffer);
-          }
-
-          Map<String, Object> imageBuffer = new HashMap<>();
-          imageBuffer.put("width", img.getWidth());
-          imageBuffer.put("height", img.getHeight());
-          imageBuffer.put("format", img.getFormat());
-          imageBuffer.put("planes", planes);
-          imageBuffer.put("lensAperture", this.captureProps.getLastLensAperture());
-          imageBuffer.put("sensorExposureTime", this.captureProps.getLastSensorExposureTime());
-          Integer sensorSensitivity = this.captureProps.getLastSensorSensitivity();
-          imageBuffer.put(
-              "sensorSensitivity", sensorSensitivity == null ? null : (double) sensorSensitivity);
-
-          final Handler handler = new Handler(Looper.getMainLooper());
-          handler.post(() -> imageStreamSink.success(imageBuffer));
-          img.close();
-        },
-        backgroundHandler);
+  private void addImageStreamMetadata(Map<String, Object> imageBuffer) {
+    imageBuffer.put("lensAperture", this.captureProps.getLastLensAperture());
+    imageBuffer.put("sensorExposureTime", this.captureProps.getLastSensorExposureTime());
+    Integer sensorSensitivity = this.captureProps.getLastSensorSensitivity();
+    imageBuffer.put(
+        "sensorSensitivity", sensorSensitivity == null ? null : (double) sensorSensitivity);
   }
 
   private void closeCaptureSession() {
@@ -1431,8 +2275,87 @@ public class Camera
    this.filterPipelineController.updateParameters(parameters);
  }
 
+  /**
+   * Blends the recent captures over the preview, most recent first, an empty list turns the
+   * onion skin off. Changing the opacities does not upload the captures again.
+   */
+  public void setOnionSkin(@NonNull List<Double> opacities) {
+    float[] layerOpacities = new float[opacities.size()];
+    for (int i = 0; i < layerOpacities.length; i++) {
+      layerOpacities[i] = opacities.get(i).floatValue();
+    }
+    filterPipelineController.setOnionSkinOpacities(layerOpacities);
+  }
+
+  /** Forgets the captures shown by the onion skin, for example when a new shot starts. */
+  public void clearOnionSkin() {
+    filterPipelineController.clearOnionSkin();
+  }
+
+  /**
+   * Aardman-Animator: records the time from the create call, when the camera characteristics
+   * and recording profiles are looked up, to this Camera being constructed.
+   */
+  public void recordCreateLatency(long createStartNanos) {
+    filterPipelineController.recordLatency(
+        PipelineStats.Stage.CAMERA_CREATE, createStartNanos, PipelineStats.now());
+  }
+
+  private void recordOpenToSessionLatency() {
+    long requestedNanos = openRequestedNanos;
+    if (requestedNanos != 0) {
+      openRequestedNanos = 0;
+      filterPipelineController.recordLatency(
+          PipelineStats.Stage.CAMERA_OPEN_TO_SESSION, requestedNanos, PipelineStats.now());
+    }
+  }
+
+  /** Per stage latency percentiles of the filtered preview pipeline */
+  public Map<String, Object> getPipelineStats() {
+    Map<String, Object> stats = filterPipelineController.getPipelineStats();
+    stats.put("rapidCaptureShots", rapidCaptureQueue.getLastSequence());
+    stats.put("rapidCaptureCompleted", rapidCaptureQueue.getCompletedCount());
+    stats.put("rapidCaptureFailed", rapidCaptureQueue.getFailedCount());
+    stats.put("settingsRequests", previewRequestCoalescer.getSentCount());
+    stats.put("coalescedSettingsRequests", previewRequestCoalescer.getCoalescedCount());
+    ZslRingBuffer ringBuffer = zslRingBuffer;
+    if (ringBuffer != null) {
+      stats.put("zslFrames", ringBuffer.getSize());
+      stats.put("zslHeldBytes", ringBuffer.getHeldBytes());
+      stats.put("zslPeakHeldBytes", ringBuffer.getPeakHeldBytes());
+      stats.put("zslEvictedFrames", ringBuffer.getEvictedCount());
+      stats.put("zslDroppedFrames", ringBuffer.getDroppedCount());
+      stats.put("zslSelectionErrorMs", ringBuffer.getLastSelectionErrorNanos() / 1e6);
+    }
+    stats.put("imageStreamSentFrames", imageStreamTransport.getSentCount());
+    stats.put("imageStreamDroppedFrames", imageStreamTransport.getDroppedCount());
+    stats.put("imageStreamInFlightFrames", imageStreamTransport.getInFlightCount());
+    stats.putAll(executors.toMap());
+    CameraCapabilityCache capabilityCache = CameraCapabilityCache.getInstanceIfCreated();
+    if (capabilityCache != null) {
+      stats.putAll(capabilityCache.toMap());
+    }
+    return stats;
+  }
+
+  /**
+   * Starts sending pipeline_stats events to Dart every intervalMs milliseconds on the camera
+   * thread, an interval of 0 stops them
+   */
+  public void setPipelineStatsInterval(long intervalMs) {
+    pipelineStatsIntervalMs = Math.max(0, intervalMs);
+    if (backgroundHandler == null) {
+      return;
+    }
+    backgroundHandler.removeCallbacks(pipelineStatsReporter);
+    if (pipelineStatsIntervalMs > 0) {
+      backgroundHandler.postDelayed(pipelineStatsReporter, pipelineStatsIntervalMs);
+    }
+  }
+
   public void close() {
     Log.i(TAG, "close");
+    setPipelineStatsInterval(0);
     closeCaptureSession();
 
     if (cameraDevice != null) {
@@ -1440,9 +2363,15 @@ public class Camera
       cameraDevice = null;
     }
     if (pictureImageReader != null) {
-      pictureImageReader.close();
+      // Stills being saved on the imaging executor still read the planes of their images, the
+      // reader is closed once they are done.
+      final ImageReader previousPictureReader = pictureImageReader;
+      previousPictureReader.setOnImageAvailableListener(null, null);
       pictureImageReader = null;
+      executors.getImaging().executeWhenIdle(previousPictureReader::close);
     }
+    filterPipelineController.stopAnalysisStream();
+    imageStreamTransport.stop();
     if (imageStreamReader != null) {
       imageStreamReader.close();
       imageStreamReader = null;
@@ -1452,7 +2381,30 @@ public class Camera
       mediaRecorder.release();
       mediaRecorder = null;
     }
+    if (filteredVideoRecorder != null) {
+      filterPipelineController.stopRecording(null);
+      filteredVideoRecorder = null;
+      recordingVideo = false;
+    }
+    failRapidCaptureShots("cameraClosed", "The camera was closed before the picture was taken");
+    rapidCaptureEnabled = false;
+    rapidCaptureListening = false;
+    if (zslImageReader != null) {
+      final ImageReader previousZslReader = zslImageReader;
+      final ZslRingBuffer previousRingBuffer = zslRingBuffer;
+      previousZslReader.setOnImageAvailableListener(null, null);
+      zslImageReader = null;
+      zslRingBuffer = null;
+      // Deferred as in setZslMode, a frame being saved is released before its reader is closed.
+      executors.getImaging().executeWhenIdle(
+          () -> {
+            previousRingBuffer.clear();
+            previousZslReader.close();
+          });
+    }
 
+    // Lets the queued stills finish, the readers above close after the last of them.
+    executors.shutdown();
     stopBackgroundThread();
   }
 
@@ -1460,10 +2412,24 @@ public class Camera
     Log.i(TAG, "dispose");
 
     close();
+    filterPipelineController.dispose();
     flutterTexture.release();
     getDeviceOrientationManager().stop();
   }
 
+  /**
+   * Aardman-Animator
+   *
+   * <p>Closes a camera replaced by a new one before Dart disposed it. It can no longer be
+   * disposed, so its filter pipeline lets go of the shared render engine now.
+   */
+  public void closeForReplacement() {
+    Log.i(TAG, "closeForReplacement");
+
+    close();
+    filterPipelineController.dispose();
+  }
+
   /** Factory class that assists in creating a {@link HandlerThread} instance. */
   static class HandlerThreadFactory {
     /**
@@ -18,6 +18,10 @@ import java.util.Map;
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugins.camera.aardman.CameraCapabilityCache;
+import io.flutter.plugins.camera.aardman.PipelineStats;
+import io.flutter.plugins.camera.aardman.PreviewInputMode;
+import io.flutter.plugins.camera.aardman.StillInputMode;
 import io.flutter.plugins.camera.features.CameraFeatureFactoryImpl;
 import io.flutter.plugins.camera.features.resolution.ResolutionPreset;
 import io.flutter.view.TextureRegistry;
@@ -74,7 +78,24 @@ public class CameraPipelineLoader {
         return surfaceTextureEntry;
     }
 
+    //The ImageReader is the fallback, any other value draws the camera into a SurfaceTexture
+    public PreviewInputMode previewInputModeFor(@Nullable String previewInput){
+        if ("imageReader".equals(previewInput)) {
+            return PreviewInputMode.YUV_PLANES;
+        }
+        return PreviewInputMode.EXTERNAL_OES;
+    }
+
+    //Stills are JPEG unless YUV is asked for, filtered from their planes with a single encode
+    public StillInputMode stillInputModeFor(@Nullable String stillInput){
+        if ("yuv".equals(stillInput)) {
+            return StillInputMode.YUV_PLANES;
+        }
+        return StillInputMode.JPEG;
+    }
+
     public Camera instantiateCameraPipeline(MethodCall call, MethodChannel.Result result) throws CameraAccessException {
+        long createStartNanos = PipelineStats.now();
 
         String cameraName = call.argument("cameraName");
         String preset = call.argument("resolutionPreset");
@@ -86,18 +107,24 @@ public class CameraPipelineLoader {
         DartMessenger dartMessenger =
                 new DartMessenger(
                         messenger, flutterSurfaceTexture.id(), new Handler(Looper.getMainLooper()));
+        //characteristics and recording profiles come from the cache after the first camera
+        CameraCapabilityCache capabilityCache = CameraCapabilityCache.getInstance(activity);
         CameraProperties cameraProperties =
-                new CameraPropertiesImpl(cameraName, CameraUtils.getCameraManager(activity));
+                new CameraPropertiesImpl(cameraName, capabilityCache.getCharacteristics(cameraName));
 
         Camera camera =
                 new Camera(
                         activity,
                         flutterSurfaceTexture,
-                        new CameraFeatureFactoryImpl(),
+                        new CameraFeatureFactoryImpl(capabilityCache),
                         dartMessenger,
                         cameraProperties,
                         resolutionPreset,
                         enableAudio);
+        camera.setPreviewInputMode(previewInputModeFor(call.argument("previewInput")));
+        //applied before open creates the still ImageReader in the chosen format
+        camera.setStillInputMode(stillInputModeFor(call.argument("stillInput")));
+        camera.recordCreateLatency(createStartNanos);
 
         Map<String, Object> reply = new HashMap<>();
         reply.put("cameraId", flutterSurfaceTexture.id());
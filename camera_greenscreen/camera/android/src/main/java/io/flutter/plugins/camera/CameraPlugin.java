@@ -13,6 +13,7 @@ import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugins.camera.CameraPermissions.PermissionsRegistry;
+import io.flutter.plugins.camera.aardman.RenderEngine;
 import io.flutter.view.TextureRegistry;
 
 /**
@@ -62,6 +63,8 @@ public final class CameraPlugin implements FlutterPlugin, ActivityAware {
   @Override
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
     this.flutterPluginBinding = null;
+    // Aardman-Animator: frees the render engine kept for a camera that will not come.
+    RenderEngine.releaseIdle();
   }
 
   @Override
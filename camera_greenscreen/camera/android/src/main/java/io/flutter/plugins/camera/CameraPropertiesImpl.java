@@ -25,6 +25,15 @@ public class CameraPropertiesImpl implements CameraProperties {
             this.cameraCharacteristics = cameraManager.getCameraCharacteristics(cameraName);
         }
 
+        /**
+         * Aardman-Animator: uses characteristics looked up before, for example from the
+         * CameraCapabilityCache, without a call to the camera service
+         */
+        public CameraPropertiesImpl(String cameraName, CameraCharacteristics cameraCharacteristics) {
+            this.cameraName = cameraName;
+            this.cameraCharacteristics = cameraCharacteristics;
+        }
+
         @Override
         public String getCameraName() {
             return cameraName;
@@ -111,6 +120,11 @@ public class CameraPropertiesImpl implements CameraProperties {
             return cameraCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
         }
 
+        @Override
+        public int getSensorInfoTimestampSource() {
+            return cameraCharacteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        }
+
         @Override
         public int getHardwareLevel() {
             return cameraCharacteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
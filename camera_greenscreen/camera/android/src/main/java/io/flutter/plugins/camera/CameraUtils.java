@@ -94,7 +94,26 @@ public final class CameraUtils {
   public static List<Map<String, Object>> getAvailableCameras(Activity activity)
       throws CameraAccessException {
     CameraManager cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
-    String[] cameraNames = cameraManager.getCameraIdList();
+    return getAvailableCameras(
+        cameraManager.getCameraIdList(), cameraManager::getCameraCharacteristics);
+  }
+
+  /** Aardman-Animator: looks up the characteristics of a camera, possibly from a cache. */
+  public interface CharacteristicsSource {
+    CameraCharacteristics get(String cameraName) throws CameraAccessException;
+  }
+
+  /**
+   * Gets the available cameras among the given camera names.
+   *
+   * @param cameraNames The camera names, as returned by {@link CameraManager#getCameraIdList()}.
+   * @param characteristicsSource Provides the characteristics of each camera.
+   * @return A map of all the available cameras, with their name as their key.
+   * @throws CameraAccessException when the camera could not be accessed.
+   */
+  public static List<Map<String, Object>> getAvailableCameras(
+      String[] cameraNames, CharacteristicsSource characteristicsSource)
+      throws CameraAccessException {
     List<Map<String, Object>> cameras = new ArrayList<>();
     for (String cameraName : cameraNames) {
       int cameraId;
@@ -108,7 +127,7 @@ public final class CameraUtils {
       }
 
       HashMap<String, Object> details = new HashMap<>();
-      CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraName);
+      CameraCharacteristics characteristics = characteristicsSource.get(cameraName);
       details.put("name", cameraName);
       int sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
       details.put("sensorOrientation", sensorOrientation);
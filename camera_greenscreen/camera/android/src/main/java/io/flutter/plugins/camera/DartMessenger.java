@@ -40,7 +40,9 @@ public class DartMessenger {
     /** Indicates that the camera is closing. */
     CLOSING("camera_closing"),
     /** Indicates that the camera is initialized. */
-    INITIALIZED("initialized");
+    INITIALIZED("initialized"),
+    /** Periodic latency statistics of the filtered preview pipeline. */
+    PIPELINE_STATS("pipeline_stats");
 
     private final String method;
 
@@ -143,6 +145,15 @@ public class DartMessenger {
         });
   }
 
+  /**
+   * Sends a message to the Flutter client with the latest preview pipeline statistics.
+   *
+   * @param stats per stage latency percentiles and render loop counters.
+   */
+  void sendPipelineStatsEvent(Map<String, Object> stats) {
+    send(CameraEventType.PIPELINE_STATS, stats);
+  }
+
   private void send(CameraEventType eventType) {
     send(eventType, new HashMap<>());
   }
@@ -16,11 +16,17 @@ import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.Result;
 import io.flutter.plugins.camera.CameraPermissions.PermissionsRegistry;
+import io.flutter.plugins.camera.aardman.AnalysisContent;
+import io.flutter.plugins.camera.aardman.CameraCapabilityCache;
+import io.flutter.plugins.camera.aardman.ImageStreamTransport;
 import io.flutter.plugins.camera.features.Point;
 import io.flutter.plugins.camera.features.autofocus.FocusMode;
 import io.flutter.plugins.camera.features.exposurelock.ExposureMode;
 import io.flutter.plugins.camera.features.flash.FlashMode;
 import io.flutter.view.TextureRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 final class MethodCallHandlerImpl implements MethodChannel.MethodCallHandler {
   private final Activity activity;
@@ -56,7 +62,8 @@ final class MethodCallHandlerImpl implements MethodChannel.MethodCallHandler {
     switch (call.method) {
       case "availableCameras":
         try {
-          result.success(CameraUtils.getAvailableCameras(activity));
+          // Aardman-Animator: rebuilt only when the cameras change
+          result.success(CameraCapabilityCache.getInstance(activity).getAvailableCameras());
         } catch (Exception e) {
           handleException(e, result);
         }
@@ -64,7 +71,7 @@ final class MethodCallHandlerImpl implements MethodChannel.MethodCallHandler {
       case "create":
         {
           if (camera != null) {
-            camera.close();
+            camera.closeForReplacement();
           }
 
           cameraPermissions.requestPermissions(
@@ -245,20 +252,56 @@ final class MethodCallHandlerImpl implements MethodChannel.MethodCallHandler {
           }
           break;
         }
+      case "applySettings":
+        {
+          //Aardman-Animator: several settings with one repeating request
+          Map<String, Object> settings = call.argument("settings");
+          try {
+            camera.applySettings(
+                result, settings == null ? Collections.<String, Object>emptyMap() : settings);
+          } catch (Exception e) {
+            handleException(e, result);
+          }
+          break;
+        }
       case "startImageStream":
         {
+          Number credits = call.argument("credits");
+          int imageStreamCredits =
+              credits == null ? ImageStreamTransport.DEFAULT_CREDITS : credits.intValue();
+          //Aardman-Animator: "composite" and "matte" stream small frames rendered by the GLThread
+          String source = call.argument("source");
           try {
-            camera.startPreviewWithImageStream(imageStreamChannel);
+            if (source == null || source.equals("camera")) {
+              camera.startPreviewWithImageStream(imageStreamChannel, imageStreamCredits);
+            } else {
+              Number frameRate = call.argument("frameRate");
+              camera.startAnalysisImageStream(
+                  imageStreamChannel,
+                  source.equals("matte") ? AnalysisContent.MATTE : AnalysisContent.COMPOSITE,
+                  call.<Number>argument("width").intValue(),
+                  call.<Number>argument("height").intValue(),
+                  frameRate.doubleValue(),
+                  imageStreamCredits);
+            }
             result.success(null);
+          } catch (IllegalArgumentException e) {
+            result.error("IllegalArgument", e.getMessage(), null);
           } catch (Exception e) {
             handleException(e, result);
           }
           break;
         }
+      case "imageStreamAck":
+        {
+          camera.acknowledgeImageStreamFrame();
+          result.success(null);
+          break;
+        }
       case "stopImageStream":
         {
           try {
-            camera.startPreview();
+            camera.stopImageStream();
             result.success(null);
           } catch (Exception e) {
             handleException(e, result);
@@ -374,6 +417,43 @@ final class MethodCallHandlerImpl implements MethodChannel.MethodCallHandler {
         result.success(null);
         break;
       }
+      case "getPipelineStats":
+      {
+        result.success(camera.getPipelineStats());
+        break;
+      }
+      case "setPipelineStatsInterval":
+      {
+        Number intervalMs = call.argument("intervalMs");
+        camera.setPipelineStatsInterval(intervalMs == null ? 0 : intervalMs.longValue());
+        result.success(null);
+        break;
+      }
+      case "setRapidCaptureMode":
+      {
+        Boolean enabled = call.argument("enabled");
+        camera.setRapidCaptureMode(Boolean.TRUE.equals(enabled), result);
+        break;
+      }
+      case "setZslMode":
+      {
+        Boolean enabled = call.argument("enabled");
+        camera.setZslMode(Boolean.TRUE.equals(enabled), result);
+        break;
+      }
+      case "setOnionSkin":
+      {
+        List<Double> opacities = call.argument("opacities");
+        camera.setOnionSkin(opacities == null ? Collections.<Double>emptyList() : opacities);
+        result.success(null);
+        break;
+      }
+      case "clearOnionSkin":
+      {
+        camera.clearOnionSkin();
+        result.success(null);
+        break;
+      }
       default:
         result.notImplemented();
         break;
@@ -0,0 +1,18 @@
+package io.flutter.plugins.camera.aardman;
+
+/**
+ * What the analysis stream renders from the preview
+ */
+public enum AnalysisContent {
+
+    /**
+     * The preview as the animator sees it, composited when the filter is enabled
+     */
+    COMPOSITE,
+
+    /**
+     * The chroma key matte of the camera frame, white where the frame is kept and black
+     * where the background would replace it
+     */
+    MATTE
+}
@@ -0,0 +1,323 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+
+/**
+ * Small offscreen copies of the preview, or of its key matte, for frame analysis in Dart
+ *
+ * After the preview has been drawn, the FilterRenderer draws the same frame again into an
+ * offscreen framebuffer of the analysis size, at most at the analysis frame rate and only while
+ * the listener has a credit for it.
+ *
+ * The framebuffer is read back through two pixel buffer objects. glReadPixels into a pixel
+ * buffer returns without waiting for the GPU, a fence marks when the copy has completed and the
+ * buffer is only mapped once its fence has signalled, on a later frame. The render loop is never
+ * stalled by a readback, a frame is skipped instead when both buffers are still in flight.
+ * Pixel buffers need an OpenGL ES 3 context and the glReadPixels offset binding added in API 24,
+ * without them the small framebuffer is read back directly.
+ *
+ * Frames are RGBA, tightly packed, with row 0 at the top of the image. The configuration is
+ * fixed, a stream is replaced to change it. Everything but the counters is used on the GLThread.
+ */
+public class AnalysisStream {
+
+    private static final String TAG = "AnalysisStream";
+
+    private static final int PIXEL_BUFFERS = 2;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    public interface FrameListener {
+        /**
+         * @return whether a frame would be accepted, checked before one is rendered
+         */
+        boolean hasCredit();
+
+        /**
+         * GLThread, the pixels are only valid until this returns
+         */
+        void onAnalysisFrame(ByteBuffer rgba, int width, int height);
+    }
+
+    /**
+     * Draws the current frame into the bound framebuffer with the analysis geometry
+     */
+    interface Drawer {
+        void draw(AnalysisContent content);
+    }
+
+    private final AnalysisContent content;
+    private final int width;
+    private final int height;
+    private final long frameIntervalNanos;
+    private final FrameListener listener;
+    private final PipelineStats pipelineStats;
+
+    /**
+     * Frame pacing, in the sensor timestamp time base
+     */
+    private long lastFrameTimestampNanos = -1;
+    private long nextDueNanos = -1;
+
+    /**
+     * GL objects, created on the first frame
+     */
+    private boolean initialised = false;
+    private boolean usePixelBuffers;
+    private int frameBufferId = 0;
+    private int textureId = OpenGlUtils.NO_TEXTURE;
+    private final int[] pixelBufferIds = new int[PIXEL_BUFFERS];
+    private final long[] fences = new long[PIXEL_BUFFERS];
+    //oldest pixel buffer waiting for its fence, and how many are waiting
+    private int oldestPending = 0;
+    private int pendingCount = 0;
+    //direct readback when there are no pixel buffers
+    private ByteBuffer readBuffer;
+
+    private final AtomicLong renderedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    /**
+     * @param content        what is rendered
+     * @param width          analysis frame width, the preview is scaled to it
+     * @param height         analysis frame height
+     * @param maxFrameRate   the most frames per second rendered, at most one per camera frame
+     * @param listener       receives the frames on the GLThread
+     * @param pipelineStats  records the render and readback durations, may be null
+     */
+    public AnalysisStream(AnalysisContent content, int width, int height, double maxFrameRate,
+                          FrameListener listener, PipelineStats pipelineStats) {
+        if (width <= 0 || height <= 0 || maxFrameRate <= 0) {
+            throw new IllegalArgumentException("Invalid analysis stream " + width + "x" + height + " at " + maxFrameRate + "fps");
+        }
+        this.content = content;
+        this.width = width;
+        this.height = height;
+        this.frameIntervalNanos = (long) (1e9 / maxFrameRate);
+        this.listener = listener;
+        this.pipelineStats = pipelineStats;
+    }
+
+    /*********************************************************************************
+     *                                  GLThread
+     *********************************************************************************/
+
+    /**
+     * Called after each preview draw, delivers the completed readbacks and renders a new
+     * analysis frame if a new camera frame is due. The caller restores its framebuffer
+     * and viewport afterwards.
+     *
+     * @param frameTimestampNanos sensor timestamp of the camera frame just drawn
+     */
+    void onFrameDrawn(long frameTimestampNanos, Drawer drawer) {
+        if (!initialised) {
+            initialise();
+        }
+        deliverCompletedReadbacks();
+
+        if (frameTimestampNanos == lastFrameTimestampNanos) {
+            //an idle or parameter redraw of a frame already considered
+            return;
+        }
+        lastFrameTimestampNanos = frameTimestampNanos;
+        if (!isDue(frameTimestampNanos)) {
+            return;
+        }
+        if (!listener.hasCredit() || pendingCount == PIXEL_BUFFERS) {
+            skippedCount.incrementAndGet();
+            return;
+        }
+
+        long startNanos = PipelineStats.now();
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBufferId);
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        drawer.draw(content);
+        renderedCount.incrementAndGet();
+
+        if (usePixelBuffers) {
+            int slot = (oldestPending + pendingCount) % PIXEL_BUFFERS;
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBufferIds[slot]);
+            GLES30.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+            fences[slot] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            pendingCount++;
+            record(PipelineStats.Stage.ANALYSIS_RENDER, startNanos);
+        } else {
+            record(PipelineStats.Stage.ANALYSIS_RENDER, startNanos);
+            long readStartNanos = PipelineStats.now();
+            readBuffer.clear();
+            GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, readBuffer);
+            deliver(readBuffer);
+            record(PipelineStats.Stage.ANALYSIS_READBACK, readStartNanos);
+        }
+    }
+
+    /**
+     * Paces the frames to the analysis frame rate. The due time advances by whole intervals
+     * so that camera frame jitter does not lower the rate, it restarts from the current frame
+     * after a gap.
+     */
+    boolean isDue(long frameTimestampNanos) {
+        if (nextDueNanos >= 0 && frameTimestampNanos < nextDueNanos) {
+            return false;
+        }
+        if (nextDueNanos < 0 || frameTimestampNanos - nextDueNanos >= frameIntervalNanos) {
+            nextDueNanos = frameTimestampNanos + frameIntervalNanos;
+        } else {
+            nextDueNanos += frameIntervalNanos;
+        }
+        return true;
+    }
+
+    private void deliverCompletedReadbacks() {
+        while (pendingCount > 0) {
+            int slot = oldestPending;
+            int status = GLES30.glClientWaitSync(fences[slot], GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+            if (status != GLES30.GL_ALREADY_SIGNALED && status != GLES30.GL_CONDITION_SATISFIED) {
+                //still in flight, later pixel buffers were submitted after it
+                return;
+            }
+            GLES30.glDeleteSync(fences[slot]);
+            fences[slot] = 0;
+
+            long startNanos = PipelineStats.now();
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBufferIds[slot]);
+            ByteBuffer pixels = (ByteBuffer) GLES30.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0,
+                    frameBytes(), GLES30.GL_MAP_READ_BIT);
+            if (pixels != null) {
+                deliver(pixels.order(ByteOrder.nativeOrder()));
+                GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+            }
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+            record(PipelineStats.Stage.ANALYSIS_READBACK, startNanos);
+
+            oldestPending = (oldestPending + 1) % PIXEL_BUFFERS;
+            pendingCount--;
+        }
+    }
+
+    private void deliver(ByteBuffer pixels) {
+        pixels.position(0);
+        pixels.limit(frameBytes());
+        listener.onAnalysisFrame(pixels, width, height);
+        deliveredCount.incrementAndGet();
+    }
+
+    private void initialise() {
+        initialised = true;
+        usePixelBuffers = supportsPixelBuffers();
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        textureId = textures[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+        int[] frameBuffers = new int[1];
+        GLES20.glGenFramebuffers(1, frameBuffers, 0);
+        frameBufferId = frameBuffers[0];
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBufferId);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, textureId, 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        //rows of RGBA pixels are always 4 byte aligned
+        GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 4);
+        if (usePixelBuffers) {
+            GLES30.glGenBuffers(PIXEL_BUFFERS, pixelBufferIds, 0);
+            for (int pixelBufferId : pixelBufferIds) {
+                GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBufferId);
+                GLES30.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, frameBytes(), null, GLES30.GL_STREAM_READ);
+            }
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        } else {
+            readBuffer = ByteBuffer.allocateDirect(frameBytes()).order(ByteOrder.nativeOrder());
+        }
+        Log.i(TAG, "Analysis stream " + width + "x" + height + (usePixelBuffers ? " with pixel buffers" : " with direct readback"));
+    }
+
+    /**
+     * The preview context is requested as OpenGL ES 2, drivers return the highest compatible
+     * version so an ES 3 context is common
+     */
+    private static boolean supportsPixelBuffers() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return false;
+        }
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        return version != null && version.startsWith("OpenGL ES ") && !version.startsWith("OpenGL ES 2");
+    }
+
+    /**
+     * Deletes the GL objects, readbacks still in flight are discarded
+     */
+    void release() {
+        if (!initialised) {
+            return;
+        }
+        initialised = false;
+        for (int i = 0; i < PIXEL_BUFFERS; i++) {
+            if (fences[i] != 0) {
+                GLES30.glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        pendingCount = 0;
+        if (usePixelBuffers) {
+            GLES30.glDeleteBuffers(PIXEL_BUFFERS, pixelBufferIds, 0);
+        }
+        GLES20.glDeleteFramebuffers(1, new int[]{frameBufferId}, 0);
+        GLES20.glDeleteTextures(1, new int[]{textureId}, 0);
+        frameBufferId = 0;
+        textureId = OpenGlUtils.NO_TEXTURE;
+        readBuffer = null;
+    }
+
+    private int frameBytes() {
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    private void record(PipelineStats.Stage stage, long startNanos) {
+        if (pipelineStats != null) {
+            pipelineStats.record(stage, startNanos, PipelineStats.now());
+        }
+    }
+
+    /*********************************************************************************
+     *                                 Diagnostics
+     *********************************************************************************/
+
+    public long getRenderedCount() {
+        return renderedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * @return frames that were due but not rendered, for lack of a credit or a free pixel buffer
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    public AnalysisContent getContent() {
+        return content;
+    }
+}
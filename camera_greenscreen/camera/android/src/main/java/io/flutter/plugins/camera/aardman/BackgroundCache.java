@@ -0,0 +1,114 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.io.File;
+
+/**
+ * LRU cache of prepared (scaled, cropped and rotated) chroma backgrounds
+ *
+ * Preparing a background decodes the full source image, switching back and forth between a
+ * handful of backgrounds or taking a series of stills with the same background is served from
+ * here instead. Entries are keyed by the source path and its modification time, so an image
+ * overwritten in place is decoded again, and by the target size and orientation.
+ *
+ * The cache is bounded by the byte size of its bitmaps. Evicted bitmaps are not recycled, a
+ * filter given one only uploads it on its next draw on the GLThread, they are left to the
+ * garbage collector once no filter holds them. Callers must not recycle bitmaps obtained from
+ * the cache.
+ *
+ * Thread safe, backgrounds are prepared on the GLThread for the preview and on the camera
+ * thread for still captures.
+ */
+public class BackgroundCache extends LruCache<BackgroundCache.Key, Bitmap> {
+
+    /**
+     * Identifies a prepared background
+     */
+    public static final class Key {
+        final String path;
+        final long lastModified;
+        final int width;
+        final int height;
+        final boolean isLandscape;
+
+        public Key(String path, long lastModified, int width, int height, boolean isLandscape) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.width = width;
+            this.height = height;
+            this.isLandscape = isLandscape;
+        }
+
+        /**
+         * @return the key of the background file prepared for the given target, null if the
+         * file does not exist
+         */
+        public static Key forFile(String path, int width, int height, boolean isLandscape) {
+            if (path == null) {
+                return null;
+            }
+            long lastModified = new File(path).lastModified();
+            if (lastModified == 0L) {
+                return null;
+            }
+            return new Key(path, lastModified, width, height, isLandscape);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return lastModified == key.lastModified
+                    && width == key.width
+                    && height == key.height
+                    && isLandscape == key.isLandscape
+                    && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + (isLandscape ? 1 : 0);
+            return result;
+        }
+    }
+
+    /**
+     * An eighth of the heap, enough for a few preview backgrounds and a still capture background
+     */
+    public static int defaultMaxBytes() {
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    /**
+     * @param maxBytes the total byte count of the cached bitmaps
+     */
+    public BackgroundCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    /**
+     * Caches a prepared background unless it is larger than the whole cache,
+     * in which case the caller keeps sole ownership of it
+     *
+     * @return true if the bitmap was cached
+     */
+    public boolean putBackground(Key key, Bitmap bitmap) {
+        if (key == null || bitmap == null || sizeOf(key, bitmap) > maxSize()) {
+            return false;
+        }
+        put(key, bitmap);
+        return true;
+    }
+
+    @Override
+    protected int sizeOf(Key key, Bitmap bitmap) {
+        return bitmap.getByteCount();
+    }
+}
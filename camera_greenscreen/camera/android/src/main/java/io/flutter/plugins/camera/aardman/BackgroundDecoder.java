@@ -0,0 +1,107 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Decodes chroma backgrounds at a resolution close to the size they are displayed at
+ *
+ * Backgrounds are often full resolution photos, a 24MP source decoded as is takes ~96MB of
+ * ARGB before being scaled down to the preview. The bounds are read first, then only the
+ * center crop used by CustomFilterFactory.prepareBitmap is decoded, subsampled by the largest
+ * power of two that keeps it at least as tall as the output. Peak memory is then at most
+ * four times the output size whatever the size of the source.
+ *
+ * Formats the region decoder does not support are decoded whole, subsampled and scaled
+ * down to the output height by the decoder.
+ */
+public class BackgroundDecoder {
+
+    private static final String TAG = "BackgroundDecoder";
+
+    /**
+     * @param path        the background image file
+     * @param targetSize  width and height of the preview or capture the background is for
+     * @param isLandscape the orientation the background is prepared for
+     * @return the decoded center of the background, to be passed to prepareBitmap,
+     * or null if the file could not be decoded
+     */
+    @Nullable
+    public static Bitmap decode(@Nullable String path, int targetWidth, int targetHeight, boolean isLandscape) {
+        if (path == null) {
+            return null;
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        BackgroundGeometry geometry = BackgroundGeometry.of(bounds.outWidth, bounds.outHeight, targetWidth, targetHeight, isLandscape);
+
+        Bitmap bitmap = decodeRegion(path, geometry);
+        if (bitmap == null) {
+            bitmap = decodeScaled(path, geometry);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes only the center crop of the source, subsampled
+     */
+    @SuppressWarnings("deprecation")
+    @Nullable
+    static Bitmap decodeRegion(String path, BackgroundGeometry geometry) {
+        BitmapRegionDecoder decoder = null;
+        try {
+            //newInstance(String) is only available from API 31
+            decoder = BitmapRegionDecoder.newInstance(path, false);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = geometry.inSampleSize();
+            Rect region = new Rect(geometry.sourceCropLeft, 0,
+                    geometry.sourceCropLeft + geometry.sourceCropWidth, geometry.sourceHeight);
+            return decoder.decodeRegion(region, options);
+        } catch (IOException | IllegalArgumentException e) {
+            //not a format supported by the region decoder
+            Log.i(TAG, "Region decode unavailable for " + path + ", " + e.getMessage());
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    /**
+     * Decodes the whole source subsampled, then scaled by the decoder to the output height
+     */
+    @Nullable
+    static Bitmap decodeScaled(String path, BackgroundGeometry geometry) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        int sampleSize = geometry.inSampleSize();
+        options.inSampleSize = sampleSize;
+
+        int sampledHeight = geometry.sourceHeight / sampleSize;
+        if (sampledHeight > geometry.outputHeight) {
+            options.inScaled = true;
+            options.inDensity = sampledHeight;
+            options.inTargetDensity = geometry.outputHeight;
+        }
+
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap != null) {
+            //the densities above are only a means of scaling, not a display density
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
+}
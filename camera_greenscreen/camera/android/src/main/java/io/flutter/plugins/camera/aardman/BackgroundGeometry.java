@@ -0,0 +1,99 @@
+package io.flutter.plugins.camera.aardman;
+
+/**
+ * The scale and center crop that fits a widescreen background to the height of the
+ * preview or capture image, see CustomFilterFactory.prepareBitmap
+ *
+ * Kept free of Android types so the arithmetic can be exercised on a plain JVM
+ */
+public final class BackgroundGeometry {
+
+    public final int sourceWidth;
+    public final int sourceHeight;
+
+    //source height / output height, the source is divided by this to fit the output height
+    public final float scaleFactor;
+    public final float scaledWidth;
+
+    //size of the cropped background, width and height are swapped for portrait
+    public final int outputWidth;
+    public final int outputHeight;
+
+    //left edge of the center crop in the scaled background
+    public final int translationInX;
+
+    //the center crop in source pixels, the only part of the source that needs decoding
+    public final int sourceCropLeft;
+    public final int sourceCropWidth;
+
+    private BackgroundGeometry(int sourceWidth, int sourceHeight, float scaleFactor, float scaledWidth,
+                               int outputWidth, int outputHeight, int translationInX) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.scaleFactor = scaleFactor;
+        this.scaledWidth = scaledWidth;
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+        this.translationInX = translationInX;
+        //a margin of a couple of samples so rounding in the subsampled decode cannot leave it narrower than the output
+        this.sourceCropWidth = Math.min(sourceWidth, (int) Math.ceil(outputWidth * scaleFactor) + 4 * inSampleSize());
+        this.sourceCropLeft = (sourceWidth - sourceCropWidth) / 2;
+    }
+
+    public static BackgroundGeometry of(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight, boolean isLandscape) {
+        int outputWidth  = targetWidth;
+        int outputHeight = targetHeight;
+
+        if(!isLandscape) {
+            outputWidth  = targetHeight;
+            outputHeight = targetWidth;
+        }
+
+        //calculate scale from height
+        float scaleFactor = ((float) sourceHeight / (float) outputHeight);
+        float scaledWidth = sourceWidth / scaleFactor;
+
+        int translationInX = (int) (scaledWidth - outputWidth) / 2;
+
+        return new BackgroundGeometry(sourceWidth, sourceHeight, scaleFactor, scaledWidth, outputWidth, outputHeight, translationInX);
+    }
+
+    /**
+     * The background is prepared once for landscape, the portrait background of prepareBitmap
+     * is the narrower center of the same widescreen source, turned a quarter counterclockwise.
+     * Both crops span the full source height, so it is sampled from the landscape background.
+     *
+     * @param coordinates texture coordinates of the landscape background, s and t per vertex
+     * @param targetWidth  width of the preview
+     * @param targetHeight height of the preview
+     * @return the coordinates that sample the background for the given orientation
+     */
+    public static float[] textureCoordinates(float[] coordinates, int targetWidth, int targetHeight, boolean isLandscape) {
+        float[] oriented = coordinates.clone();
+        if (isLandscape) {
+            return oriented;
+        }
+        //width of the portrait crop relative to the landscape crop, at the same height
+        float aspect = (float) Math.min(targetWidth, targetHeight) / Math.max(targetWidth, targetHeight);
+        float cropWidth = aspect * aspect;
+        for (int i = 0; i < coordinates.length; i += 2) {
+            float s = coordinates[i];
+            float t = coordinates[i + 1];
+            oriented[i] = 0.5f + cropWidth * (0.5f - t);
+            oriented[i + 1] = s;
+        }
+        return oriented;
+    }
+
+    /**
+     * @return the largest power of two BitmapFactory.Options.inSampleSize that still decodes
+     * the source at least as tall as the output, 1 if the source is not larger than the output
+     */
+    public int inSampleSize() {
+        int sampleSize = 1;
+        while (sourceHeight / (sampleSize * 2) >= outputHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
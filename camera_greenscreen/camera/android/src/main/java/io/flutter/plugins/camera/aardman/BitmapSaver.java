@@ -4,13 +4,14 @@ import android.graphics.Bitmap;
 import android.media.Image;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 
 
 /** Saves a Bitmap {@link Bitmap} into the specified {@link File}. */
@@ -31,6 +32,24 @@ public class BitmapSaver implements Runnable {
      */
     protected final io.flutter.plugins.camera.ImageSaver.Callback callback;
 
+    /**
+     * ExifInterface orientation written with the JPEG, or JpegWriter.ORIENTATION_UNCHANGED
+     */
+    protected final int exifOrientation;
+
+    /**
+     * Records the encode and write durations, may be null
+     */
+    private final PipelineStats pipelineStats;
+
+    //When processing of the capture started, for the STILL_TOTAL stage
+    private final long startNanos;
+
+    /**
+     * Writes the encoded JPEG, the file is written on the encoding thread if null
+     */
+    private final Executor writeExecutor;
+
     /**
      * Creates an instance of the ImageSaver runnable
      *
@@ -39,9 +58,32 @@ public class BitmapSaver implements Runnable {
      * @param callback - The callback that is run on completion, or when an error is encountered.
      */
     public BitmapSaver(@NonNull Bitmap bitmap, @NonNull File file, @NonNull io.flutter.plugins.camera.ImageSaver.Callback callback) {
+        this(bitmap, file, callback, JpegWriter.ORIENTATION_UNCHANGED, null, 0);
+    }
+
+    /**
+     * @param exifOrientation - The orientation to save with the image
+     * @param pipelineStats   - Records the encode, write and total durations
+     * @param startNanos      - When processing of the capture started
+     */
+    public BitmapSaver(@NonNull Bitmap bitmap, @NonNull File file, @NonNull io.flutter.plugins.camera.ImageSaver.Callback callback,
+                       int exifOrientation, @Nullable PipelineStats pipelineStats, long startNanos) {
+        this(bitmap, file, callback, exifOrientation, pipelineStats, startNanos, null);
+    }
+
+    /**
+     * @param writeExecutor   - Writes the file once the bitmap is encoded
+     */
+    public BitmapSaver(@NonNull Bitmap bitmap, @NonNull File file, @NonNull io.flutter.plugins.camera.ImageSaver.Callback callback,
+                       int exifOrientation, @Nullable PipelineStats pipelineStats, long startNanos,
+                       @Nullable Executor writeExecutor) {
         this.bitmap = bitmap;
         this.file = file;
         this.callback = callback;
+        this.exifOrientation = exifOrientation;
+        this.pipelineStats = pipelineStats;
+        this.startNanos = startNanos;
+        this.writeExecutor = writeExecutor;
     }
 
     @Override
@@ -50,33 +92,60 @@ public class BitmapSaver implements Runnable {
             return;
         }
 
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        long encodeStartNanos = PipelineStats.now();
+        JpegOutputStream stream = new JpegOutputStream(bitmap.getByteCount() / 8);
         bitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-        byte[] jpegBytes = stream.toByteArray();
+        final long encodedNanos = PipelineStats.now();
 
-        FileOutputStream output = null;
+        if (writeExecutor != null) {
+            writeExecutor.execute(() -> write(stream, encodeStartNanos, encodedNanos));
+        } else {
+            write(stream, encodeStartNanos, encodedNanos);
+        }
+    }
 
+    private void write(JpegOutputStream stream, long encodeStartNanos, long encodedNanos) {
         try {
 
-            if (jpegBytes != null) {
-                output = new FileOutputStream(file);
-                output.write(jpegBytes);
-            }
-            callback.onComplete(file.getAbsolutePath());
+            writeEncoded(stream, file, exifOrientation);
 
         } catch (IOException e) {
             callback.onError("IOError", "Failed saving image");
-        } finally {
-            if (null != output) {
-                try {
-                    output.close();
-                } catch (IOException e) {
-                    callback.onError("cameraAccess", e.getMessage());
-                }
-            }
+            return;
+        }
+
+        if (pipelineStats != null) {
+            long writtenNanos = PipelineStats.now();
+            pipelineStats.record(PipelineStats.Stage.STILL_ENCODE, encodeStartNanos, encodedNanos);
+            pipelineStats.record(PipelineStats.Stage.STILL_WRITE, encodedNanos, writtenNanos);
+            pipelineStats.record(PipelineStats.Stage.STILL_TOTAL, startNanos, writtenNanos);
         }
+        callback.onComplete(file.getAbsolutePath());
     }
-}
 
+    /**
+     * Writes the encoded JPEG bytes to the file, without copying them out of the stream
+     *
+     * @param stream          the stream the bitmap was compressed into
+     * @param file            the file to save the image to
+     * @param exifOrientation the orientation to write with the image
+     */
+    @VisibleForTesting
+    static void writeEncoded(@NonNull JpegOutputStream stream, @NonNull File file, int exifOrientation) throws IOException {
+        JpegWriter.write(stream.asByteBuffer(), file, exifOrientation);
+    }
+
+    /**
+     * Exposes the encoded bytes as a buffer, toByteArray would copy the whole JPEG
+     */
+    static final class JpegOutputStream extends ByteArrayOutputStream {
 
+        JpegOutputStream(int initialSize) {
+            super(Math.max(initialSize, 32));
+        }
 
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.media.CamcorderProfile;
+import android.media.EncoderProfiles;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.plugins.camera.CameraUtils;
+import io.flutter.plugins.camera.features.resolution.ResolutionFeature;
+import io.flutter.plugins.camera.features.resolution.ResolutionPreset;
+
+/**
+ * Process wide cache of what the cameras can do, so that opening a camera makes no binder calls
+ * for things that have not changed since the last one
+ *
+ * Holds the camera id list, the available cameras as sent to Dart, the CameraCharacteristics
+ * of each camera, which carry its sizes and fps ranges, and the recording profile resolved for
+ * each preset. Entries are looked up lazily from any thread.
+ *
+ * A camera becoming available or unavailable, opened or closed by any app or an external camera
+ * plugged in or out, drops the id list and the available cameras. The characteristics and
+ * profiles of a camera are kept unless it becomes available without being known, a camera that
+ * was never listed or looked up before.
+ */
+public class CameraCapabilityCache {
+
+    private static CameraCapabilityCache instance;
+
+    private final CameraManager cameraManager;
+
+    private volatile String[] cameraIds;
+    //the ids last listed, kept when the list is dropped
+    private volatile List<String> knownCameraIds = new ArrayList<>();
+    private volatile List<Map<String, Object>> availableCameras;
+    private final Map<String, CameraCharacteristics> characteristics = new ConcurrentHashMap<>();
+    //CamcorderProfile before API 31, EncoderProfiles after, keyed by camera id and preset
+    private final Map<String, Object> recordingProfiles = new ConcurrentHashMap<>();
+
+    //Incremented by the invalidations, a lookup racing with one does not store its result
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong listGeneration = new AtomicLong();
+
+    /**
+     * Counters, readable from any thread
+     */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    final CameraManager.AvailabilityCallback availabilityCallback =
+            new CameraManager.AvailabilityCallback() {
+                @Override
+                public void onCameraAvailable(@NonNull String cameraId) {
+                    if (knownCameraIds.contains(cameraId) || characteristics.containsKey(cameraId)) {
+                        invalidateCameraList();
+                    } else {
+                        invalidate(cameraId);
+                    }
+                }
+
+                @Override
+                public void onCameraUnavailable(@NonNull String cameraId) {
+                    invalidateCameraList();
+                }
+            };
+
+    /**
+     * @return the cache of the application, created and registered for availability changes
+     * the first time
+     */
+    public static synchronized CameraCapabilityCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new CameraCapabilityCache(
+                    CameraUtils.getCameraManager(context.getApplicationContext()));
+            instance.register(new Handler(Looper.getMainLooper()));
+        }
+        return instance;
+    }
+
+    /**
+     * @return the cache of the application, or null if no camera was looked up yet
+     */
+    public static synchronized CameraCapabilityCache getInstanceIfCreated() {
+        return instance;
+    }
+
+    CameraCapabilityCache(CameraManager cameraManager) {
+        this.cameraManager = cameraManager;
+    }
+
+    void register(Handler handler) {
+        cameraManager.registerAvailabilityCallback(availabilityCallback, handler);
+    }
+
+    public String[] getCameraIdList() throws CameraAccessException {
+        String[] ids = cameraIds;
+        if (ids != null) {
+            hits.incrementAndGet();
+            return ids.clone();
+        }
+        misses.incrementAndGet();
+        long lookupGeneration = listGeneration.get();
+        ids = cameraManager.getCameraIdList();
+        if (listGeneration.get() == lookupGeneration) {
+            cameraIds = ids;
+            knownCameraIds = Arrays.asList(ids.clone());
+        }
+        return ids.clone();
+    }
+
+    public CameraCharacteristics getCharacteristics(String cameraId) throws CameraAccessException {
+        CameraCharacteristics cached = characteristics.get(cameraId);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        long lookupGeneration = generation.get();
+        CameraCharacteristics looked = cameraManager.getCameraCharacteristics(cameraId);
+        if (generation.get() == lookupGeneration) {
+            characteristics.put(cameraId, looked);
+        }
+        return looked;
+    }
+
+    /**
+     * @return the cameras as returned by CameraUtils.getAvailableCameras, each call gets its
+     * own list
+     */
+    public List<Map<String, Object>> getAvailableCameras() throws CameraAccessException {
+        List<Map<String, Object>> cameras = availableCameras;
+        if (cameras == null) {
+            long lookupGeneration = listGeneration.get();
+            cameras = CameraUtils.getAvailableCameras(getCameraIdList(), this::getCharacteristics);
+            if (listGeneration.get() == lookupGeneration) {
+                availableCameras = cameras;
+            }
+        }
+        List<Map<String, Object>> copy = new ArrayList<>(cameras.size());
+        for (Map<String, Object> camera : cameras) {
+            copy.add(new HashMap<>(camera));
+        }
+        return copy;
+    }
+
+    /**
+     * @see ResolutionFeature#getBestAvailableCamcorderProfileForResolutionPresetLegacy
+     */
+    @SuppressWarnings("deprecation")
+    public CamcorderProfile getRecordingProfileLegacy(int cameraId, ResolutionPreset preset) {
+        String key = profileKey(cameraId, preset);
+        Object cached = recordingProfiles.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return (CamcorderProfile) cached;
+        }
+        misses.incrementAndGet();
+        long lookupGeneration = generation.get();
+        CamcorderProfile profile =
+                ResolutionFeature.getBestAvailableCamcorderProfileForResolutionPresetLegacy(cameraId, preset);
+        if (profile != null && generation.get() == lookupGeneration) {
+            recordingProfiles.put(key, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * @see ResolutionFeature#getBestAvailableCamcorderProfileForResolutionPreset
+     */
+    @TargetApi(Build.VERSION_CODES.S)
+    public EncoderProfiles getRecordingProfile(int cameraId, ResolutionPreset preset) {
+        String key = profileKey(cameraId, preset);
+        Object cached = recordingProfiles.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return (EncoderProfiles) cached;
+        }
+        misses.incrementAndGet();
+        long lookupGeneration = generation.get();
+        EncoderProfiles profile =
+                ResolutionFeature.getBestAvailableCamcorderProfileForResolutionPreset(cameraId, preset);
+        if (profile != null && generation.get() == lookupGeneration) {
+            recordingProfiles.put(key, profile);
+        }
+        return profile;
+    }
+
+    private static String profileKey(int cameraId, ResolutionPreset preset) {
+        return cameraId + "/" + preset.name();
+    }
+
+    /**
+     * Drops the camera list and everything cached for the camera
+     */
+    void invalidate(String cameraId) {
+        generation.incrementAndGet();
+        invalidateCameraList();
+        characteristics.remove(cameraId);
+        String profilePrefix = cameraId + "/";
+        for (String key : recordingProfiles.keySet()) {
+            if (key.startsWith(profilePrefix)) {
+                recordingProfiles.remove(key);
+            }
+        }
+    }
+
+    void invalidateCameraList() {
+        listGeneration.incrementAndGet();
+        invalidations.incrementAndGet();
+        cameraIds = null;
+        availableCameras = null;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return {capabilityCacheHits, capabilityCacheMisses, capabilityCacheInvalidations}
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("capabilityCacheHits", getHitCount());
+        stats.put("capabilityCacheMisses", getMissCount());
+        stats.put("capabilityCacheInvalidations", getInvalidationCount());
+        return stats;
+    }
+}
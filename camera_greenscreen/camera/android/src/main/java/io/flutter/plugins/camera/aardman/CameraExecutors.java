@@ -0,0 +1,237 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executors of one camera, besides its CameraBackground thread for the 3A callbacks
+ *
+ * captureControl runs the capture session callbacks, a single thread so that they keep
+ * their order. imaging decodes, filters and encodes stills on a bounded pool. io writes the
+ * files on a single thread behind a bounded queue, when the queue is full the save is written
+ * on the thread that submitted it, which holds back the imaging stage instead of letting
+ * encoded JPEGs pile up in memory.
+ *
+ * Threads are created when the first task arrives and stop when idle. After shutdown a task
+ * runs on the thread that submits it, so a capture completing while the camera closes still
+ * reports its result.
+ */
+public class CameraExecutors {
+
+    private final MonitoredExecutor captureControl;
+    private final MonitoredExecutor imaging;
+    private final MonitoredExecutor io;
+
+    public CameraExecutors() {
+        this(imagingThreads(), Constants.IO_QUEUE_CAPACITY);
+    }
+
+    CameraExecutors(int imagingThreads, int ioQueueCapacity) {
+        captureControl = new MonitoredExecutor("CameraControl", 1, new LinkedBlockingQueue<>());
+        imaging = new MonitoredExecutor("CameraImaging", imagingThreads, new LinkedBlockingQueue<>());
+        io = new MonitoredExecutor("CameraIO", 1, new ArrayBlockingQueue<>(ioQueueCapacity));
+    }
+
+    private static int imagingThreads() {
+        //leaves a core to the camera and GL threads
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(Constants.IMAGING_MAX_THREADS, cores - 1));
+    }
+
+    public MonitoredExecutor getCaptureControl() {
+        return captureControl;
+    }
+
+    public MonitoredExecutor getImaging() {
+        return imaging;
+    }
+
+    public MonitoredExecutor getIo() {
+        return io;
+    }
+
+    /**
+     * Lets the queued tasks finish, called when the camera closes
+     */
+    public void shutdown() {
+        captureControl.shutdown();
+        imaging.shutdown();
+        io.shutdown();
+    }
+
+    /**
+     * @return per executor stats, see MonitoredExecutor.toMap
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("captureControlExecutor", captureControl.toMap());
+        stats.put("imagingExecutor", imaging.toMap());
+        stats.put("ioExecutor", io.toMap());
+        return stats;
+    }
+
+    /**
+     * A thread pool that records how long its tasks wait and run, and how deep its queue gets
+     */
+    public static class MonitoredExecutor implements Executor {
+
+        static final int SAMPLES = 64;
+
+        private final ThreadPoolExecutor pool;
+
+        private final LatencyHistogram waitLatency = new LatencyHistogram(SAMPLES);
+        private final LatencyHistogram runLatency = new LatencyHistogram(SAMPLES);
+        private final AtomicInteger peakQueueDepth = new AtomicInteger();
+        private final AtomicLong callerRuns = new AtomicLong();
+
+        //tasks submitted and not finished, and what runs once there are none
+        private final Object idleLock = new Object();
+        private int pendingTasks = 0;
+        private final List<Runnable> idleTasks = new ArrayList<>();
+
+        MonitoredExecutor(final String name, int threads, BlockingQueue<Runnable> queue) {
+            ThreadFactory threadFactory = new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, name + "-" + count.incrementAndGet());
+                }
+            };
+            pool = new ThreadPoolExecutor(threads, threads,
+                    Constants.EXECUTOR_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                    queue, threadFactory,
+                    (task, executor) -> {
+                        //a full queue or a closed camera, run where it was submitted
+                        callerRuns.incrementAndGet();
+                        task.run();
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (idleLock) {
+                pendingTasks++;
+            }
+            pool.execute(new TimedTask(task, System.nanoTime()));
+
+            int depth = pool.getQueue().size();
+            int peak;
+            while (depth > (peak = peakQueueDepth.get()) && !peakQueueDepth.compareAndSet(peak, depth)) {
+                //retry
+            }
+        }
+
+        /**
+         * Runs the task once every task submitted before it has finished, on the thread that
+         * finishes the last of them, or now on the calling thread if none is pending
+         */
+        public void executeWhenIdle(Runnable task) {
+            synchronized (idleLock) {
+                if (pendingTasks > 0) {
+                    idleTasks.add(task);
+                    return;
+                }
+            }
+            task.run();
+        }
+
+        private void taskFinished() {
+            List<Runnable> ready = null;
+            synchronized (idleLock) {
+                pendingTasks--;
+                if (pendingTasks == 0 && !idleTasks.isEmpty()) {
+                    ready = new ArrayList<>(idleTasks);
+                    idleTasks.clear();
+                }
+            }
+            if (ready != null) {
+                for (Runnable task : ready) {
+                    task.run();
+                }
+            }
+        }
+
+        void shutdown() {
+            pool.shutdown();
+        }
+
+        public int getQueueDepth() {
+            return pool.getQueue().size();
+        }
+
+        public int getPeakQueueDepth() {
+            return peakQueueDepth.get();
+        }
+
+        /**
+         * @return tasks that ran on the submitting thread, because the queue was full or the
+         * executor was shut down
+         */
+        public long getCallerRunsCount() {
+            return callerRuns.get();
+        }
+
+        public LatencyHistogram getWaitLatency() {
+            return waitLatency;
+        }
+
+        public LatencyHistogram getRunLatency() {
+            return runLatency;
+        }
+
+        /**
+         * @return {queueDepth, peakQueueDepth, activeThreads, completed, callerRuns, waitP50,
+         * waitP95, runP50, runP95}, latencies in milliseconds, for the method channel
+         */
+        public Map<String, Object> toMap() {
+            long[] wait = waitLatency.getPercentiles(50, 95);
+            long[] run = runLatency.getPercentiles(50, 95);
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("queueDepth", getQueueDepth());
+            stats.put("peakQueueDepth", getPeakQueueDepth());
+            stats.put("activeThreads", pool.getActiveCount());
+            stats.put("completed", runLatency.getCount());
+            stats.put("callerRuns", getCallerRunsCount());
+            stats.put("waitP50", wait[0] / 1e6);
+            stats.put("waitP95", wait[1] / 1e6);
+            stats.put("runP50", run[0] / 1e6);
+            stats.put("runP95", run[1] / 1e6);
+            return stats;
+        }
+
+        private final class TimedTask implements Runnable {
+            private final Runnable task;
+            private final long submittedNanos;
+
+            TimedTask(Runnable task, long submittedNanos) {
+                this.task = task;
+                this.submittedNanos = submittedNanos;
+            }
+
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                waitLatency.record(startNanos - submittedNanos);
+                try {
+                    task.run();
+                } finally {
+                    runLatency.record(System.nanoTime() - startNanos);
+                    taskFinished();
+                }
+            }
+        }
+    }
+}
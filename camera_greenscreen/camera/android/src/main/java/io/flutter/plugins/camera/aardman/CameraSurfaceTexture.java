@@ -0,0 +1,157 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.view.Surface;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An external texture of the preview context the camera draws its preview frames into
+ *
+ * Replaces the ImageReader of PreviewInputMode.YUV_PLANES, the frames stay on the GPU and are
+ * sampled by the filters through ExternalInput. Frames are latched on the GLThread before a
+ * draw, as with the FrameMailbox only the latest one is drawn.
+ *
+ * Created and released on the GLThread, onFrameAvailable runs on the handler passed to
+ * setOnFrameAvailable.
+ */
+public class CameraSurfaceTexture implements SurfaceTexture.OnFrameAvailableListener {
+
+    private final int textureId;
+    private final SurfaceTexture surfaceTexture;
+    private final int width;
+    private final int height;
+
+    //Frames queued by the camera since the last latch
+    private final AtomicInteger pendingFrames = new AtomicInteger();
+    //When the latest of them became available
+    private volatile long availableNanos = 0;
+    private volatile Runnable frameListener;
+
+    private final float[] rawTransform = new float[16];
+    //GLThread only
+    private float[] transform = ExternalInput.identity();
+    private boolean released = false;
+
+    /**
+     * GLThread - creates the texture in the current context
+     */
+    public CameraSurfaceTexture(int width, int height) {
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        textureId = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0);
+
+        this.width = width;
+        this.height = height;
+        surfaceTexture = new SurfaceTexture(textureId);
+        //the camera picks its output size from the default buffer size
+        surfaceTexture.setDefaultBufferSize(width, height);
+    }
+
+    /**
+     * Any thread - listener runs after each frame the camera queues, on handler or on the main
+     * thread if handler is null
+     */
+    public void setOnFrameAvailable(Runnable listener, Handler handler) {
+        frameListener = listener;
+        surfaceTexture.setOnFrameAvailableListener(this, handler);
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture texture) {
+        availableNanos = PipelineStats.now();
+        pendingFrames.incrementAndGet();
+        Runnable listener = frameListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * The camera output surface, the caller releases it once the capture session is closed
+     */
+    public Surface createSurface() {
+        return new Surface(surfaceTexture);
+    }
+
+    /**
+     * GLThread - makes the latest queued frame the content of the texture
+     *
+     * @return the frames latched, all but the last were replaced without being drawn,
+     * 0 if no frame arrived since the last call
+     */
+    public int latchFrame() {
+        int pending = pendingFrames.getAndSet(0);
+        if (pending == 0 || released) {
+            return 0;
+        }
+        //each call latches the next queued frame
+        for (int i = 0; i < pending; i++) {
+            surfaceTexture.updateTexImage();
+        }
+        surfaceTexture.getTransformMatrix(rawTransform);
+        transform = ExternalInput.flipVertically(rawTransform);
+        return pending;
+    }
+
+    /**
+     * @return when the latched frame became available
+     */
+    public long getAvailableNanos() {
+        return availableNanos;
+    }
+
+    /**
+     * @return sensor timestamp of the latched frame
+     */
+    public long getTimestampNanos() {
+        return surfaceTexture.getTimestamp();
+    }
+
+    /**
+     * @return transform of the latched frame for ExternalInput, with t = 0 at its top row
+     */
+    public float[] getTransform() {
+        return transform;
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public SurfaceTexture getSurfaceTexture() {
+        return surfaceTexture;
+    }
+
+    /**
+     * GLThread - releases the SurfaceTexture and deletes the texture, a camera still drawing into
+     * it gets errors until its session is closed
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        frameListener = null;
+        surfaceTexture.setOnFrameAvailableListener(null);
+        surfaceTexture.release();
+        GLES20.glDeleteTextures(1, new int[]{textureId}, 0);
+    }
+}
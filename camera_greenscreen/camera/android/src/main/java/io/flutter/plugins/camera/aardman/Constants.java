@@ -6,4 +6,76 @@ package io.flutter.plugins.camera.aardman;
 public class Constants {
     public static final float FLOAT_NOT_SET = -1.0f;
     public static final float [] DEFAULT_COLOUR =  {0.0f, 1.0f, 0.0f};
-}
\ No newline at end of file
+
+    /**
+     * Used by GLBridge, the longest the render loop stays idle between redraws
+     * when no camera frame or parameter change arrives
+     */
+    public static final long DEFAULT_MAX_IDLE_REDRAW_INTERVAL_MS = 500;
+
+    /**
+     * Used by Camera, JPEG images the still capture ImageReader can hold so that rapid
+     * capture shots do not wait for the previous image to be saved
+     */
+    public static final int STILL_CAPTURE_MAX_IMAGES = 2;
+
+    /**
+     * Used by Camera, rapid capture shots that can wait for their image at once
+     */
+    public static final int RAPID_CAPTURE_MAX_PENDING_SHOTS = 8;
+
+    /**
+     * Used by Camera, the most full resolution frames the zero shutter lag ring holds
+     */
+    public static final int ZSL_MAX_IMAGES = 4;
+
+    /**
+     * Used by Camera, the most bytes the zero shutter lag ring holds, three 12MP YUV frames
+     */
+    public static final long ZSL_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Used by FilterPipelineController, the most captures shown by the onion skin
+     */
+    public static final int ONION_SKIN_MAX_LAYERS = 4;
+
+    /**
+     * Used by FilterPipelineController, the most texture memory of all the onion skin layers
+     */
+    public static final long ONION_SKIN_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Used by RenderEngine, the longest a disposed camera waits for the GLThread to stop
+     * drawing into its Flutter texture before the texture is released
+     */
+    public static final long RENDER_ENGINE_UNBIND_TIMEOUT_MS = 500;
+
+    /**
+     * Used by RenderEngine, how long the engine is kept once the last camera released it, so
+     * that a camera switch or an app resume disposing the old camera before creating the new
+     * one reuses it
+     */
+    public static final long RENDER_ENGINE_IDLE_GRACE_MS = 5000;
+
+    /**
+     * Used by FilterPipelineController, the longest the camera waits for the GLThread to create
+     * the camera surface before falling back to an ImageReader
+     */
+    public static final long CAMERA_SURFACE_TIMEOUT_MS = 500;
+
+    /**
+     * Used by CameraExecutors, the most threads decoding, filtering and encoding stills at once
+     */
+    public static final int IMAGING_MAX_THREADS = 2;
+
+    /**
+     * Used by CameraExecutors, file writes that can wait before a save is written on the
+     * thread that encoded it
+     */
+    public static final int IO_QUEUE_CAPACITY = 4;
+
+    /**
+     * Used by CameraExecutors, how long an idle imaging or I/O thread is kept
+     */
+    public static final long EXECUTOR_KEEP_ALIVE_MS = 10_000;
+}
@@ -1,7 +1,6 @@
 package io.flutter.plugins.camera.aardman;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
@@ -10,27 +9,46 @@ import android.util.Size;
 
 import androidx.annotation.Nullable;
 
-import jp.co.cyberagent.android.gpuimage.filter.GPUImageChromaKeyBlendFilter;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageTwoInputFilter;
 
 
 //Used to create the custom filter for both preview and capture variations
 public class CustomFilterFactory {
 
+    /**
+     * Prepared backgrounds, shared by the preview and still capture filters
+     */
+    private static final BackgroundCache backgroundCache = new BackgroundCache(BackgroundCache.defaultMaxBytes());
+
+    public static BackgroundCache getBackgroundCache() {
+        return backgroundCache;
+    }
+
     /**
      * Filter
      */
-    public static GPUImageChromaKeyBlendFilter getCustomFilter(FilterParameters parameters) {
-        GPUImageChromaKeyBlendFilter chromaFilter = new GPUImageChromaKeyBlendFilter();
+    public static OrientedChromaKeyBlendFilter getCustomFilter(FilterParameters parameters) {
+        return getCustomFilter(parameters, null);
+    }
+
+    /**
+     * @param externalInput the camera frame the preview filter samples, null for the frame
+     *                      texture passed to onDraw
+     */
+    public static OrientedChromaKeyBlendFilter getCustomFilter(FilterParameters parameters, ExternalInput externalInput) {
+        OrientedChromaKeyBlendFilter chromaFilter = new OrientedChromaKeyBlendFilter(externalInput);
 
         float[] colour = parameters.getColorToReplace();
         if (colour == null) {
             colour = Constants.DEFAULT_COLOUR; //defaults to green if not set
         }
         chromaFilter.setColorToReplace(colour[0], colour[1], colour[2]);
+        //the sensitivity as well, stills are keyed as the preview is
+        chromaFilter.setParameters(parameters, FilterParameters.ALL_FIELDS);
         return chromaFilter;
     }
 
-    public static void setChromaBackground(GPUImageChromaKeyBlendFilter filter, Size outputSize, FilterParameters parameters, boolean isLandscape) {
+    public static void setChromaBackground(GPUImageTwoInputFilter filter, Size outputSize, FilterParameters parameters, boolean isLandscape) {
         //gets a sized and prepared background image to match the size of the captured image or preview
         Bitmap captureBackground = CustomFilterFactory.getBackground(parameters.backgroundImage, outputSize, isLandscape);
         filter.setBitmap(captureBackground);
@@ -39,18 +57,34 @@ public class CustomFilterFactory {
     /**
      * Gets the background scaled and cropped to the desired targetSize
      *
+     * Prepared backgrounds are cached, the returned bitmap must not be recycled by the caller
+     *
      * @param filePath    fully qualified path the the background image source
      * @param targetSize  desired size of the background
      * @param isLandscape
      * @return
      */
     public static Bitmap getBackground(@Nullable String filePath, Size targetSize, boolean isLandscape) {
-        Bitmap backgroundBitmap = BitmapFactory.decodeFile(filePath);
+        BackgroundCache.Key key = BackgroundCache.Key.forFile(filePath, targetSize.getWidth(), targetSize.getHeight(), isLandscape);
+        if (key != null) {
+            Bitmap cached = backgroundCache.get(key);
+            if (cached != null && !cached.isRecycled()) {
+                return cached;
+            }
+        }
+
+        //decodes only what is needed for the target size, rather than the full resolution source
+        Bitmap backgroundBitmap = key == null ? null
+                : BackgroundDecoder.decode(filePath, targetSize.getWidth(), targetSize.getHeight(), isLandscape);
         if (backgroundBitmap == null) {
             //Use solid magenta background to indicate an error condition if loading the background file is unsuccesful
             backgroundBitmap = CustomFilterFactory.createImage(targetSize.getWidth(), targetSize.getHeight(), Color.MAGENTA);
+            return prepareBitmap(backgroundBitmap, targetSize, isLandscape);
         }
-        return prepareBitmap(backgroundBitmap, targetSize, isLandscape);
+
+        Bitmap prepared = prepareBitmap(backgroundBitmap, targetSize, isLandscape);
+        backgroundCache.putBackground(key, prepared);
+        return prepared;
     }
 
     /**
@@ -81,34 +115,27 @@ public class CustomFilterFactory {
         int w = sourceBitmap.getWidth();
         int h = sourceBitmap.getHeight();
 
-        int outputWidth  = targetSize.getWidth();
-        int outputHeight = targetSize.getHeight();
-
-        if(!isLandscape) {
-            outputWidth  = targetSize.getHeight();
-            outputHeight = targetSize.getWidth();
-        }
-
-        //calculate scale from height
-        float scale_factor = ((float) h / (float) outputHeight);
-        float scaledWidth = w / scale_factor;
+        BackgroundGeometry geometry = BackgroundGeometry.of(w, h, targetSize.getWidth(), targetSize.getHeight(), isLandscape);
 
         //add scale transformation
         Matrix matrix = new Matrix();
-        matrix.postScale(1 / scale_factor, 1 / scale_factor);
+        matrix.postScale(1 / geometry.scaleFactor, 1 / geometry.scaleFactor);
 
         //Create the output bitmap with the supplied transforms
         Bitmap outputBitmap = Bitmap.createBitmap(sourceBitmap, 0, 0, w, h, matrix, true);
 
         //Now need to crop and translate
-        int translationInX = (int) (scaledWidth - outputWidth) / 2;
-        outputBitmap = Bitmap.createBitmap(outputBitmap, translationInX, 0, outputWidth, outputHeight);
+        int translationInX = Math.max(0, Math.min(geometry.translationInX, outputBitmap.getWidth() - geometry.outputWidth));
+        outputBitmap = Bitmap.createBitmap(outputBitmap, translationInX, 0, geometry.outputWidth, geometry.outputHeight);
 
         if(!isLandscape){
             outputBitmap = rotateBitmap(outputBitmap);
         }
 
-        sourceBitmap.recycle();
+        //createBitmap returns its source when there is nothing to scale or crop
+        if (outputBitmap != sourceBitmap) {
+            sourceBitmap.recycle();
+        }
 
         return outputBitmap;
     }
@@ -0,0 +1,41 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+
+/**
+ * Shows the camera frame of a CameraSurfaceTexture with no effect, the external input
+ * counterpart of the copy filter of FilterRenderer
+ */
+public class ExternalCopyFilter extends GPUImageFilter {
+
+    private final ExternalInput externalInput;
+    private int inputTransformLocation;
+
+    public ExternalCopyFilter(ExternalInput externalInput) {
+        super(ExternalInput.VERTEX_SHADER, ExternalInput.fragmentShader(NO_FILTER_FRAGMENT_SHADER));
+        this.externalInput = externalInput;
+    }
+
+    @Override
+    public void onInit() {
+        super.onInit();
+        inputTransformLocation = GLES20.glGetUniformLocation(getProgram(), ExternalInput.TRANSFORM_UNIFORM);
+    }
+
+    @Override
+    public void onDraw(int textureId, FloatBuffer cubeBuffer, FloatBuffer textureBuffer) {
+        //the frame is bound in onDrawArraysPre, GPUImageFilter only binds GL_TEXTURE_2D
+        super.onDraw(OpenGlUtils.NO_TEXTURE, cubeBuffer, textureBuffer);
+    }
+
+    @Override
+    protected void onDrawArraysPre() {
+        super.onDrawArraysPre();
+        externalInput.bind(inputTransformLocation);
+    }
+}
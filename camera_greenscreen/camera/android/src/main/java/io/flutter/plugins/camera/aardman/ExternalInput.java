@@ -0,0 +1,121 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+
+/**
+ * The camera frame latched from a CameraSurfaceTexture, sampled by filters built for external input
+ *
+ * Such a filter declares inputImageTexture as a samplerExternalOES and transforms the frame
+ * texture coordinates by inputTransform. GPUImageFilter.onDraw binds its input texture as a
+ * GL_TEXTURE_2D, so the filter passes OpenGlUtils.NO_TEXTURE to it and calls bind from
+ * onDrawArraysPre instead. Only touched on the GLThread.
+ */
+final class ExternalInput {
+
+    static final String TRANSFORM_UNIFORM = "inputTransform";
+
+    /**
+     * NO_FILTER_VERTEX_SHADER with the frame texture coordinates transformed
+     */
+    static final String VERTEX_SHADER = "" +
+            "attribute vec4 position;\n" +
+            "attribute vec4 inputTextureCoordinate;\n" +
+            "\n" +
+            "uniform mat4 inputTransform;\n" +
+            "\n" +
+            "varying vec2 textureCoordinate;\n" +
+            "\n" +
+            "void main()\n" +
+            "{\n" +
+            "    gl_Position = position;\n" +
+            "    textureCoordinate = (inputTransform * vec4(inputTextureCoordinate.xy, 0.0, 1.0)).xy;\n" +
+            "}";
+
+    /**
+     * The GPUImageTwoInputFilter vertex shader with the frame texture coordinates transformed,
+     * the second input keeps its own coordinates
+     */
+    static final String TWO_INPUT_VERTEX_SHADER = "" +
+            "attribute vec4 position;\n" +
+            "attribute vec4 inputTextureCoordinate;\n" +
+            "attribute vec4 inputTextureCoordinate2;\n" +
+            "\n" +
+            "uniform mat4 inputTransform;\n" +
+            "\n" +
+            "varying vec2 textureCoordinate;\n" +
+            "varying vec2 textureCoordinate2;\n" +
+            "\n" +
+            "void main()\n" +
+            "{\n" +
+            "    gl_Position = position;\n" +
+            "    textureCoordinate = (inputTransform * vec4(inputTextureCoordinate.xy, 0.0, 1.0)).xy;\n" +
+            "    textureCoordinate2 = inputTextureCoordinate2.xy;\n" +
+            "}";
+
+    private int textureId = OpenGlUtils.NO_TEXTURE;
+    private final float[] transform = identity();
+
+    /**
+     * @return fragmentShader sampling inputImageTexture from an external texture
+     */
+    static String fragmentShader(String fragmentShader) {
+        String external = fragmentShader.replaceFirst(
+                "uniform\\s+sampler2D\\s+inputImageTexture\\s*;",
+                "uniform samplerExternalOES inputImageTexture;");
+        if (external.equals(fragmentShader)) {
+            throw new IllegalArgumentException("The fragment shader has no sampler2D inputImageTexture");
+        }
+        //the extension must come before any other statement
+        return "#extension GL_OES_EGL_image_external : require\n" + external;
+    }
+
+    /**
+     * SurfaceTexture transforms map t = 0 to the bottom row of the frame, the frames uploaded from
+     * an ImageReader have their top row at t = 0. The returned matrix flips t before applying
+     * transform, so that both inputs are sampled with the same texture coordinates.
+     *
+     * @param transform column major 4x4 matrix from SurfaceTexture.getTransformMatrix
+     */
+    static float[] flipVertically(float[] transform) {
+        float[] flipped = new float[16];
+        for (int row = 0; row < 4; row++) {
+            flipped[row] = transform[row];
+            flipped[4 + row] = -transform[4 + row];
+            flipped[8 + row] = transform[8 + row];
+            flipped[12 + row] = transform[4 + row] + transform[12 + row];
+        }
+        return flipped;
+    }
+
+    static float[] identity() {
+        return new float[]{
+                1f, 0f, 0f, 0f,
+                0f, 1f, 0f, 0f,
+                0f, 0f, 1f, 0f,
+                0f, 0f, 0f, 1f
+        };
+    }
+
+    /**
+     * GLThread - the frame drawn from now on
+     *
+     * @param transform as returned by flipVertically
+     */
+    void setFrame(int textureId, float[] transform) {
+        this.textureId = textureId;
+        System.arraycopy(transform, 0, this.transform, 0, 16);
+    }
+
+    /**
+     * GLThread - binds the frame to texture unit 0, which the unset inputImageTexture sampler
+     * reads, and sets the transform of the program in use
+     */
+    void bind(int transformLocation) {
+        GLES20.glUniformMatrix4fv(transformLocation, 1, false, transform, 0);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+    }
+}
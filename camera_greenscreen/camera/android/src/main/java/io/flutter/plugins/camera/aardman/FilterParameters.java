@@ -1,73 +1,160 @@
 package io.flutter.plugins.camera.aardman;
 
 
-import android.graphics.Color;
-
-import androidx.annotation.ColorInt;
-import androidx.annotation.NonNull;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.logging.Filter;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *  FilterParameters is a DAO for the updatable parameters for the Filters
+ *
+ *  A snapshot is immutable, an update makes a new one with the next version, so a snapshot
+ *  can be handed to the GLThread or a still capture without copying. Each snapshot records
+ *  which fields its update set and which of them changed value, so that a colour or
+ *  sensitivity change is a uniform write and only a new background rebuilds the filter.
  */
 
 public final class FilterParameters {
 
-    float  []  replacementColour = null ;
-    String   backgroundImage = null;
-    float  sensitivity = Constants.FLOAT_NOT_SET;
+    /**
+     * Fields, combined as bit flags
+     */
+    public static final int COLOUR = 1;
+    public static final int SENSITIVITY = 1 << 1;
+    public static final int BACKGROUND = 1 << 2;
+    public static final int ALL_FIELDS = COLOUR | SENSITIVITY | BACKGROUND;
+
+    //versions are unique across cameras, which share the renderer
+    private static final AtomicLong lastVersion = new AtomicLong();
+
+    final float  []  replacementColour;
+    final String   backgroundImage;
+    final float  sensitivity;
 
-    public FilterParameters(){}
+    private final long version;
+    private final int updatedFields;
+    private final int changedFields;
+
+    public FilterParameters(){
+        this(null, null, Constants.FLOAT_NOT_SET);
+    }
 
     public FilterParameters(HashMap arguments) {
-         ArrayList<Double> colourDoubles = (ArrayList<Double>) arguments.get("colour");
-         if(colourDoubles != null){
-             setReplacementColour(colourDoubles);
-         }
-         Double thresholdSensitivity = (Double) arguments.get("sensitivity");
-         if (thresholdSensitivity != null){
-             sensitivity =  thresholdSensitivity.floatValue();
-         }
-         String backgroundImagePath = (String) arguments.get("backgroundPath");
-         if(backgroundImagePath != null){
-             backgroundImage = backgroundImagePath;
-         }
+        this(parseColour((ArrayList<Double>) arguments.get("colour")),
+                (String) arguments.get("backgroundPath"),
+                parseSensitivity((Double) arguments.get("sensitivity")));
+    }
+
+    //a snapshot updated from nothing, every field it sets is changed
+    private FilterParameters(float[] replacementColour, String backgroundImage, float sensitivity) {
+        this(replacementColour, backgroundImage, sensitivity,
+                fieldsSet(replacementColour, backgroundImage, sensitivity),
+                fieldsSet(replacementColour, backgroundImage, sensitivity));
+    }
+
+    private FilterParameters(float[] replacementColour, String backgroundImage, float sensitivity,
+                             int updatedFields, int changedFields) {
+        this.replacementColour = replacementColour;
+        this.backgroundImage = backgroundImage;
+        this.sensitivity = sensitivity;
+        this.updatedFields = updatedFields;
+        this.changedFields = changedFields;
+        this.version = lastVersion.incrementAndGet();
+    }
+
+    private static float[] parseColour(ArrayList<Double> colours) {
+        if (colours == null) {
+            return null;
+        }
+        float [] newColours = new float[3];
+        for (int i = 0; i < colours.size() && i <= 2; i++) {
+            newColours[i] = colours.get(i).floatValue() / 255.0f;
+        }
+        return newColours;
+    }
+
+    private static float parseSensitivity(Double thresholdSensitivity) {
+        return thresholdSensitivity != null ? thresholdSensitivity.floatValue() : Constants.FLOAT_NOT_SET;
     }
 
      public float[] getColorToReplace(){
-         return replacementColour;
+         return replacementColour == null ? null : replacementColour.clone();
      }
 
      public float getSensitivity(){
         return sensitivity;
      }
 
-     public void setReplacementColour(ArrayList<Double> colours){
-        if (colours != null) {
-            float [] newColours = new float[3];
-            for (int i = 0; i < colours.size() && i <= 2; i++) {
-                newColours[i] = colours.get(i).floatValue() / 255.0f;
-            }
-            replacementColour = newColours;
+     public String getBackgroundImage(){
+        return backgroundImage;
+     }
+
+     public long getVersion(){
+        return version;
+     }
+
+    /**
+     * @return the fields the update that made this snapshot set, whether or not their value changed
+     */
+     public int getUpdatedFields(){
+        return updatedFields;
+     }
+
+    /**
+     * @return the fields whose value differs from the snapshot this one was updated from
+     */
+     public int getChangedFields(){
+        return changedFields;
+     }
+
+    /**
+     * @return a new snapshot with the fields that are set in newParameters replaced
+     */
+     public FilterParameters updatedWith(FilterParameters newParameters) {
+        float[] colour = newParameters.replacementColour != null ? newParameters.replacementColour : replacementColour;
+        String background = newParameters.backgroundImage != null ? newParameters.backgroundImage : backgroundImage;
+        float newSensitivity = newParameters.sensitivity != Constants.FLOAT_NOT_SET ? newParameters.sensitivity : sensitivity;
+
+        return new FilterParameters(colour, background, newSensitivity, newParameters.updatedFields,
+                fieldsChanged(colour, background, newSensitivity));
+     }
+
+    /**
+     * @return the fields whose value differs from those of other, all of them when other is null
+     */
+     public int changedSince(FilterParameters other) {
+        if (other == null) {
+            return ALL_FIELDS;
         }
+        return other.fieldsChanged(replacementColour, backgroundImage, sensitivity);
      }
 
-     public void updateWith(FilterParameters newParameters) {
-        if (newParameters.backgroundImage != null){
-            backgroundImage = newParameters.backgroundImage;
+    private int fieldsChanged(float[] colour, String background, float newSensitivity) {
+        int changed = 0;
+        if (!Arrays.equals(colour, replacementColour)) {
+            changed |= COLOUR;
         }
-        if (newParameters.replacementColour != null){
-            replacementColour = newParameters.replacementColour;
+        if (Float.compare(newSensitivity, sensitivity) != 0) {
+            changed |= SENSITIVITY;
         }
-        if (newParameters.getSensitivity() != Constants.FLOAT_NOT_SET) {
-            sensitivity = newParameters.sensitivity;
+        if (background == null ? backgroundImage != null : !background.equals(backgroundImage)) {
+            changed |= BACKGROUND;
         }
-     }
-
-
+        return changed;
+    }
 
+    private static int fieldsSet(float[] colour, String background, float sensitivity) {
+        int fields = 0;
+        if (colour != null) {
+            fields |= COLOUR;
+        }
+        if (sensitivity != Constants.FLOAT_NOT_SET) {
+            fields |= SENSITIVITY;
+        }
+        if (background != null) {
+            fields |= BACKGROUND;
+        }
+        return fields;
+    }
 }
-
@@ -5,13 +5,16 @@ import android.content.Context;
 import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.media.ImageReader;
+import android.os.Handler;
 import android.util.Log;
 import android.util.Size;
 import android.view.Surface;
 import android.graphics.Bitmap;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
+
 import jp.co.cyberagent.android.gpuimage.GPUImage;
-import jp.co.cyberagent.android.gpuimage.filter.GPUImageChromaKeyBlendFilter;
 import jp.co.cyberagent.android.gpuimage.util.Rotation;
 
 /**
@@ -51,6 +54,53 @@ public class FilterPipelineController {
      */
     FilterRenderer filterRenderer;
 
+    /**
+     * Filters still captures offscreen, keeping its GL context and filter between captures
+     */
+    StillRenderEngine stillRenderEngine;
+
+    /**
+     * Encodes the composited preview while recording, null otherwise
+     */
+    FilteredVideoRecorder videoRecorder;
+
+    /**
+     * Downscaled copies of the preview for frame analysis, null when not streaming
+     */
+    AnalysisStream analysisStream;
+
+    /**
+     * Recent captures blended over the preview, null when onion skinning is off
+     */
+    volatile OnionSkinLayers onionSkin;
+
+    /**
+     * How preview frames reach the filter input texture, read when the capture session starts
+     */
+    PreviewInputMode previewInputMode = PreviewInputMode.EXTERNAL_OES;
+
+    /**
+     * The texture the camera draws into in PreviewInputMode.EXTERNAL_OES and the capture
+     * session output made from it, null otherwise
+     */
+    CameraSurfaceTexture cameraSurface;
+    Surface cameraSurfaceOutput;
+
+    /**
+     * How still captures are delivered to the still filter, read when the camera is opened
+     */
+    StillInputMode stillInputMode = StillInputMode.JPEG;
+
+    /**
+     * Per stage latency of the preview pipeline, shared by the camera thread and the GLThread
+     */
+    final PipelineStats pipelineStats;
+
+    /**
+     * The GLThread, renderer and still engine shared with the cameras before and after this one
+     */
+    final RenderEngine renderEngine;
+
     /**
      * Current window dimensions
      */
@@ -82,9 +132,8 @@ public class FilterPipelineController {
     /**
      * For handling still image capture
      */
-    FilterParameters currentFilterParameters = new FilterParameters();
+    volatile FilterParameters currentFilterParameters = new FilterParameters();
     Context context = null;
-    Bitmap currentBitmap = null;
     Boolean filtersEnabled = false;
 
     /*********************
@@ -92,14 +141,17 @@ public class FilterPipelineController {
      *********************/
 
     public FilterPipelineController(SurfaceTexture flutterTexture, Activity activity) {
-        //The filter or filter group
-        //eglBridge will start openGL session running
-        //init filter on the glThread
+        //The render engine keeps its openGL session running between cameras,
+        //the first camera starts it and each one rebinds it to its own flutterTexture
         this.context = activity.getApplicationContext();
-        filterRenderer = new FilterRenderer();
+        this.renderEngine = RenderEngine.acquire(this, flutterTexture);
+        this.pipelineStats = renderEngine.getPipelineStats();
+        this.eglBridge = renderEngine.getBridge();
+        this.stillRenderEngine = renderEngine.getStillRenderEngine();
+        filterRenderer = renderEngine.getRenderer();
         filterRenderer.previewFilterParameters = currentFilterParameters;
-        GLWorker glWorker = (GLWorker) filterRenderer;
-        this.eglBridge = new GLBridge(flutterTexture, glWorker);
+        //the previous camera may have left its filter enabled
+        filterRenderer.disableFilter();
     }
 
     /**
@@ -113,26 +165,66 @@ public class FilterPipelineController {
     }
 
     /**
-     * This is set on initialisation and before capturing an image. With the Animator app
-     * this only needs to be set on initialisation as the camera is re-created whenever the
-     * device changes orientation. However it is also set when initiating a
-     * still capture even though its not needed for the Animator use case
+     * This is set on initialisation, whenever the device changes orientation and before
+     * capturing an image. The camera and the GL pipeline keep running through a rotation,
+     * the preview background is turned through its texture coordinates on the next frame.
+     * Still captures prepare their background for the orientation at capture time.
      * @param orientation
      */
     public void setOrientation(int orientation){
         deviceOrientation = orientation;
         gpuImageRotation = Rotation.fromInt(orientation);
         if (filterRenderer != null){
-            //does not have correct effect, rotates the entire preview unnecessarily
-            //probably the need is just to rotate the inpput bitmap to the filter itself
             filterRenderer.setTextureIsLandscape(isLandscape());
         }
     }
 
     /**
-     *  Used by the Camera controller to setup the CaptureSession
-     *  this imageReader provides the target surface for capturing
-     *  the camera input
+     * Used by the Camera controller to setup the CaptureSession, the target surface for
+     * the camera preview frames. In PreviewInputMode.EXTERNAL_OES the camera draws into a
+     * texture of the preview context, falling back to the ImageReader if the GLThread does
+     * not provide it in time.
+     *
+     * @param frameHandler thread told about new camera surface frames, the camera thread
+     */
+    public Surface getPreviewSurface(Handler frameHandler) {
+        releaseCameraSurface();
+        if (previewInputMode == PreviewInputMode.EXTERNAL_OES) {
+            cameraSurface = filterRenderer.startCameraSurface(viewSize, frameHandler, Constants.CAMERA_SURFACE_TIMEOUT_MS);
+            if (cameraSurface != null) {
+                cameraSurfaceOutput = cameraSurface.createSurface();
+                return cameraSurfaceOutput;
+            }
+            Log.w(TAG, "No camera surface from the GLThread, falling back to an ImageReader");
+        }
+        return getImageReaderSurface();
+    }
+
+    /**
+     * Called once the capture session drawing into the camera surface is closed
+     */
+    private void releaseCameraSurface() {
+        if (cameraSurface != null) {
+            filterRenderer.releaseCameraSurface(cameraSurface);
+            cameraSurface = null;
+        }
+        if (cameraSurfaceOutput != null) {
+            cameraSurfaceOutput.release();
+            cameraSurfaceOutput = null;
+        }
+    }
+
+    public PreviewInputMode getPreviewInputMode() {
+        return previewInputMode;
+    }
+
+    public void setPreviewInputMode(PreviewInputMode previewInputMode) {
+        this.previewInputMode = previewInputMode;
+    }
+
+    /**
+     *  This imageReader provides the target surface for capturing
+     *  the camera input when it is not drawn into a camera surface
      */
      public Surface getImageReaderSurface() {
 
@@ -147,7 +239,12 @@ public class FilterPipelineController {
 
          GLWorker glWorker =  (GLWorker) this.filterRenderer;
 
-         PreviewOnImageAvailableListener previewOnImageAvailableListener = new PreviewOnImageAvailableListener((PreviewFrameHandler) glWorker);
+         //Preview frames are recycled between the camera thread and the GLThread
+         PreviewInputMode frameInputMode = previewInputMode == PreviewInputMode.EXTERNAL_OES
+                 ? PreviewInputMode.YUV_PLANES : previewInputMode;
+         FrameBufferPool framePool = FrameBufferPool.forImageReader(this.filterImageReader.getMaxImages(), frameInputMode);
+
+         PreviewOnImageAvailableListener previewOnImageAvailableListener = new PreviewOnImageAvailableListener((PreviewFrameHandler) glWorker, framePool, pipelineStats);
 
          /**
           *  Note this ImageReader takes a null handler ref as it will run on the calling thread
@@ -161,30 +258,207 @@ public class FilterPipelineController {
     /**********************************
      *      Still Image Handling      *
      **********************************/
-     public void filterStillImage(Bitmap stillImageBitmap, Runnable stillImageCompletion){
-         updateCurrentBitmap(stillImageBitmap);
-         stillImageCompletion.run();
+     /**
+      * The completion is passed the filtered capture, on the calling thread if filters are
+      * disabled or on the StillGLThread otherwise. Each capture gets its own result, rapid
+      * captures are filtered concurrently.
+      */
+     public void filterStillImage(Bitmap stillImageBitmap, StillRenderEngine.Callback stillImageCompletion){
+         if(!filtersEnabled){
+             stillImageCompletion.onRendered(stillImageBitmap);
+             return;
+         }
+         stillRenderEngine.render(stillImageBitmap, currentFilterParameters, isLandscape(), filtered -> {
+             if (filtered != null) {
+                 stillImageBitmap.recycle();
+             } else {
+                 //fall back to a one off GPUImage context
+                 filtered = filterWithGPUImage(stillImageBitmap);
+             }
+             stillImageCompletion.onRendered(filtered);
+         });
      }
 
-     void updateCurrentBitmap(Bitmap stillImageBitmap) {
+     /**
+      * Filters the NV21 planes of a YUV capture, without decoding or encoding a JPEG
+      *
+      * The completion runs on the StillGLThread with the filtered capture, null if rendering
+      * failed
+      *
+      * @param planes direct buffer holding the Y plane followed by the interleaved VU plane
+      */
+     public void filterStillPlanes(ByteBuffer planes, int width, int height, StillRenderEngine.Callback stillImageCompletion){
+         stillRenderEngine.renderPlanes(planes, width, height, currentFilterParameters, isLandscape(), stillImageCompletion);
+     }
+
+     Bitmap filterWithGPUImage(Bitmap stillImageBitmap) {
          if(!filtersEnabled){
-             this.currentBitmap = stillImageBitmap;
+             return stillImageBitmap;
          }
-         else {
-             if (this.context == null) {
-                 Log.e(TAG, "No Application Context available for GPUImage rendering");
-             }
-             GPUImage gpuImage = new GPUImage(this.context);
-             Size outputSize = new Size(stillImageBitmap.getWidth(), stillImageBitmap.getHeight());
-             GPUImageChromaKeyBlendFilter filter = CustomFilterFactory.getCustomFilter(this.currentFilterParameters);
-             CustomFilterFactory.setChromaBackground(filter, outputSize, currentFilterParameters, isLandscape());
-             gpuImage.setFilter(filter);
-             this.currentBitmap = gpuImage.getBitmapWithFilterApplied(stillImageBitmap);
+         if (this.context == null) {
+             Log.e(TAG, "No Application Context available for GPUImage rendering");
          }
+         GPUImage gpuImage = new GPUImage(this.context);
+         Size outputSize = new Size(stillImageBitmap.getWidth(), stillImageBitmap.getHeight());
+         //getCustomFilter sets the colour and the sensitivity, as in the preview
+         OrientedChromaKeyBlendFilter filter = CustomFilterFactory.getCustomFilter(this.currentFilterParameters);
+         CustomFilterFactory.setChromaBackground(filter, outputSize, currentFilterParameters, isLandscape());
+         gpuImage.setFilter(filter);
+         return gpuImage.getBitmapWithFilterApplied(stillImageBitmap);
      }
 
-    public Bitmap getLastFilteredResult(){
-         return this.currentBitmap;
+    public StillInputMode getStillInputMode() {
+        return stillInputMode;
+    }
+
+    public void setStillInputMode(StillInputMode stillInputMode) {
+        this.stillInputMode = stillInputMode;
+    }
+
+    /**********************************
+     *        Video Recording         *
+     **********************************/
+
+    /**
+     * Records the composited preview, the GLThread draws each new camera frame into the
+     * recorder input surface after drawing it to the preview
+     *
+     * @param recorder a prepared recorder, sized as the preview
+     */
+    public void startRecording(FilteredVideoRecorder recorder){
+        recorder.start();
+        this.videoRecorder = recorder;
+        eglBridge.setVideoRecorder(recorder);
+    }
+
+    /**
+     * @param callback runs on an encoder thread once the file is finalised, may be null
+     */
+    public void stopRecording(FilteredVideoRecorder.Callback callback){
+        FilteredVideoRecorder recorder = this.videoRecorder;
+        if (recorder == null) {
+            return;
+        }
+        this.videoRecorder = null;
+        recorder.stop(callback);
+        eglBridge.setVideoRecorder(null);
+    }
+
+    public void pauseRecording(){
+        if (videoRecorder != null) {
+            videoRecorder.pause();
+        }
+    }
+
+    public void resumeRecording(){
+        if (videoRecorder != null) {
+            videoRecorder.resume();
+        }
+    }
+
+    public boolean isRecording(){
+        return videoRecorder != null;
+    }
+
+    /**********************************
+     *         Analysis Stream        *
+     **********************************/
+
+    /**
+     * @throws IllegalArgumentException for an empty size or a frame rate that is not positive
+     */
+    public AnalysisStream createAnalysisStream(AnalysisContent content, int width, int height, double maxFrameRate,
+                                               AnalysisStream.FrameListener listener){
+        return new AnalysisStream(content, width, height, maxFrameRate, listener, pipelineStats);
+    }
+
+    /**
+     * Renders downscaled copies of the preview after each frame, replacing any current stream.
+     * The capture session is unchanged, the preview keeps running.
+     */
+    public void startAnalysisStream(AnalysisStream stream){
+        this.analysisStream = stream;
+        filterRenderer.setAnalysisStream(stream);
+    }
+
+    public void stopAnalysisStream(){
+        if (analysisStream == null) {
+            return;
+        }
+        this.analysisStream = null;
+        filterRenderer.setAnalysisStream(null);
+    }
+
+    public boolean isAnalysisStreaming(){
+        return analysisStream != null;
+    }
+
+    /**********************************
+     *           Onion Skin           *
+     **********************************/
+
+    /**
+     * Blends the recent captures over the preview, most recent first, at most
+     * Constants.ONION_SKIN_MAX_LAYERS are kept. An empty list turns onion skinning off and frees
+     * the layers, changing the opacities only updates a uniform.
+     */
+    public void setOnionSkinOpacities(float[] opacities){
+        if (opacities.length == 0) {
+            if (onionSkin != null) {
+                onionSkin = null;
+                filterRenderer.setOnionSkin(null);
+            }
+            return;
+        }
+        OnionSkinLayers layers = onionSkin;
+        if (layers == null) {
+            layers = new OnionSkinLayers(viewSize.getWidth(), viewSize.getHeight(),
+                    Constants.ONION_SKIN_MAX_LAYERS, Constants.ONION_SKIN_MAX_BYTES, pipelineStats);
+            layers.setOpacities(opacities);
+            onionSkin = layers;
+            filterRenderer.setOnionSkin(layers);
+            return;
+        }
+        layers.setOpacities(opacities);
+        filterRenderer.requestRedraw();
+    }
+
+    /**
+     * Forgets the captures shown by the onion skin, they are replaced by the next captures
+     */
+    public void clearOnionSkin(){
+        OnionSkinLayers layers = onionSkin;
+        if (layers != null) {
+            layers.clear();
+            filterRenderer.requestRedraw();
+        }
+    }
+
+    public boolean isOnionSkinEnabled(){
+        return onionSkin != null;
+    }
+
+    /**
+     * Capture thread, adds a filtered capture, as passed to the still completion, to the onion
+     * skin. The bitmap is only read, the caller keeps it.
+     */
+    public void addOnionSkinCapture(Bitmap capture){
+        OnionSkinLayers layers = onionSkin;
+        if (layers != null) {
+            layers.addCapture(capture);
+            filterRenderer.requestRedraw();
+        }
+    }
+
+    /**
+     * Capture thread, adds an unfiltered JPEG capture to the onion skin
+     */
+    public void addOnionSkinCapture(byte[] jpeg, int length){
+        OnionSkinLayers layers = onionSkin;
+        if (layers != null) {
+            layers.addCapture(jpeg, length);
+            filterRenderer.requestRedraw();
+        }
     }
 
     /*********************
@@ -196,15 +470,99 @@ public class FilterPipelineController {
         filterRenderer.disableFilter();
     }
 
+    public boolean isFilterEnabled(){
+        return filtersEnabled;
+    }
+
     public void enableFilter(){
         this.filtersEnabled = true;
         filterRenderer.enableFilter();
     }
 
+    /**
+     * @param parameters the fields to change, those not set keep their current value
+     */
     public void updateParameters(FilterParameters parameters){
-        this.currentFilterParameters.updateWith(parameters);
+        this.currentFilterParameters = currentFilterParameters.updatedWith(parameters);
         filterRenderer.updateParameters(this.currentFilterParameters);
     }
 
+    /**
+     * The preview is redrawn only when a camera frame or a parameter change arrives,
+     * or after maxIdleRedrawIntervalMs without either. Disabling render on demand
+     * restores a continuously spinning render loop.
+     */
+    public void setRenderOnDemand(boolean renderOnDemand, long maxIdleRedrawIntervalMs){
+        RenderScheduler renderScheduler = eglBridge.getRenderScheduler();
+        renderScheduler.setMaxIdleRedrawInterval(maxIdleRedrawIntervalMs);
+        renderScheduler.setRenderOnDemand(renderOnDemand);
+    }
+
+    public RenderScheduler getRenderScheduler(){
+        return eglBridge.getRenderScheduler();
+    }
+
+    /**********************************
+     *          Diagnostics           *
+     **********************************/
+
+    /**
+     * @return per stage p50/p95/p99 latencies in milliseconds together with the
+     * render loop and mailbox counters, in a form that can be sent over the method channel
+     */
+    public Map<String, Object> getPipelineStats(){
+        Map<String, Object> stats = pipelineStats.toMap();
+        RenderScheduler renderScheduler = eglBridge.getRenderScheduler();
+        stats.put("renderedFrames", renderScheduler.getRenderedFrameCount());
+        stats.put("coalescedRenderRequests", renderScheduler.getSkippedFrameCount());
+        stats.put("idleRedraws", renderScheduler.getIdleRedrawCount());
+        stats.put("replacedFrames", filterRenderer.getReplacedFrameCount());
+        stats.put("parameterUpdates", filterRenderer.getParameterUpdateCount());
+        stats.put("appliedParameterUpdates", filterRenderer.getAppliedParameterUpdateCount());
+        stats.put("filterRebuilds", filterRenderer.getFilterRebuildCount());
+        stats.put("avoidedFilterRebuilds", filterRenderer.getAvoidedFilterRebuildCount());
+        FilteredVideoRecorder recorder = videoRecorder;
+        if (recorder != null) {
+            stats.put("recordedFrames", recorder.getEncodedFrameCount());
+            stats.put("rejectedRecordingFrames", recorder.getRejectedFrameCount());
+        }
+        AnalysisStream stream = analysisStream;
+        if (stream != null) {
+            stats.put("analysisRenderedFrames", stream.getRenderedCount());
+            stats.put("analysisDeliveredFrames", stream.getDeliveredCount());
+            stats.put("analysisSkippedFrames", stream.getSkippedCount());
+        }
+        OnionSkinLayers layers = onionSkin;
+        if (layers != null) {
+            stats.put("onionSkinLayerBytes", layers.getMaxTextureBytes());
+            stats.put("onionSkinUploads", layers.getUploadedCount());
+        }
+        stats.put("renderEngineBinds", renderEngine.getBindCount());
+        return stats;
+    }
+
+    public void resetPipelineStats(){
+        pipelineStats.reset();
+    }
+
+    /**
+     * Records a stage timed outside of the pipeline, such as opening the camera
+     */
+    public void recordLatency(PipelineStats.Stage stage, long startNanos, long endNanos){
+        pipelineStats.record(stage, startNanos, endNanos);
+    }
+
+    /**
+     * Stops any recording and unbinds the render engine from the Flutter texture, the preview
+     * GLThread and the still render engine are freed once no camera holds them
+     */
+    public void dispose(){
+        stopRecording(null);
+        analysisStream = null;
+        onionSkin = null;
+        releaseCameraSurface();
+        renderEngine.release(this);
+    }
+
 
 }
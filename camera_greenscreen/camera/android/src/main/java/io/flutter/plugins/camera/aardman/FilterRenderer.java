@@ -1,6 +1,8 @@
 package io.flutter.plugins.camera.aardman;
 
+import android.graphics.Bitmap;
 import android.opengl.GLES20;
+import android.os.Handler;
 import android.util.Log;
 import android.util.Size;
 
@@ -8,13 +10,20 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil.TEXTURE_NO_ROTATION;
 
 import jp.co.cyberagent.android.gpuimage.GPUImage;
-import jp.co.cyberagent.android.gpuimage.filter.GPUImageChromaKeyBlendFilter;
 import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
 import jp.co.cyberagent.android.gpuimage.GPUImageNativeLibrary;
 import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
@@ -39,10 +48,28 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
     /**
      * Filters
      */
-    private GPUImageChromaKeyBlendFilter glFilter;
+    private volatile OrientedChromaKeyBlendFilter glFilter;
     private GPUImageFilter copyFilter;  //shows preview with no effect, copy input pixels to output
-    private boolean glFilterIsEnabled = false;
-    private boolean needsToRestoreEnabledFilterAfterRebuild = false;
+    private ExternalCopyFilter externalCopyFilter;  //copyFilter for a camera surface, created on first use
+    private volatile boolean glFilterIsEnabled = false;
+
+    /**
+     * Background preparation, the chroma filter is swapped in on the GLThread once its
+     * background is ready. Each request takes a new generation so that a background that
+     * finishes after a newer one was requested is discarded.
+     */
+    private final ExecutorService backgroundExecutor;
+    private final AtomicInteger chromaFilterGeneration = new AtomicInteger();
+    private volatile boolean chromaFilterRequested = false;
+    private BackgroundProvider backgroundProvider = CustomFilterFactory::getBackground;
+
+    /**
+     * The background last requested and what it was prepared as, an update asking for the
+     * same unchanged file at the same size keeps the current filter and its texture, which
+     * is how a background loaded for one camera is reused by the next.
+     */
+    private volatile String requestedBackgroundPath;
+    private volatile BackgroundCache.Key requestedBackgroundKey;
 
     /**
      * Display parameters
@@ -72,30 +99,95 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
 
     private int glTextureId = NO_IMAGE;
 
+    //A frame of the camera drawing into the current output was uploaded, GLThread only
+    private boolean hasFrame = false;
+
+    //Sensor timestamp of the frame in glTextureId, GLThread only
+    private long frameTimestampNanos = 0;
+
     //Will be populated from QUAD
     private FloatBuffer glFullScreenQuadBuffer;
 
+    //glFullScreenQuadBuffer flipped vertically, so that analysis frames read back top row first
+    private FloatBuffer glAnalysisQuadBuffer;
+
     private FloatBuffer glTextureBuffer;
 
     //On each frame will be used to buffer from the preview data
     private IntBuffer glRgbPreviewBuffer;
 
-    //texture rotation used to rotate bitmap when it is added to the
-    //chroma filter
-    private boolean textureIsLandscape = true;
+    //Converts YUV_PLANES frames to the RGB input texture on the GPU
+    private YuvToRgbFilter yuvToRgbFilter;
+
+    /**
+     * The texture the camera draws into in PreviewInputMode.EXTERNAL_OES, GLThread only, null
+     * when frames arrive through the frameMailbox. The filters sample its frames through
+     * externalInput, a filter built for the other input is rebuilt on the first frame.
+     */
+    private CameraSurfaceTexture cameraSurface;
+    private final ExternalInput externalInput = new ExternalInput();
+    //Camera surface frames replaced by a later one before a draw, written on the GLThread only
+    private volatile long replacedSurfaceFrames = 0;
+
+    //orientation of the background, the chroma filter samples the background prepared for
+    //landscape through backgroundCoordinates, so a rotation needs no new background
+    private volatile boolean textureIsLandscape = true;
+    private float[] backgroundCoordinates;
+
+    /**
+     * Filter parameters, the latest snapshot is applied to the filters on the next draw. Each
+     * filter keeps the snapshot it was last given on the GLThread, so that only the uniforms
+     * of the fields that changed since are written, however many updates came in between.
+     */
+    volatile FilterParameters previewFilterParameters = new FilterParameters();
+    private FilterParameters glFilterParameters;
+    private FilterParameters matteFilterParameters;
+
+    /**
+     * Parameter update counters, the updates come from the platform thread, the applied
+     * updates are counted on the GLThread
+     */
+    private volatile long parameterUpdates = 0;
+    private volatile long appliedParameterUpdates = 0;
+    private volatile long avoidedFilterRebuilds = 0;
+    private final AtomicLong filterRebuilds = new AtomicLong();
+
+
+    /**
+     * Camera frames waiting to be uploaded, only the latest frame is kept so a new frame
+     * replaces a stale one rather than being dropped
+     */
+    private final FrameMailbox frameMailbox;
+
+    /**
+     * OpenGL control queue for filter creation and rebuild tasks, kept apart from the
+     * camera frames so that a slow rebuild never causes a frame to be dropped.
+     * The queue is lock free, no lock is held while the tasks run GL work.
+     */
+    private final Queue<Runnable> openGLTaskQueue;
+
+    /**
+     * Wakes the GLBridge render loop when a new frame or parameter change needs drawing
+     */
+    private volatile RenderScheduler renderScheduler;
 
     /**
-     * Filter parameters
+     * Per stage latency of the preview pipeline, may be null
      */
-    FilterParameters previewFilterParameters;
+    private volatile PipelineStats pipelineStats;
 
+    /**
+     * Downscaled copies of the preview for frame analysis, GLThread only, null when not streaming.
+     * The key matte is only created for a matte stream.
+     */
+    private AnalysisStream analysisStream;
+    private volatile KeyMatteFilter matteFilter;
 
     /**
-     * OpenGL render control and queue, this acts as the buffer for frames
-     * from the camera, access is synchronised, so no locking is needed at draw time
-     * from the main openGL render loop
+     * Recent captures blended over the preview, GLThread only, null when onion skinning is off.
+     * They are not part of the recording or of the analysis stream.
      */
-    private Queue<Runnable> openGLTaskQueue;
+    private OnionSkinLayers onionSkin;
 
     /*********************************************************************************
      *
@@ -104,13 +196,15 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
      *********************************************************************************/
 
     public FilterRenderer() {
-        openGLTaskQueue = new LinkedList<>();
+        frameMailbox = new FrameMailbox();
+        openGLTaskQueue = new ConcurrentLinkedQueue<>();
+        backgroundExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "BackgroundPrep"));
     }
 
     /**
      *   Setup sequence regarding filters
      *
-     *   On initialisation - setup the task queue and identity filter
+     *   On initialisation - setup the frame mailbox, the task queue and identity filter
      *
      *   OnCreate    - setup the GL resources and the identity filter
      *
@@ -121,17 +215,12 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
      *
      *               - reset the current parameters that do not require recreating the filter
      *
-     *               - if there is no chroma filter, create it with the parameters supplied
-     *                 in the update (on the GLThread)
-     *
-     *               - if there is a chroma filter and it has no bitmap assigned
-     *                    assign a bitmap (on the GLThread)
-     *
-     *               - if there is a chroma filter
-     *                     - if enabled, record was enabled state
-     *                       (on the GLThread)
-     *                     - destroy and re-create the filter with the current parameters and store
-     *                     - if was enabled, enable the filter
+     *               - if there is no chroma filter or the background changed
+     *                     - decode and prepare the background (on the BackgroundPrep thread)
+     *                     - create the new filter with the current parameters and swap it
+     *                       in place of the old one (on the GLThread)
+     *                     - the old filter keeps rendering until the swap, the enabled
+     *                       state carries over to the new filter
      *
      *   Client sequences
      *
@@ -147,6 +236,7 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
     public void onCreate() {
         setupGLObjects();
         initialiseCopyFilter();
+        yuvToRgbFilter = new YuvToRgbFilter();
     }
 
     void initialiseCopyFilter(){
@@ -162,6 +252,10 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
                 .asFloatBuffer();
         glFullScreenQuadBuffer.put(QUAD).position(0);
 
+        glAnalysisQuadBuffer = ByteBuffer.allocateDirect(QUAD.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+
         glTextureBuffer = ByteBuffer.allocateDirect(TEXTURE_NO_ROTATION.length * 4)
                 .order(ByteOrder.nativeOrder())
                 .asFloatBuffer();
@@ -169,7 +263,7 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
         setRotation(Rotation.NORMAL, false, false);
     }
 
-    private void setGLFilter(GPUImageChromaKeyBlendFilter filter) {
+    private void setGLFilter(OrientedChromaKeyBlendFilter filter) {
         glFilter = filter;
         glFilter.ifNeedInit();
         glFilter.onOutputSizeChanged(outputWidth, outputHeight);
@@ -185,57 +279,78 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
      */
 
     public void enableFilter() {
-        if (glFilter != null)
+        if (glFilter != null || chromaFilterRequested)
           glFilterIsEnabled = true;
+        requestRender();
     }
 
     public void disableFilter() {
         glFilterIsEnabled = false;
+        requestRender();
     }
 
     /**
      * Update parameters
      */
 
+    /**
+     * Colour and sensitivity are written to the filters on the next draw, see applyParameters.
+     * The chroma filter is only rebuilt for a new background, a background sent again with the
+     * same path is checked against the file it was prepared from.
+     *
+     * @param parameters the snapshot replacing the current one
+     */
     public void updateParameters(final FilterParameters parameters) {
 
         previewFilterParameters = parameters;
-
-        //Set simple parameters if there is a glFilter available
-        if (glFilter != null && previewFilterParameters.replacementColour != null) {
-            float[] colour = previewFilterParameters.getColorToReplace();
-            glFilter.setColorToReplace(colour[0], colour[1], colour[2]);
-        }
-
-        //Set simple parameters if there is a glFilter available
-        if (glFilter != null && previewFilterParameters.getSensitivity() != Constants.FLOAT_NOT_SET) {
-            glFilter.setThresholdSensitivity(previewFilterParameters.getSensitivity());
-        }
+        parameterUpdates++;
 
         /**
          * Setting the main filter background
          */
-        boolean backgroundWasChanged = parameters.backgroundImage != null;
-
-        if (glFilter == null) {
-            appendToTaskQueue( ()->{
-                setupChromaFilter(previewFilterParameters);
-            }, openGLTaskQueue);
+        boolean backgroundWasChanged = false;
+        if ((parameters.getUpdatedFields() & FilterParameters.BACKGROUND) != 0) {
+            //a path sent again is checked too, the file may have been replaced
+            backgroundWasChanged = !isRequestedBackground(parameters.backgroundImage);
+            if (!backgroundWasChanged && (glFilter != null || chromaFilterRequested)) {
+                avoidedFilterRebuilds++;
+            }
         }
-        //filter needs to be initially set if parameters were set without a background before
-        else if (glFilter != null && glFilter.getBitmap() == null) {
-            CustomFilterFactory.setChromaBackground(glFilter,
-                    new Size(outputWidth, outputHeight),
-                    previewFilterParameters,
-                    textureIsLandscape);
-        }
-        //filter needs replacing
-        else if (glFilter != null && backgroundWasChanged){
-            appendToTaskQueue(()->{
-                restartChromaFilter(previewFilterParameters);
-            }, openGLTaskQueue);
+
+        if ((glFilter == null && !chromaFilterRequested) || backgroundWasChanged) {
+            prepareChromaFilter(parameters.backgroundImage);
         }
 
+        requestRender();
+    }
+
+    /**
+     * @return parameter updates received
+     */
+    public long getParameterUpdateCount() {
+        return parameterUpdates;
+    }
+
+    /**
+     * @return parameter updates written to the filters as uniforms, fewer than the updates
+     * received when several arrive between two draws
+     */
+    public long getAppliedParameterUpdateCount() {
+        return appliedParameterUpdates;
+    }
+
+    /**
+     * @return chroma filters prepared, for a new background, output size or input
+     */
+    public long getFilterRebuildCount() {
+        return filterRebuilds.get();
+    }
+
+    /**
+     * @return updates that sent the background of the chroma filter again and kept the filter
+     */
+    public long getAvoidedFilterRebuildCount() {
+        return avoidedFilterRebuilds;
     }
 
     /**
@@ -243,72 +358,159 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
      */
 
     /**
+     * @return true if the file at backgroundPath, unchanged and at the current size, is the
+     * background of the current or pending chroma filter
+     */
+    private boolean isRequestedBackground(String backgroundPath) {
+        BackgroundCache.Key key = BackgroundCache.Key.forFile(backgroundPath, outputWidth, outputHeight, true);
+        if (key == null) {
+            //still missing, it was prepared as the error background
+            return requestedBackgroundKey == null && backgroundPath.equals(requestedBackgroundPath);
+        }
+        return key.equals(requestedBackgroundKey);
+    }
+
+    /**
+     * Prepares the background of a new chroma filter on the backgroundExecutor, the decode
+     * and scaling can take hundreds of milliseconds and must not stall the preview.
+     * Once the background is ready the swap is queued to the GLThread.
      *
+     * @param backgroundPath
+     */
+    void prepareChromaFilter(final String backgroundPath){
+        chromaFilterRequested = true;
+        filterRebuilds.incrementAndGet();
+        final int generation = chromaFilterGeneration.incrementAndGet();
+        final Size size = new Size(outputWidth, outputHeight);
+        requestedBackgroundPath = backgroundPath;
+        requestedBackgroundKey = BackgroundCache.Key.forFile(backgroundPath, outputWidth, outputHeight, true);
+
+        backgroundExecutor.execute(() -> {
+            if (generation != chromaFilterGeneration.get()) {
+                return;
+            }
+            //Will add a coloured background if none is supplied as an indication of error condition
+            //prepared for landscape whatever the orientation, portrait is sampled from it
+            final Bitmap background = backgroundProvider.getBackground(backgroundPath, size, true);
+            appendToTaskQueue(() -> {
+                swapChromaFilter(generation, background);
+            }, openGLTaskQueue);
+            requestRender();
+        });
+    }
+
+    /**
      *   Should be called on GLThread
      *
-     *    - record enablement state
-     *    - switch rendering to the identity filter
-     *    - destroy and re-create the filter with the current parameters and store
-     *      in the alt filter
-     *    - restore enablement state
+     *    - create the filter with the current colour and sensitivity and the prepared background
+     *    - replace the current filter, the background texture is uploaded on the next draw
+     *    - destroy the old filter
      *
-     * @param parameters
+     * @param generation the request the background was prepared for
+     * @param background the prepared background
      */
-    void restartChromaFilter(FilterParameters parameters){
-
-        synchronized (glFilter){
-            if (glFilterIsEnabled) {
-                 needsToRestoreEnabledFilterAfterRebuild = true;
-                 disableFilter();
-             }
-            glFilter.destroy();
-            glFilter.notify();
+    void swapChromaFilter(int generation, Bitmap background){
+        if (generation != chromaFilterGeneration.get()) {
+            //superseded by a newer background, which is already being prepared
+            return;
         }
-
-        setupChromaFilter(parameters);
-
-        //restore enabled if it was set
-        if(needsToRestoreEnabledFilterAfterRebuild){
-            needsToRestoreEnabledFilterAfterRebuild = false;
-            enableFilter();
+        if (background == null || background.isRecycled()) {
+            //evicted from the background cache before it could be uploaded, prepare it again
+            prepareChromaFilter(requestedBackgroundPath);
+            return;
         }
 
-    }
-
-    void setupChromaFilter(FilterParameters parameters){
-        GPUImageChromaKeyBlendFilter filter = CustomFilterFactory.getCustomFilter(parameters);
+        FilterParameters parameters = previewFilterParameters;
+        OrientedChromaKeyBlendFilter filter = CustomFilterFactory.getCustomFilter(parameters,
+                cameraSurface != null ? externalInput : null);
 
         //Set initial colour and sensitivity
-        //Set simple parameters if there is a glFilter available
-        if (filter != null && parameters.replacementColour != null) {
-            float[] colour = parameters.getColorToReplace();
-            filter.setColorToReplace(colour[0], colour[1], colour[2]);
-        }
+        filter.setParameters(parameters, FilterParameters.ALL_FIELDS);
+        glFilterParameters = parameters;
+
+        filter.setBitmap(background);
+        filter.setBackgroundCoordinates(backgroundCoordinates);
 
-        //Set simple parameters if there is a glFilter available
-        if (filter != null && parameters.getSensitivity() != Constants.FLOAT_NOT_SET) {
-            filter.setThresholdSensitivity(parameters.getSensitivity());
+        OrientedChromaKeyBlendFilter oldFilter = glFilter;
+        setGLFilter(filter);
+        if (oldFilter != null) {
+            oldFilter.destroy();
         }
+        requestRender();
+    }
 
-        /**
-         * Will add a coloured background if none is supplied as an indication of error condition
-         */
-        CustomFilterFactory.setChromaBackground(filter,
-                new Size(outputWidth, outputHeight),
-                parameters,
-                textureIsLandscape);
+    /**
+     * Used by tests to stand in for the decode
+     */
+    void setBackgroundProvider(BackgroundProvider backgroundProvider) {
+        this.backgroundProvider = backgroundProvider;
+    }
 
-        setGLFilter(filter);
+    interface BackgroundProvider {
+        Bitmap getBackground(String filePath, Size targetSize, boolean isLandscape);
     }
 
+    /**
+     * Turns the background for the device orientation on the next draw, only its texture
+     * coordinates change. The time until the first frame drawn with it is swapped is
+     * recorded as PipelineStats.Stage.ORIENTATION_CHANGE.
+     */
     public void setTextureIsLandscape(boolean isLandscape) {
+        if (textureIsLandscape == isLandscape) {
+            return;
+        }
         textureIsLandscape = isLandscape;
+        final long requestNanos = PipelineStats.now();
+        appendToTaskQueue(() -> {
+            adjustImageScalingAndInitialiseBuffers();
+            PipelineStats stats = pipelineStats;
+            //nothing was shown in the previous orientation before the first frame
+            if (stats != null && hasFrame) {
+                stats.onOrientationApplied(requestNanos);
+            }
+        }, openGLTaskQueue);
+        requestRender();
     }
 
     public GPUImageFilter getFilter() {
         return glFilter;
     }
 
+    /**
+     * Blends the onion skin layers over the preview, or stops with null. The replaced layers
+     * release their textures on the GLThread.
+     */
+    public void setOnionSkin(final OnionSkinLayers layers) {
+        appendToTaskQueue(() -> {
+            if (onionSkin != null && onionSkin != layers) {
+                onionSkin.release();
+            }
+            onionSkin = layers;
+        }, openGLTaskQueue);
+        requestRender();
+    }
+
+    /**
+     * Redraws the preview for a change made outside the renderer, such as a new onion skin layer
+     */
+    public void requestRedraw() {
+        requestRender();
+    }
+
+    /**
+     * Starts rendering analysis frames after each preview frame, replacing the current stream,
+     * or stops with null. The replaced stream releases its GL objects on the GLThread.
+     */
+    public void setAnalysisStream(final AnalysisStream stream) {
+        appendToTaskQueue(() -> {
+            if (analysisStream != null) {
+                analysisStream.release();
+            }
+            analysisStream = stream;
+        }, openGLTaskQueue);
+        requestRender();
+    }
+
     /*********************************************************************************
      *
      *                        Preview Filtered Rendering
@@ -323,45 +525,210 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
      * GPUImage provides the GPUImageNativeLibrary with a native
      * implementation for converting NV21 (YUV) planar byte array to RGB
      * which is needed to load the input texture corresponding to glTextureId
+     *
+     * Direct frames (PreviewInputMode.YUV_PLANES) skip the CPU conversion, their planes
+     * are uploaded as is and converted to RGB by the yuvToRgbFilter
+     *
+     * Frames are handed to the GLThread through the frameMailbox, a frame is released
+     * back to its pool as soon as its texture upload has finished, or when a newer
+     * frame replaces it before it was uploaded
      */
-    public void onPreviewFrame(final byte[] data, final int width, final int height) {
+    public void onPreviewFrame(final PreviewFrame frame) {
+        frameMailbox.post(frame);
+        requestRender();
+    }
 
-        if (glRgbPreviewBuffer == null) {
-            glRgbPreviewBuffer = IntBuffer.allocate(width * height);
+    //Called on the GLThread with the latest frame from the mailbox
+    private void uploadFrame(PreviewFrame frame) {
+        int width = frame.width;
+        int height = frame.height;
+        PipelineStats stats = pipelineStats;
+        long takenNanos = PipelineStats.now();
+
+        if (frame.isDirect()) {
+            yuvToRgbFilter.upload(frame.planes, width, height);
+            long uploadedNanos = PipelineStats.now();
+            glTextureId = yuvToRgbFilter.render();
+            long convertedNanos = PipelineStats.now();
+            if (stats != null) {
+                stats.record(PipelineStats.Stage.TEXTURE_UPLOAD, takenNanos, uploadedNanos);
+                stats.record(PipelineStats.Stage.YUV_TO_RGB, uploadedNanos, convertedNanos);
+            }
+            //the conversion renders offscreen at the frame size
+            GLES20.glViewport(0, 0, outputWidth, outputHeight);
+        } else {
+            if (glRgbPreviewBuffer == null || glRgbPreviewBuffer.capacity() != width * height) {
+                glRgbPreviewBuffer = IntBuffer.allocate(width * height);
+            }
+
+            GPUImageNativeLibrary.YUVtoRBGA(frame.data, width, height, glRgbPreviewBuffer.array());
+            long convertedNanos = PipelineStats.now();
+            glTextureId = OpenGlUtils.loadTexture(glRgbPreviewBuffer, width, height, glTextureId);
+            if (stats != null) {
+                stats.record(PipelineStats.Stage.YUV_TO_RGB, takenNanos, convertedNanos);
+                stats.record(PipelineStats.Stage.TEXTURE_UPLOAD, convertedNanos, PipelineStats.now());
+            }
         }
-        if (openGLTaskQueue.isEmpty()) {
-            appendToTaskQueue(() -> {
-                GPUImageNativeLibrary.YUVtoRBGA(data, width, height, glRgbPreviewBuffer.array());
-                glTextureId = OpenGlUtils.loadTexture(glRgbPreviewBuffer, width, height, glTextureId);
 
-                if (imageWidth != width) {
-                    imageWidth = width;
-                    imageHeight = height;
-                    adjustImageScalingAndInitialiseBuffers();
+        if (stats != null) {
+            stats.record(PipelineStats.Stage.MAILBOX_WAIT, frame.convertedNanos, takenNanos);
+            stats.onFrameUploaded(frame.acquireNanos);
+        }
+        frameTimestampNanos = frame.timestampNanos;
+        hasFrame = true;
+        frame.release();
+
+        if (imageWidth != width) {
+            imageWidth = width;
+            imageHeight = height;
+            adjustImageScalingAndInitialiseBuffers();
+            matchChromaFilterToInput();
+        }
+    }
+
+    public FrameMailbox getFrameMailbox() {
+        return frameMailbox;
+    }
+
+    /**
+     * @return camera frames replaced by a later one before they were drawn, from the
+     * frameMailbox and from the camera surfaces
+     */
+    public long getReplacedFrameCount() {
+        return frameMailbox.getReplacedCount() + replacedSurfaceFrames;
+    }
+
+    /*********************************************************************************
+     *                   Camera surface (PreviewInputMode.EXTERNAL_OES)
+     *********************************************************************************/
+
+    /**
+     * Camera thread - creates the texture the camera draws its preview frames into, in place
+     * of an ImageReader. The GLThread creates it in its context before the next draw, which
+     * is waited for, and replaces any previous camera surface.
+     *
+     * @param frameHandler where the camera surface is told about new frames, the main thread if null
+     * @return null if the GLThread did not create it within timeoutMs
+     */
+    public CameraSurfaceTexture startCameraSurface(final Size frameSize, Handler frameHandler, long timeoutMs) {
+        FutureTask<CameraSurfaceTexture> task = new FutureTask<>(() -> {
+            CameraSurfaceTexture surface = new CameraSurfaceTexture(frameSize.getWidth(), frameSize.getHeight());
+            setCameraSurface(surface);
+            return surface;
+        });
+        appendToTaskQueue(task, openGLTaskQueue);
+        requestRender();
+
+        CameraSurfaceTexture surface = null;
+        try {
+            try {
+                surface = task.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                //the GLThread may have started the task in the meantime
+                if (!task.cancel(false)) {
+                    surface = task.get();
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Camera surface error", e.getCause());
+        }
+        if (surface != null) {
+            surface.setOnFrameAvailable(this::requestRender, frameHandler);
+        }
+        return surface;
+    }
 
-            }, openGLTaskQueue);
+    /**
+     * Any thread - releases a camera surface on the GLThread once its capture session is
+     * closed. Frames arrive through the frameMailbox again if it was the current one.
+     */
+    public void releaseCameraSurface(final CameraSurfaceTexture surface) {
+        appendToTaskQueue(() -> {
+            if (surface == cameraSurface) {
+                setCameraSurface(null);
+            } else {
+                surface.release();
+            }
+        }, openGLTaskQueue);
+        requestRender();
+    }
+
+    //GLThread
+    private void setCameraSurface(CameraSurfaceTexture surface) {
+        if (cameraSurface != null) {
+            cameraSurface.release();
+        }
+        cameraSurface = surface;
+        frameMailbox.clear();
+        hasFrame = false;
+        imageWidth = 0;
+    }
+
+    //Called on the GLThread, makes the latest frame of the camera surface the filter input
+    private void latchCameraFrame() {
+        long takenNanos = PipelineStats.now();
+        int latched = cameraSurface.latchFrame();
+        if (latched == 0) {
+            return;
         }
-        else {
-            Log.i(TAG, "DROPPED A FRAME FROM THE PREVIEW INPUT");
+        long latchedNanos = PipelineStats.now();
+        replacedSurfaceFrames += latched - 1;
+        glTextureId = cameraSurface.getTextureId();
+        externalInput.setFrame(glTextureId, cameraSurface.getTransform());
+
+        PipelineStats stats = pipelineStats;
+        if (stats != null) {
+            long availableNanos = cameraSurface.getAvailableNanos();
+            stats.record(PipelineStats.Stage.MAILBOX_WAIT, availableNanos, takenNanos);
+            stats.record(PipelineStats.Stage.TEXTURE_UPLOAD, takenNanos, latchedNanos);
+            stats.onFrameUploaded(availableNanos);
+        }
+        frameTimestampNanos = cameraSurface.getTimestampNanos();
+        hasFrame = true;
+
+        if (imageWidth != cameraSurface.getWidth() || imageHeight != cameraSurface.getHeight()) {
+            imageWidth = cameraSurface.getWidth();
+            imageHeight = cameraSurface.getHeight();
+            adjustImageScalingAndInitialiseBuffers();
+            matchChromaFilterToInput();
+        }
+    }
+
+    /**
+     * GLThread, on the first frame of an input. A chroma filter built for the other input is
+     * prepared again, the copy filter shows the frames until it is swapped in.
+     */
+    private void matchChromaFilterToInput() {
+        OrientedChromaKeyBlendFilter filter = glFilter;
+        if (filter != null && filter.hasExternalInput() != (cameraSurface != null)) {
+            prepareChromaFilter(requestedBackgroundPath);
         }
- 
     }
 
     /*********************************************************************************
      *          GLThread - handling tasks to run on the GLThread
      *********************************************************************************/
 
-        protected void appendToTaskQueue(final Runnable runnable, Queue<Runnable> queue) {
-            synchronized (queue) {
-                openGLTaskQueue.add(runnable);
+        private void requestRender() {
+            if (renderScheduler != null) {
+                renderScheduler.requestRender();
             }
         }
 
+        protected void appendToTaskQueue(final Runnable runnable, Queue<Runnable> queue) {
+            queue.add(runnable);
+        }
+
         private void runAll(Queue<Runnable> queue) {
-            synchronized (queue) {
-                while (!queue.isEmpty()) {
-                    queue.poll().run();
+            Runnable task;
+            PipelineStats stats = pipelineStats;
+            while ((task = queue.poll()) != null) {
+                long startNanos = PipelineStats.now();
+                task.run();
+                if (stats != null) {
+                    stats.record(PipelineStats.Stage.GL_TASK, startNanos, PipelineStats.now());
                 }
             }
         }
@@ -370,30 +737,211 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
      *             GLWorker Implementation - The main Filter Draw Calls
      *********************************************************************************/
 
+    public void setRenderScheduler(RenderScheduler renderScheduler) {
+        this.renderScheduler = renderScheduler;
+    }
+
+    public void setPipelineStats(PipelineStats pipelineStats) {
+        this.pipelineStats = pipelineStats;
+    }
+
     public void setSize(Size size){
+        //only a renderer kept from a previous camera has frames and a background to adjust
+        boolean changed = outputWidth != 0
+                && (size.getWidth() != outputWidth || size.getHeight() != outputHeight);
         this.outputHeight = size.getHeight();
         this.outputWidth  = size.getWidth();
+        if (!changed) {
+            return;
+        }
+        appendToTaskQueue(() -> {
+            if (imageWidth != 0) {
+                adjustImageScalingAndInitialiseBuffers();
+            }
+        }, openGLTaskQueue);
+        //a background kept from the previous camera was prepared for its size
+        String backgroundPath = requestedBackgroundPath;
+        if (glFilter != null && backgroundPath != null) {
+            prepareChromaFilter(backgroundPath);
+        }
+    }
+
+    /**
+     * GLThread, another camera draws into a new output. The frame and the streams of the
+     * previous camera are dropped, the filters, their programs and the background are kept.
+     */
+    public void onOutputChanged() {
+        //the camera surface belongs to the previous camera, the next one starts its own
+        if (cameraSurface != null) {
+            setCameraSurface(null);
+        }
+        frameMailbox.clear();
+        hasFrame = false;
+        //the next camera's frames may differ in size
+        imageWidth = 0;
+        if (analysisStream != null) {
+            analysisStream.release();
+            analysisStream = null;
+        }
+        if (onionSkin != null) {
+            onionSkin.release();
+            onionSkin = null;
+        }
     }
 
 
     //Called by GLBridge (GLThread)
     public void onDrawFrame() {
 
+        //the output surface may have changed since the last frame
+        GLES20.glViewport(0, 0, outputWidth, outputHeight);
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
-        //copy the RGB buffer to glTextureBuffer ready for filtering (only 1 task per call is expected)
-        //or recreate, update or create the glFilter if this is happening
+        //recreate, update or create the glFilter if this is happening
         runAll(openGLTaskQueue);
+        applyParameters();
+
+        //upload or latch the latest camera frame to glTextureId ready for filtering
+        if (cameraSurface != null) {
+            latchCameraFrame();
+        } else {
+            PreviewFrame frame = frameMailbox.take();
+            if (frame != null) {
+                uploadFrame(frame);
+            }
+        }
+
+        GPUImageFilter filter = currentFilter();
+
+        //nothing is drawn over the cleared output until the camera sends its first frame
+        if (filter != null && hasFrame) {
+            long drawStartNanos = PipelineStats.now();
+            filter.onDraw(glTextureId, glFullScreenQuadBuffer, glTextureBuffer);
+            PipelineStats stats = pipelineStats;
+            if (stats != null) {
+                stats.record(PipelineStats.Stage.FILTER_DRAW, drawStartNanos, PipelineStats.now());
+            }
+        }
+
+        if (onionSkin != null && hasFrame) {
+            onionSkin.draw(glFullScreenQuadBuffer, glTextureBuffer);
+        }
+
+        drawAnalysisFrame();
+    }
 
-        GPUImageFilter filter = glFilterIsEnabled ? glFilter : copyFilter;
+    /**
+     * GLThread, writes the colour and sensitivity that changed since the chroma filter was last
+     * given parameters, the filter sets its uniforms as it draws
+     */
+    private void applyParameters() {
+        OrientedChromaKeyBlendFilter filter = glFilter;
+        FilterParameters parameters = previewFilterParameters;
+        if (filter == null || parameters == glFilterParameters) {
+            return;
+        }
+        int changed = parameters.changedSince(glFilterParameters);
+        if ((changed & (FilterParameters.COLOUR | FilterParameters.SENSITIVITY)) != 0) {
+            filter.setParameters(parameters, changed);
+            appliedParameterUpdates++;
+        }
+        glFilterParameters = parameters;
+    }
 
+    /**
+     * Renders the frame just drawn into the analysis stream, which paces itself to its frame rate
+     */
+    private void drawAnalysisFrame() {
+        AnalysisStream stream = analysisStream;
+        if (stream == null || !hasFrame) {
+            return;
+        }
+        stream.onFrameDrawn(frameTimestampNanos, this::drawAnalysisContent);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, outputWidth, outputHeight);
+    }
+
+    private void drawAnalysisContent(AnalysisContent content) {
+        GPUImageFilter filter;
+        if (content == AnalysisContent.MATTE) {
+            boolean external = cameraSurface != null;
+            if (matteFilter != null && matteFilter.hasExternalInput() != external) {
+                matteFilter.destroy();
+                matteFilter = null;
+            }
+            if (matteFilter == null) {
+                matteFilter = new KeyMatteFilter(external ? externalInput : null);
+                matteFilter.ifNeedInit();
+                matteFilterParameters = null;
+            }
+            FilterParameters parameters = previewFilterParameters;
+            if (parameters != matteFilterParameters) {
+                matteFilter.setParameters(parameters, parameters.changedSince(matteFilterParameters));
+                matteFilterParameters = parameters;
+            }
+            filter = matteFilter;
+        } else {
+            filter = currentFilter();
+        }
+        if (filter != null) {
+            filter.onDraw(glTextureId, glAnalysisQuadBuffer, glTextureBuffer);
+        }
+    }
+
+    //Called by GLBridge (GLThread) with the encoder surface current while recording
+    public void onRedrawFrame() {
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        GPUImageFilter filter = currentFilter();
         if (filter != null) {
             filter.onDraw(glTextureId, glFullScreenQuadBuffer, glTextureBuffer);
         }
+    }
 
+    public long getFrameTimestampNanos() {
+        return frameTimestampNanos;
     }
 
-    public void onDispose() {}
+    //GLThread
+    private GPUImageFilter currentFilter() {
+        boolean external = cameraSurface != null;
+        OrientedChromaKeyBlendFilter filter = glFilter;
+        if (glFilterIsEnabled && filter != null && filter.hasExternalInput() == external) {
+            return filter;
+        }
+        if (!external) {
+            return copyFilter;
+        }
+        if (externalCopyFilter == null) {
+            externalCopyFilter = new ExternalCopyFilter(externalInput);
+            externalCopyFilter.ifNeedInit();
+            externalCopyFilter.onOutputSizeChanged(outputWidth, outputHeight);
+        }
+        return externalCopyFilter;
+    }
+
+    public void onDispose() {
+        backgroundExecutor.shutdownNow();
+        frameMailbox.clear();
+        if (cameraSurface != null) {
+            cameraSurface.release();
+            cameraSurface = null;
+        }
+        if (yuvToRgbFilter != null) {
+            yuvToRgbFilter.destroy();
+        }
+        if (analysisStream != null) {
+            analysisStream.release();
+            analysisStream = null;
+        }
+        if (matteFilter != null) {
+            matteFilter.destroy();
+            matteFilter = null;
+        }
+        if (onionSkin != null) {
+            onionSkin.release();
+            onionSkin = null;
+        }
+    }
 
     /*********************************************************************************
      *
@@ -442,8 +990,22 @@ public class FilterRenderer implements PreviewFrameHandler,  GLWorker {
 
             glFullScreenQuadBuffer.clear();
             glFullScreenQuadBuffer.put(cube).position(0);
+            glAnalysisQuadBuffer.clear();
+            for (int i = 0; i < cube.length; i += 2) {
+                glAnalysisQuadBuffer.put(cube[i]).put(-cube[i + 1]);
+            }
+            glAnalysisQuadBuffer.position(0);
             glTextureBuffer.clear();
             glTextureBuffer.put(textureCords).position(0);
+
+            //the background is prepared at the output size, so it is rotated but not cropped as the frame is
+            backgroundCoordinates = BackgroundGeometry.textureCoordinates(
+                    TextureRotationUtil.getRotation(rotation, flipHorizontal, flipVertical),
+                    this.outputWidth, this.outputHeight, textureIsLandscape);
+            OrientedChromaKeyBlendFilter filter = glFilter;
+            if (filter != null) {
+                filter.setBackgroundCoordinates(backgroundCoordinates);
+            }
         }
 
         private float addDistance(float coordinate, float distance) {
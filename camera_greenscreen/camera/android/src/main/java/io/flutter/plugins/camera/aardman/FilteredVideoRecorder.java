@@ -0,0 +1,448 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.media.MediaRecorder;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the filtered preview to an mp4 file
+ *
+ * The video encoder takes its input from a Surface. GLBridge draws each composited preview
+ * frame a second time into that surface, with the camera frame timestamp as the presentation
+ * time, so the frames never leave the GPU. Audio is read with an AudioRecord and encoded to
+ * AAC on the AudioEncoder thread, the encoded video is drained on the VideoEncoder thread and
+ * both tracks are written by one MediaMuxer.
+ *
+ * Sequence
+ *
+ *   prepare  - configure the encoders and the muxer, the input surface is then available
+ *   start    - start the encoders and the audio capture
+ *   GLBridge - attaches the input surface and draws frames accepted by toPresentationNanos
+ *   stop     - audio ends, GLBridge detaches the input surface and calls onVideoInputDetached
+ *              which ends the video stream, the muxer is finalised once both tracks are drained
+ */
+public class FilteredVideoRecorder {
+
+    private static final String TAG = "FilteredVideoRecorder";
+
+    private static final long DRAIN_TIMEOUT_US = 10000;
+    private static final int I_FRAME_INTERVAL_S = 1;
+
+    /**
+     * Encoder settings, taken from the recording profile by MediaRecorderBuilder
+     */
+    public static class Settings {
+        public int width;
+        public int height;
+        //MediaRecorder.VideoEncoder constant
+        public int videoCodec = MediaRecorder.VideoEncoder.H264;
+        public int videoBitRate;
+        public int videoFrameRate;
+
+        public boolean enableAudio;
+        public int audioSampleRate;
+        public int audioBitRate;
+        public int audioChannels = 1;
+
+        public int orientationHint;
+
+        //true if the camera timestamps are SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME
+        public boolean realtimeTimestamps;
+    }
+
+    public interface Callback {
+        /**
+         * Runs on an encoder thread once the file has been finalised
+         *
+         * @param error null if the recording was written successfully
+         */
+        void onFinished(String outputPath, Exception error);
+    }
+
+    private final String outputPath;
+    private final Settings settings;
+    private final PresentationTimeline timeline = new PresentationTimeline();
+
+    private MediaCodec videoEncoder;
+    private Surface inputSurface;
+    private MediaCodec audioEncoder;
+    private AudioRecord audioRecord;
+    private MediaMuxer muxer;
+
+    /**
+     * Muxer state, guarded by muxerLock. The muxer starts once every track has its format,
+     * video samples wait for it and audio samples from before the start are dropped.
+     */
+    private final Object muxerLock = new Object();
+    private final int expectedTracks;
+    private int addedTracks = 0;
+    private int finishedTracks = 0;
+    private boolean muxerStarted = false;
+    private boolean muxerAbandoned = false;
+    private Exception error;
+    private boolean finished = false;
+    private Callback callback;
+
+    private volatile boolean stopping = false;
+    private volatile boolean videoInputDetached = false;
+
+    private final AtomicLong encodedFrameCount = new AtomicLong();
+    private final AtomicLong rejectedFrameCount = new AtomicLong();
+
+    public FilteredVideoRecorder(String outputPath, Settings settings) {
+        this.outputPath = outputPath;
+        this.settings = settings;
+        this.expectedTracks = settings.enableAudio ? 2 : 1;
+    }
+
+    /*********************************************************************************
+     *                                  Lifecycle
+     *********************************************************************************/
+
+    public void prepare() throws IOException {
+        try {
+            String videoMime = settings.videoCodec == MediaRecorder.VideoEncoder.HEVC
+                    ? MediaFormat.MIMETYPE_VIDEO_HEVC
+                    : MediaFormat.MIMETYPE_VIDEO_AVC;
+            MediaFormat videoFormat = MediaFormat.createVideoFormat(videoMime, settings.width, settings.height);
+            videoFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            videoFormat.setInteger(MediaFormat.KEY_BIT_RATE, settings.videoBitRate);
+            videoFormat.setInteger(MediaFormat.KEY_FRAME_RATE, settings.videoFrameRate);
+            videoFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_S);
+            videoEncoder = MediaCodec.createEncoderByType(videoMime);
+            videoEncoder.configure(videoFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            inputSurface = videoEncoder.createInputSurface();
+
+            if (settings.enableAudio) {
+                prepareAudio();
+            }
+
+            muxer = new MediaMuxer(outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            muxer.setOrientationHint(settings.orientationHint);
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    //The mp4 container is written with AAC whatever audio codec the profile names
+    private void prepareAudio() throws IOException {
+        int channelMask = settings.audioChannels > 1 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int channelCount = settings.audioChannels > 1 ? 2 : 1;
+        int minBufferSize = AudioRecord.getMinBufferSize(settings.audioSampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) {
+            throw new IOException("Unsupported audio sample rate " + settings.audioSampleRate);
+        }
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, settings.audioSampleRate,
+                channelMask, AudioFormat.ENCODING_PCM_16BIT, minBufferSize * 2);
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            throw new IOException("AudioRecord could not be initialised");
+        }
+
+        MediaFormat audioFormat = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, settings.audioSampleRate, channelCount);
+        audioFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        audioFormat.setInteger(MediaFormat.KEY_BIT_RATE, settings.audioBitRate);
+        audioFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, minBufferSize);
+        audioEncoder = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        audioEncoder.configure(audioFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+    }
+
+    /**
+     * Starts the encoders, frames are accepted from now on
+     */
+    public void start() {
+        timeline.start(clockNanos());
+        videoEncoder.start();
+        Thread videoThread = new Thread(this::drainVideo, "VideoEncoder");
+        videoThread.start();
+        if (settings.enableAudio) {
+            audioEncoder.start();
+            audioRecord.startRecording();
+            Thread audioThread = new Thread(this::encodeAudio, "AudioEncoder");
+            audioThread.start();
+        }
+    }
+
+    public void pause() {
+        timeline.pause(clockNanos());
+    }
+
+    public void resume() {
+        timeline.resume(clockNanos());
+    }
+
+    /**
+     * Ends the recording, the video stream ends once GLBridge has detached the input surface
+     *
+     * @param callback runs once the file is finalised, may be null
+     */
+    public void stop(Callback callback) {
+        stopping = true;
+        boolean alreadyFinished;
+        synchronized (muxerLock) {
+            this.callback = callback;
+            alreadyFinished = finished;
+        }
+        if (alreadyFinished && callback != null) {
+            callback.onFinished(outputPath, error);
+        }
+    }
+
+    /*********************************************************************************
+     *                              GLThread (GLBridge)
+     *********************************************************************************/
+
+    public Surface getInputSurface() {
+        return inputSurface;
+    }
+
+    /**
+     * @param frameTimestampNanos the sensor timestamp of the camera frame
+     * @return the presentation time to set on the encoder surface, or a negative value if
+     * the frame should not be encoded because the recording is paused or stopping
+     */
+    public long toPresentationNanos(long frameTimestampNanos) {
+        if (stopping) {
+            return PresentationTimeline.REJECTED;
+        }
+        long presentationNanos = timeline.toVideoNanos(frameTimestampNanos);
+        if (presentationNanos < 0) {
+            rejectedFrameCount.incrementAndGet();
+        } else {
+            encodedFrameCount.incrementAndGet();
+        }
+        return presentationNanos;
+    }
+
+    /**
+     * Called once no more frames will be drawn into the input surface, ends the video stream
+     */
+    public void onVideoInputDetached() {
+        if (videoInputDetached) {
+            return;
+        }
+        videoInputDetached = true;
+        try {
+            synchronized (muxerLock) {
+                //already released if the recording failed
+                if (!finished) {
+                    videoEncoder.signalEndOfInputStream();
+                }
+            }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Failed to end the video stream", e);
+        }
+    }
+
+    public long getEncodedFrameCount() {
+        return encodedFrameCount.get();
+    }
+
+    public long getRejectedFrameCount() {
+        return rejectedFrameCount.get();
+    }
+
+    /*********************************************************************************
+     *                        VideoEncoder and AudioEncoder threads
+     *********************************************************************************/
+
+    private void drainVideo() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        int track = -1;
+        try {
+            while (true) {
+                int index = videoEncoder.dequeueOutputBuffer(info, DRAIN_TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    track = addTrack(videoEncoder.getOutputFormat());
+                } else if (index >= 0) {
+                    boolean endOfStream = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                    //the codec config is carried in the track format
+                    if (track >= 0 && info.size > 0 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                        writeSample(track, videoEncoder.getOutputBuffer(index), info, true);
+                    }
+                    videoEncoder.releaseOutputBuffer(index, false);
+                    if (endOfStream) {
+                        break;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            onError(e);
+        }
+        onTrackFinished(track);
+    }
+
+    private void encodeAudio() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        int track = -1;
+        int bytesPerSecond = settings.audioSampleRate * 2 * (settings.audioChannels > 1 ? 2 : 1);
+        boolean endOfInput = false;
+        try {
+            while (true) {
+                if (!endOfInput) {
+                    endOfInput = queueAudioInput(bytesPerSecond);
+                }
+                int index = audioEncoder.dequeueOutputBuffer(info, endOfInput ? DRAIN_TIMEOUT_US : 0);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    track = addTrack(audioEncoder.getOutputFormat());
+                } else if (index >= 0) {
+                    boolean endOfStream = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                    if (track >= 0 && info.size > 0 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                        writeSample(track, audioEncoder.getOutputBuffer(index), info, false);
+                    }
+                    audioEncoder.releaseOutputBuffer(index, false);
+                    if (endOfStream) {
+                        break;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            onError(e);
+        }
+        onTrackFinished(track);
+    }
+
+    /**
+     * Reads one buffer of PCM into the encoder, audio read while paused is discarded
+     *
+     * @return true once the end of stream has been queued
+     */
+    private boolean queueAudioInput(int bytesPerSecond) {
+        int index = audioEncoder.dequeueInputBuffer(DRAIN_TIMEOUT_US);
+        if (index < 0) {
+            return false;
+        }
+        ByteBuffer input = audioEncoder.getInputBuffer(index);
+        while (true) {
+            input.clear();
+            int read = audioRecord.read(input, input.capacity());
+            long readNanos = clockNanos();
+            if (stopping || read < 0) {
+                audioRecord.stop();
+                audioEncoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                return true;
+            }
+            //timestamp the first sample of the buffer
+            long captureNanos = readNanos - read * 1000000000L / bytesPerSecond;
+            long presentationNanos = timeline.toAudioNanos(captureNanos);
+            if (read > 0 && presentationNanos >= 0) {
+                audioEncoder.queueInputBuffer(index, 0, read, presentationNanos / 1000, 0);
+                return false;
+            }
+        }
+    }
+
+    private int addTrack(MediaFormat format) {
+        synchronized (muxerLock) {
+            int track = muxer.addTrack(format);
+            addedTracks++;
+            if (addedTracks == expectedTracks) {
+                muxer.start();
+                muxerStarted = true;
+                muxerLock.notifyAll();
+            }
+            return track;
+        }
+    }
+
+    private void writeSample(int track, ByteBuffer data, MediaCodec.BufferInfo info, boolean waitForMuxer) {
+        synchronized (muxerLock) {
+            while (waitForMuxer && !muxerStarted && !muxerAbandoned) {
+                try {
+                    muxerLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (!muxerStarted) {
+                return;
+            }
+            data.position(info.offset);
+            data.limit(info.offset + info.size);
+            muxer.writeSampleData(track, data, info);
+        }
+    }
+
+    private void onError(Exception e) {
+        Log.e(TAG, "Recording failed", e);
+        synchronized (muxerLock) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        //end the other track too
+        stopping = true;
+    }
+
+    private void onTrackFinished(int track) {
+        Callback finishedCallback;
+        synchronized (muxerLock) {
+            if (track < 0) {
+                //no format arrived for this track so the muxer can never start
+                muxerAbandoned = true;
+                muxerLock.notifyAll();
+            }
+            finishedTracks++;
+            if (finishedTracks < expectedTracks) {
+                return;
+            }
+            if (muxerStarted) {
+                try {
+                    muxer.stop();
+                } catch (IllegalStateException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            } else if (error == null) {
+                error = new IllegalStateException("No frames were recorded");
+            }
+            release();
+            finished = true;
+            finishedCallback = callback;
+        }
+        if (finishedCallback != null) {
+            finishedCallback.onFinished(outputPath, error);
+        }
+    }
+
+    private void release() {
+        if (muxer != null) {
+            muxer.release();
+            muxer = null;
+        }
+        if (videoEncoder != null) {
+            videoEncoder.release();
+            videoEncoder = null;
+        }
+        if (inputSurface != null) {
+            inputSurface.release();
+            inputSurface = null;
+        }
+        if (audioEncoder != null) {
+            audioEncoder.release();
+            audioEncoder = null;
+        }
+        if (audioRecord != null) {
+            audioRecord.release();
+            audioRecord = null;
+        }
+    }
+
+    //The clock of the camera sensor timestamps
+    private long clockNanos() {
+        return settings.realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : System.nanoTime();
+    }
+}
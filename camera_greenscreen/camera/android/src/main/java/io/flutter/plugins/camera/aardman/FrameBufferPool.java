@@ -0,0 +1,107 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of NV21 frame buffers for the preview pipeline
+ *
+ * The capacity is derived from the ImageReader maxImages so that the number of
+ * frames in flight between the camera thread and the GLThread is bounded, buffers
+ * are sized from the image crop rect on first use and only re-allocated if the
+ * crop size changes. In the steady state acquire/release do not allocate.
+ *
+ * acquire is called on the camera thread and release on the GLThread, access
+ * to the free list is synchronised.
+ *
+ * A pool of direct buffers is used for the YUV_PLANES preview input mode.
+ */
+public class FrameBufferPool {
+
+    private final int capacity;
+    private final boolean directBuffers;
+    private final ArrayDeque<PreviewFrame> freeFrames;
+
+    //Frames handed out by acquire that have not been released yet
+    private int framesInFlight = 0;
+
+    //Total number of buffers ever allocated, exposed for tests
+    private int allocationCount = 0;
+
+    /**
+     * @param capacity the maximum number of frames that can be in flight at once
+     */
+    public FrameBufferPool(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param capacity      the maximum number of frames that can be in flight at once
+     * @param directBuffers allocate direct buffers that can be uploaded to GL without a copy
+     */
+    public FrameBufferPool(int capacity, boolean directBuffers) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("FrameBufferPool capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.directBuffers = directBuffers;
+        this.freeFrames = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Creates a pool sized for an ImageReader, one buffer per image the reader can hold
+     * plus one for the frame being uploaded on the GLThread
+     */
+    public static FrameBufferPool forImageReader(int maxImages, PreviewInputMode inputMode) {
+        return new FrameBufferPool(maxImages + 1, inputMode == PreviewInputMode.YUV_PLANES);
+    }
+
+    static int nv21Size(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * @return a frame buffer of the given crop size, or null if every buffer is in flight
+     * in which case the caller should drop the camera frame
+     */
+    public synchronized PreviewFrame acquire(int width, int height) {
+        PreviewFrame frame = freeFrames.pollFirst();
+        if (frame != null && frame.hasSize(width, height)) {
+            framesInFlight++;
+            return frame;
+        }
+        //A stale sized frame is discarded and replaced
+        if (frame == null && framesInFlight >= capacity) {
+            return null;
+        }
+        framesInFlight++;
+        allocationCount++;
+        return new PreviewFrame(this, width, height, directBuffers);
+    }
+
+    synchronized void release(PreviewFrame frame) {
+        framesInFlight--;
+        if (freeFrames.size() < capacity) {
+            freeFrames.addFirst(frame);
+        }
+    }
+
+    public synchronized void clear() {
+        freeFrames.clear();
+    }
+
+    public boolean isDirect() {
+        return directBuffers;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getFramesInFlight() {
+        return framesInFlight;
+    }
+
+    public synchronized int getAllocationCount() {
+        return allocationCount;
+    }
+}
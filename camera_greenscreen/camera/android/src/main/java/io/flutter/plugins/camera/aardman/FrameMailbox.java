@@ -0,0 +1,71 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single slot, latest frame wins, hand-off of preview frames from the camera thread to the GLThread
+ *
+ * post and take are a single atomic swap so neither thread ever blocks the other. A frame
+ * posted before the previous one was taken replaces it, and the stale frame is released
+ * back to its pool, so the GLThread always uploads the most recent camera frame.
+ *
+ * Every posted frame is either taken or replaced exactly once:
+ * postedCount == takenCount + replacedCount + (a frame is waiting ? 1 : 0)
+ */
+public class FrameMailbox {
+
+    private final AtomicReference<PreviewFrame> slot = new AtomicReference<>();
+
+    private final AtomicLong postedCount = new AtomicLong();
+    private final AtomicLong takenCount = new AtomicLong();
+    private final AtomicLong replacedCount = new AtomicLong();
+
+    /**
+     * Called on the camera thread, the mailbox takes ownership of the frame
+     */
+    public void post(PreviewFrame frame) {
+        postedCount.incrementAndGet();
+        PreviewFrame stale = slot.getAndSet(frame);
+        if (stale != null) {
+            replacedCount.incrementAndGet();
+            stale.release();
+        }
+    }
+
+    /**
+     * Called on the GLThread, the caller takes ownership of the returned frame
+     *
+     * @return the latest frame or null if no frame arrived since the last call
+     */
+    public PreviewFrame take() {
+        PreviewFrame frame = slot.getAndSet(null);
+        if (frame != null) {
+            takenCount.incrementAndGet();
+        }
+        return frame;
+    }
+
+    /**
+     * Releases a frame that was posted but not taken
+     */
+    public void clear() {
+        PreviewFrame frame = slot.getAndSet(null);
+        if (frame != null) {
+            replacedCount.incrementAndGet();
+            frame.release();
+        }
+    }
+
+    public long getPostedCount() {
+        return postedCount.get();
+    }
+
+    public long getTakenCount() {
+        return takenCount.get();
+    }
+
+    public long getReplacedCount() {
+        return replacedCount.get();
+    }
+}
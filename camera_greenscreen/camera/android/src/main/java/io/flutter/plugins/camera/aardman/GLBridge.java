@@ -4,6 +4,8 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLExt;
 import android.opengl.GLUtils;
 import android.util.Log;
 import android.util.Size;
@@ -19,20 +21,61 @@ import javax.microedition.khronos.opengles.GL10;
 
 import jp.co.cyberagent.android.gpuimage.GPUImageNativeLibrary;
 
+/**
+ * The GLThread, its EGL context and the render loop of the preview
+ *
+ * The context outlives the Flutter texture it draws into, a new texture is attached on the
+ * GLThread with setOutputSurface while the compiled programs and textures of the worker are
+ * kept. Without an output the context is kept current on a 1x1 pbuffer and nothing is drawn.
+ */
 public class GLBridge implements Runnable {
     private static final String LOG_TAG = "EglBridge.GLWorker";
-    protected final SurfaceTexture flutterTexture;
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
     private EGL10 egl;
     private EGLDisplay eglDisplay;
-    private EGLContext eglContext;
-    private EGLSurface eglSurface;
+    private volatile EGLContext eglContext;
+    private EGLConfig eglConfig;
+    private EGLSurface eglSurface = EGL10.EGL_NO_SURFACE;
+    private EGLSurface placeholderSurface = EGL10.EGL_NO_SURFACE;
+
+    /**
+     * Flutter texture to draw into, requested from any thread and attached on the GLThread.
+     * The attached texture is published under outputLock so a caller can wait until the
+     * GLThread has let go of the previous texture before it is released.
+     */
+    private volatile SurfaceTexture requestedOutput;
+    private volatile long outputRequestNanos;
+    private SurfaceTexture output;
+    private boolean hasOutputSurface = false;
+    private final Object outputLock = new Object();
+    private SurfaceTexture attachedOutput;  //guarded by outputLock
 
     private GL10 gl = null;
 
-    private boolean running;
+    private volatile boolean running;
 
     private  GLWorker worker;
 
+    /**
+     * Parks the render loop until the worker has a new frame or parameter change to draw
+     */
+    private final RenderScheduler renderScheduler;
+
+    /**
+     * Records the eglSwapBuffers and end to end frame latency, may be null
+     */
+    private final PipelineStats pipelineStats;
+
+    /**
+     * Filtered video recording, the composited frame is drawn a second time into the encoder
+     * input surface. The recorder is requested from the platform thread and its window
+     * surface is attached and detached on the GLThread.
+     */
+    private volatile FilteredVideoRecorder requestedRecorder;
+    private FilteredVideoRecorder recorder;
+    private EGLSurface encoderSurface = EGL10.EGL_NO_SURFACE;
+    private long lastEncodedTimestampNanos = -1;
+
 
     /*********************************************************************************
      *                           Main run loop and helpers
@@ -44,15 +87,33 @@ public class GLBridge implements Runnable {
         initGL();
         worker.onCreate();
         Log.d(LOG_TAG, "OpenGL init OK.");
-        while (running) {
+        while (running && renderScheduler.awaitFrame()) {
+            updateOutput();
+            if (!hasOutputSurface) {
+                //no camera is bound, keep the context and its objects until one is
+                renderScheduler.onFrameSkipped();
+                continue;
+            }
+            updateRecorder();
             worker.onDrawFrame();
             //Swap from current eglSurface to display surface
+            long swapStartNanos = PipelineStats.now();
             if (!egl.eglSwapBuffers(eglDisplay, eglSurface)) {
                 Log.d(LOG_TAG, String.valueOf(egl.eglGetError()));
             }
+            if (pipelineStats != null) {
+                pipelineStats.onBuffersSwapped(swapStartNanos, PipelineStats.now());
+            }
+            drawEncoderFrame();
+            renderScheduler.onFrameRendered();
         }
+        detachRecorder();
         worker.onDispose();
         deinitGL();
+        synchronized (outputLock) {
+            attachedOutput = null;
+            outputLock.notifyAll();
+        }
     }
 
     /*********************************************************************************
@@ -60,9 +121,22 @@ public class GLBridge implements Runnable {
      *********************************************************************************/
 
     public GLBridge(SurfaceTexture flutterTexture,  GLWorker worker) {
-        this.flutterTexture = flutterTexture;
+        this(flutterTexture, worker, null);
+    }
+
+    /**
+     * @param flutterTexture the first output, or null to start without one
+     */
+    public GLBridge(SurfaceTexture flutterTexture,  GLWorker worker, PipelineStats pipelineStats) {
+        this.requestedOutput = flutterTexture;
+        this.outputRequestNanos = PipelineStats.now();
         this.running = true;
         this.worker = worker;
+        this.pipelineStats = pipelineStats;
+        this.renderScheduler = new RenderScheduler(Constants.DEFAULT_MAX_IDLE_REDRAW_INTERVAL_MS);
+        worker.setRenderScheduler(renderScheduler);
+        //attaches the first output without waiting for a camera frame
+        renderScheduler.requestRender();
 
         Thread thread = new Thread(this);
         thread.setName("GLThread");
@@ -81,17 +155,19 @@ public class GLBridge implements Runnable {
             throw new RuntimeException("eglInitialize failed");
         }
 
-        EGLConfig eglConfig = chooseEglConfig();
+        eglConfig = chooseEglConfig();
         eglContext = createContext(egl, eglDisplay, eglConfig);
 
-        eglSurface = egl.eglCreateWindowSurface(eglDisplay, eglConfig, flutterTexture, null);
-        if (eglSurface == null || eglSurface == EGL10.EGL_NO_SURFACE) {
-            throw new RuntimeException("GL Error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+        //keeps the context current while no output is attached, surfaceless if the config has no pbuffer
+        int[] placeholderAttribs = {EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE};
+        placeholderSurface = egl.eglCreatePbufferSurface(eglDisplay, eglConfig, placeholderAttribs);
+        if (placeholderSurface == null) {
+            placeholderSurface = EGL10.EGL_NO_SURFACE;
         }
-
-        if (!egl.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
-            throw new RuntimeException("GL make flutterOutputSurface current error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+        if (!egl.eglMakeCurrent(eglDisplay, placeholderSurface, placeholderSurface, eglContext)) {
+            throw new RuntimeException("GL make placeholder surface current error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
         }
+        eglSurface = placeholderSurface;
 
         /** Get GL for rendering */
         gl = (GL10) eglContext.getGL();
@@ -99,7 +175,13 @@ public class GLBridge implements Runnable {
 
     private void deinitGL() {
         egl.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
-        egl.eglDestroySurface(eglDisplay, eglSurface);
+        if (hasOutputSurface) {
+            egl.eglDestroySurface(eglDisplay, eglSurface);
+            hasOutputSurface = false;
+        }
+        if (placeholderSurface != EGL10.EGL_NO_SURFACE) {
+            egl.eglDestroySurface(eglDisplay, placeholderSurface);
+        }
         egl.eglDestroyContext(eglDisplay, eglContext);
         egl.eglTerminate(eglDisplay);
         Log.d(LOG_TAG, "OpenGL deinit OK.");
@@ -108,11 +190,193 @@ public class GLBridge implements Runnable {
     @Override
     protected void finalize() throws Throwable {
         super.finalize();
-        running = false;
+        onDispose();
     }
 
     public void onDispose() {
         running = false;
+        renderScheduler.stop();
+    }
+
+    /**
+     * Draws into the given Flutter texture from the next frame, or with null keeps the context
+     * and the worker's GL objects without drawing. The worker is told on the GLThread, before
+     * the first frame into the new texture.
+     *
+     * @param timeoutMs how long to wait for the GLThread to let go of the previous texture,
+     *                  0 to return straight away
+     */
+    public void setOutputSurface(SurfaceTexture flutterTexture, long timeoutMs) {
+        outputRequestNanos = PipelineStats.now();
+        requestedOutput = flutterTexture;
+        renderScheduler.requestRender();
+        if (timeoutMs <= 0) {
+            return;
+        }
+        long deadlineNanos = System.nanoTime() + timeoutMs * 1_000_000L;
+        synchronized (outputLock) {
+            while (running && attachedOutput != flutterTexture) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    Log.w(LOG_TAG, "Timed out waiting for the output surface to change");
+                    return;
+                }
+                try {
+                    outputLock.wait(remainingNanos / 1_000_000L, (int) (remainingNanos % 1_000_000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts or, with null, stops feeding the composited frames to a recorder. The previous
+     * recorder is told once its input surface has been detached.
+     */
+    public void setVideoRecorder(FilteredVideoRecorder recorder) {
+        FilteredVideoRecorder previous = requestedRecorder;
+        requestedRecorder = recorder;
+        if (!running) {
+            //the GLThread has stopped or is stopping and detaches whatever was attached
+            if (recorder != null) {
+                recorder.onVideoInputDetached();
+            }
+            return;
+        }
+        if (previous != recorder) {
+            renderScheduler.requestRender();
+        }
+    }
+
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
+    }
+
+    /**
+     * @return the preview context, for offscreen contexts that share its GL objects,
+     * null until the GLThread has initialised it
+     */
+    public EGLContext getEglContext() {
+        return eglContext;
+    }
+
+
+    /*********************************************************************************
+     *                          Output surface (GLThread)
+     *********************************************************************************/
+
+    private void updateOutput() {
+        SurfaceTexture requested = requestedOutput;
+        if (requested == output) {
+            return;
+        }
+        //the recording belongs to the camera drawing into the previous output
+        detachRecorder();
+        if (hasOutputSurface) {
+            egl.eglMakeCurrent(eglDisplay, placeholderSurface, placeholderSurface, eglContext);
+            egl.eglDestroySurface(eglDisplay, eglSurface);
+            eglSurface = placeholderSurface;
+            hasOutputSurface = false;
+        }
+        output = requested;
+        worker.onOutputChanged();
+
+        if (requested != null) {
+            EGLSurface surface = egl.eglCreateWindowSurface(eglDisplay, eglConfig, requested, null);
+            if (surface == null || surface == EGL10.EGL_NO_SURFACE) {
+                Log.e(LOG_TAG, "Output surface error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+            } else if (!egl.eglMakeCurrent(eglDisplay, surface, surface, eglContext)) {
+                Log.e(LOG_TAG, "Output surface make current error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+                egl.eglMakeCurrent(eglDisplay, placeholderSurface, placeholderSurface, eglContext);
+                egl.eglDestroySurface(eglDisplay, surface);
+            } else {
+                eglSurface = surface;
+                hasOutputSurface = true;
+                if (pipelineStats != null) {
+                    pipelineStats.record(PipelineStats.Stage.OUTPUT_BIND, outputRequestNanos, PipelineStats.now());
+                }
+            }
+        }
+        synchronized (outputLock) {
+            attachedOutput = requested;
+            outputLock.notifyAll();
+        }
+    }
+
+    /*********************************************************************************
+     *                       Filtered recording (GLThread)
+     *********************************************************************************/
+
+    private void updateRecorder() {
+        FilteredVideoRecorder requested = requestedRecorder;
+        if (requested == recorder) {
+            return;
+        }
+        detachRecorder();
+        if (requested == null) {
+            return;
+        }
+        recorder = requested;
+        lastEncodedTimestampNanos = -1;
+        encoderSurface = egl.eglCreateWindowSurface(eglDisplay, eglConfig, requested.getInputSurface(), null);
+        if (encoderSurface == null || encoderSurface == EGL10.EGL_NO_SURFACE) {
+            encoderSurface = EGL10.EGL_NO_SURFACE;
+            Log.e(LOG_TAG, "Encoder surface error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+            //nothing will be drawn, end the video stream so the recording can finish
+            requested.onVideoInputDetached();
+        }
+    }
+
+    private void detachRecorder() {
+        if (recorder == null) {
+            return;
+        }
+        if (encoderSurface != EGL10.EGL_NO_SURFACE) {
+            egl.eglDestroySurface(eglDisplay, encoderSurface);
+            encoderSurface = EGL10.EGL_NO_SURFACE;
+        }
+        recorder.onVideoInputDetached();
+        recorder = null;
+    }
+
+    /**
+     * Draws the frame just shown in the preview again into the encoder surface, only once per
+     * camera frame so idle and parameter redraws do not add frames to the recording.
+     * The presentation time is set through EGL14 on the current surface, EGL10 has no binding
+     * for eglPresentationTimeANDROID.
+     */
+    private void drawEncoderFrame() {
+        if (recorder == null || encoderSurface == EGL10.EGL_NO_SURFACE) {
+            return;
+        }
+        long timestampNanos = worker.getFrameTimestampNanos();
+        if (timestampNanos == lastEncodedTimestampNanos) {
+            return;
+        }
+        lastEncodedTimestampNanos = timestampNanos;
+        long presentationNanos = recorder.toPresentationNanos(timestampNanos);
+        if (presentationNanos < 0) {
+            return;
+        }
+
+        long startNanos = PipelineStats.now();
+        if (!egl.eglMakeCurrent(eglDisplay, encoderSurface, encoderSurface, eglContext)) {
+            Log.d(LOG_TAG, "Encoder surface make current error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+            return;
+        }
+        worker.onRedrawFrame();
+        EGLExt.eglPresentationTimeANDROID(EGL14.eglGetCurrentDisplay(), EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW), presentationNanos);
+        if (!egl.eglSwapBuffers(eglDisplay, encoderSurface)) {
+            Log.d(LOG_TAG, String.valueOf(egl.eglGetError()));
+        }
+        if (!egl.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
+            throw new RuntimeException("GL make flutterOutputSurface current error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+        }
+        if (pipelineStats != null) {
+            pipelineStats.record(PipelineStats.Stage.ENCODER_DRAW, startNanos, PipelineStats.now());
+        }
     }
 
 
@@ -126,10 +390,24 @@ public class GLBridge implements Runnable {
         return egl.eglCreateContext(eglDisplay, eglConfig, EGL10.EGL_NO_CONTEXT, attribList);
     }
 
+    /**
+     * Prefers a config that can also render into a MediaCodec input surface for recording,
+     * and one with pbuffers for the placeholder surface
+     */
     private EGLConfig chooseEglConfig() {
+        int[][] configSpecs = {getConfig(true, true), getConfig(false, true), getConfig(true, false), getConfig(false, false)};
+        for (int[] configSpec : configSpecs) {
+            EGLConfig config = chooseEglConfig(configSpec);
+            if (config != null) {
+                return config;
+            }
+        }
+        return null;
+    }
+
+    private EGLConfig chooseEglConfig(int[] configSpec) {
         int[] configsCount = new int[1];
         EGLConfig[] configs = new EGLConfig[1];
-        int[] configSpec = getConfig();
 
         if (!egl.eglChooseConfig(eglDisplay, configSpec, configs, 1, configsCount)) {
             throw new IllegalArgumentException("Failed to choose config: " + GLUtils.getEGLErrorString(egl.eglGetError()));
@@ -140,9 +418,10 @@ public class GLBridge implements Runnable {
         return null;
     }
 
-    private int[] getConfig() {
+    private int[] getConfig(boolean recordable, boolean pbuffer) {
         return new int[]{
                 EGL10.EGL_RENDERABLE_TYPE, 4,
+                EGL10.EGL_SURFACE_TYPE, pbuffer ? EGL10.EGL_WINDOW_BIT | EGL10.EGL_PBUFFER_BIT : EGL10.EGL_WINDOW_BIT,
                 EGL10.EGL_RED_SIZE, 8,
                 EGL10.EGL_GREEN_SIZE, 8,
                 EGL10.EGL_BLUE_SIZE, 8,
@@ -151,6 +430,7 @@ public class GLBridge implements Runnable {
                 EGL10.EGL_STENCIL_SIZE, 0,
                 EGL10.EGL_SAMPLE_BUFFERS, 1,
                 EGL10.EGL_SAMPLES, 4,
+                recordable ? EGL_RECORDABLE_ANDROID : EGL10.EGL_NONE, 1,
                 EGL10.EGL_NONE
         };
     }
@@ -10,4 +10,12 @@ interface GLWorker  {
     public void onCreate();
     public void onDispose();
     public void onDrawFrame();
+    //Draws the last frame again without taking new input, for a second output surface
+    public void onRedrawFrame();
+    //Sensor timestamp of the camera frame drawn by the last onDrawFrame
+    public long getFrameTimestampNanos();
+    //Used by the worker to wake the render loop when it has something new to draw
+    public void setRenderScheduler(RenderScheduler renderScheduler);
+    //The render loop now draws into another Flutter texture, or none, for another camera
+    public void onOutputChanged();
 }
@@ -0,0 +1,268 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Credit based delivery of startImageStream frames to Dart
+ *
+ * Dart is granted a number of credits, each frame sent takes one and Dart returns it by
+ * acknowledging the frame once it has been handled. Without a credit the image is closed
+ * as soon as it is acquired, so frames are dropped at the source instead of queueing up on
+ * the main thread.
+ *
+ * The frame maps, plane lists and plane byte arrays are pooled, the codec copies them when the
+ * event is sent so a frame goes back to the pool as soon as sink.success returns. Each frame
+ * carries its sequence number and the dropped and in flight counters.
+ *
+ * Camera images arrive on the camera background thread and analysis frames on the GLThread,
+ * events are sent on the main thread.
+ */
+public class ImageStreamTransport implements ImageReader.OnImageAvailableListener, AnalysisStream.FrameListener {
+
+    public static final int DEFAULT_CREDITS = 1;
+
+    /**
+     * Adds the capture result values of the latest frame to an event
+     */
+    public interface FrameMetadata {
+        void addTo(Map<String, Object> event);
+    }
+
+    private final Handler mainHandler;
+    private final FrameMetadata metadata;
+
+    private final Object lock = new Object();
+    //guarded by lock
+    private final ArrayDeque<PooledFrame> pool = new ArrayDeque<>();
+    private EventChannel.EventSink sink;
+    private int credits = DEFAULT_CREDITS;
+    private int inFlight = 0;
+    //incremented by start, frames of an earlier stream are not sent
+    private int generation = 0;
+    private long sequence = 0;
+    private long sentCount = 0;
+    private long droppedCount = 0;
+    private long acknowledgedCount = 0;
+
+    /**
+     * @param mainHandler handler of the thread events are sent on
+     * @param metadata    adds the capture result values to each event, may be null
+     */
+    public ImageStreamTransport(Handler mainHandler, FrameMetadata metadata) {
+        this.mainHandler = mainHandler;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Starts sending frames to the sink, with every credit available
+     *
+     * @param credits the most frames Dart can hold without acknowledging them
+     */
+    public void start(EventChannel.EventSink sink, int credits) {
+        synchronized (lock) {
+            this.sink = sink;
+            this.credits = Math.max(1, credits);
+            inFlight = 0;
+            generation++;
+        }
+    }
+
+    /**
+     * Stops sending, frames already posted to the main thread are discarded
+     */
+    public void stop() {
+        synchronized (lock) {
+            sink = null;
+            inFlight = 0;
+        }
+    }
+
+    /**
+     * Returns the credit of a frame Dart has handled
+     */
+    public void acknowledge() {
+        synchronized (lock) {
+            if (inFlight > 0) {
+                inFlight--;
+                acknowledgedCount++;
+            }
+        }
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image = reader.acquireNextImage();
+        if (image == null) {
+            return;
+        }
+        PooledFrame frame = takeFrame();
+        try {
+            if (frame != null) {
+                frame.fill(image);
+            }
+        } finally {
+            image.close();
+        }
+        if (frame != null) {
+            post(frame);
+        }
+    }
+
+    @Override
+    public boolean hasCredit() {
+        synchronized (lock) {
+            return sink != null && inFlight < credits;
+        }
+    }
+
+    /**
+     * Sends an RGBA analysis frame, its pixels are copied before this returns
+     */
+    @Override
+    public void onAnalysisFrame(ByteBuffer rgba, int width, int height) {
+        PooledFrame frame = takeFrame();
+        if (frame != null) {
+            frame.fill(rgba, width, height);
+            post(frame);
+        }
+    }
+
+    /**
+     * Takes a credit and a pooled frame for it
+     *
+     * @return the frame, or null if the frame is dropped
+     */
+    private PooledFrame takeFrame() {
+        synchronized (lock) {
+            if (sink == null || inFlight >= credits) {
+                droppedCount++;
+                return null;
+            }
+            PooledFrame frame = pool.poll();
+            if (frame == null) {
+                frame = new PooledFrame();
+            }
+            frame.generation = generation;
+            inFlight++;
+            frame.event.put("sequence", ++sequence);
+            frame.event.put("droppedFrames", droppedCount);
+            frame.event.put("inFlightFrames", inFlight);
+            return frame;
+        }
+    }
+
+    private void post(PooledFrame frame) {
+        if (metadata != null) {
+            metadata.addTo(frame.event);
+        }
+        mainHandler.post(frame.sender);
+    }
+
+    private void send(PooledFrame frame) {
+        EventChannel.EventSink target;
+        synchronized (lock) {
+            target = frame.generation == generation ? sink : null;
+        }
+        if (target != null) {
+            //encodes the event, the frame can be reused once this returns
+            target.success(frame.event);
+            synchronized (lock) {
+                sentCount++;
+            }
+        }
+        synchronized (lock) {
+            pool.push(frame);
+        }
+    }
+
+    public long getSentCount() {
+        synchronized (lock) {
+            return sentCount;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    public long getAcknowledgedCount() {
+        synchronized (lock) {
+            return acknowledgedCount;
+        }
+    }
+
+    public int getInFlightCount() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * The event of one frame, with its plane maps and byte arrays kept between frames
+     */
+    private final class PooledFrame {
+        final Map<String, Object> event = new HashMap<>();
+        final List<Map<String, Object>> planes = new ArrayList<>(3);
+        final Runnable sender = () -> send(this);
+        int generation;
+
+        PooledFrame() {
+            event.put("planes", planes);
+        }
+
+        void fill(Image image) {
+            Image.Plane[] imagePlanes = image.getPlanes();
+            setPlaneCount(imagePlanes.length);
+            for (int i = 0; i < imagePlanes.length; i++) {
+                Image.Plane plane = imagePlanes[i];
+                fillPlane(i, plane.getBuffer(), plane.getRowStride(), plane.getPixelStride());
+            }
+            event.put("width", image.getWidth());
+            event.put("height", image.getHeight());
+            event.put("format", image.getFormat());
+        }
+
+        void fill(ByteBuffer rgba, int width, int height) {
+            setPlaneCount(1);
+            fillPlane(0, rgba, width * 4, 4);
+            event.put("width", width);
+            event.put("height", height);
+            event.put("format", PixelFormat.RGBA_8888);
+        }
+
+        private void setPlaneCount(int count) {
+            while (planes.size() > count) {
+                planes.remove(planes.size() - 1);
+            }
+            while (planes.size() < count) {
+                planes.add(new HashMap<>());
+            }
+        }
+
+        private void fillPlane(int index, ByteBuffer buffer, int rowStride, int pixelStride) {
+            Map<String, Object> planeBuffer = planes.get(index);
+            byte[] bytes = (byte[]) planeBuffer.get("bytes");
+            if (bytes == null || bytes.length != buffer.remaining()) {
+                bytes = new byte[buffer.remaining()];
+                planeBuffer.put("bytes", bytes);
+            }
+            buffer.get(bytes, 0, bytes.length);
+            planeBuffer.put("bytesPerRow", rowStride);
+            planeBuffer.put("bytesPerPixel", pixelStride);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.media.ExifInterface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes encoded JPEG data to a file in one gathering FileChannel write
+ *
+ * The orientation is set in the same write. The 2 byte orientation value of the existing
+ * Exif IFD0 entry is replaced by writing the JPEG in three slices around it, or a minimal
+ * Exif segment is inserted after the SOI marker if the JPEG has none. The JPEG data itself
+ * is never copied, a camera JPEG plane can be written straight from its direct buffer.
+ *
+ * Only an Exif segment without an orientation entry falls back to rewriting the file with
+ * ExifInterface, camera JPEGs always carry the entry.
+ */
+public final class JpegWriter {
+
+    /**
+     * Leaves the orientation of the JPEG as it is
+     */
+    public static final int ORIENTATION_UNCHANGED = 0;
+
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int APP1 = 0xE1;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+    private static final byte[] EXIF_IDENTIFIER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private JpegWriter() {
+    }
+
+    /**
+     * @param jpeg        the encoded JPEG between its position and limit, left unchanged
+     * @param file        the file to write
+     * @param orientation an ExifInterface orientation or ORIENTATION_UNCHANGED
+     */
+    public static void write(@NonNull ByteBuffer jpeg, @NonNull File file, int orientation) throws IOException {
+        ByteBuffer source = jpeg.duplicate();
+        ByteBuffer[] slices;
+        boolean rewriteExif = false;
+
+        if (orientation == ORIENTATION_UNCHANGED) {
+            slices = new ByteBuffer[]{source};
+        } else {
+            OrientationEntry entry = findOrientation(source);
+            if (entry.valueOffset >= 0) {
+                slices = splice(source, entry.valueOffset, 2, orientationValue(orientation, entry.byteOrder));
+            } else if (entry.isJpeg && !entry.hasExifSegment) {
+                slices = splice(source, source.position() + 2, 0, exifSegment(orientation));
+            } else {
+                slices = new ByteBuffer[]{source};
+                rewriteExif = true;
+            }
+        }
+
+        long remaining = 0;
+        for (ByteBuffer slice : slices) {
+            remaining += slice.remaining();
+        }
+        try (FileOutputStream output = new FileOutputStream(file);
+             FileChannel channel = output.getChannel()) {
+            while (remaining > 0) {
+                remaining -= channel.write(slices);
+            }
+        }
+
+        if (rewriteExif) {
+            ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+            exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+            exif.saveAttributes();
+        }
+    }
+
+    /*********************************************************************************
+     *                               Exif parsing
+     *********************************************************************************/
+
+    /**
+     * Where the orientation entry of a JPEG is
+     */
+    @VisibleForTesting
+    static final class OrientationEntry {
+        //Starts with an SOI marker
+        boolean isJpeg;
+        //Has an Exif APP1 segment before the image data
+        boolean hasExifSegment;
+        //Absolute index of the 2 byte IFD0 orientation value, -1 if there is none
+        int valueOffset = -1;
+        ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * Walks the marker segments up to the image data looking for the first Exif APP1 segment,
+     * the buffer position and limit are not changed
+     */
+    @VisibleForTesting
+    static OrientationEntry findOrientation(ByteBuffer jpeg) {
+        OrientationEntry entry = new OrientationEntry();
+        int limit = jpeg.limit();
+        int p = jpeg.position();
+        if (limit - p < 4 || u8(jpeg, p) != MARKER_PREFIX || u8(jpeg, p + 1) != SOI) {
+            return entry;
+        }
+        entry.isJpeg = true;
+        p += 2;
+
+        while (p + 4 <= limit) {
+            if (u8(jpeg, p) != MARKER_PREFIX) {
+                return entry;
+            }
+            int marker = u8(jpeg, p + 1);
+            if (marker == MARKER_PREFIX) {
+                //fill byte
+                p++;
+                continue;
+            }
+            if (marker == SOS || marker == EOI) {
+                return entry;
+            }
+            int segmentEnd = p + 2 + u16(jpeg, p + 2, ByteOrder.BIG_ENDIAN);
+            if (segmentEnd > limit) {
+                return entry;
+            }
+            if (marker == APP1 && isExifSegment(jpeg, p + 4, segmentEnd)) {
+                entry.hasExifSegment = true;
+                findOrientationInTiff(jpeg, p + 4 + EXIF_IDENTIFIER.length, segmentEnd, entry);
+                return entry;
+            }
+            p = segmentEnd;
+        }
+        return entry;
+    }
+
+    private static boolean isExifSegment(ByteBuffer jpeg, int start, int end) {
+        if (end - start < EXIF_IDENTIFIER.length + 8) {
+            return false;
+        }
+        for (int i = 0; i < EXIF_IDENTIFIER.length; i++) {
+            if (jpeg.get(start + i) != EXIF_IDENTIFIER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void findOrientationInTiff(ByteBuffer jpeg, int tiff, int end, OrientationEntry entry) {
+        if (u8(jpeg, tiff) == 'I' && u8(jpeg, tiff + 1) == 'I') {
+            entry.byteOrder = ByteOrder.LITTLE_ENDIAN;
+        } else if (u8(jpeg, tiff) != 'M' || u8(jpeg, tiff + 1) != 'M') {
+            return;
+        }
+        long ifdOffset = u32(jpeg, tiff + 4, entry.byteOrder);
+        if (ifdOffset < 8 || tiff + ifdOffset + 2 > end) {
+            return;
+        }
+        int ifd = tiff + (int) ifdOffset;
+        int count = u16(jpeg, ifd, entry.byteOrder);
+        for (int i = 0; i < count; i++) {
+            int field = ifd + 2 + i * 12;
+            if (field + 12 > end) {
+                return;
+            }
+            if (u16(jpeg, field, entry.byteOrder) == TAG_ORIENTATION) {
+                if (u16(jpeg, field + 2, entry.byteOrder) == TYPE_SHORT
+                        && u32(jpeg, field + 4, entry.byteOrder) == 1) {
+                    //a single SHORT is stored left aligned in the value field
+                    entry.valueOffset = field + 8;
+                }
+                return;
+            }
+        }
+    }
+
+    /*********************************************************************************
+     *                                  Helpers
+     *********************************************************************************/
+
+    /**
+     * @return the source split at offset with skip bytes replaced by insert, as slices that
+     * share the source content
+     */
+    private static ByteBuffer[] splice(ByteBuffer source, int offset, int skip, ByteBuffer insert) {
+        ByteBuffer head = source.duplicate();
+        head.limit(offset);
+        ByteBuffer tail = source.duplicate();
+        tail.position(offset + skip);
+        return new ByteBuffer[]{head, insert, tail};
+    }
+
+    private static ByteBuffer orientationValue(int orientation, ByteOrder byteOrder) {
+        ByteBuffer value = ByteBuffer.allocate(2).order(byteOrder);
+        value.putShort(0, (short) orientation);
+        return value;
+    }
+
+    /**
+     * @return an APP1 segment holding an Exif IFD0 with only the orientation entry
+     */
+    @VisibleForTesting
+    static ByteBuffer exifSegment(int orientation) {
+        //identifier, TIFF header, entry count, one entry and the next IFD offset
+        int length = 2 + EXIF_IDENTIFIER.length + 8 + 2 + 12 + 4;
+        ByteBuffer segment = ByteBuffer.allocate(2 + length).order(ByteOrder.BIG_ENDIAN);
+        segment.put((byte) MARKER_PREFIX).put((byte) APP1).putShort((short) length);
+        segment.put(EXIF_IDENTIFIER);
+        segment.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+        segment.putShort((short) 1);
+        segment.putShort((short) TAG_ORIENTATION).putShort((short) TYPE_SHORT).putInt(1);
+        segment.putShort((short) orientation).putShort((short) 0);
+        segment.putInt(0);
+        segment.flip();
+        return segment;
+    }
+
+    private static int u8(ByteBuffer buffer, int index) {
+        return buffer.get(index) & 0xFF;
+    }
+
+    private static int u16(ByteBuffer buffer, int index, ByteOrder byteOrder) {
+        int a = u8(buffer, index);
+        int b = u8(buffer, index + 1);
+        return byteOrder == ByteOrder.BIG_ENDIAN ? (a << 8) | b : (b << 8) | a;
+    }
+
+    private static long u32(ByteBuffer buffer, int index, ByteOrder byteOrder) {
+        long high = u16(buffer, index, byteOrder);
+        long low = u16(buffer, index + 2, byteOrder);
+        return byteOrder == ByteOrder.BIG_ENDIAN ? (high << 16) | low : (low << 16) | high;
+    }
+}
@@ -0,0 +1,140 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+
+/**
+ * Renders the key matte of the chroma filter instead of the composite
+ *
+ * The distance to the key colour is computed as in GPUImageChromaKeyBlendFilter, the output is
+ * the weight of the camera frame in the blend, white where the frame is kept and black where
+ * the background replaces it. The setters can be called from any thread, as in GPUImageFilter
+ * the uniforms are updated on the next draw. Built with an ExternalInput the camera frame is
+ * sampled from the CameraSurfaceTexture, as in OrientedChromaKeyBlendFilter.
+ */
+public class KeyMatteFilter extends GPUImageFilter {
+
+    public static final String KEY_MATTE_FRAGMENT_SHADER = "" +
+            "precision highp float;\n" +
+            "\n" +
+            "varying highp vec2 textureCoordinate;\n" +
+            "\n" +
+            "uniform float thresholdSensitivity;\n" +
+            "uniform float smoothing;\n" +
+            "uniform vec3 colorToReplace;\n" +
+            "uniform sampler2D inputImageTexture;\n" +
+            "\n" +
+            "void main()\n" +
+            "{\n" +
+            "    vec4 textureColor = texture2D(inputImageTexture, textureCoordinate);\n" +
+            "\n" +
+            "    float maskY = 0.2989 * colorToReplace.r + 0.5866 * colorToReplace.g + 0.1145 * colorToReplace.b;\n" +
+            "    float maskCr = 0.7132 * (colorToReplace.r - maskY);\n" +
+            "    float maskCb = 0.5647 * (colorToReplace.b - maskY);\n" +
+            "\n" +
+            "    float Y = 0.2989 * textureColor.r + 0.5866 * textureColor.g + 0.1145 * textureColor.b;\n" +
+            "    float Cr = 0.7132 * (textureColor.r - Y);\n" +
+            "    float Cb = 0.5647 * (textureColor.b - Y);\n" +
+            "\n" +
+            "    float kept = smoothstep(thresholdSensitivity, thresholdSensitivity + smoothing, distance(vec2(Cr, Cb), vec2(maskCr, maskCb)));\n" +
+            "    gl_FragColor = vec4(vec3(kept), 1.0);\n" +
+            "}";
+
+    //GPUImageChromaKeyBlendFilter defaults, so that an unset parameter keys the same in both
+    private float thresholdSensitivity = 0.4f;
+    private float smoothing = 0.1f;
+    private float[] colorToReplace = Constants.DEFAULT_COLOUR;
+
+    private int thresholdSensitivityLocation;
+    private int smoothingLocation;
+    private int colorToReplaceLocation;
+
+    //null when the frame is the GL_TEXTURE_2D passed to onDraw
+    private final ExternalInput externalInput;
+    private int inputTransformLocation;
+
+    public KeyMatteFilter() {
+        this(null);
+    }
+
+    public KeyMatteFilter(ExternalInput externalInput) {
+        super(externalInput == null ? NO_FILTER_VERTEX_SHADER : ExternalInput.VERTEX_SHADER,
+                externalInput == null ? KEY_MATTE_FRAGMENT_SHADER : ExternalInput.fragmentShader(KEY_MATTE_FRAGMENT_SHADER));
+        this.externalInput = externalInput;
+    }
+
+    public boolean hasExternalInput() {
+        return externalInput != null;
+    }
+
+    @Override
+    public void onInit() {
+        super.onInit();
+        thresholdSensitivityLocation = GLES20.glGetUniformLocation(getProgram(), "thresholdSensitivity");
+        smoothingLocation = GLES20.glGetUniformLocation(getProgram(), "smoothing");
+        colorToReplaceLocation = GLES20.glGetUniformLocation(getProgram(), "colorToReplace");
+        if (externalInput != null) {
+            inputTransformLocation = GLES20.glGetUniformLocation(getProgram(), ExternalInput.TRANSFORM_UNIFORM);
+        }
+    }
+
+    @Override
+    public void onInitialized() {
+        super.onInitialized();
+        setThresholdSensitivity(thresholdSensitivity);
+        setSmoothing(smoothing);
+        setColorToReplace(colorToReplace[0], colorToReplace[1], colorToReplace[2]);
+    }
+
+    /**
+     * Takes the colour and sensitivity of the parameters that are set
+     */
+    public void setParameters(FilterParameters parameters) {
+        setParameters(parameters, FilterParameters.ALL_FIELDS);
+    }
+
+    /**
+     * Takes the colour and sensitivity of the parameters that are set and among fields
+     */
+    public void setParameters(FilterParameters parameters, int fields) {
+        float[] colour = parameters.getColorToReplace();
+        if ((fields & FilterParameters.COLOUR) != 0 && colour != null) {
+            setColorToReplace(colour[0], colour[1], colour[2]);
+        }
+        if ((fields & FilterParameters.SENSITIVITY) != 0 && parameters.getSensitivity() != Constants.FLOAT_NOT_SET) {
+            setThresholdSensitivity(parameters.getSensitivity());
+        }
+    }
+
+    public void setThresholdSensitivity(float thresholdSensitivity) {
+        this.thresholdSensitivity = thresholdSensitivity;
+        setFloat(thresholdSensitivityLocation, thresholdSensitivity);
+    }
+
+    public void setSmoothing(float smoothing) {
+        this.smoothing = smoothing;
+        setFloat(smoothingLocation, smoothing);
+    }
+
+    public void setColorToReplace(float red, float green, float blue) {
+        colorToReplace = new float[]{red, green, blue};
+        setFloatVec3(colorToReplaceLocation, colorToReplace);
+    }
+
+    @Override
+    public void onDraw(int textureId, FloatBuffer cubeBuffer, FloatBuffer textureBuffer) {
+        super.onDraw(externalInput == null ? textureId : OpenGlUtils.NO_TEXTURE, cubeBuffer, textureBuffer);
+    }
+
+    @Override
+    protected void onDrawArraysPre() {
+        super.onDrawArraysPre();
+        if (externalInput != null) {
+            externalInput.bind(inputTransformLocation);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free ring buffer of the most recent latency samples of one pipeline stage
+ *
+ * record is wait free and allocation free so it can be called on the camera and GL threads
+ * for every frame, percentiles are computed from a copy of the ring when stats are requested
+ */
+public class LatencyHistogram {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final int mask;
+
+    /**
+     * @param capacity number of recent samples kept, rounded up to a power of two
+     */
+    public LatencyHistogram(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        samples = new AtomicLongArray(size);
+        mask = size - 1;
+    }
+
+    public void record(long latencyNanos) {
+        long index = writeIndex.getAndIncrement();
+        samples.set((int) (index & mask), latencyNanos);
+    }
+
+    /**
+     * @return the total number of samples recorded, including those overwritten
+     */
+    public long getCount() {
+        return writeIndex.get();
+    }
+
+    /**
+     * @param percentiles values between 0 and 100
+     * @return the latency in nanoseconds at each percentile of the retained samples,
+     * all zero if nothing was recorded yet
+     */
+    public long[] getPercentiles(double... percentiles) {
+        int retained = (int) Math.min(writeIndex.get(), samples.length());
+        long[] sorted = new long[retained];
+        for (int i = 0; i < retained; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+
+        long[] result = new long[percentiles.length];
+        if (retained == 0) {
+            return result;
+        }
+        for (int i = 0; i < percentiles.length; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100.0 * retained) - 1;
+            result[i] = sorted[Math.max(0, Math.min(retained - 1, rank))];
+        }
+        return result;
+    }
+
+    public void reset() {
+        writeIndex.set(0);
+    }
+}
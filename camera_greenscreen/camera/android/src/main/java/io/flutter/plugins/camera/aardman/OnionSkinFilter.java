@@ -0,0 +1,89 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.opengl.GLES20;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+
+/**
+ * Blends up to MAX_LAYERS onion skin layers over the preview in a single pass
+ *
+ * The layers are mixed oldest first, each with its own opacity, and the result is output
+ * premultiplied with the coverage of all layers as its alpha. Drawn over the preview with
+ * glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA) this is the same as mixing each layer into the
+ * preview in turn. Layer 0, the most recent capture, is the input texture of the filter.
+ *
+ * The opacities are a single vec4 uniform, set on the next draw as in GPUImageFilter,
+ * so changing them is only a uniform update.
+ */
+public class OnionSkinFilter extends GPUImageFilter {
+
+    public static final int MAX_LAYERS = 4;
+
+    //Texture units of layers 1 to 3, unit 0 holds layer 0
+    private static final int FIRST_LAYER_UNIT = 4;
+
+    public static final String ONION_SKIN_FRAGMENT_SHADER = "" +
+            "varying highp vec2 textureCoordinate;\n" +
+            "\n" +
+            "uniform sampler2D inputImageTexture;\n" +
+            "uniform sampler2D layerTexture1;\n" +
+            "uniform sampler2D layerTexture2;\n" +
+            "uniform sampler2D layerTexture3;\n" +
+            "uniform lowp vec4 opacities;\n" +
+            "\n" +
+            "void main()\n" +
+            "{\n" +
+            "    lowp vec3 colour = texture2D(layerTexture3, textureCoordinate).rgb * opacities.w;\n" +
+            "    colour = colour * (1.0 - opacities.z) + texture2D(layerTexture2, textureCoordinate).rgb * opacities.z;\n" +
+            "    colour = colour * (1.0 - opacities.y) + texture2D(layerTexture1, textureCoordinate).rgb * opacities.y;\n" +
+            "    colour = colour * (1.0 - opacities.x) + texture2D(inputImageTexture, textureCoordinate).rgb * opacities.x;\n" +
+            "\n" +
+            "    lowp vec4 transparency = vec4(1.0) - opacities;\n" +
+            "    gl_FragColor = vec4(colour, 1.0 - transparency.x * transparency.y * transparency.z * transparency.w);\n" +
+            "}";
+
+    private final int[] layerTextureUniforms = new int[MAX_LAYERS];
+    private final int[] layerTextureIds = new int[MAX_LAYERS];
+    private int opacitiesUniform;
+
+    public OnionSkinFilter() {
+        super(NO_FILTER_VERTEX_SHADER, ONION_SKIN_FRAGMENT_SHADER);
+    }
+
+    @Override
+    public void onInit() {
+        super.onInit();
+        for (int i = 1; i < MAX_LAYERS; i++) {
+            layerTextureUniforms[i] = GLES20.glGetUniformLocation(getProgram(), "layerTexture" + i);
+        }
+        opacitiesUniform = GLES20.glGetUniformLocation(getProgram(), "opacities");
+    }
+
+    /**
+     * GLThread, the textures of the layers after layer 0, a layer without a texture must have
+     * an opacity of 0 and any valid texture in its place
+     */
+    void setLayerTextures(int[] textureIds) {
+        System.arraycopy(textureIds, 0, layerTextureIds, 0, MAX_LAYERS);
+    }
+
+    /**
+     * @param opacities of the layers, most recent first, missing layers are transparent
+     */
+    public void setOpacities(float[] opacities) {
+        float[] vector = new float[MAX_LAYERS];
+        for (int i = 0; i < MAX_LAYERS && i < opacities.length; i++) {
+            vector[i] = Math.max(0f, Math.min(1f, opacities[i]));
+        }
+        setFloatVec4(opacitiesUniform, vector);
+    }
+
+    @Override
+    protected void onDrawArraysPre() {
+        for (int i = 1; i < MAX_LAYERS; i++) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + FIRST_LAYER_UNIT + i - 1);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, layerTextureIds[i]);
+            GLES20.glUniform1i(layerTextureUniforms[i], FIRST_LAYER_UNIT + i - 1);
+        }
+    }
+}
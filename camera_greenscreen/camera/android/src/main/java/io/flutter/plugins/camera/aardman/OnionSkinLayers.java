@@ -0,0 +1,328 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+
+/**
+ * The last captured composites, kept on the GPU as downscaled textures for onion skinning
+ *
+ * Each capture is center cropped to the aspect of the preview frame and scaled down to the
+ * layer size on the capture thread, then uploaded once on the GLThread into the texture of the
+ * oldest layer. The layer textures are allocated once at the layer size, which is chosen so
+ * that all the layers fit in the byte budget, so texture memory never grows with captures.
+ * At most one scaled capture waits for its upload, a newer capture replaces it.
+ *
+ * The layers are drawn over the preview by an OnionSkinFilter, changing the opacities only
+ * updates its uniform.
+ */
+public class OnionSkinLayers {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int capacity;
+    private final int layerWidth;
+    private final int layerHeight;
+    private final PipelineStats pipelineStats;
+
+    /**
+     * Set on any thread, picked up by the GLThread
+     */
+    private volatile float[] opacities = new float[0];
+    private volatile boolean opacitiesChanged = true;
+    private volatile boolean clearRequested = false;
+    private Bitmap pendingCapture;  //guarded by this
+
+    /**
+     * GLThread only
+     */
+    private OnionSkinFilter filter;
+    private final int[] textureIds = new int[OnionSkinFilter.MAX_LAYERS];
+    private final int[] layerTextureIds = new int[OnionSkinFilter.MAX_LAYERS];
+    //slot of the most recent capture and how many slots hold a capture
+    private int newestSlot = -1;
+    private int layerCount = 0;
+    private volatile long uploadedCount = 0;
+
+    /**
+     * @param frameWidth  preview frame width, the layers keep its aspect
+     * @param frameHeight preview frame height
+     * @param maxLayers   the most captures kept, up to OnionSkinFilter.MAX_LAYERS
+     * @param maxBytes    the most texture memory used by all the layers
+     */
+    public OnionSkinLayers(int frameWidth, int frameHeight, int maxLayers, long maxBytes, PipelineStats pipelineStats) {
+        this.capacity = Math.max(1, Math.min(OnionSkinFilter.MAX_LAYERS, maxLayers));
+        int[] size = layerSize(frameWidth, frameHeight, capacity, maxBytes);
+        this.layerWidth = size[0];
+        this.layerHeight = size[1];
+        this.pipelineStats = pipelineStats;
+        for (int i = 0; i < textureIds.length; i++) {
+            textureIds[i] = OpenGlUtils.NO_TEXTURE;
+        }
+    }
+
+    /**
+     * @return the frame size halved until the given number of RGBA layers fit in maxBytes
+     */
+    static int[] layerSize(int frameWidth, int frameHeight, int layers, long maxBytes) {
+        int width = frameWidth;
+        int height = frameHeight;
+        while ((long) width * height * BYTES_PER_PIXEL * layers > maxBytes && width > 1 && height > 1) {
+            width /= 2;
+            height /= 2;
+        }
+        return new int[]{width, height};
+    }
+
+    /**
+     * @return {left, top, width, height} of the largest centered part of the source with the
+     * aspect of the target
+     */
+    static int[] centerCrop(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        if ((long) sourceWidth * targetHeight > (long) sourceHeight * targetWidth) {
+            int width = (int) ((long) sourceHeight * targetWidth / targetHeight);
+            return new int[]{(sourceWidth - width) / 2, 0, width, sourceHeight};
+        }
+        int height = (int) ((long) sourceWidth * targetHeight / targetWidth);
+        return new int[]{0, (sourceHeight - height) / 2, sourceWidth, height};
+    }
+
+    /*********************************************************************************
+     *                              Capture thread
+     *********************************************************************************/
+
+    /**
+     * Scales a captured composite to the layer size for upload, the capture is not kept
+     */
+    public void addCapture(Bitmap capture) {
+        if (capture == null || capture.isRecycled()) {
+            return;
+        }
+        offer(scale(capture));
+    }
+
+    /**
+     * Decodes an unfiltered JPEG capture at the smallest size that covers a layer
+     */
+    public void addCapture(byte[] jpeg, int length) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= layerWidth && options.outHeight / (sampleSize * 2) >= layerHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, length, options);
+        if (decoded == null) {
+            return;
+        }
+        offer(scale(decoded));
+        decoded.recycle();
+    }
+
+    /**
+     * @see #addCapture(byte[], int)
+     */
+    public void addCapture(ByteBuffer jpeg) {
+        byte[] bytes = new byte[jpeg.remaining()];
+        jpeg.duplicate().get(bytes);
+        addCapture(bytes, bytes.length);
+    }
+
+    private Bitmap scale(Bitmap capture) {
+        long startNanos = PipelineStats.now();
+        int[] crop = centerCrop(capture.getWidth(), capture.getHeight(), layerWidth, layerHeight);
+        Bitmap layer = Bitmap.createBitmap(layerWidth, layerHeight, Bitmap.Config.ARGB_8888);
+        new Canvas(layer).drawBitmap(capture,
+                new Rect(crop[0], crop[1], crop[0] + crop[2], crop[1] + crop[3]),
+                new Rect(0, 0, layerWidth, layerHeight),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        if (pipelineStats != null) {
+            pipelineStats.record(PipelineStats.Stage.ONION_SKIN_SCALE, startNanos, PipelineStats.now());
+        }
+        return layer;
+    }
+
+    private synchronized void offer(Bitmap layer) {
+        if (pendingCapture != null) {
+            pendingCapture.recycle();
+        }
+        pendingCapture = layer;
+    }
+
+    private synchronized Bitmap takePendingCapture() {
+        Bitmap capture = pendingCapture;
+        pendingCapture = null;
+        return capture;
+    }
+
+    /*********************************************************************************
+     *                                 Any thread
+     *********************************************************************************/
+
+    /**
+     * @param opacities of the most recent captures, most recent first
+     */
+    public void setOpacities(float[] opacities) {
+        this.opacities = opacities.clone();
+        opacitiesChanged = true;
+    }
+
+    /**
+     * Forgets the captures, for a new shot, the textures are kept for the next captures
+     */
+    public void clear() {
+        takePendingCaptureAndRecycle();
+        clearRequested = true;
+    }
+
+    private void takePendingCaptureAndRecycle() {
+        Bitmap pending = takePendingCapture();
+        if (pending != null) {
+            pending.recycle();
+        }
+    }
+
+    /*********************************************************************************
+     *                                  GLThread
+     *********************************************************************************/
+
+    /**
+     * Uploads a waiting capture and draws the layers over the current framebuffer
+     */
+    void draw(FloatBuffer cubeBuffer, FloatBuffer textureBuffer) {
+        if (filter == null) {
+            filter = new OnionSkinFilter();
+            filter.ifNeedInit();
+        }
+        if (clearRequested) {
+            clearRequested = false;
+            layerCount = 0;
+        }
+        Bitmap capture = takePendingCapture();
+        if (capture != null) {
+            upload(capture);
+            capture.recycle();
+        }
+
+        float[] layerOpacities = opacities;
+        if (opacitiesChanged) {
+            opacitiesChanged = false;
+            filter.setOpacities(visibleOpacities(layerOpacities, layerCount));
+        }
+        if (layerCount == 0 || !anyVisible(layerOpacities, layerCount)) {
+            return;
+        }
+
+        //layer i is the i-th most recent capture, missing layers sample the newest at opacity 0
+        for (int i = 0; i < OnionSkinFilter.MAX_LAYERS; i++) {
+            int slot = i < layerCount ? (newestSlot - i + capacity) % capacity : newestSlot;
+            layerTextureIds[i] = textureIds[slot];
+        }
+        filter.setLayerTextures(layerTextureIds);
+
+        long startNanos = PipelineStats.now();
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        filter.onDraw(layerTextureIds[0], cubeBuffer, textureBuffer);
+        GLES20.glDisable(GLES20.GL_BLEND);
+        if (pipelineStats != null) {
+            pipelineStats.record(PipelineStats.Stage.ONION_SKIN_DRAW, startNanos, PipelineStats.now());
+        }
+    }
+
+    private void upload(Bitmap capture) {
+        long startNanos = PipelineStats.now();
+        int slot = (newestSlot + 1) % capacity;
+        if (textureIds[slot] == OpenGlUtils.NO_TEXTURE) {
+            textureIds[slot] = OpenGlUtils.loadTexture(capture, OpenGlUtils.NO_TEXTURE, false);
+        } else {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureIds[slot]);
+            GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, capture);
+        }
+        newestSlot = slot;
+        layerCount = Math.min(capacity, layerCount + 1);
+        uploadedCount++;
+        //the opacities apply to different captures now
+        opacitiesChanged = true;
+        if (pipelineStats != null) {
+            pipelineStats.record(PipelineStats.Stage.ONION_SKIN_UPLOAD, startNanos, PipelineStats.now());
+        }
+    }
+
+    /**
+     * @return the opacities of the layers holding a capture, 0 for the others
+     */
+    static float[] visibleOpacities(float[] opacities, int layerCount) {
+        float[] visible = new float[OnionSkinFilter.MAX_LAYERS];
+        for (int i = 0; i < layerCount && i < opacities.length && i < visible.length; i++) {
+            visible[i] = opacities[i];
+        }
+        return visible;
+    }
+
+    private static boolean anyVisible(float[] opacities, int layerCount) {
+        for (float opacity : visibleOpacities(opacities, layerCount)) {
+            if (opacity > 0f) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void release() {
+        takePendingCaptureAndRecycle();
+        for (int i = 0; i < textureIds.length; i++) {
+            if (textureIds[i] != OpenGlUtils.NO_TEXTURE) {
+                GLES20.glDeleteTextures(1, new int[]{textureIds[i]}, 0);
+                textureIds[i] = OpenGlUtils.NO_TEXTURE;
+            }
+        }
+        if (filter != null) {
+            filter.destroy();
+            filter = null;
+        }
+        layerCount = 0;
+        newestSlot = -1;
+    }
+
+    /*********************************************************************************
+     *                                 Diagnostics
+     *********************************************************************************/
+
+    public int getLayerWidth() {
+        return layerWidth;
+    }
+
+    public int getLayerHeight() {
+        return layerHeight;
+    }
+
+    /**
+     * @return the texture memory of the layers once every layer holds a capture
+     */
+    public long getMaxTextureBytes() {
+        return (long) layerWidth * layerHeight * BYTES_PER_PIXEL * capacity;
+    }
+
+    /**
+     * @return captures uploaded so far, each capture is uploaded once
+     */
+    public long getUploadedCount() {
+        return uploadedCount;
+    }
+}
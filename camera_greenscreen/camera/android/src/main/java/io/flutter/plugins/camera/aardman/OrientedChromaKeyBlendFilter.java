@@ -0,0 +1,161 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageChromaKeyBlendFilter;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageTwoInputFilter;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+
+/**
+ * Chroma key blend whose background is sampled through its own texture coordinates
+ *
+ * GPUImageTwoInputFilter only rotates the second texture by a Rotation, here the coordinates
+ * can also crop it, so one prepared background serves both orientations of the preview.
+ * Without coordinates the background is sampled as in GPUImageTwoInputFilter.
+ *
+ * The key is the GPUImageChromaKeyBlendFilter shader, whose shaders cannot be replaced, so its
+ * uniforms are set here. Built with an ExternalInput the camera frame is sampled from the
+ * CameraSurfaceTexture instead of the texture passed to onDraw.
+ */
+public class OrientedChromaKeyBlendFilter extends GPUImageTwoInputFilter {
+
+    //The GPUImageTwoInputFilter vertex shader, which it does not expose
+    static final String TWO_INPUT_VERTEX_SHADER = "" +
+            "attribute vec4 position;\n" +
+            "attribute vec4 inputTextureCoordinate;\n" +
+            "attribute vec4 inputTextureCoordinate2;\n" +
+            "\n" +
+            "varying vec2 textureCoordinate;\n" +
+            "varying vec2 textureCoordinate2;\n" +
+            "\n" +
+            "void main()\n" +
+            "{\n" +
+            "    gl_Position = position;\n" +
+            "    textureCoordinate = inputTextureCoordinate.xy;\n" +
+            "    textureCoordinate2 = inputTextureCoordinate2.xy;\n" +
+            "}";
+
+    //GPUImageChromaKeyBlendFilter defaults
+    private float thresholdSensitivity = 0.4f;
+    private float smoothing = 0.1f;
+    private float[] colorToReplace = new float[]{0.0f, 1.0f, 0.0f};
+
+    private int thresholdSensitivityLocation;
+    private int smoothingLocation;
+    private int colorToReplaceLocation;
+    private int backgroundCoordinateAttribute;
+
+    //Replaced whole on any thread, read by the next draw
+    private volatile FloatBuffer backgroundCoordinates;
+
+    //null when the frame is the GL_TEXTURE_2D passed to onDraw
+    private final ExternalInput externalInput;
+    private int inputTransformLocation;
+
+    public OrientedChromaKeyBlendFilter() {
+        this(null);
+    }
+
+    /**
+     * @param externalInput the camera frame to sample, null to sample the texture passed to onDraw
+     */
+    public OrientedChromaKeyBlendFilter(ExternalInput externalInput) {
+        super(externalInput == null ? TWO_INPUT_VERTEX_SHADER : ExternalInput.TWO_INPUT_VERTEX_SHADER,
+                externalInput == null ? GPUImageChromaKeyBlendFilter.CHROMA_KEY_BLEND_FRAGMENT_SHADER
+                        : ExternalInput.fragmentShader(GPUImageChromaKeyBlendFilter.CHROMA_KEY_BLEND_FRAGMENT_SHADER));
+        this.externalInput = externalInput;
+    }
+
+    public boolean hasExternalInput() {
+        return externalInput != null;
+    }
+
+    @Override
+    public void onInit() {
+        super.onInit();
+        thresholdSensitivityLocation = GLES20.glGetUniformLocation(getProgram(), "thresholdSensitivity");
+        smoothingLocation = GLES20.glGetUniformLocation(getProgram(), "smoothing");
+        colorToReplaceLocation = GLES20.glGetUniformLocation(getProgram(), "colorToReplace");
+        backgroundCoordinateAttribute = GLES20.glGetAttribLocation(getProgram(), "inputTextureCoordinate2");
+        if (externalInput != null) {
+            inputTransformLocation = GLES20.glGetUniformLocation(getProgram(), ExternalInput.TRANSFORM_UNIFORM);
+        }
+    }
+
+    @Override
+    public void onInitialized() {
+        super.onInitialized();
+        setSmoothing(smoothing);
+        setThresholdSensitivity(thresholdSensitivity);
+        setColorToReplace(colorToReplace[0], colorToReplace[1], colorToReplace[2]);
+    }
+
+    /**
+     * Takes the colour and sensitivity of the parameters that are set and among fields, the
+     * uniforms are written on the next draw
+     */
+    public void setParameters(FilterParameters parameters, int fields) {
+        float[] colour = parameters.getColorToReplace();
+        if ((fields & FilterParameters.COLOUR) != 0 && colour != null) {
+            setColorToReplace(colour[0], colour[1], colour[2]);
+        }
+        if ((fields & FilterParameters.SENSITIVITY) != 0 && parameters.getSensitivity() != Constants.FLOAT_NOT_SET) {
+            setThresholdSensitivity(parameters.getSensitivity());
+        }
+    }
+
+    public void setThresholdSensitivity(float thresholdSensitivity) {
+        this.thresholdSensitivity = thresholdSensitivity;
+        setFloat(thresholdSensitivityLocation, thresholdSensitivity);
+    }
+
+    public void setSmoothing(float smoothing) {
+        this.smoothing = smoothing;
+        setFloat(smoothingLocation, smoothing);
+    }
+
+    public void setColorToReplace(float red, float green, float blue) {
+        colorToReplace = new float[]{red, green, blue};
+        setFloatVec3(colorToReplaceLocation, colorToReplace);
+    }
+
+    /**
+     * @param coordinates of the background at each vertex of the quad, in the order of its
+     *                    texture coordinates, null to sample it as in GPUImageTwoInputFilter
+     */
+    public void setBackgroundCoordinates(float[] coordinates) {
+        if (coordinates == null) {
+            backgroundCoordinates = null;
+            return;
+        }
+        FloatBuffer buffer = ByteBuffer.allocateDirect(coordinates.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(coordinates).position(0);
+        backgroundCoordinates = buffer;
+    }
+
+    @Override
+    public void onDraw(int textureId, FloatBuffer cubeBuffer, FloatBuffer textureBuffer) {
+        //an external frame is bound in onDrawArraysPre, GPUImageFilter only binds GL_TEXTURE_2D
+        super.onDraw(externalInput == null ? textureId : OpenGlUtils.NO_TEXTURE, cubeBuffer, textureBuffer);
+    }
+
+    @Override
+    protected void onDrawArraysPre() {
+        super.onDrawArraysPre();
+        FloatBuffer coordinates = backgroundCoordinates;
+        if (coordinates != null) {
+            //replaces the attribute pointer set by GPUImageTwoInputFilter
+            coordinates.position(0);
+            GLES20.glVertexAttribPointer(backgroundCoordinateAttribute, 2, GLES20.GL_FLOAT, false, 0, coordinates);
+        }
+        if (externalInput != null) {
+            externalInput.bind(inputTransformLocation);
+        }
+    }
+}
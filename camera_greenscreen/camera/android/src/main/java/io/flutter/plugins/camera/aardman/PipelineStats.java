@@ -0,0 +1,155 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per stage latency of the preview pipeline, from ImageReader acquire to eglSwapBuffers
+ *
+ * Each stage keeps a LatencyHistogram of its recent durations, timestamps come from
+ * System.nanoTime on the thread running the stage. GL stages measure the CPU time of
+ * submitting the GL calls, the GPU may complete the work later.
+ *
+ * Stage timings are recorded on the camera thread (acquire, NV21 conversion) and on the
+ * GLThread (everything else), the pending frame fields are only touched on the GLThread.
+ */
+public class PipelineStats {
+
+    public enum Stage {
+        //ImageReader acquire to NV21/plane copy done, camera thread
+        NV21_CONVERSION("nv21Conversion"),
+        //Copy done to the GLThread picking the frame from the mailbox, or a camera surface
+        //frame becoming available to the GLThread latching it
+        MAILBOX_WAIT("mailboxWait"),
+        //NV21 to RGB on the CPU, or the YUV to RGB render pass on the GPU
+        YUV_TO_RGB("yuvToRgb"),
+        //Texture upload, or latching the camera surface frame with updateTexImage
+        TEXTURE_UPLOAD("textureUpload"),
+        FILTER_DRAW("filterDraw"),
+        SWAP_BUFFERS("swapBuffers"),
+        //ImageReader acquire, or camera surface frame available, to eglSwapBuffers return
+        TOTAL("total"),
+        //Each filter creation or swap task run on the GLThread, not part of the frame latency
+        GL_TASK("glTask"),
+        //Filtering a still capture on the StillRenderEngine, upload, draw and readback
+        STILL_RENDER("stillRender"),
+        //Still capture JPEG to Bitmap decode, filtered captures only
+        STILL_DECODE("stillDecode"),
+        //Filtered Bitmap to JPEG compression
+        STILL_ENCODE("stillEncode"),
+        //Writing the JPEG file including its orientation
+        STILL_WRITE("stillWrite"),
+        //JPEG image processing start to the file being written, filtered or passed through
+        STILL_TOTAL("stillTotal"),
+        //Drawing the composited frame again into the video encoder surface while recording
+        ENCODER_DRAW("encoderDraw"),
+        //Drawing an analysis frame into its framebuffer and submitting the readback
+        ANALYSIS_RENDER("analysisRender"),
+        //Mapping a completed analysis readback and handing it to the image stream
+        ANALYSIS_READBACK("analysisReadback"),
+        //Cropping and scaling a capture to the onion skin layer size, capture thread
+        ONION_SKIN_SCALE("onionSkinScale"),
+        //Uploading a scaled capture into its onion skin layer texture, once per capture
+        ONION_SKIN_UPLOAD("onionSkinUpload"),
+        //Blending the onion skin layers over the preview
+        ONION_SKIN_DRAW("onionSkinDraw"),
+        //Orientation change requested to eglSwapBuffers return of the first frame drawn with it
+        ORIENTATION_CHANGE("orientationChange"),
+        //A camera binding the render engine to its Flutter texture until the GLThread draws into it
+        OUTPUT_BIND("outputBind"),
+        //Camera create call to the Camera constructed, characteristics and recording profiles
+        CAMERA_CREATE("cameraCreate"),
+        //Camera open call to the CameraDevice being opened
+        CAMERA_OPEN("cameraOpen"),
+        //Camera open call to the first capture session being configured
+        CAMERA_OPEN_TO_SESSION("cameraOpenToSession");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    static final int SAMPLES_PER_STAGE = 256;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    //Acquire time of the frame uploaded for the draw in progress, 0 for redraws of the last frame
+    private long pendingFrameAcquireNanos = 0;
+
+    //Request time of an orientation change applied in the draw in progress, 0 otherwise
+    private long pendingOrientationNanos = 0;
+
+    public PipelineStats() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram(SAMPLES_PER_STAGE);
+        }
+    }
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    public void record(Stage stage, long startNanos, long endNanos) {
+        histograms[stage.ordinal()].record(endNanos - startNanos);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * GLThread - a new camera frame will be drawn in the current draw call
+     */
+    public void onFrameUploaded(long acquireNanos) {
+        pendingFrameAcquireNanos = acquireNanos;
+    }
+
+    /**
+     * GLThread - the draw call in progress uses an orientation requested at requestNanos
+     */
+    public void onOrientationApplied(long requestNanos) {
+        pendingOrientationNanos = requestNanos;
+    }
+
+    /**
+     * GLThread - eglSwapBuffers returned, closes the total latency of a newly uploaded frame
+     * and of an orientation change
+     */
+    public void onBuffersSwapped(long swapStartNanos, long swapEndNanos) {
+        record(Stage.SWAP_BUFFERS, swapStartNanos, swapEndNanos);
+        if (pendingFrameAcquireNanos != 0) {
+            record(Stage.TOTAL, pendingFrameAcquireNanos, swapEndNanos);
+            pendingFrameAcquireNanos = 0;
+        }
+        if (pendingOrientationNanos != 0) {
+            record(Stage.ORIENTATION_CHANGE, pendingOrientationNanos, swapEndNanos);
+            pendingOrientationNanos = 0;
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return per stage {count, p50, p95, p99}, latencies in milliseconds, for the method channel
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = getHistogram(stage);
+            long[] percentiles = histogram.getPercentiles(50, 95, 99);
+            Map<String, Object> stageStats = new HashMap<>();
+            stageStats.put("count", histogram.getCount());
+            stageStats.put("p50", percentiles[0] / 1e6);
+            stageStats.put("p95", percentiles[1] / 1e6);
+            stageStats.put("p99", percentiles[2] / 1e6);
+            stats.put(stage.key, stageStats);
+        }
+        return stats;
+    }
+}
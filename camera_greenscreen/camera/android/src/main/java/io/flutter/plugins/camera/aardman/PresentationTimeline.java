@@ -0,0 +1,85 @@
+package io.flutter.plugins.camera.aardman;
+
+/**
+ * Maps camera and audio timestamps to the presentation times of a recording
+ *
+ * Times are rebased to the start of the recording and the paused intervals are cut out,
+ * all arguments are in the clock of the camera sensor timestamps. Samples that fall
+ * before the start, into a pause, or that would go backwards are rejected with -1.
+ *
+ * Video is queried on the GLThread and audio on the AudioEncoder thread.
+ */
+final class PresentationTimeline {
+
+    static final long REJECTED = -1;
+
+    private long startNanos = -1;
+    private long pauseStartNanos = -1;
+    private long pausedNanos = 0;
+
+    private long lastVideoNanos = -1;
+    private long lastAudioNanos = -1;
+
+    synchronized void start(long nowNanos) {
+        startNanos = nowNanos;
+        pauseStartNanos = -1;
+        pausedNanos = 0;
+        lastVideoNanos = -1;
+        lastAudioNanos = -1;
+    }
+
+    synchronized void pause(long nowNanos) {
+        if (startNanos >= 0 && pauseStartNanos < 0) {
+            pauseStartNanos = nowNanos;
+        }
+    }
+
+    synchronized void resume(long nowNanos) {
+        if (pauseStartNanos >= 0) {
+            pausedNanos += Math.max(0, nowNanos - pauseStartNanos);
+            pauseStartNanos = -1;
+        }
+    }
+
+    synchronized boolean isPaused() {
+        return pauseStartNanos >= 0;
+    }
+
+    /**
+     * @return the presentation time of a camera frame, or REJECTED if it should not be encoded
+     */
+    synchronized long toVideoNanos(long timestampNanos) {
+        long presentationNanos = rebase(timestampNanos);
+        if (presentationNanos < 0 || presentationNanos <= lastVideoNanos) {
+            return REJECTED;
+        }
+        lastVideoNanos = presentationNanos;
+        return presentationNanos;
+    }
+
+    /**
+     * Audio is never dropped for going backwards, a late buffer is moved just after the
+     * previous one as the muxer requires increasing times per track
+     *
+     * @return the presentation time of an audio buffer, or REJECTED if it should not be encoded
+     */
+    synchronized long toAudioNanos(long timestampNanos) {
+        long presentationNanos = rebase(timestampNanos);
+        if (presentationNanos < 0) {
+            return REJECTED;
+        }
+        if (presentationNanos <= lastAudioNanos) {
+            //the muxer works in microseconds
+            presentationNanos = lastAudioNanos + 1000;
+        }
+        lastAudioNanos = presentationNanos;
+        return presentationNanos;
+    }
+
+    private long rebase(long timestampNanos) {
+        if (startNanos < 0 || pauseStartNanos >= 0 || timestampNanos < startNanos) {
+            return REJECTED;
+        }
+        return timestampNanos - startNanos - pausedNanos;
+    }
+}
@@ -0,0 +1,78 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A recyclable NV21 frame buffer handed from the camera thread to the GLThread
+ *
+ * Depending on the pool the frame is backed either by a heap array, for the native
+ * NV21 conversion, or by a direct buffer whose Y and VU planes are uploaded to GL as is
+ *
+ * Frames are owned by a FrameBufferPool, the consumer must call release()
+ * once the frame data has been uploaded so the buffer can be refilled
+ */
+public final class PreviewFrame {
+
+    //Heap backed NV21 data, null for direct frames
+    final byte[] data;
+
+    //Direct NV21 data, Y plane followed by the interleaved VU plane, null for heap frames
+    final ByteBuffer planes;
+
+    final int width;
+    final int height;
+
+    //System.nanoTime of the ImageReader acquire and of the end of the NV21 copy, for PipelineStats
+    long acquireNanos;
+    long convertedNanos;
+
+    //Sensor timestamp of the camera frame, used as the presentation time when recording
+    long timestampNanos;
+
+    private final FrameBufferPool pool;
+
+    PreviewFrame(FrameBufferPool pool, int width, int height, boolean direct) {
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        int size = FrameBufferPool.nv21Size(width, height);
+        if (direct) {
+            this.data = null;
+            this.planes = ByteBuffer.allocateDirect(size);
+        } else {
+            this.data = new byte[size];
+            this.planes = null;
+        }
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public ByteBuffer getPlanes() {
+        return planes;
+    }
+
+    public boolean isDirect() {
+        return planes != null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    boolean hasSize(int width, int height) {
+        return this.width == width && this.height == height;
+    }
+
+    /**
+     * Hands the buffer back to its pool, the frame must not be used afterwards
+     */
+    public void release() {
+        pool.release(this);
+    }
+}
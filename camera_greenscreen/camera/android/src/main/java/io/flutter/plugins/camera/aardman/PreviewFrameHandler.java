@@ -5,7 +5,10 @@ package io.flutter.plugins.camera.aardman;
  * from an ImageReader used in the Filter pipeline
  *
  * Instantiated in the current pipeline by FilterRenderer
+ *
+ * The handler takes ownership of the frame and must release it
+ * back to its pool once the data is no longer needed
  */
 interface PreviewFrameHandler {
-    void onPreviewFrame(byte[] data, int width, int height);
+    void onPreviewFrame(PreviewFrame frame);
 }
@@ -0,0 +1,26 @@
+package io.flutter.plugins.camera.aardman;
+
+/**
+ * How camera preview frames reach the input texture of the filters
+ */
+public enum PreviewInputMode {
+
+    /**
+     * Frames are converted to an NV21 byte array, converted to RGBA on the CPU
+     * by GPUImageNativeLibrary and uploaded as an RGBA texture
+     */
+    NV21_NATIVE,
+
+    /**
+     * The Y and interleaved VU planes are copied once into a direct buffer, uploaded as
+     * luminance and luminance-alpha textures and converted to RGB by YuvToRgbFilter on the GPU
+     */
+    YUV_PLANES,
+
+    /**
+     * The camera draws into a SurfaceTexture of the preview context, its frames are sampled as
+     * an external OES texture by the filters and never reach the CPU. Falls back to YUV_PLANES
+     * if the GLThread cannot provide the SurfaceTexture.
+     */
+    EXTERNAL_OES
+}
@@ -4,10 +4,12 @@ import android.graphics.ImageFormat;
 import android.graphics.Rect;
 import android.media.Image;
 import android.media.ImageReader;
+import android.util.Log;
 
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class PreviewOnImageAvailableListener implements ImageReader.OnImageAvailableListener {
 
@@ -15,43 +17,126 @@ public class PreviewOnImageAvailableListener implements ImageReader.OnImageAvail
 
     PreviewFrameHandler output;
 
-        public PreviewOnImageAvailableListener(PreviewFrameHandler previewFrameHandler){
+    /**
+     * Recycled NV21 buffers, returned to the pool by the FilterRenderer
+     * once the frame has been uploaded
+     */
+    final FrameBufferPool framePool;
+
+    /**
+     * Scratch row used when de-interleaving planes, grown only if the row stride increases
+     */
+    private byte[] rowData = new byte[0];
+
+    /**
+     * Plane layout of the current image, reused between frames
+     */
+    private final ByteBuffer[] planeBuffers = new ByteBuffer[3];
+    private final int[] rowStrides = new int[3];
+    private final int[] pixelStrides = new int[3];
+
+    /**
+     * Records the acquire to NV21 conversion latency, may be null
+     */
+    private final PipelineStats pipelineStats;
+
+        public PreviewOnImageAvailableListener(PreviewFrameHandler previewFrameHandler, FrameBufferPool framePool){
+            this(previewFrameHandler, framePool, null);
+        }
+
+        public PreviewOnImageAvailableListener(PreviewFrameHandler previewFrameHandler, FrameBufferPool framePool, PipelineStats pipelineStats){
             this.output = previewFrameHandler;
+            this.framePool = framePool;
+            this.pipelineStats = pipelineStats;
         }
 
         @Override
         public void onImageAvailable(ImageReader reader) {
 
+            long acquireNanos = PipelineStats.now();
             Image image = reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
 
-            //This operation is fast
-            byte [] data = generateNV21Data(image);
+            Rect crop = image.getCropRect();
+            PreviewFrame frame = framePool.acquire(crop.width(), crop.height());
+
+            if (frame == null) {
+                //every buffer is still in flight to the GLThread
+                image.close();
+                Log.i(TAG, "DROPPED A FRAME, NO FREE PREVIEW BUFFER");
+                return;
+            }
+
+            Image.Plane[] planes = image.getPlanes();
+            for (int i = 0; i < planeBuffers.length; i++) {
+                planeBuffers[i] = planes[i].getBuffer();
+                rowStrides[i] = planes[i].getRowStride();
+                pixelStrides[i] = planes[i].getPixelStride();
+            }
 
-            int width = image.getWidth();
-            int height = image.getHeight();
+            //This operation is fast
+            if (frame.isDirect()) {
+                rowData = generateNV21Planes(planeBuffers, rowStrides, pixelStrides,
+                        crop.left, crop.top, crop.width(), crop.height(), frame.planes, rowData);
+            } else {
+                rowData = generateNV21Data(planeBuffers, rowStrides, pixelStrides,
+                        crop.left, crop.top, crop.width(), crop.height(), frame.data, rowData);
+            }
+            Arrays.fill(planeBuffers, null);
 
+            frame.timestampNanos = image.getTimestamp();
             image.close();
 
-            output.onPreviewFrame( data, width, height);
+            frame.acquireNanos = acquireNanos;
+            frame.convertedNanos = PipelineStats.now();
+            if (pipelineStats != null) {
+                pipelineStats.record(PipelineStats.Stage.NV21_CONVERSION, acquireNanos, frame.convertedNanos);
+            }
+
+            output.onPreviewFrame(frame);
         }
 
 
     public static final byte[] generateNV21Data(@NotNull Image image) {
         Rect crop = image.getCropRect();
-        int format = image.getFormat();
-        int width = crop.width();
-        int height = crop.height();
+        byte[] data = new byte[crop.width() * crop.height() * ImageFormat.getBitsPerPixel(image.getFormat()) / 8];
+        generateNV21Data(image, data, new byte[image.getPlanes()[0].getRowStride()]);
+        return data;
+    }
+
+    /**
+     * Fills data in place with the NV21 representation of the image crop rect
+     *
+     * @param image   a YUV_420_888 image
+     * @param data    output buffer of at least width * height * 3 / 2 bytes
+     * @param rowData scratch buffer, replaced by a larger one if it cannot hold a plane row
+     * @return the scratch buffer to pass in on the next call
+     */
+    public static final byte[] generateNV21Data(@NotNull Image image, @NotNull byte[] data, @NotNull byte[] rowData) {
+        Rect crop = image.getCropRect();
         Image.Plane[] planes = image.getPlanes();
-        byte[] data = new byte[width * height * ImageFormat.getBitsPerPixel(format) / 8];
-        Image.Plane var10000 = planes[0];
-        //Intrinsics.checkNotNullExpressionValue(planes[0], "planes[0]");
-        byte[] rowData = new byte[var10000.getRowStride()];
+        return generateNV21Data(planeBuffers(planes), rowStrides(planes), pixelStrides(planes),
+                crop.left, crop.top, crop.width(), crop.height(), data, rowData);
+    }
+
+    /**
+     * Image free variant of generateNV21Data working on the Y, U and V plane buffers directly,
+     * so the conversion can be exercised with synthetic planes
+     *
+     * @param buffers      the Y, U and V plane buffers
+     * @param rowStrides   row stride of each plane
+     * @param pixelStrides pixel stride of each plane
+     */
+    public static final byte[] generateNV21Data(@NotNull ByteBuffer[] buffers, @NotNull int[] rowStrides, @NotNull int[] pixelStrides,
+                                                int left, int top, int width, int height,
+                                                @NotNull byte[] data, @NotNull byte[] rowData) {
         int channelOffset = 0;
         int outputStride = 1;
         int i = 0;
-        // Intrinsics.checkNotNullExpressionValue(planes, "planes");
 
-        for(int var11 = planes.length; i < var11; ++i) {
+        for(int var11 = buffers.length; i < var11; ++i) {
             switch(i) {
                 case 0:
                     channelOffset = 0;
@@ -66,19 +151,16 @@ public class PreviewOnImageAvailableListener implements ImageReader.OnImageAvail
                     outputStride = 2;
             }
 
-            var10000 = planes[i];
-            // Intrinsics.checkNotNullExpressionValue(planes[i], "planes[i]");
-            ByteBuffer buffer = var10000.getBuffer();
-            var10000 = planes[i];
-            // Intrinsics.checkNotNullExpressionValue(planes[i], "planes[i]");
-            int rowStride = var10000.getRowStride();
-            var10000 = planes[i];
-            // Intrinsics.checkNotNullExpressionValue(planes[i], "planes[i]");
-            int pixelStride = var10000.getPixelStride();
+            ByteBuffer buffer = buffers[i];
+            int rowStride = rowStrides[i];
+            int pixelStride = pixelStrides[i];
+            if (rowData.length < rowStride) {
+                rowData = new byte[rowStride];
+            }
             int shift = i == 0 ? 0 : 1;
             int w = width >> shift;
             int h = height >> shift;
-            buffer.position(rowStride * (crop.top >> shift) + pixelStride * (crop.left >> shift));
+            buffer.position(rowStride * (top >> shift) + pixelStride * (left >> shift));
             int row = 0;
 
             for(int var19 = h; row < var19; ++row) {
@@ -103,6 +185,105 @@ public class PreviewOnImageAvailableListener implements ImageReader.OnImageAvail
                 }
             }
         }
-        return data;
+        return rowData;
+    }
+
+    /**
+     * Copies the image crop rect into a direct buffer in NV21 layout, the Y plane
+     * followed by interleaved VU, ready to be uploaded as luminance and luminance-alpha
+     * textures. Luma rows are bulk copied from the plane buffer without going through the heap.
+     *
+     * @param image   a YUV_420_888 image
+     * @param planes  direct output buffer of at least width * height * 3 / 2 bytes
+     * @param rowData scratch buffer, replaced by a larger one if it cannot hold a plane row
+     * @return the scratch buffer to pass in on the next call
+     */
+    public static final byte[] generateNV21Planes(@NotNull Image image, @NotNull ByteBuffer planes, @NotNull byte[] rowData) {
+        Rect crop = image.getCropRect();
+        Image.Plane[] imagePlanes = image.getPlanes();
+        return generateNV21Planes(planeBuffers(imagePlanes), rowStrides(imagePlanes), pixelStrides(imagePlanes),
+                crop.left, crop.top, crop.width(), crop.height(), planes, rowData);
+    }
+
+    /**
+     * Image free variant of generateNV21Planes working on the Y, U and V plane buffers directly
+     */
+    public static final byte[] generateNV21Planes(@NotNull ByteBuffer[] buffers, @NotNull int[] rowStrides, @NotNull int[] pixelStrides,
+                                                  int left, int top, int width, int height,
+                                                  @NotNull ByteBuffer planes, @NotNull byte[] rowData) {
+        //Y plane
+        ByteBuffer buffer = buffers[0];
+        int rowStride = rowStrides[0];
+        int pixelStride = pixelStrides[0];
+        planes.clear();
+        for (int row = 0; row < height; row++) {
+            int rowStart = rowStride * (top + row) + pixelStride * left;
+            if (pixelStride == 1) {
+                buffer.limit(rowStart + width).position(rowStart);
+                planes.put(buffer);
+                buffer.limit(buffer.capacity());
+            } else {
+                int length = (width - 1) * pixelStride + 1;
+                if (rowData.length < length) {
+                    rowData = new byte[length];
+                }
+                buffer.position(rowStart);
+                buffer.get(rowData, 0, length);
+                for (int col = 0; col < width; col++) {
+                    planes.put(rowData[col * pixelStride]);
+                }
+            }
+        }
+
+        //Interleaved VU plane, V first as in NV21
+        int chromaOffset = width * height;
+        int w = width >> 1;
+        int h = height >> 1;
+        for (int i = 1; i <= 2; i++) {
+            buffer = buffers[i];
+            rowStride = rowStrides[i];
+            pixelStride = pixelStrides[i];
+            int length = (w - 1) * pixelStride + 1;
+            if (rowData.length < length) {
+                rowData = new byte[length];
+            }
+            int channelOffset = chromaOffset + (i == 1 ? 1 : 0);
+            for (int row = 0; row < h; row++) {
+                buffer.position(rowStride * ((top >> 1) + row) + pixelStride * (left >> 1));
+                buffer.get(rowData, 0, length);
+                for (int col = 0; col < w; col++) {
+                    planes.put(channelOffset, rowData[col * pixelStride]);
+                    channelOffset += 2;
+                }
+            }
+        }
+
+        planes.position(0);
+        planes.limit(planes.capacity());
+        return rowData;
+    }
+
+    private static ByteBuffer[] planeBuffers(Image.Plane[] planes) {
+        ByteBuffer[] buffers = new ByteBuffer[planes.length];
+        for (int i = 0; i < planes.length; i++) {
+            buffers[i] = planes[i].getBuffer();
+        }
+        return buffers;
+    }
+
+    private static int[] rowStrides(Image.Plane[] planes) {
+        int[] strides = new int[planes.length];
+        for (int i = 0; i < planes.length; i++) {
+            strides[i] = planes[i].getRowStride();
+        }
+        return strides;
+    }
+
+    private static int[] pixelStrides(Image.Plane[] planes) {
+        int[] strides = new int[planes.length];
+        for (int i = 0; i < planes.length; i++) {
+            strides[i] = planes[i].getPixelStride();
+        }
+        return strides;
     }
 }
@@ -0,0 +1,128 @@
+package io.flutter.plugins.camera.aardman;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Book keeping for overlapping still captures in rapid capture mode
+ *
+ * Each takePicture call becomes a shot with a sequence number, shots are captured alongside
+ * the repeating preview request and can overlap. A JPEG is matched to its shot by the sensor
+ * timestamp reported in onCaptureStarted, and otherwise to the oldest shot, as the camera
+ * delivers the images of a session in request order.
+ *
+ * Shots are added on the platform thread and completed on the camera background thread.
+ *
+ * @param <T> what the caller needs to complete a shot, the file and the method result
+ */
+public class RapidCaptureQueue<T> {
+
+    public static final class Shot<T> {
+        public final long sequence;
+        public final T payload;
+        //SENSOR_TIMESTAMP of the capture, -1 until the capture has started
+        long sensorTimestampNanos = -1;
+
+        Shot(long sequence, T payload) {
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Shot<T>> pendingShots;
+    private long lastSequence = 0;
+    private long completedCount = 0;
+    private long failedCount = 0;
+
+    /**
+     * @param capacity the number of shots that can be waiting for their image at once
+     */
+    public RapidCaptureQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("RapidCaptureQueue capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.pendingShots = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * @return the new shot, or null if capacity shots are already waiting
+     */
+    public synchronized Shot<T> enqueue(T payload) {
+        if (pendingShots.size() >= capacity) {
+            return null;
+        }
+        Shot<T> shot = new Shot<>(++lastSequence, payload);
+        pendingShots.addLast(shot);
+        return shot;
+    }
+
+    public synchronized void onCaptureStarted(Shot<T> shot, long sensorTimestampNanos) {
+        shot.sensorTimestampNanos = sensorTimestampNanos;
+    }
+
+    /**
+     * Removes and returns the shot an image belongs to
+     *
+     * @param imageTimestampNanos Image.getTimestamp, the SENSOR_TIMESTAMP of its capture
+     * @return the matching shot, or null if no shot is waiting
+     */
+    public synchronized Shot<T> takeForImage(long imageTimestampNanos) {
+        Iterator<Shot<T>> iterator = pendingShots.iterator();
+        while (iterator.hasNext()) {
+            Shot<T> shot = iterator.next();
+            if (shot.sensorTimestampNanos == imageTimestampNanos) {
+                iterator.remove();
+                completedCount++;
+                return shot;
+            }
+        }
+        Shot<T> oldest = pendingShots.pollFirst();
+        if (oldest != null) {
+            completedCount++;
+        }
+        return oldest;
+    }
+
+    /**
+     * Removes a shot whose capture failed
+     *
+     * @return false if the shot was no longer waiting
+     */
+    public synchronized boolean fail(Shot<T> shot) {
+        if (pendingShots.remove(shot)) {
+            failedCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes every waiting shot, when the mode is left or the camera closes
+     */
+    public synchronized List<Shot<T>> drain() {
+        List<Shot<T>> shots = new ArrayList<>(pendingShots);
+        failedCount += shots.size();
+        pendingShots.clear();
+        return shots;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingShots.size();
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+}
@@ -0,0 +1,209 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The process wide preview and still renderer, shared by the cameras
+ *
+ * Creating a GLBridge means a new GLThread, EGL context and surface, compiling the GPUImage
+ * programs and uploading the background again, which costs hundreds of milliseconds each time
+ * the camera is switched or re-initialised. The engine is created by the first camera and kept
+ * while any camera holds it. Each camera binds it to its own Flutter texture, the most recent
+ * binding draws.
+ *
+ * Switching cameras and resuming the app dispose the old camera before creating the new one, so
+ * the engine is kept for RENDER_ENGINE_IDLE_GRACE_MS once the last camera has released it, a
+ * camera acquiring it meanwhile cancels the timeout. After the timeout, or once the plugin is
+ * detached, the GLThread, the StillGLThread and all their GL objects are freed and the next
+ * camera creates a new engine.
+ *
+ * acquire and release are expected on the platform thread, they are synchronized as the
+ * release waits for the GLThread to let go of the texture.
+ */
+public class RenderEngine {
+
+    interface Factory {
+        RenderEngine create();
+    }
+
+    private static final Factory DEFAULT_FACTORY = () -> {
+        PipelineStats pipelineStats = new PipelineStats();
+        FilterRenderer renderer = new FilterRenderer();
+        renderer.setPipelineStats(pipelineStats);
+        GLBridge bridge = new GLBridge(null, renderer, pipelineStats);
+        return new RenderEngine(renderer, bridge, new StillRenderEngine(bridge, pipelineStats), pipelineStats);
+    };
+
+    //guarded by RenderEngine.class
+    private static Factory factory = DEFAULT_FACTORY;
+    private static RenderEngine instance;
+    private static Handler idleHandler;
+
+    private final FilterRenderer renderer;
+    private final GLBridge bridge;
+    private final StillRenderEngine stillRenderEngine;
+    private final PipelineStats pipelineStats;
+
+    //guarded by RenderEngine.class
+    private final Set<Object> owners = new HashSet<>();
+    private Object boundOwner;
+    private boolean disposed = false;
+    private long bindCount = 0;
+
+    //disposes the engine once it has been idle for the grace period
+    private final Runnable idleDispose = this::onIdleTimeout;
+
+    RenderEngine(FilterRenderer renderer, GLBridge bridge, StillRenderEngine stillRenderEngine, PipelineStats pipelineStats) {
+        this.renderer = renderer;
+        this.bridge = bridge;
+        this.stillRenderEngine = stillRenderEngine;
+        this.pipelineStats = pipelineStats;
+    }
+
+    /**
+     * Draws the preview of owner into its Flutter texture from the next frame, creating the
+     * engine if no camera holds it
+     *
+     * @param owner  the camera's pipeline, passed again to release
+     * @param output the Flutter texture of the camera
+     */
+    public static RenderEngine acquire(Object owner, SurfaceTexture output) {
+        synchronized (RenderEngine.class) {
+            if (instance == null) {
+                instance = factory.create();
+            }
+            instance.bind(owner, output);
+            return instance;
+        }
+    }
+
+    private void bind(Object owner, SurfaceTexture output) {
+        if (owners.isEmpty()) {
+            getIdleHandler().removeCallbacks(idleDispose);
+        }
+        owners.add(owner);
+        boundOwner = owner;
+        bindCount++;
+        //the counters and the render loop settings are per camera
+        pipelineStats.reset();
+        RenderScheduler renderScheduler = bridge.getRenderScheduler();
+        renderScheduler.setRenderOnDemand(true);
+        renderScheduler.setMaxIdleRedrawInterval(Constants.DEFAULT_MAX_IDLE_REDRAW_INTERVAL_MS);
+        bridge.setOutputSurface(output, 0);
+    }
+
+    /**
+     * Stops drawing into the Flutter texture of owner if it is still bound, waiting for the
+     * GLThread so the texture can be released straight after. Frees the engine if no camera
+     * acquires it within RENDER_ENGINE_IDLE_GRACE_MS.
+     */
+    public void release(Object owner) {
+        synchronized (RenderEngine.class) {
+            if (!owners.remove(owner)) {
+                return;
+            }
+            if (owner == boundOwner) {
+                boundOwner = null;
+                //an unbound GLThread only wakes for the idle redraw
+                bridge.getRenderScheduler().setRenderOnDemand(true);
+                bridge.setOutputSurface(null, Constants.RENDER_ENGINE_UNBIND_TIMEOUT_MS);
+            }
+            if (owners.isEmpty()) {
+                getIdleHandler().postDelayed(idleDispose, Constants.RENDER_ENGINE_IDLE_GRACE_MS);
+            }
+        }
+    }
+
+    private void onIdleTimeout() {
+        synchronized (RenderEngine.class) {
+            if (owners.isEmpty() && !disposed) {
+                dispose();
+            }
+        }
+    }
+
+    /**
+     * Frees the engine now if no camera holds it, called when the plugin is detached
+     */
+    public static void releaseIdle() {
+        synchronized (RenderEngine.class) {
+            if (instance != null && instance.owners.isEmpty()) {
+                getIdleHandler().removeCallbacks(instance.idleDispose);
+                instance.dispose();
+            }
+        }
+    }
+
+    //guarded by RenderEngine.class
+    private static Handler getIdleHandler() {
+        if (idleHandler == null) {
+            idleHandler = new Handler(Looper.getMainLooper());
+        }
+        return idleHandler;
+    }
+
+    private void dispose() {
+        disposed = true;
+        bridge.onDispose();
+        stillRenderEngine.release();
+        if (instance == this) {
+            instance = null;
+        }
+    }
+
+    public FilterRenderer getRenderer() {
+        return renderer;
+    }
+
+    public GLBridge getBridge() {
+        return bridge;
+    }
+
+    public StillRenderEngine getStillRenderEngine() {
+        return stillRenderEngine;
+    }
+
+    public PipelineStats getPipelineStats() {
+        return pipelineStats;
+    }
+
+    /**
+     * @return how many times a camera has bound this engine, more than 1 once it was reused
+     */
+    public long getBindCount() {
+        synchronized (RenderEngine.class) {
+            return bindCount;
+        }
+    }
+
+    public boolean isDisposed() {
+        synchronized (RenderEngine.class) {
+            return disposed;
+        }
+    }
+
+    /**
+     * Used by tests to stand in for the GL threads, null restores the default
+     */
+    static void setFactory(Factory engineFactory) {
+        synchronized (RenderEngine.class) {
+            factory = engineFactory != null ? engineFactory : DEFAULT_FACTORY;
+            //bound to the main looper of the test
+            idleHandler = null;
+        }
+    }
+
+    /**
+     * @return the engine held by the cameras, null if none holds it
+     */
+    static RenderEngine getInstance() {
+        synchronized (RenderEngine.class) {
+            return instance;
+        }
+    }
+}
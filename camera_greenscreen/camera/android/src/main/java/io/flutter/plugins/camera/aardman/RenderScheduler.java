@@ -0,0 +1,141 @@
+package io.flutter.plugins.camera.aardman;
+
+/**
+ * Decides when the GLBridge render loop draws a frame
+ *
+ * In render on demand mode the GLThread parks until the FilterRenderer requests a render,
+ * on a new camera frame or a parameter change, or until the maximum idle redraw interval
+ * has elapsed since the last frame. In continuous mode every loop iteration draws.
+ *
+ * Several requests made before the GLThread wakes are coalesced into a single draw,
+ * these are counted as skipped frames.
+ */
+public class RenderScheduler {
+
+    private final Object lock = new Object();
+
+    private boolean renderOnDemand = true;
+    private long maxIdleRedrawIntervalNanos;
+
+    private boolean renderRequested = false;
+    private boolean stopped = false;
+    private long lastFrameNanos = System.nanoTime();
+
+    /**
+     * Counters, written under the lock and readable from tests
+     */
+    private long renderedFrameCount = 0;
+    private long skippedFrameCount = 0;
+    private long idleRedrawCount = 0;
+
+    public RenderScheduler(long maxIdleRedrawIntervalMs) {
+        setMaxIdleRedrawInterval(maxIdleRedrawIntervalMs);
+    }
+
+    public void setRenderOnDemand(boolean renderOnDemand) {
+        synchronized (lock) {
+            this.renderOnDemand = renderOnDemand;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @param intervalMs the longest time the GLThread stays parked without redrawing
+     */
+    public void setMaxIdleRedrawInterval(long intervalMs) {
+        synchronized (lock) {
+            maxIdleRedrawIntervalNanos = intervalMs * 1_000_000L;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Called from any thread when there is something new to draw
+     */
+    public void requestRender() {
+        synchronized (lock) {
+            if (renderRequested) {
+                skippedFrameCount++;
+            } else {
+                renderRequested = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Called on the GLThread before drawing, parks until a frame should be drawn
+     *
+     * @return true if a frame should be drawn, false if the scheduler was stopped
+     */
+    public boolean awaitFrame() {
+        synchronized (lock) {
+            while (!stopped) {
+                if (!renderOnDemand || renderRequested) {
+                    renderRequested = false;
+                    return true;
+                }
+                long remainingNanos = lastFrameNanos + maxIdleRedrawIntervalNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    idleRedrawCount++;
+                    return true;
+                }
+                try {
+                    lock.wait(remainingNanos / 1_000_000L, (int) (remainingNanos % 1_000_000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Called on the GLThread once a frame has been drawn and swapped
+     */
+    public void onFrameRendered() {
+        synchronized (lock) {
+            renderedFrameCount++;
+            lastFrameNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called on the GLThread when it woke but had nothing to draw into, restarts the idle
+     * redraw interval without counting a frame
+     */
+    public void onFrameSkipped() {
+        synchronized (lock) {
+            lastFrameNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Wakes the GLThread so the render loop can exit
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll();
+        }
+    }
+
+    public long getRenderedFrameCount() {
+        synchronized (lock) {
+            return renderedFrameCount;
+        }
+    }
+
+    public long getSkippedFrameCount() {
+        synchronized (lock) {
+            return skippedFrameCount;
+        }
+    }
+
+    public long getIdleRedrawCount() {
+        synchronized (lock) {
+            return idleRedrawCount;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends the repeating preview request at most once per frame interval
+ *
+ * Camera settings update the preview request builder and then ask for the repeating request
+ * to be sent again. A request after a quiet frame interval is sent at once, requests made
+ * within the interval after it wait for its end and are sent together, each request's
+ * callback completes with the outcome of the one setRepeatingRequest that carried it.
+ * The builder keeps the latest value of every setting, so sending it once covers them all.
+ *
+ * Used on the thread of the handler only, the main thread for Camera.
+ */
+public class RepeatingRequestCoalescer {
+
+    public interface Callback {
+        void onSent();
+
+        void onFailed(String errorCode, String errorMessage);
+    }
+
+    /**
+     * Builds the repeating request from the current builder and sends it
+     */
+    public interface Sender {
+        void send(Callback callback);
+    }
+
+    private static final long DEFAULT_FRAME_INTERVAL_MS = 34;
+
+    private final Handler handler;
+    private final Sender sender;
+    private long frameIntervalMs = DEFAULT_FRAME_INTERVAL_MS;
+
+    private final List<Callback> pendingCallbacks = new ArrayList<>();
+    private final Runnable sendPending = this::sendPending;
+    private boolean sendScheduled = false;
+    private long lastSentMs = -1;
+
+    /**
+     * Counters, readable from any thread
+     */
+    private volatile long sentCount = 0;
+    private volatile long coalescedCount = 0;
+
+    public RepeatingRequestCoalescer(Handler handler, Sender sender) {
+        this.handler = handler;
+        this.sender = sender;
+    }
+
+    /**
+     * @param maxFrameRate the highest frame rate of the preview, the request is sent at most
+     *                     once per frame at this rate, the interval of 30fps is used if unknown
+     */
+    public void setMaxFrameRate(int maxFrameRate) {
+        frameIntervalMs = maxFrameRate > 0
+                ? (1000 + maxFrameRate - 1) / maxFrameRate
+                : DEFAULT_FRAME_INTERVAL_MS;
+    }
+
+    /**
+     * Sends the repeating request now, or with the other requests of the frame interval
+     */
+    public void request(Callback callback) {
+        pendingCallbacks.add(callback);
+        if (sendScheduled) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (lastSentMs < 0 || now - lastSentMs >= frameIntervalMs) {
+            sendPending();
+        } else {
+            sendScheduled = true;
+            handler.postAtTime(sendPending, lastSentMs + frameIntervalMs);
+        }
+    }
+
+    private void sendPending() {
+        sendScheduled = false;
+        if (pendingCallbacks.isEmpty()) {
+            return;
+        }
+        final List<Callback> callbacks = new ArrayList<>(pendingCallbacks);
+        pendingCallbacks.clear();
+        lastSentMs = SystemClock.uptimeMillis();
+        sentCount++;
+        coalescedCount += callbacks.size() - 1;
+
+        sender.send(new Callback() {
+            @Override
+            public void onSent() {
+                for (Callback callback : callbacks) {
+                    callback.onSent();
+                }
+            }
+
+            @Override
+            public void onFailed(String errorCode, String errorMessage) {
+                for (Callback callback : callbacks) {
+                    callback.onFailed(errorCode, errorMessage);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return repeating requests sent
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * @return requests that went out with an earlier request of the same frame interval
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+}
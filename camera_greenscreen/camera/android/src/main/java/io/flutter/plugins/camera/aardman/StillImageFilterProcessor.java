@@ -4,41 +4,88 @@ import io.flutter.plugins.camera.ImageSaver;
 
 import androidx.annotation.NonNull;
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
 import android.media.Image;
-import android.os.Handler;
 
+/**
+ * Saves a captured JPEG, filtered if the filter is enabled
+ *
+ * With the filter disabled the JPEG plane is written to the file as is, without a decode or
+ * a re-encode. Otherwise the JPEG is decoded, filtered and saved by a BitmapSaver. In both
+ * cases the orientation is set as the file is written.
+ *
+ * A YUV_420_888 image, a YUV still or a zero shutter lag frame, is never decoded. With the
+ * filter disabled it is compressed straight to the file, otherwise its planes are filtered on
+ * the GPU as in the preview and the result is the only JPEG encode.
+ *
+ * Runs on the imaging executor. An encoded JPEG is written on the io executor, the camera JPEG
+ * is written from the image plane where it is, as the image cannot be released before.
+ */
 public class StillImageFilterProcessor implements Runnable {
 
+    /** Quality of the JPEG a YUV image is compressed to, as used by BitmapSaver */
+    static final int YUV_JPEG_QUALITY = 100;
+
     /** The JPEG input image  */
     protected final Image image;
 
     /** The file we save the filtered image into. */
     protected final File file;
 
-    protected final Handler backgroundHandler;
+    /** Runs the encode after the GLThread filters, and the file writes */
+    protected final CameraExecutors executors;
 
     /** Used to report the status of the eventual file saving action. */
     protected final ImageSaver.Callback callback;
 
+    /** ExifInterface orientation to save, or JpegWriter.ORIENTATION_UNCHANGED */
+    protected final int exifOrientation;
+
     FilterPipelineController filterPipeline;
 
     public StillImageFilterProcessor(@NonNull Image image,
                                @NonNull File file,
-                               @NonNull Handler backgroundHandler,
+                               @NonNull CameraExecutors executors,
                                @NonNull ImageSaver.Callback callback,
                                @NonNull FilterPipelineController filterPipeline) {
+        this(image, file, executors, callback, filterPipeline, JpegWriter.ORIENTATION_UNCHANGED);
+    }
+
+    public StillImageFilterProcessor(@NonNull Image image,
+                               @NonNull File file,
+                               @NonNull CameraExecutors executors,
+                               @NonNull ImageSaver.Callback callback,
+                               @NonNull FilterPipelineController filterPipeline,
+                               int exifOrientation) {
         this.image = image;
         this.file = file;
-        this.backgroundHandler = backgroundHandler;
+        this.executors = executors;
         this.callback = callback;
         this.filterPipeline = filterPipeline;
+        this.exifOrientation = exifOrientation;
     }
 
     public void run() {
+        final PipelineStats stats = filterPipeline.pipelineStats;
+        final long startNanos = PipelineStats.now();
+
+        if (image.getFormat() == ImageFormat.YUV_420_888) {
+            processYuv(stats, startNanos);
+            return;
+        }
+
+        if (!filterPipeline.isFilterEnabled()) {
+            savePassthrough(stats, startNanos);
+            return;
+        }
+
         //extract JPEG data
         ByteBuffer buffer = image.getPlanes()[0].getBuffer();
         //recycle the image reader
@@ -47,20 +94,118 @@ public class StillImageFilterProcessor implements Runnable {
         image.close();
 
         //Create a bitmap that can be input to the filtering process
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, buffer.limit());
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        stats.record(PipelineStats.Stage.STILL_DECODE, startNanos, PipelineStats.now());
+
+        filter(bitmap, stats, startNanos);
+    }
+
+    /**
+     * Filters the planes of the YUV image, or compresses it to the file if the filter is disabled
+     */
+    private void processYuv(PipelineStats stats, long startNanos) {
+        Rect crop = image.getCropRect();
+        int width = crop.width();
+        int height = crop.height();
+
+        if (filterPipeline.isFilterEnabled()) {
+            ByteBuffer planes = ByteBuffer.allocateDirect(FrameBufferPool.nv21Size(width, height));
+            PreviewOnImageAvailableListener.generateNV21Planes(image, planes, new byte[0]);
+            image.close();
+            //copying the planes takes the place of the JPEG decode
+            stats.record(PipelineStats.Stage.STILL_DECODE, startNanos, PipelineStats.now());
 
+            filterPipeline.filterStillPlanes(planes, width, height,
+                    filtered -> save(filtered, stats, startNanos));
+            return;
+        }
+
+        byte[] nv21 = PreviewOnImageAvailableListener.generateNV21Data(image);
+        image.close();
+
+        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+        BitmapSaver.JpegOutputStream jpeg = new BitmapSaver.JpegOutputStream(nv21.length / 4);
+        yuvImage.compressToJpeg(new Rect(0, 0, width, height), YUV_JPEG_QUALITY, jpeg);
+        final long encodedNanos = PipelineStats.now();
+        stats.record(PipelineStats.Stage.STILL_ENCODE, startNanos, encodedNanos);
+
+        if (filterPipeline.isOnionSkinEnabled()) {
+            //only reads the JPEG, as the write does
+            ByteBuffer compressed = jpeg.asByteBuffer();
+            filterPipeline.addOnionSkinCapture(compressed.array(), compressed.remaining());
+        }
+
+        executors.getIo().execute(() -> {
+            try {
+                JpegWriter.write(jpeg.asByteBuffer(), file, exifOrientation);
+            } catch (IOException e) {
+                callback.onError("IOError", "Failed saving image");
+                return;
+            }
+            long writtenNanos = PipelineStats.now();
+            stats.record(PipelineStats.Stage.STILL_WRITE, encodedNanos, writtenNanos);
+            stats.record(PipelineStats.Stage.STILL_TOTAL, startNanos, writtenNanos);
+            callback.onComplete(file.getAbsolutePath());
+        });
+    }
+
+    private void filter(Bitmap bitmap, PipelineStats stats, long startNanos) {
         //Run a filter operation on the filter pipeline using the captured image
-        filterPipeline.filterStillImage(bitmap, () -> {
-             //Runs on GLThread, filteredBitmap will be available.
-             Bitmap filteredBitmap = filterPipeline.getLastFilteredResult();
-             backgroundHandler.post(
-                  new BitmapSaver (
-                      filteredBitmap,
-                      file,
-                      callback
-                   )
-             );
+        filterPipeline.filterStillImage(bitmap, filtered -> {
+             //Runs on GLThread with the filtered bitmap of this capture
+             save(filtered, stats, startNanos);
         });
     }
-}
 
+    private void save(Bitmap filteredBitmap, PipelineStats stats, long startNanos) {
+        if (filteredBitmap == null) {
+            callback.onError("filterFailed", "Failed filtering image");
+            return;
+        }
+        if (filterPipeline.isOnionSkinEnabled()) {
+            //scaled down before the saver runs, both only read the bitmap
+            executors.getImaging().execute(() -> filterPipeline.addOnionSkinCapture(filteredBitmap));
+        }
+        //save is called on the GLThread, the encode goes back to the imaging executor
+        executors.getImaging().execute(
+             new BitmapSaver (
+                 filteredBitmap,
+                 file,
+                 callback,
+                 exifOrientation,
+                 stats,
+                 startNanos,
+                 executors.getIo()
+              )
+        );
+    }
+
+    /**
+     * Writes the camera JPEG straight from the image plane
+     */
+    private void savePassthrough(PipelineStats stats, long startNanos) {
+        byte[] onionSkinJpeg = null;
+        try {
+            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+            if (filterPipeline.isOnionSkinEnabled()) {
+                //only copied for the onion skin, the plane is gone once the image is closed
+                onionSkinJpeg = new byte[buffer.remaining()];
+                buffer.duplicate().get(onionSkinJpeg);
+            }
+            JpegWriter.write(buffer, file, exifOrientation);
+        } catch (IOException e) {
+            callback.onError("IOError", "Failed saving image");
+            return;
+        } finally {
+            image.close();
+        }
+        long writtenNanos = PipelineStats.now();
+        stats.record(PipelineStats.Stage.STILL_WRITE, startNanos, writtenNanos);
+        stats.record(PipelineStats.Stage.STILL_TOTAL, startNanos, writtenNanos);
+        callback.onComplete(file.getAbsolutePath());
+
+        if (onionSkinJpeg != null) {
+            filterPipeline.addOnionSkinCapture(onionSkinJpeg, onionSkinJpeg.length);
+        }
+    }
+}
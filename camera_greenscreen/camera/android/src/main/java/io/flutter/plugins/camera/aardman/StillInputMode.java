@@ -0,0 +1,19 @@
+package io.flutter.plugins.camera.aardman;
+
+/**
+ * How still captures reach the chroma filter
+ */
+public enum StillInputMode {
+
+    /**
+     * Stills are captured as JPEG, decoded to a bitmap for filtering and encoded again
+     */
+    JPEG,
+
+    /**
+     * Stills are captured as YUV_420_888 at the capture size, the planes are copied into a
+     * direct buffer and converted to RGB by YuvToRgbFilter as in the preview, the filtered
+     * result is the only JPEG encode
+     */
+    YUV_PLANES
+}
@@ -0,0 +1,369 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+import jp.co.cyberagent.android.gpuimage.GPUImageNativeLibrary;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+import jp.co.cyberagent.android.gpuimage.util.Rotation;
+import jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil;
+
+/**
+ * Persistent offscreen renderer for filtering still captures
+ *
+ * GPUImage.getBitmapWithFilterApplied creates an EGL context, compiles the chroma shader and
+ * uploads the background on every call. This engine keeps a pbuffer context alive on its own
+ * StillGLThread, in the share group of the GLBridge context, together with the chroma filter.
+ * The filter, and with it the background texture, is only rebuilt when the background or the
+ * capture size changes, so a capture pays for the upload of the captured image, one draw and
+ * the readback.
+ *
+ * The captured image is either a decoded bitmap or the NV21 planes of a YUV capture, which are
+ * converted to RGB by a YuvToRgbFilter as in the preview, so a YUV capture is never decoded.
+ *
+ * Rendering matches getBitmapWithFilterApplied, the image is drawn with the texture coordinates
+ * of its GPUImageRenderer and the result is read back with GPUImageNativeLibrary.adjustBitmap.
+ */
+public class StillRenderEngine {
+
+    private static final String TAG = "StillRenderEngine";
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+    private static final int EGL_OPENGL_ES2_BIT = 4;
+
+    public interface Callback {
+        /**
+         * @param filtered the filtered capture, null if rendering failed
+         */
+        void onRendered(Bitmap filtered);
+    }
+
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    //Provides the context to share with, the preview context may not exist yet on first use
+    private final GLBridge sharedBridge;
+
+    /**
+     * Records the duration of each still render
+     */
+    private final PipelineStats pipelineStats;
+
+    /**
+     * GL state, only used on the StillGLThread
+     */
+    private EGL10 egl;
+    private EGLDisplay eglDisplay;
+    private EGLConfig eglConfig;
+    private EGLContext eglContext = EGL10.EGL_NO_CONTEXT;
+    private EGLSurface eglSurface = EGL10.EGL_NO_SURFACE;
+    private int surfaceWidth;
+    private int surfaceHeight;
+
+    //Full screen quad with the vertical flip GPUImage.getBitmapWithFilterApplied renders with
+    private final FloatBuffer cubeBuffer;
+    private final FloatBuffer textureBuffer;
+    private int imageTextureId = OpenGlUtils.NO_TEXTURE;
+    //Converts the planes of YUV captures, created on first use
+    private YuvToRgbFilter yuvToRgbFilter;
+
+    private OrientedChromaKeyBlendFilter filter;
+    //What the current filter background was prepared for, the filter is rebuilt when it changes.
+    //The filter keeps its uploaded texture, the prepared bitmap may be evicted from the cache.
+    private BackgroundCache.Key filterBackgroundKey;
+
+    private final AtomicLong renderCount = new AtomicLong();
+    private final AtomicLong filterBuildCount = new AtomicLong();
+
+    public StillRenderEngine(GLBridge sharedBridge, PipelineStats pipelineStats) {
+        this.sharedBridge = sharedBridge;
+        this.pipelineStats = pipelineStats;
+        thread = new HandlerThread("StillGLThread");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        cubeBuffer = asFloatBuffer(new float[]{
+                -1.0f, -1.0f,
+                1.0f, -1.0f,
+                -1.0f, 1.0f,
+                1.0f, 1.0f,
+        });
+        textureBuffer = asFloatBuffer(TextureRotationUtil.getRotation(Rotation.NORMAL, false, true));
+    }
+
+    private static FloatBuffer asFloatBuffer(float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    /**
+     * Filters the captured image on the StillGLThread, the callback runs on that thread
+     *
+     * @param input       the decoded capture
+     * @param parameters  the current filter parameters, an immutable snapshot
+     * @param isLandscape the orientation the background is prepared for
+     */
+    public void render(final Bitmap input, final FilterParameters parameters, final boolean isLandscape, final Callback callback) {
+        handler.post(() -> {
+            Bitmap result = null;
+            try {
+                result = renderNow(input, parameters, isLandscape);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Still render failed", e);
+                releaseGL();
+            }
+            callback.onRendered(result);
+        });
+    }
+
+    /**
+     * Filters a YUV capture on the StillGLThread, the callback runs on that thread
+     *
+     * @param planes      direct buffer holding the Y plane followed by the interleaved VU plane,
+     *                    not used by the caller until the callback has run
+     * @param parameters  the current filter parameters, an immutable snapshot
+     * @param isLandscape the orientation the background is prepared for
+     */
+    public void renderPlanes(final ByteBuffer planes, final int width, final int height, final FilterParameters parameters,
+                             final boolean isLandscape, final Callback callback) {
+        handler.post(() -> {
+            Bitmap result = null;
+            try {
+                result = renderPlanesNow(planes, width, height, parameters, isLandscape);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Still render failed", e);
+                releaseGL();
+            }
+            callback.onRendered(result);
+        });
+    }
+
+    /**
+     * Releases the GL resources and stops the StillGLThread once pending renders are done
+     */
+    public void release() {
+        handler.post(this::releaseGL);
+        thread.quitSafely();
+    }
+
+    public long getRenderCount() {
+        return renderCount.get();
+    }
+
+    public long getFilterBuildCount() {
+        return filterBuildCount.get();
+    }
+
+    /*********************************************************************************
+     *                              StillGLThread
+     *********************************************************************************/
+
+    private Bitmap renderNow(Bitmap input, FilterParameters parameters, boolean isLandscape) {
+        long startNanos = PipelineStats.now();
+        int width = input.getWidth();
+        int height = input.getHeight();
+
+        prepare(parameters, width, height, isLandscape);
+        //the captured image texture is updated in place while the size stays the same
+        imageTextureId = OpenGlUtils.loadTexture(input, imageTextureId, false);
+
+        return draw(imageTextureId, width, height, startNanos);
+    }
+
+    private Bitmap renderPlanesNow(ByteBuffer planes, int width, int height, FilterParameters parameters, boolean isLandscape) {
+        long startNanos = PipelineStats.now();
+
+        prepare(parameters, width, height, isLandscape);
+        if (yuvToRgbFilter == null) {
+            yuvToRgbFilter = new YuvToRgbFilter();
+        }
+        int rgbTextureId = yuvToRgbFilter.convert(planes, width, height);
+
+        return draw(rgbTextureId, width, height, startNanos);
+    }
+
+    private void prepare(FilterParameters parameters, int width, int height, boolean isLandscape) {
+        ensureContext();
+        if (ensureSurface(width, height) && imageTextureId != OpenGlUtils.NO_TEXTURE) {
+            GLES20.glDeleteTextures(1, new int[]{imageTextureId}, 0);
+            imageTextureId = OpenGlUtils.NO_TEXTURE;
+        }
+        ensureFilter(parameters, new Size(width, height), isLandscape);
+    }
+
+    private Bitmap draw(int textureId, int width, int height, long startNanos) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        filter.onDraw(textureId, cubeBuffer, textureBuffer);
+
+        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        GPUImageNativeLibrary.adjustBitmap(result);
+
+        renderCount.incrementAndGet();
+        if (pipelineStats != null) {
+            pipelineStats.record(PipelineStats.Stage.STILL_RENDER, startNanos, PipelineStats.now());
+        }
+        return result;
+    }
+
+    private void ensureContext() {
+        if (eglContext != EGL10.EGL_NO_CONTEXT) {
+            return;
+        }
+        egl = (EGL10) EGLContext.getEGL();
+        eglDisplay = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+        if (eglDisplay == EGL10.EGL_NO_DISPLAY) {
+            throw new RuntimeException("eglGetDisplay failed");
+        }
+        int[] version = new int[2];
+        if (!egl.eglInitialize(eglDisplay, version)) {
+            throw new RuntimeException("eglInitialize failed");
+        }
+
+        eglConfig = chooseEglConfig();
+
+        EGLContext shareContext = sharedBridge != null ? sharedBridge.getEglContext() : null;
+        if (shareContext == null) {
+            shareContext = EGL10.EGL_NO_CONTEXT;
+        }
+        int[] attribList = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
+        eglContext = egl.eglCreateContext(eglDisplay, eglConfig, shareContext, attribList);
+        if (eglContext == null || eglContext == EGL10.EGL_NO_CONTEXT) {
+            eglContext = EGL10.EGL_NO_CONTEXT;
+            throw new RuntimeException("GL Error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+        }
+    }
+
+    /**
+     * @return true if the pbuffer was (re)created for a new capture size
+     */
+    private boolean ensureSurface(int width, int height) {
+        if (eglSurface != EGL10.EGL_NO_SURFACE && width == surfaceWidth && height == surfaceHeight) {
+            return false;
+        }
+        if (eglSurface != EGL10.EGL_NO_SURFACE) {
+            egl.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+            egl.eglDestroySurface(eglDisplay, eglSurface);
+        }
+        int[] attribList = {EGL10.EGL_WIDTH, width, EGL10.EGL_HEIGHT, height, EGL10.EGL_NONE};
+        eglSurface = egl.eglCreatePbufferSurface(eglDisplay, eglConfig, attribList);
+        if (eglSurface == null || eglSurface == EGL10.EGL_NO_SURFACE) {
+            eglSurface = EGL10.EGL_NO_SURFACE;
+            throw new RuntimeException("GL Error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+        }
+        if (!egl.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
+            throw new RuntimeException("GL make still surface current error: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+        }
+        surfaceWidth = width;
+        surfaceHeight = height;
+        return true;
+    }
+
+    /**
+     * Keeps the compiled filter and its background texture while the background file, its
+     * modification time, the capture size and the orientation stay the same, the background is
+     * only prepared again when one of them changes. The colour and sensitivity are cheap to
+     * update in place.
+     */
+    private void ensureFilter(FilterParameters parameters, Size outputSize, boolean isLandscape) {
+        BackgroundCache.Key backgroundKey = backgroundKey(parameters.backgroundImage, outputSize, isLandscape);
+
+        if (filter != null && backgroundKey.equals(filterBackgroundKey)) {
+            filter.onOutputSizeChanged(outputSize.getWidth(), outputSize.getHeight());
+            filter.setParameters(parameters, FilterParameters.ALL_FIELDS);
+            return;
+        }
+
+        //a full resolution background may be too large for the cache, it is uploaded once here
+        Bitmap background = CustomFilterFactory.getBackground(parameters.backgroundImage, outputSize, isLandscape);
+        OrientedChromaKeyBlendFilter newFilter = CustomFilterFactory.getCustomFilter(parameters);
+        newFilter.setBitmap(background);
+        newFilter.ifNeedInit();
+        newFilter.onOutputSizeChanged(outputSize.getWidth(), outputSize.getHeight());
+        filterBuildCount.incrementAndGet();
+
+        if (filter != null) {
+            filter.destroy();
+        }
+        filter = newFilter;
+        filterBackgroundKey = backgroundKey;
+    }
+
+    /**
+     * @return the key of the background file, or of the placeholder shown when there is no file
+     */
+    private static BackgroundCache.Key backgroundKey(String path, Size outputSize, boolean isLandscape) {
+        BackgroundCache.Key key = BackgroundCache.Key.forFile(path, outputSize.getWidth(), outputSize.getHeight(), isLandscape);
+        if (key != null) {
+            return key;
+        }
+        return new BackgroundCache.Key(String.valueOf(path), 0L, outputSize.getWidth(), outputSize.getHeight(), isLandscape);
+    }
+
+    private void releaseGL() {
+        if (imageTextureId != OpenGlUtils.NO_TEXTURE) {
+            GLES20.glDeleteTextures(1, new int[]{imageTextureId}, 0);
+            imageTextureId = OpenGlUtils.NO_TEXTURE;
+        }
+        if (yuvToRgbFilter != null) {
+            yuvToRgbFilter.destroy();
+            yuvToRgbFilter = null;
+        }
+        if (filter != null) {
+            filter.destroy();
+            filter = null;
+        }
+        filterBackgroundKey = null;
+        if (egl == null) {
+            return;
+        }
+        egl.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+        if (eglSurface != EGL10.EGL_NO_SURFACE) {
+            egl.eglDestroySurface(eglDisplay, eglSurface);
+            eglSurface = EGL10.EGL_NO_SURFACE;
+        }
+        if (eglContext != EGL10.EGL_NO_CONTEXT) {
+            egl.eglDestroyContext(eglDisplay, eglContext);
+            eglContext = EGL10.EGL_NO_CONTEXT;
+        }
+        surfaceWidth = 0;
+        surfaceHeight = 0;
+    }
+
+    private EGLConfig chooseEglConfig() {
+        int[] configsCount = new int[1];
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configSpec = {
+                EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+                EGL10.EGL_RED_SIZE, 8,
+                EGL10.EGL_GREEN_SIZE, 8,
+                EGL10.EGL_BLUE_SIZE, 8,
+                EGL10.EGL_ALPHA_SIZE, 8,
+                EGL10.EGL_NONE
+        };
+        if (!egl.eglChooseConfig(eglDisplay, configSpec, configs, 1, configsCount) || configsCount[0] == 0) {
+            throw new IllegalArgumentException("Failed to choose config: " + GLUtils.getEGLErrorString(egl.eglGetError()));
+        }
+        return configs[0];
+    }
+}
@@ -0,0 +1,88 @@
+package io.flutter.plugins.camera.aardman;
+
+/**
+ * CPU implementations of the YUV to RGB conversion used by the preview pipeline
+ *
+ * nv21ToRgba is a Java port of GPUImageNativeLibrary.YUVtoRBGA, the conversion used by the
+ * NV21_NATIVE preview path. yuvToRgba mirrors the fragment shader in YuvToRgbFilter operation
+ * for operation, the integer shifts of the native code are expressed as floor divisions so
+ * that the GPU path produces the same pixels as the native path.
+ *
+ * Both return pixels in the layout produced by loading the native output with
+ * OpenGlUtils.loadTexture, ie: the int 0xAABBGGRR read as little endian RGBA texture bytes.
+ */
+public final class YuvConversion {
+
+    private YuvConversion() {}
+
+    /**
+     * Java port of GPUImageNativeLibrary.YUVtoRBGA
+     *
+     * @param yuv  NV21 frame, Y plane followed by interleaved VU at half resolution
+     * @param rgba output, width * height pixels
+     */
+    public static void nv21ToRgba(byte[] yuv, int width, int height, int[] rgba) {
+        int frameSize = width * height;
+        int cb = 0;
+        int cr = 0;
+        for (int j = 0; j < height; j++) {
+            int pixPtr = j * width;
+            int jDiv2 = j >> 1;
+            for (int i = 0; i < width; i++) {
+                int y = yuv[pixPtr];
+                if (y < 0) y += 255;
+                if ((i & 0x1) != 1) {
+                    int cOff = frameSize + jDiv2 * width + (i >> 1) * 2;
+                    cb = yuv[cOff];
+                    if (cb < 0) cb += 127; else cb -= 128;
+                    cr = yuv[cOff + 1];
+                    if (cr < 0) cr += 127; else cr -= 128;
+                }
+                y = y + (y >> 3) + (y >> 5) + (y >> 7);
+                int r = clamp(y + (cr << 1) + (cr >> 6));
+                int g = clamp(y - cb + (cb >> 3) + (cb >> 4) - (cr >> 1) + (cr >> 3));
+                int b = clamp(y + cb + (cb >> 1) + (cb >> 4) + (cb >> 5));
+                rgba[pixPtr++] = 0xff000000 + (r << 16) + (g << 8) + b;
+            }
+        }
+    }
+
+    /**
+     * CPU reference of the YuvToRgbFilter fragment shader for a single pixel
+     *
+     * @param luminance the Y texel, 0..255
+     * @param v         the luminance channel of the VU texel, 0..255
+     * @param u         the alpha channel of the VU texel, 0..255
+     * @return the pixel as written to the RGBA framebuffer, in the same layout as nv21ToRgba
+     */
+    public static int yuvToRgba(int luminance, int v, int u) {
+        //Signed byte adjustments made by the native code, see nv21ToRgba
+        float y = luminance - step(128.0f, luminance);
+        float cb = v - 128.0f - step(128.0f, v);
+        float cr = u - 128.0f - step(128.0f, u);
+
+        y = y + floor(y / 8.0f) + floor(y / 32.0f) + floor(y / 128.0f);
+
+        float red = clamp(y + cb + floor(cb / 2.0f) + floor(cb / 16.0f) + floor(cb / 32.0f));
+        float green = clamp(y - cb + floor(cb / 8.0f) + floor(cb / 16.0f) - floor(cr / 2.0f) + floor(cr / 8.0f));
+        float blue = clamp(y + cr * 2.0f + floor(cr / 64.0f));
+
+        return 0xff000000 + ((int) blue << 16) + ((int) green << 8) + (int) red;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0.0f, Math.min(255.0f, value));
+    }
+
+    private static float step(float edge, float x) {
+        return x < edge ? 0.0f : 1.0f;
+    }
+
+    private static float floor(float x) {
+        return (float) Math.floor(x);
+    }
+}
@@ -0,0 +1,201 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+
+/**
+ * Converts the planes of a YUV_PLANES preview frame to an RGBA texture on the GPU
+ *
+ * The Y plane is uploaded as a GL_LUMINANCE texture and the interleaved VU plane as a
+ * GL_LUMINANCE_ALPHA texture at half resolution, the fragment shader then renders RGB
+ * into an offscreen framebuffer whose texture is used as the input of the chroma filter.
+ * This replaces the CPU conversion in GPUImageNativeLibrary and the heap RGBA buffer.
+ *
+ * The shader reproduces GPUImageNativeLibrary.YUVtoRBGA exactly, see YuvConversion
+ * for the CPU reference of this shader.
+ *
+ * All methods must be called on the GLThread
+ */
+public class YuvToRgbFilter extends GPUImageFilter {
+
+    public static final String YUV_TO_RGB_FRAGMENT_SHADER = "" +
+            "varying highp vec2 textureCoordinate;\n" +
+            "\n" +
+            "uniform sampler2D inputImageTexture;\n" +
+            "uniform sampler2D inputImageTexture2;\n" +
+            "\n" +
+            "void main()\n" +
+            "{\n" +
+            "    highp float y = floor(texture2D(inputImageTexture, textureCoordinate).r * 255.0 + 0.5);\n" +
+            "    highp vec4 vu = floor(texture2D(inputImageTexture2, textureCoordinate) * 255.0 + 0.5);\n" +
+            "\n" +
+            "    y = y - step(128.0, y);\n" +
+            "    highp float cb = vu.r - 128.0 - step(128.0, vu.r);\n" +
+            "    highp float cr = vu.a - 128.0 - step(128.0, vu.a);\n" +
+            "\n" +
+            "    y = y + floor(y / 8.0) + floor(y / 32.0) + floor(y / 128.0);\n" +
+            "\n" +
+            "    highp vec3 rgb = vec3(\n" +
+            "        y + cb + floor(cb / 2.0) + floor(cb / 16.0) + floor(cb / 32.0),\n" +
+            "        y - cb + floor(cb / 8.0) + floor(cb / 16.0) - floor(cr / 2.0) + floor(cr / 8.0),\n" +
+            "        y + cr * 2.0 + floor(cr / 64.0));\n" +
+            "\n" +
+            "    gl_FragColor = vec4(clamp(rgb, 0.0, 255.0) / 255.0, 1.0);\n" +
+            "}";
+
+    //Full screen quad mapped so that row 0 of the frame lands in row 0 of the output texture
+    private static final float CUBE[] = {
+            -1.0f, -1.0f,
+            1.0f, -1.0f,
+            -1.0f, 1.0f,
+            1.0f, 1.0f,
+    };
+
+    private static final float TEXTURE_COORDINATES[] = {
+            0.0f, 0.0f,
+            1.0f, 0.0f,
+            0.0f, 1.0f,
+            1.0f, 1.0f,
+    };
+
+    private final FloatBuffer cubeBuffer;
+    private final FloatBuffer textureBuffer;
+
+    private int uvTextureUniform;
+
+    private int yTextureId = OpenGlUtils.NO_TEXTURE;
+    private int uvTextureId = OpenGlUtils.NO_TEXTURE;
+    private int outputTextureId = OpenGlUtils.NO_TEXTURE;
+    private int frameBufferId = 0;
+
+    private int frameWidth;
+    private int frameHeight;
+
+    public YuvToRgbFilter() {
+        super(NO_FILTER_VERTEX_SHADER, YUV_TO_RGB_FRAGMENT_SHADER);
+        cubeBuffer = asFloatBuffer(CUBE);
+        textureBuffer = asFloatBuffer(TEXTURE_COORDINATES);
+    }
+
+    private static FloatBuffer asFloatBuffer(float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    @Override
+    public void onInit() {
+        super.onInit();
+        uvTextureUniform = GLES20.glGetUniformLocation(getProgram(), "inputImageTexture2");
+    }
+
+    @Override
+    protected void onDrawArraysPre() {
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE3);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, uvTextureId);
+        GLES20.glUniform1i(uvTextureUniform, 3);
+    }
+
+    /**
+     * Uploads the planes of a frame and renders them to the RGBA output texture
+     *
+     * @param planes direct buffer holding the Y plane followed by the interleaved VU plane
+     * @return the RGBA texture, valid until the next call
+     */
+    public int convert(ByteBuffer planes, int width, int height) {
+        upload(planes, width, height);
+        return render();
+    }
+
+    /**
+     * Uploads the Y and VU planes of a frame, (re)allocating the textures if the frame size changed
+     */
+    public void upload(ByteBuffer planes, int width, int height) {
+        ifNeedInit();
+        if (width != frameWidth || height != frameHeight) {
+            releaseTextures();
+            allocateTextures(width, height);
+        }
+
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+
+        planes.position(0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, yTextureId);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, planes);
+
+        planes.position(width * height);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, uvTextureId);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width / 2, height / 2,
+                GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_UNSIGNED_BYTE, planes);
+        planes.position(0);
+    }
+
+    /**
+     * Renders the last uploaded planes to the RGBA output texture
+     *
+     * @return the RGBA texture, valid until the next call
+     */
+    public int render() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBufferId);
+        GLES20.glViewport(0, 0, frameWidth, frameHeight);
+        onDraw(yTextureId, cubeBuffer, textureBuffer);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        return outputTextureId;
+    }
+
+    private void allocateTextures(int width, int height) {
+        frameWidth = width;
+        frameHeight = height;
+        yTextureId = createTexture(GLES20.GL_LUMINANCE, width, height);
+        uvTextureId = createTexture(GLES20.GL_LUMINANCE_ALPHA, width / 2, height / 2);
+        outputTextureId = createTexture(GLES20.GL_RGBA, width, height);
+
+        int[] frameBuffers = new int[1];
+        GLES20.glGenFramebuffers(1, frameBuffers, 0);
+        frameBufferId = frameBuffers[0];
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBufferId);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, outputTextureId, 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    private static int createTexture(int format, int width, int height) {
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+        //Nearest sampling keeps each chroma texel paired with its two by two block of luma
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0,
+                format, GLES20.GL_UNSIGNED_BYTE, null);
+        return textures[0];
+    }
+
+    private void releaseTextures() {
+        if (frameBufferId != 0) {
+            GLES20.glDeleteFramebuffers(1, new int[]{frameBufferId}, 0);
+            GLES20.glDeleteTextures(3, new int[]{yTextureId, uvTextureId, outputTextureId}, 0);
+            frameBufferId = 0;
+        }
+        frameWidth = 0;
+        frameHeight = 0;
+    }
+
+    @Override
+    public void onDestroy() {
+        releaseTextures();
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,191 @@
+package io.flutter.plugins.camera.aardman;
+
+import android.media.Image;
+import android.media.ImageReader;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Zero shutter lag ring of the most recent full resolution YUV images
+ *
+ * Every image from the ZSL ImageReader is kept, tagged with its sensor timestamp, until it is
+ * evicted by a newer one. takeClosest hands out the image closest to the trigger time, so the
+ * picture is the frame that was on screen rather than one taken after a precapture sequence.
+ *
+ * The ring is bounded both by a number of images and by a byte budget, the bytes of the plane
+ * buffers held are accounted as images are added and released. Images are added on the camera
+ * background thread and taken on the platform thread.
+ */
+public class ZslRingBuffer implements ImageReader.OnImageAvailableListener {
+
+    private static final String TAG = "ZslRingBuffer";
+
+    private final int capacity;
+    private final long maxBytes;
+    private final ArrayDeque<Image> images;
+
+    private long heldBytes = 0;
+    private long peakHeldBytes = 0;
+    private long evictedCount = 0;
+    private long droppedCount = 0;
+    private long takenCount = 0;
+    //distance between the last trigger and the timestamp of the image taken for it
+    private long lastSelectionErrorNanos = 0;
+
+    /**
+     * @param maxImages the most images the ring holds
+     * @param maxBytes  the most plane bytes the ring holds
+     * @param width     full resolution width, used to size the ring against maxBytes
+     * @param height    full resolution height
+     */
+    public ZslRingBuffer(int maxImages, long maxBytes, int width, int height) {
+        this.capacity = capacityFor(maxImages, maxBytes, width, height);
+        this.maxBytes = maxBytes;
+        this.images = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * @return how many images fit, at least one, a YUV_420_888 image being 12 bits per pixel
+     */
+    static int capacityFor(int maxImages, long maxBytes, int width, int height) {
+        long frameBytes = Math.max(1L, (long) width * height * 3 / 2);
+        return (int) Math.max(1, Math.min(maxImages, maxBytes / frameBytes));
+    }
+
+    /**
+     * @return the maxImages the ZSL ImageReader needs, the ring and one image in the still path
+     */
+    public int getReaderMaxImages() {
+        return capacity + 1;
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            //make room first, so that the reader limit is never exceeded
+            evictForCapacity();
+            image = reader.acquireNextImage();
+        } catch (IllegalStateException e) {
+            //the taken image is still being saved and the ring is full
+            synchronized (this) {
+                droppedCount++;
+            }
+            Log.i(TAG, "DROPPED A ZSL FRAME, " + e.getMessage());
+            return;
+        }
+        if (image != null) {
+            add(image);
+        }
+    }
+
+    /**
+     * Adds an image, evicting the oldest ones to stay within the image and byte limits
+     */
+    public synchronized void add(Image image) {
+        long imageBytes = bytesOf(image);
+        while (!images.isEmpty()
+                && (images.size() >= capacity || heldBytes + imageBytes > maxBytes)) {
+            evictOldest();
+        }
+        images.addLast(image);
+        heldBytes += imageBytes;
+        peakHeldBytes = Math.max(peakHeldBytes, heldBytes);
+    }
+
+    /**
+     * Removes and returns the image whose timestamp is closest to the trigger, the caller owns
+     * the image and must close it. On a tie the earlier image is taken.
+     *
+     * @param triggerNanos the trigger time in the sensor timestamp time base
+     * @return the image, or null if the ring is empty
+     */
+    public synchronized Image takeClosest(long triggerNanos) {
+        Image closest = null;
+        long closestDistance = Long.MAX_VALUE;
+        for (Image image : images) {
+            long distance = Math.abs(image.getTimestamp() - triggerNanos);
+            if (distance < closestDistance) {
+                closest = image;
+                closestDistance = distance;
+            }
+        }
+        if (closest == null) {
+            return null;
+        }
+        images.remove(closest);
+        heldBytes -= bytesOf(closest);
+        takenCount++;
+        lastSelectionErrorNanos = closest.getTimestamp() - triggerNanos;
+        return closest;
+    }
+
+    /**
+     * Closes every held image, when ZSL is turned off or the camera closes
+     */
+    public synchronized void clear() {
+        Iterator<Image> iterator = images.iterator();
+        while (iterator.hasNext()) {
+            iterator.next().close();
+            iterator.remove();
+        }
+        heldBytes = 0;
+    }
+
+    private synchronized void evictForCapacity() {
+        while (images.size() >= capacity) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        Image oldest = images.pollFirst();
+        heldBytes -= bytesOf(oldest);
+        evictedCount++;
+        oldest.close();
+    }
+
+    private static long bytesOf(Image image) {
+        long bytes = 0;
+        for (Image.Plane plane : image.getPlanes()) {
+            ByteBuffer buffer = plane.getBuffer();
+            bytes += buffer.capacity();
+        }
+        return bytes;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getSize() {
+        return images.size();
+    }
+
+    public synchronized long getHeldBytes() {
+        return heldBytes;
+    }
+
+    public synchronized long getPeakHeldBytes() {
+        return peakHeldBytes;
+    }
+
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getTakenCount() {
+        return takenCount;
+    }
+
+    public synchronized long getLastSelectionErrorNanos() {
+        return lastSelectionErrorNanos;
+    }
+}
@@ -6,8 +6,10 @@ package io.flutter.plugins.camera.features;
 
 import android.app.Activity;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import io.flutter.plugins.camera.CameraProperties;
 import io.flutter.plugins.camera.DartMessenger;
+import io.flutter.plugins.camera.aardman.CameraCapabilityCache;
 import io.flutter.plugins.camera.features.autofocus.AutoFocusFeature;
 import io.flutter.plugins.camera.features.exposurelock.ExposureLockFeature;
 import io.flutter.plugins.camera.features.exposureoffset.ExposureOffsetFeature;
@@ -27,6 +29,16 @@ import io.flutter.plugins.camera.features.zoomlevel.ZoomLevelFeature;
  * android.hardware.camera2.CaptureRequest}.
  */
 public class CameraFeatureFactoryImpl implements CameraFeatureFactory {
+  // Aardman-Animator: resolves the recording profiles once per camera and preset.
+  @Nullable private final CameraCapabilityCache capabilityCache;
+
+  public CameraFeatureFactoryImpl() {
+    this(null);
+  }
+
+  public CameraFeatureFactoryImpl(@Nullable CameraCapabilityCache capabilityCache) {
+    this.capabilityCache = capabilityCache;
+  }
 
   @Override
   public AutoFocusFeature createAutoFocusFeature(
@@ -55,7 +67,7 @@ public class CameraFeatureFactoryImpl implements CameraFeatureFactory {
       @NonNull CameraProperties cameraProperties,
       ResolutionPreset initialSetting,
       String cameraName) {
-    return new ResolutionFeature(cameraProperties, initialSetting, cameraName);
+    return new ResolutionFeature(cameraProperties, initialSetting, cameraName, capabilityCache);
   }
 
   @Override
@@ -10,8 +10,10 @@ import android.media.CamcorderProfile;
 import android.media.EncoderProfiles;
 import android.os.Build;
 import android.util.Size;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import io.flutter.plugins.camera.CameraProperties;
+import io.flutter.plugins.camera.aardman.CameraCapabilityCache;
 import io.flutter.plugins.camera.features.CameraFeature;
 import java.util.List;
 
@@ -29,6 +31,7 @@ public class ResolutionFeature extends CameraFeature<ResolutionPreset> {
   private EncoderProfiles recordingProfile;
   private ResolutionPreset currentSetting;
   private int cameraId;
+  @Nullable private final CameraCapabilityCache capabilityCache;
 
   /**
    * Creates a new instance of the {@link ResolutionFeature}.
@@ -39,7 +42,23 @@ public class ResolutionFeature extends CameraFeature<ResolutionPreset> {
    */
   public ResolutionFeature(
       CameraProperties cameraProperties, ResolutionPreset resolutionPreset, String cameraName) {
+    this(cameraProperties, resolutionPreset, cameraName, null);
+  }
+
+  /**
+   * Aardman-Animator: creates a new instance of the {@link ResolutionFeature} that looks up the
+   * recording profiles through the capability cache.
+   *
+   * @param capabilityCache Resolves each recording profile once per camera and preset, or null
+   *     to resolve them every time.
+   */
+  public ResolutionFeature(
+      CameraProperties cameraProperties,
+      ResolutionPreset resolutionPreset,
+      String cameraName,
+      @Nullable CameraCapabilityCache capabilityCache) {
     super(cameraProperties);
+    this.capabilityCache = capabilityCache;
     this.currentSetting = resolutionPreset;
     try {
       this.cameraId = Integer.parseInt(cameraName, 10);
@@ -236,8 +255,7 @@ public class ResolutionFeature extends CameraFeature<ResolutionPreset> {
     }
 
     if (Build.VERSION.SDK_INT >= 31) {
-      recordingProfile =
-          getBestAvailableCamcorderProfileForResolutionPreset(cameraId, resolutionPreset);
+      recordingProfile = resolveRecordingProfile(cameraId, resolutionPreset);
       List<EncoderProfiles.VideoProfile> videoProfiles = recordingProfile.getVideoProfiles();
 
       EncoderProfiles.VideoProfile defaultVideoProfile = videoProfiles.get(0);
@@ -245,12 +263,47 @@ public class ResolutionFeature extends CameraFeature<ResolutionPreset> {
     } else {
       @SuppressWarnings("deprecation")
       CamcorderProfile camcorderProfile =
-          getBestAvailableCamcorderProfileForResolutionPresetLegacy(cameraId, resolutionPreset);
+          resolveRecordingProfileLegacy(cameraId, resolutionPreset);
       recordingProfileLegacy = camcorderProfile;
       captureSize =
           new Size(recordingProfileLegacy.videoFrameWidth, recordingProfileLegacy.videoFrameHeight);
     }
 
-    previewSize = computeBestPreviewSize(cameraId, resolutionPreset);
+    // Aardman-Animator: up to high the preview uses the recording profile just resolved.
+    if (resolutionPreset.ordinal() <= ResolutionPreset.high.ordinal()) {
+      previewSize = captureSize;
+    } else if (capabilityCache != null) {
+      previewSize = computeBestPreviewSize(capabilityCache, cameraId);
+    } else {
+      previewSize = computeBestPreviewSize(cameraId, resolutionPreset);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.S)
+  private EncoderProfiles resolveRecordingProfile(int cameraId, ResolutionPreset preset) {
+    return capabilityCache != null
+        ? capabilityCache.getRecordingProfile(cameraId, preset)
+        : getBestAvailableCamcorderProfileForResolutionPreset(cameraId, preset);
+  }
+
+  @SuppressWarnings("deprecation")
+  private CamcorderProfile resolveRecordingProfileLegacy(int cameraId, ResolutionPreset preset) {
+    return capabilityCache != null
+        ? capabilityCache.getRecordingProfileLegacy(cameraId, preset)
+        : getBestAvailableCamcorderProfileForResolutionPresetLegacy(cameraId, preset);
+  }
+
+  /** The preview size of the presets above high, see {@link #computeBestPreviewSize}. */
+  private static Size computeBestPreviewSize(CameraCapabilityCache capabilityCache, int cameraId) {
+    if (Build.VERSION.SDK_INT >= 31) {
+      EncoderProfiles profile = capabilityCache.getRecordingProfile(cameraId, ResolutionPreset.high);
+      EncoderProfiles.VideoProfile defaultVideoProfile = profile.getVideoProfiles().get(0);
+      return new Size(defaultVideoProfile.getWidth(), defaultVideoProfile.getHeight());
+    } else {
+      @SuppressWarnings("deprecation")
+      CamcorderProfile profile =
+          capabilityCache.getRecordingProfileLegacy(cameraId, ResolutionPreset.high);
+      return new Size(profile.videoFrameWidth, profile.videoFrameHeight);
+    }
   }
 }
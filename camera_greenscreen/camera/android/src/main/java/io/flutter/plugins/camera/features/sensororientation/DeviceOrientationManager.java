@@ -33,6 +33,7 @@ public class DeviceOrientationManager {
   private final int sensorOrientation;
   private PlatformChannel.DeviceOrientation lastOrientation;
   private BroadcastReceiver broadcastReceiver;
+  private Runnable orientationChangeListener;
 
   /** Factory method to create a device orientation manager. */
   public static DeviceOrientationManager create(
@@ -81,6 +82,16 @@ public class DeviceOrientationManager {
     broadcastReceiver.onReceive(activity, null);
   }
 
+  /**
+   * Aardman-Animator
+   *
+   * <p>Runs on the main thread after each change of the UI orientation, once the new orientation
+   * is returned by {@link #getPhotoOrientation()}.
+   */
+  public void setOrientationChangeListener(Runnable listener) {
+    this.orientationChangeListener = listener;
+  }
+
   /** Stops listening for orientation updates. */
   public void stop() {
     if (broadcastReceiver == null) {
@@ -208,7 +219,11 @@ public class DeviceOrientationManager {
   void handleUIOrientationChange() {
     PlatformChannel.DeviceOrientation orientation = getUIOrientation();
     handleOrientationChange(orientation, lastOrientation, messenger);
+    boolean changed = !orientation.equals(lastOrientation);
     lastOrientation = orientation;
+    if (changed && orientationChangeListener != null) {
+      orientationChangeListener.run();
+    }
   }
 
   /**
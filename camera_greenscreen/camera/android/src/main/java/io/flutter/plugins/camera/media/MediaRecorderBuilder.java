@@ -9,6 +9,7 @@ import android.media.EncoderProfiles;
 import android.media.MediaRecorder;
 import android.os.Build;
 import androidx.annotation.NonNull;
+import io.flutter.plugins.camera.aardman.FilteredVideoRecorder;
 import java.io.IOException;
 
 public class MediaRecorderBuilder {
@@ -111,4 +112,54 @@ public class MediaRecorderBuilder {
 
     return mediaRecorder;
   }
+
+  /**
+   * Builds a recorder for the filtered preview with the same codecs, bit rates and audio
+   * settings as {@link #build()}, the video is encoded at the given preview size.
+   *
+   * @param width width of the filtered preview.
+   * @param height height of the filtered preview.
+   * @param realtimeTimestamps true if the camera timestamps are based on elapsedRealtimeNanos.
+   */
+  public FilteredVideoRecorder buildFilteredVideoRecorder(
+      int width, int height, boolean realtimeTimestamps) throws IOException {
+    FilteredVideoRecorder recorder =
+        new FilteredVideoRecorder(
+            outputFilePath, getFilteredVideoSettings(width, height, realtimeTimestamps));
+    recorder.prepare();
+    return recorder;
+  }
+
+  FilteredVideoRecorder.Settings getFilteredVideoSettings(
+      int width, int height, boolean realtimeTimestamps) {
+    FilteredVideoRecorder.Settings settings = new FilteredVideoRecorder.Settings();
+    settings.width = width;
+    settings.height = height;
+    settings.enableAudio = enableAudio;
+    settings.orientationHint = mediaOrientation;
+    settings.realtimeTimestamps = realtimeTimestamps;
+
+    if (Build.VERSION.SDK_INT >= 31) {
+      EncoderProfiles.VideoProfile videoProfile = encoderProfiles.getVideoProfiles().get(0);
+      settings.videoCodec = videoProfile.getCodec();
+      settings.videoBitRate = videoProfile.getBitrate();
+      settings.videoFrameRate = videoProfile.getFrameRate();
+      if (enableAudio) {
+        EncoderProfiles.AudioProfile audioProfile = encoderProfiles.getAudioProfiles().get(0);
+        settings.audioBitRate = audioProfile.getBitrate();
+        settings.audioSampleRate = audioProfile.getSampleRate();
+        settings.audioChannels = audioProfile.getChannels();
+      }
+    } else {
+      settings.videoCodec = camcorderProfile.videoCodec;
+      settings.videoBitRate = camcorderProfile.videoBitRate;
+      settings.videoFrameRate = camcorderProfile.videoFrameRate;
+      if (enableAudio) {
+        settings.audioBitRate = camcorderProfile.audioBitRate;
+        settings.audioSampleRate = camcorderProfile.audioSampleRate;
+        settings.audioChannels = camcorderProfile.audioChannels;
+      }
+    }
+    return settings;
+  }
 }
@@ -8,7 +8,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
@@ -18,10 +20,14 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.app.Activity;
+import android.content.Context;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
+import android.media.Image;
+import android.media.ImageReader;
 import android.media.MediaRecorder;
 import android.os.Build;
 import android.os.Handler;
@@ -30,6 +36,8 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.LifecycleObserver;
 import io.flutter.embedding.engine.systemchannels.PlatformChannel;
 import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugins.camera.aardman.CameraExecutors;
+import io.flutter.plugins.camera.aardman.StillImageFilterProcessor;
 import io.flutter.plugins.camera.features.CameraFeatureFactory;
 import io.flutter.plugins.camera.features.Point;
 import io.flutter.plugins.camera.features.autofocus.AutoFocusFeature;
@@ -50,9 +58,11 @@ import io.flutter.plugins.camera.features.sensororientation.SensorOrientationFea
 import io.flutter.plugins.camera.features.zoomlevel.ZoomLevelFeature;
 import io.flutter.plugins.camera.utils.TestUtils;
 import io.flutter.view.TextureRegistry;
+import java.io.File;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.MockedStatic;
 
 public class CameraTest {
@@ -801,6 +811,110 @@ public class CameraTest {
     verify(mockHandlerThread, times(1)).start();
   }
 
+  @Test
+  public void takePicture_shouldAbortRapidShotsInFlightAndDiscardTheirImages()
+      throws CameraAccessException {
+    final Context mockContext = mock(Context.class);
+    final CameraDevice mockCameraDevice = mock(CameraDevice.class);
+    final ImageReader mockPictureImageReader = mock(ImageReader.class);
+    when(mockContext.getCacheDir()).thenReturn(new File(System.getProperty("java.io.tmpdir")));
+    when(mockCameraDevice.createCaptureRequest(anyInt()))
+        .thenReturn(mock(CaptureRequest.Builder.class));
+    TestUtils.setPrivateField(camera, "applicationContext", mockContext);
+    TestUtils.setPrivateField(camera, "cameraDevice", mockCameraDevice);
+    TestUtils.setPrivateField(camera, "pictureImageReader", mockPictureImageReader);
+    camera.startBackgroundThread();
+
+    camera.setRapidCaptureMode(true, mock(MethodChannel.Result.class));
+    final MethodChannel.Result mockShotResult = mock(MethodChannel.Result.class);
+    camera.takePicture(mockShotResult);
+    ArgumentCaptor<CameraCaptureSession.CaptureCallback> shotCallback =
+        ArgumentCaptor.forClass(CameraCaptureSession.CaptureCallback.class);
+    verify(mockCaptureSession).capture(any(), shotCallback.capture(), any());
+    shotCallback
+        .getValue()
+        .onCaptureStarted(mockCaptureSession, mock(CaptureRequest.class), 100L, 1L);
+    camera.setRapidCaptureMode(false, mock(MethodChannel.Result.class));
+
+    // The image of the shot is queued in the reader when the regular capture starts.
+    final Image mockQueuedImage = mock(Image.class);
+    when(mockQueuedImage.getTimestamp()).thenReturn(100L);
+    when(mockPictureImageReader.acquireNextImage()).thenReturn(mockQueuedImage, (Image) null);
+    final MethodChannel.Result mockPictureResult = mock(MethodChannel.Result.class);
+    camera.takePicture(mockPictureResult);
+
+    verify(mockDartMessenger, times(1))
+        .error(eq(mockShotResult), eq("captureAborted"), any(), any());
+    verify(mockQueuedImage, times(1)).close();
+    verify(mockPictureImageReader, times(1)).setOnImageAvailableListener(camera, mockHandler);
+
+    // An image of the shot arriving late is held until the still capture has started.
+    final CameraExecutors.MonitoredExecutor mockImaging = mockImagingExecutor();
+    final Image mockLateImage = mock(Image.class);
+    when(mockLateImage.getTimestamp()).thenReturn(100L);
+    final Image mockStillImage = mock(Image.class);
+    when(mockStillImage.getTimestamp()).thenReturn(200L);
+    when(mockPictureImageReader.acquireNextImage())
+        .thenReturn(mockLateImage, mockStillImage, (Image) null);
+    camera.onImageAvailable(mockPictureImageReader);
+
+    verify(mockLateImage, never()).close();
+    verify(mockImaging, never()).execute(any());
+
+    camera.onConverged();
+    ArgumentCaptor<CameraCaptureSession.CaptureCallback> stillCallback =
+        ArgumentCaptor.forClass(CameraCaptureSession.CaptureCallback.class);
+    verify(mockCaptureSession, atLeastOnce()).capture(any(), stillCallback.capture(), any());
+    stillCallback
+        .getValue()
+        .onCaptureStarted(mockCaptureSession, mock(CaptureRequest.class), 200L, 2L);
+
+    verify(mockLateImage, times(1)).close();
+    verify(mockStillImage, never()).close();
+    verify(mockImaging, times(1)).execute(any(StillImageFilterProcessor.class));
+  }
+
+  @Test
+  public void onImageAvailable_shouldTakeAStillArrivingBeforeItsCaptureStarted() {
+    final ImageReader mockPictureImageReader = mock(ImageReader.class);
+    final Image mockStillImage = mock(Image.class);
+    when(mockStillImage.getTimestamp()).thenReturn(200L);
+    when(mockPictureImageReader.acquireNextImage()).thenReturn(mockStillImage, (Image) null);
+    final CameraExecutors.MonitoredExecutor mockImaging = mockImagingExecutor();
+
+    // No rapid capture shot was aborted, the image can only be the still.
+    camera.onImageAvailable(mockPictureImageReader);
+
+    verify(mockStillImage, never()).close();
+    verify(mockImaging, times(1)).execute(any(StillImageFilterProcessor.class));
+  }
+
+  @Test
+  public void close_shouldCloseThePictureReaderOnceTheStillsBeingSavedAreDone() {
+    final ImageReader mockPictureImageReader = mock(ImageReader.class);
+    TestUtils.setPrivateField(camera, "pictureImageReader", mockPictureImageReader);
+    final CameraExecutors.MonitoredExecutor mockImaging = mockImagingExecutor();
+
+    camera.close();
+
+    ArgumentCaptor<Runnable> whenIdle = ArgumentCaptor.forClass(Runnable.class);
+    verify(mockImaging, times(1)).executeWhenIdle(whenIdle.capture());
+    verify(mockPictureImageReader, never()).close();
+
+    whenIdle.getValue().run();
+
+    verify(mockPictureImageReader, times(1)).close();
+  }
+
+  private CameraExecutors.MonitoredExecutor mockImagingExecutor() {
+    final CameraExecutors mockExecutors = mock(CameraExecutors.class);
+    final CameraExecutors.MonitoredExecutor mockImaging =
+        mock(CameraExecutors.MonitoredExecutor.class);
+    when(mockExecutors.getImaging()).thenReturn(mockImaging);
+    TestUtils.setPrivateField(camera, "executors", mockExecutors);
+    return mockImaging;
+  }
+
   private static class TestCameraFeatureFactory implements CameraFeatureFactory {
     private final AutoFocusFeature mockAutoFocusFeature;
     private final ExposureLockFeature mockExposureLockFeature;
@@ -7,6 +7,7 @@ package io.flutter.plugins.camera;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -74,4 +75,12 @@ public class MethodCallHandlerImplTest {
     verify(mockCamera, times(1)).resumePreview();
     verify(mockResult, times(1)).success(null);
   }
+
+  @Test
+  public void onMethodCall_create_shouldReleaseTheCameraItReplaces() {
+    handler.onMethodCall(new MethodCall("create", null), mockResult);
+
+    verify(mockCamera, times(1)).closeForReplacement();
+    verify(mockCamera, never()).close();
+  }
 }
@@ -0,0 +1,94 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class AnalysisStreamTest {
+
+    private static final long MS = 1_000_000;
+
+    private static final AnalysisStream.FrameListener LISTENER = new AnalysisStream.FrameListener() {
+        @Override
+        public boolean hasCredit() {
+            return true;
+        }
+
+        @Override
+        public void onAnalysisFrame(ByteBuffer rgba, int width, int height) {}
+    };
+
+    private static AnalysisStream stream(double maxFrameRate) {
+        return new AnalysisStream(AnalysisContent.COMPOSITE, 64, 48, maxFrameRate, LISTENER, null);
+    }
+
+    /**
+     * @return how many of the camera frames, at the given interval with the given jitter, are due
+     */
+    private static int dueFrames(AnalysisStream stream, int frames, long intervalNanos, long jitterNanos) {
+        int due = 0;
+        for (int i = 0; i < frames; i++) {
+            long jitter = (i % 2 == 0) ? jitterNanos : -jitterNanos;
+            if (stream.isDue(1000 * MS + i * intervalNanos + jitter)) {
+                due++;
+            }
+        }
+        return due;
+    }
+
+    @Test
+    public void firstFrameIsDue() {
+        assertTrue(stream(10).isDue(5 * MS));
+    }
+
+    @Test
+    public void pacesFramesToTheFrameRate() {
+        AnalysisStream stream = stream(10);
+
+        assertTrue(stream.isDue(0));
+        assertFalse(stream.isDue(33 * MS));
+        assertFalse(stream.isDue(66 * MS));
+        assertTrue(stream.isDue(100 * MS));
+        assertFalse(stream.isDue(133 * MS));
+    }
+
+    @Test
+    public void cameraJitterDoesNotLowerTheRate() {
+        //30fps camera with a millisecond of jitter, 10fps analysis
+        AnalysisStream stream = stream(10);
+
+        assertEquals(10, dueFrames(stream, 30, 33_333_333, MS));
+    }
+
+    @Test
+    public void everyCameraFrameIsDueAboveTheCameraRate() {
+        AnalysisStream stream = stream(60);
+
+        assertEquals(30, dueFrames(stream, 30, 33_333_333, 0));
+    }
+
+    @Test
+    public void restartsPacingAfterAGap() {
+        AnalysisStream stream = stream(10);
+        assertTrue(stream.isDue(0));
+
+        //no frames for a second, then frames resume
+        assertTrue(stream.isDue(1000 * MS));
+        assertFalse(stream.isDue(1033 * MS));
+        assertTrue(stream.isDue(1100 * MS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptySize() {
+        new AnalysisStream(AnalysisContent.MATTE, 0, 48, 10, LISTENER, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANonPositiveFrameRate() {
+        new AnalysisStream(AnalysisContent.MATTE, 64, 48, 0, LISTENER, null);
+    }
+}
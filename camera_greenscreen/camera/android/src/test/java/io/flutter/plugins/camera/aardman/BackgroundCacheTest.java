@@ -0,0 +1,119 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class BackgroundCacheTest {
+
+    //10x10 ARGB_8888 bitmaps are 400 bytes
+    private static final int BITMAP_BYTES = 400;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Bitmap bitmap() {
+        return Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    }
+
+    private static BackgroundCache.Key key(String path) {
+        return new BackgroundCache.Key(path, 1L, 720, 480, true);
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        BackgroundCache cache = new BackgroundCache(BITMAP_BYTES * 2);
+        Bitmap background = bitmap();
+
+        assertNull(cache.get(key("a")));
+        cache.putBackground(key("a"), background);
+
+        assertSame(background, cache.get(key("a")));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsedBackgroundWithoutRecyclingIt() {
+        BackgroundCache cache = new BackgroundCache(BITMAP_BYTES * 2);
+        Bitmap first = bitmap();
+        Bitmap second = bitmap();
+        Bitmap third = bitmap();
+        cache.putBackground(key("first"), first);
+        cache.putBackground(key("second"), second);
+        //first becomes the most recently used
+        cache.get(key("first"));
+
+        cache.putBackground(key("third"), third);
+
+        assertEquals(1, cache.evictionCount());
+        //a filter may not have uploaded it yet
+        assertFalse(second.isRecycled());
+        assertFalse(first.isRecycled());
+        assertNull(cache.get(key("second")));
+        assertSame(first, cache.get(key("first")));
+        assertSame(third, cache.get(key("third")));
+        assertEquals(BITMAP_BYTES * 2, cache.size());
+    }
+
+    @Test
+    public void putBackground_leavesBackgroundsLargerThanTheCacheToTheCaller() {
+        BackgroundCache cache = new BackgroundCache(BITMAP_BYTES - 1);
+        Bitmap background = bitmap();
+
+        assertFalse(cache.putBackground(key("a"), background));
+
+        assertFalse(background.isRecycled());
+        assertEquals(0, cache.evictionCount());
+        assertNull(cache.get(key("a")));
+    }
+
+    @Test
+    public void put_doesNotRecycleAReplacedBackground() {
+        BackgroundCache cache = new BackgroundCache(BITMAP_BYTES * 2);
+        Bitmap original = bitmap();
+        cache.putBackground(key("a"), original);
+
+        cache.putBackground(key("a"), bitmap());
+
+        assertFalse(original.isRecycled());
+        assertEquals(0, cache.evictionCount());
+    }
+
+    @Test
+    public void key_distinguishesTargetSizeOrientationAndModificationTime() throws IOException {
+        File file = temporaryFolder.newFile("background.png");
+        assertTrue(file.setLastModified(1_000_000L));
+        String path = file.getAbsolutePath();
+
+        BackgroundCache.Key key = BackgroundCache.Key.forFile(path, 720, 480, true);
+        assertEquals(key, BackgroundCache.Key.forFile(path, 720, 480, true));
+        assertEquals(key.hashCode(), BackgroundCache.Key.forFile(path, 720, 480, true).hashCode());
+        assertNotEquals(key, BackgroundCache.Key.forFile(path, 1280, 720, true));
+        assertNotEquals(key, BackgroundCache.Key.forFile(path, 720, 480, false));
+
+        assertTrue(file.setLastModified(2_000_000L));
+        assertNotEquals(key, BackgroundCache.Key.forFile(path, 720, 480, true));
+    }
+
+    @Test
+    public void key_isNullForMissingFiles() {
+        assertNull(BackgroundCache.Key.forFile(null, 720, 480, true));
+        assertNull(BackgroundCache.Key.forFile("/does/not/exist.png", 720, 480, true));
+    }
+}
@@ -0,0 +1,105 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BackgroundGeometryTest {
+
+    @Test
+    public void of_fitsTheSourceHeightToTheOutputAndCentersTheCrop() {
+        BackgroundGeometry geometry = BackgroundGeometry.of(1920, 1080, 720, 480, true);
+
+        assertEquals(2.25f, geometry.scaleFactor, 1e-6f);
+        assertEquals(720, geometry.outputWidth);
+        assertEquals(480, geometry.outputHeight);
+        //the scaled background is 853 wide, centered on the 720 wide output
+        assertEquals(66, geometry.translationInX);
+    }
+
+    @Test
+    public void of_swapsTheOutputForPortrait() {
+        BackgroundGeometry geometry = BackgroundGeometry.of(1920, 1080, 720, 480, false);
+
+        assertEquals(480, geometry.outputWidth);
+        assertEquals(720, geometry.outputHeight);
+        assertEquals(1.5f, geometry.scaleFactor, 1e-6f);
+    }
+
+    @Test
+    public void inSampleSize_keepsTheDecodeAtLeastAsTallAsTheOutput() {
+        //24MP source for a 720x480 preview
+        assertEquals(8, BackgroundGeometry.of(6000, 4000, 720, 480, true).inSampleSize());
+        assertEquals(4, BackgroundGeometry.of(6000, 4000, 720, 480, false).inSampleSize());
+        assertEquals(2, BackgroundGeometry.of(1920, 1080, 720, 480, true).inSampleSize());
+        assertEquals(1, BackgroundGeometry.of(1280, 720, 1280, 720, true).inSampleSize());
+        //never upsampled
+        assertEquals(1, BackgroundGeometry.of(640, 360, 1280, 720, true).inSampleSize());
+    }
+
+    @Test
+    public void sourceCrop_coversTheOutputAndStaysCentered() {
+        int[][] cases = {
+                {6000, 4000, 720, 480, 1},
+                {6000, 4000, 720, 480, 0},
+                {8000, 2000, 1920, 1080, 1},
+                {4032, 3024, 1280, 720, 0},
+                {5760, 2400, 3840, 2160, 1},
+        };
+        for (int[] c : cases) {
+            BackgroundGeometry geometry = BackgroundGeometry.of(c[0], c[1], c[2], c[3], c[4] == 1);
+            int sampleSize = geometry.inSampleSize();
+
+            //as decoded by the region decoder and then scaled to the output height
+            int decodedWidth = geometry.sourceCropWidth / sampleSize;
+            int decodedHeight = geometry.sourceHeight / sampleSize;
+            assertTrue(decodedHeight >= geometry.outputHeight);
+            float scaledWidth = decodedWidth * geometry.outputHeight / (float) decodedHeight;
+            assertTrue(Math.round(scaledWidth) >= geometry.outputWidth);
+
+            assertTrue(geometry.sourceCropLeft >= 0);
+            assertTrue(geometry.sourceCropLeft + geometry.sourceCropWidth <= geometry.sourceWidth);
+            int leftMargin = geometry.sourceCropLeft;
+            int rightMargin = geometry.sourceWidth - geometry.sourceCropLeft - geometry.sourceCropWidth;
+            assertTrue(Math.abs(leftMargin - rightMargin) <= 1);
+        }
+    }
+
+    @Test
+    public void textureCoordinates_leavesLandscapeUnchanged() {
+        float[] coordinates = {0f, 1f, 1f, 1f, 0f, 0f, 1f, 0f};
+
+        assertArrayEquals(coordinates, BackgroundGeometry.textureCoordinates(coordinates, 1280, 720, true), 0f);
+    }
+
+    @Test
+    public void textureCoordinates_turnsAndCropsForPortrait() {
+        float[] coordinates = {0f, 1f, 1f, 1f, 0f, 0f, 1f, 0f};
+
+        //a 2:1 preview shows the center quarter of the landscape background in portrait
+        float[] portrait = BackgroundGeometry.textureCoordinates(coordinates, 1280, 640, false);
+
+        assertArrayEquals(new float[]{0.375f, 0f, 0.375f, 1f, 0.625f, 0f, 0.625f, 1f}, portrait, 1e-6f);
+    }
+
+    @Test
+    public void textureCoordinates_keepsTheCenterOfThePortraitBackground() {
+        float[] portrait = BackgroundGeometry.textureCoordinates(new float[]{0.5f, 0.5f, 0f, 0f}, 1920, 1080, false);
+
+        assertEquals(0.5f, portrait[0], 1e-6f);
+        assertEquals(0.5f, portrait[1], 1e-6f);
+        //the top left of the rotated background is the top right of the portrait crop
+        assertEquals(0.5f + 0.5f * (1080f / 1920f) * (1080f / 1920f), portrait[2], 1e-6f);
+        assertEquals(0f, portrait[3], 1e-6f);
+    }
+
+    @Test
+    public void sourceCrop_isTheWholeWidthOfNarrowSources() {
+        BackgroundGeometry geometry = BackgroundGeometry.of(640, 480, 720, 480, true);
+
+        assertEquals(0, geometry.sourceCropLeft);
+        assertEquals(640, geometry.sourceCropWidth);
+    }
+}
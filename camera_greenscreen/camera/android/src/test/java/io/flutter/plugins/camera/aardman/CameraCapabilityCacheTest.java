@@ -0,0 +1,86 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CameraCapabilityCacheTest {
+
+    private final CameraManager cameraManager = mock(CameraManager.class);
+    private final CameraCharacteristics characteristics = mock(CameraCharacteristics.class);
+    private CameraCapabilityCache cache;
+
+    @Before
+    public void setUp() throws CameraAccessException {
+        when(cameraManager.getCameraIdList()).thenReturn(new String[]{"0", "1"});
+        when(cameraManager.getCameraCharacteristics(anyString())).thenReturn(characteristics);
+        when(characteristics.get(any())).thenReturn(90);
+        cache = new CameraCapabilityCache(cameraManager);
+    }
+
+    @Test
+    public void characteristicsAreLookedUpOnce() throws CameraAccessException {
+        assertSame(characteristics, cache.getCharacteristics("0"));
+        assertSame(characteristics, cache.getCharacteristics("0"));
+
+        verify(cameraManager, times(1)).getCameraCharacteristics("0");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void availableCamerasAreBuiltOnceAndCopiedForEachCaller() throws CameraAccessException {
+        List<Map<String, Object>> first = cache.getAvailableCameras();
+        first.get(0).put("name", "changed by the caller");
+        List<Map<String, Object>> second = cache.getAvailableCameras();
+
+        assertEquals(2, second.size());
+        assertEquals("0", second.get(0).get("name"));
+        assertEquals(90, second.get(0).get("sensorOrientation"));
+        verify(cameraManager, times(1)).getCameraIdList();
+        verify(cameraManager, times(1)).getCameraCharacteristics("1");
+    }
+
+    @Test
+    public void openingACameraKeepsItsCharacteristics() throws CameraAccessException {
+        cache.getAvailableCameras();
+
+        //any app opening a camera makes it unavailable
+        cache.availabilityCallback.onCameraUnavailable("0");
+        cache.availabilityCallback.onCameraAvailable("0");
+        cache.getAvailableCameras();
+        cache.getCharacteristics("0");
+
+        verify(cameraManager, times(2)).getCameraIdList();
+        verify(cameraManager, times(1)).getCameraCharacteristics("0");
+    }
+
+    @Test
+    public void aCameraPluggedInIsListed() throws CameraAccessException {
+        cache.getAvailableCameras();
+        when(cameraManager.getCameraIdList()).thenReturn(new String[]{"0", "1", "2"});
+
+        cache.availabilityCallback.onCameraAvailable("2");
+        List<Map<String, Object>> cameras = cache.getAvailableCameras();
+
+        assertEquals(3, cameras.size());
+        verify(cameraManager, times(1)).getCameraCharacteristics("2");
+        verify(cameraManager, times(1)).getCameraCharacteristics("0");
+        assertEquals(1, cache.getInvalidationCount());
+    }
+}
@@ -0,0 +1,132 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CameraExecutorsTest {
+
+    private final CameraExecutors executors = new CameraExecutors(2, 2);
+
+    @After
+    public void tearDown() {
+        executors.shutdown();
+    }
+
+    private static Thread runOn(CameraExecutors.MonitoredExecutor executor) throws InterruptedException {
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            thread.set(Thread.currentThread());
+            done.countDown();
+        });
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        return thread.get();
+    }
+
+    @Test
+    public void eachExecutorHasNamedThreads() throws InterruptedException {
+        assertTrue(runOn(executors.getCaptureControl()).getName().startsWith("CameraControl-"));
+        assertTrue(runOn(executors.getImaging()).getName().startsWith("CameraImaging-"));
+        assertTrue(runOn(executors.getIo()).getName().startsWith("CameraIO-"));
+    }
+
+    @Test
+    public void aFullIoQueueWritesOnTheSubmittingThread() throws InterruptedException {
+        CameraExecutors.MonitoredExecutor io = executors.getIo();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch writing = new CountDownLatch(1);
+        io.execute(() -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+        io.execute(() -> { });
+        io.execute(() -> { });
+
+        final List<Thread> ranOn = new ArrayList<>();
+        io.execute(() -> ranOn.add(Thread.currentThread()));
+
+        assertEquals(Collections.singletonList(Thread.currentThread()), ranOn);
+        assertEquals(1, io.getCallerRunsCount());
+        assertEquals(2, io.getQueueDepth());
+        assertEquals(2, io.getPeakQueueDepth());
+        release.countDown();
+    }
+
+    @Test
+    public void executeWhenIdleWaitsForThePendingTasks() throws InterruptedException {
+        CameraExecutors.MonitoredExecutor imaging = executors.getImaging();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 2; i++) {
+            final String name = "save " + i;
+            imaging.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                order.add(name);
+            });
+        }
+        final CountDownLatch closed = new CountDownLatch(1);
+        imaging.executeWhenIdle(() -> {
+            order.add("close reader");
+            closed.countDown();
+        });
+        assertTrue(order.isEmpty());
+
+        release.countDown();
+        assertTrue(closed.await(1, TimeUnit.SECONDS));
+        assertEquals(3, order.size());
+        assertEquals("close reader", order.get(2));
+    }
+
+    @Test
+    public void executeWhenIdleRunsAtOnceWithNothingPending() {
+        final List<Thread> ranOn = new ArrayList<>();
+        executors.getImaging().executeWhenIdle(() -> ranOn.add(Thread.currentThread()));
+
+        assertEquals(Collections.singletonList(Thread.currentThread()), ranOn);
+    }
+
+    @Test
+    public void aTaskAfterShutdownStillRuns() {
+        executors.shutdown();
+        final List<Thread> ranOn = new ArrayList<>();
+        executors.getCaptureControl().execute(() -> ranOn.add(Thread.currentThread()));
+
+        assertEquals(1, ranOn.size());
+        assertSame(Thread.currentThread(), ranOn.get(0));
+    }
+
+    @Test
+    public void toMapReportsEveryExecutor() throws InterruptedException {
+        runOn(executors.getImaging());
+        Map<String, Object> stats = executors.toMap();
+
+        assertEquals(3, stats.size());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> imaging = (Map<String, Object>) stats.get("imagingExecutor");
+        assertFalse(imaging.isEmpty());
+        assertTrue(imaging.containsKey("waitP95"));
+        assertTrue(imaging.containsKey("queueDepth"));
+    }
+}
@@ -0,0 +1,71 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+
+import org.junit.Test;
+
+public class ExternalInputTest {
+
+    //column major, as from SurfaceTexture.getTransformMatrix
+    private static float[] apply(float[] matrix, float s, float t) {
+        return new float[]{
+                matrix[0] * s + matrix[4] * t + matrix[12],
+                matrix[1] * s + matrix[5] * t + matrix[13]
+        };
+    }
+
+    @Test
+    public void flipsTheIdentityTransform() {
+        float[] flipped = ExternalInput.flipVertically(ExternalInput.identity());
+
+        assertArrayEquals(new float[]{0f, 1f}, apply(flipped, 0f, 0f), 1e-6f);
+        assertArrayEquals(new float[]{1f, 0f}, apply(flipped, 1f, 1f), 1e-6f);
+        assertArrayEquals(new float[]{0.25f, 0.25f}, apply(flipped, 0.25f, 0.75f), 1e-6f);
+    }
+
+    @Test
+    public void flipsBeforeTheSurfaceTextureTransform() {
+        //a transform that flips t itself and crops a 2 texel border of a 100 texel buffer
+        float[] transform = {
+                0.96f, 0f, 0f, 0f,
+                0f, -0.96f, 0f, 0f,
+                0f, 0f, 1f, 0f,
+                0.02f, 0.98f, 0f, 1f
+        };
+
+        float[] flipped = ExternalInput.flipVertically(transform);
+
+        for (float s = 0f; s <= 1f; s += 0.25f) {
+            for (float t = 0f; t <= 1f; t += 0.25f) {
+                assertArrayEquals(apply(transform, s, 1f - t), apply(flipped, s, t), 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void samplesInputImageTextureFromAnExternalTexture() {
+        String shader = ExternalInput.fragmentShader(GPUImageFilter.NO_FILTER_FRAGMENT_SHADER);
+
+        assertTrue(shader.startsWith("#extension GL_OES_EGL_image_external : require\n"));
+        assertTrue(shader.contains("uniform samplerExternalOES inputImageTexture;"));
+        assertFalse(shader.contains("sampler2D inputImageTexture;"));
+    }
+
+    @Test
+    public void keepsTheSecondInputA2DTexture() {
+        String shader = ExternalInput.fragmentShader(KeyMatteFilter.KEY_MATTE_FRAGMENT_SHADER
+                + "uniform sampler2D inputImageTexture2;\n");
+
+        assertTrue(shader.contains("uniform samplerExternalOES inputImageTexture;"));
+        assertTrue(shader.contains("uniform sampler2D inputImageTexture2;"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAShaderWithoutAnInputTexture() {
+        ExternalInput.fragmentShader("void main() { gl_FragColor = vec4(1.0); }");
+    }
+}
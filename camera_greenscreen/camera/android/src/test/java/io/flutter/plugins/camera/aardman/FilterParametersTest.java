@@ -0,0 +1,95 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+public class FilterParametersTest {
+
+    private static FilterParameters update(Double[] colour, Double sensitivity, String backgroundPath) {
+        HashMap<String, Object> arguments = new HashMap<>();
+        if (colour != null) {
+            arguments.put("colour", new ArrayList<>(Arrays.asList(colour)));
+        }
+        if (sensitivity != null) {
+            arguments.put("sensitivity", sensitivity);
+        }
+        if (backgroundPath != null) {
+            arguments.put("backgroundPath", backgroundPath);
+        }
+        return new FilterParameters(arguments);
+    }
+
+    @Test
+    public void parsesTheMethodChannelArguments() {
+        FilterParameters parameters = update(new Double[]{0.0, 255.0, 51.0}, 0.3, "/background.png");
+
+        assertArrayEquals(new float[]{0f, 1f, 0.2f}, parameters.getColorToReplace(), 1e-6f);
+        assertEquals(0.3f, parameters.getSensitivity(), 1e-6f);
+        assertEquals("/background.png", parameters.getBackgroundImage());
+        assertEquals(FilterParameters.ALL_FIELDS, parameters.getUpdatedFields());
+        assertEquals(FilterParameters.ALL_FIELDS, parameters.getChangedFields());
+    }
+
+    @Test
+    public void anUpdateMakesANewVersionAndLeavesTheSnapshotUnchanged() {
+        FilterParameters first = new FilterParameters().updatedWith(update(null, 0.3, "/background.png"));
+        FilterParameters second = first.updatedWith(update(new Double[]{255.0, 0.0, 0.0}, null, null));
+
+        assertNotSame(first, second);
+        assertTrue(second.getVersion() > first.getVersion());
+        assertNull(first.getColorToReplace());
+        assertArrayEquals(new float[]{1f, 0f, 0f}, second.getColorToReplace(), 1e-6f);
+        assertEquals(0.3f, second.getSensitivity(), 1e-6f);
+        assertEquals("/background.png", second.getBackgroundImage());
+    }
+
+    @Test
+    public void aColourTweakSentWithTheSameBackgroundOnlyChangesTheColour() {
+        FilterParameters first = new FilterParameters()
+                .updatedWith(update(new Double[]{0.0, 255.0, 0.0}, 0.4, "/background.png"));
+        FilterParameters second = first.updatedWith(update(new Double[]{0.0, 250.0, 0.0}, 0.4, "/background.png"));
+
+        assertEquals(FilterParameters.ALL_FIELDS, second.getUpdatedFields());
+        assertEquals(FilterParameters.COLOUR, second.getChangedFields());
+    }
+
+    @Test
+    public void aNewBackgroundIsChanged() {
+        FilterParameters first = new FilterParameters().updatedWith(update(null, null, "/first.png"));
+        FilterParameters second = first.updatedWith(update(null, null, "/second.png"));
+
+        assertEquals(FilterParameters.BACKGROUND, second.getUpdatedFields());
+        assertEquals(FilterParameters.BACKGROUND, second.getChangedFields());
+    }
+
+    @Test
+    public void changedSinceCoversEveryUpdateInBetween() {
+        FilterParameters applied = new FilterParameters()
+                .updatedWith(update(new Double[]{0.0, 255.0, 0.0}, 0.4, "/background.png"));
+        FilterParameters latest = applied
+                .updatedWith(update(new Double[]{0.0, 200.0, 0.0}, null, null))
+                .updatedWith(update(null, 0.5, null))
+                .updatedWith(update(null, null, "/background.png"));
+
+        assertEquals(FilterParameters.COLOUR | FilterParameters.SENSITIVITY, latest.changedSince(applied));
+        assertEquals(0, latest.changedSince(latest));
+        assertEquals(FilterParameters.ALL_FIELDS, latest.changedSince(null));
+    }
+
+    @Test
+    public void anUpdateBackToTheAppliedValueIsNotAChange() {
+        FilterParameters applied = new FilterParameters().updatedWith(update(null, 0.4, null));
+        FilterParameters latest = applied.updatedWith(update(null, 0.6, null)).updatedWith(update(null, 0.4, null));
+
+        assertEquals(0, latest.changedSince(applied));
+    }
+}
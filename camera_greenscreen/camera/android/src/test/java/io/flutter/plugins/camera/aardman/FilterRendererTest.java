@@ -0,0 +1,162 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.graphics.Bitmap;
+import android.util.Size;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageTwoInputFilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FilterRendererTest {
+
+    //How long a simulated background decode takes
+    private static final long DECODE_MS = 1000;
+    //No task run on the GLThread may come close to the decode time
+    private static final long MAX_GL_TASK_MS = 250;
+
+    private FilterRenderer renderer;
+    private PipelineStats stats;
+
+    //Holds the simulated decode until released, a count of 0 lets it run straight through
+    private volatile CountDownLatch decodeRelease = new CountDownLatch(0);
+    private volatile long decodeMs = 0;
+    private final Map<String, Bitmap> decodedBackgrounds = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() {
+        renderer = new FilterRenderer();
+        stats = new PipelineStats();
+        renderer.setPipelineStats(stats);
+        renderer.setSize(new Size(8, 8));
+        renderer.setBackgroundProvider((path, size, isLandscape) -> {
+            try {
+                decodeRelease.await(5, TimeUnit.SECONDS);
+                Thread.sleep(decodeMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Bitmap background = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+            decodedBackgrounds.put(path, background);
+            return background;
+        });
+        //the test thread stands in for the GLThread
+        renderer.onCreate();
+    }
+
+    @After
+    public void tearDown() {
+        renderer.onDispose();
+    }
+
+    private static FilterParameters parametersWithBackground(String path) {
+        HashMap<String, Object> arguments = new HashMap<>();
+        arguments.put("backgroundPath", path);
+        return new FilterParameters(arguments);
+    }
+
+    private void drawUntil(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5 * DECODE_MS;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not met while drawing");
+            }
+            renderer.onDrawFrame();
+            Thread.sleep(1);
+        }
+    }
+
+    private Bitmap backgroundOf(GPUImageFilter filter) {
+        return ((GPUImageTwoInputFilter) filter).getBitmap();
+    }
+
+    @Test
+    public void updateParameters_keepsRenderingTheOldFilterUntilTheNewBackgroundIsReady() throws Exception {
+        renderer.updateParameters(parametersWithBackground("/first.png"));
+        drawUntil(() -> renderer.getFilter() != null);
+        final GPUImageFilter first = renderer.getFilter();
+
+        decodeRelease = new CountDownLatch(1);
+        renderer.updateParameters(parametersWithBackground("/second.png"));
+        for (int i = 0; i < 20; i++) {
+            renderer.onDrawFrame();
+            assertSame(first, renderer.getFilter());
+        }
+
+        decodeRelease.countDown();
+        drawUntil(() -> renderer.getFilter() != first);
+
+        assertSame(decodedBackgrounds.get("/second.png"), backgroundOf(renderer.getFilter()));
+    }
+
+    @Test
+    public void updateParameters_neverRunsTheDecodeOnTheGLThread() throws Exception {
+        decodeMs = DECODE_MS;
+
+        long start = System.nanoTime();
+        renderer.updateParameters(parametersWithBackground("/first.png"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < MAX_GL_TASK_MS);
+
+        drawUntil(() -> renderer.getFilter() != null);
+
+        LatencyHistogram glTasks = stats.getHistogram(PipelineStats.Stage.GL_TASK);
+        assertEquals(1, glTasks.getCount());
+        long longestTaskMs = TimeUnit.NANOSECONDS.toMillis(glTasks.getPercentiles(100)[0]);
+        assertTrue("GL task took " + longestTaskMs + "ms", longestTaskMs < MAX_GL_TASK_MS);
+    }
+
+    @Test
+    public void updateParameters_discardsABackgroundSupersededWhileDecoding() throws Exception {
+        decodeRelease = new CountDownLatch(1);
+        renderer.updateParameters(parametersWithBackground("/first.png"));
+        renderer.updateParameters(parametersWithBackground("/second.png"));
+        decodeRelease.countDown();
+
+        drawUntil(() -> renderer.getFilter() != null);
+
+        assertSame(decodedBackgrounds.get("/second.png"), backgroundOf(renderer.getFilter()));
+    }
+
+    @Test
+    public void updateParameters_aSliderDragWritesUniformsWithoutRebuildingTheFilter() throws Exception {
+        FilterParameters current = new FilterParameters().updatedWith(parametersWithBackground("/first.png"));
+        renderer.updateParameters(current);
+        drawUntil(() -> renderer.getFilter() != null);
+        final GPUImageFilter filter = renderer.getFilter();
+        long rebuilds = renderer.getFilterRebuildCount();
+
+        //Dart sends the background with every sensitivity tick, two ticks arrive per frame
+        for (int i = 0; i < 30; i++) {
+            HashMap<String, Object> arguments = new HashMap<>();
+            arguments.put("backgroundPath", "/first.png");
+            arguments.put("sensitivity", 0.4 + i * 0.01);
+            current = current.updatedWith(new FilterParameters(arguments));
+            renderer.updateParameters(current);
+            if (i % 2 == 1) {
+                renderer.onDrawFrame();
+            }
+        }
+
+        assertSame(filter, renderer.getFilter());
+        assertEquals(rebuilds, renderer.getFilterRebuildCount());
+        assertEquals(30, renderer.getAvoidedFilterRebuildCount());
+        assertEquals(15, renderer.getAppliedParameterUpdateCount());
+    }
+}
@@ -0,0 +1,93 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class FrameMailboxTest {
+
+    @Test
+    public void post_replacesAndReleasesAStaleFrame() {
+        FrameBufferPool pool = new FrameBufferPool(3);
+        FrameMailbox mailbox = new FrameMailbox();
+        PreviewFrame first = pool.acquire(4, 4);
+        PreviewFrame second = pool.acquire(4, 4);
+
+        mailbox.post(first);
+        mailbox.post(second);
+
+        assertSame(second, mailbox.take());
+        assertNull(mailbox.take());
+        assertEquals(1, mailbox.getReplacedCount());
+        //only the taken frame is still in flight
+        assertEquals(1, pool.getFramesInFlight());
+    }
+
+    @Test
+    public void clear_releasesAWaitingFrame() {
+        FrameBufferPool pool = new FrameBufferPool(1);
+        FrameMailbox mailbox = new FrameMailbox();
+
+        mailbox.post(pool.acquire(4, 4));
+        mailbox.clear();
+
+        assertNull(mailbox.take());
+        assertEquals(0, pool.getFramesInFlight());
+    }
+
+    @Test
+    public void concurrentProducerAndConsumer_neverLoseOrDuplicateFrames() throws InterruptedException {
+        final int frameCount = 200_000;
+        //same sizing as the preview pipeline, ImageReader maxImages + 1
+        final FrameBufferPool pool = new FrameBufferPool(3);
+        final FrameMailbox mailbox = new FrameMailbox();
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        final AtomicLong consumed = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(2);
+
+        Thread producer = new Thread(() -> {
+            int posted = 0;
+            while (posted < frameCount) {
+                PreviewFrame frame = pool.acquire(4, 4);
+                if (frame == null) {
+                    Thread.yield();
+                    continue;
+                }
+                mailbox.post(frame);
+                posted++;
+            }
+            producing.set(false);
+            done.countDown();
+        }, "producer");
+
+        Thread consumer = new Thread(() -> {
+            while (producing.get() || mailbox.getPostedCount() > mailbox.getTakenCount() + mailbox.getReplacedCount()) {
+                PreviewFrame frame = mailbox.take();
+                if (frame != null) {
+                    consumed.incrementAndGet();
+                    frame.release();
+                }
+            }
+            done.countDown();
+        }, "consumer");
+
+        producer.start();
+        consumer.start();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        assertEquals(frameCount, mailbox.getPostedCount());
+        assertEquals(consumed.get(), mailbox.getTakenCount());
+        assertEquals(frameCount, mailbox.getTakenCount() + mailbox.getReplacedCount());
+        //every frame was released exactly once and no buffer was allocated beyond the pool capacity
+        assertEquals(0, pool.getFramesInFlight());
+        assertTrue(pool.getAllocationCount() <= pool.getCapacity());
+    }
+}
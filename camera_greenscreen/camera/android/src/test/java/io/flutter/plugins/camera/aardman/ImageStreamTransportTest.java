@@ -0,0 +1,245 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.ImageFormat;
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImageStreamTransportTest {
+
+    private ImageStreamTransport transport;
+    private ImageReader reader;
+    private RecordingSink sink;
+
+    /**
+     * Keeps the plane arrays of each event, as the codec would have copied them
+     */
+    private static class RecordingSink implements EventChannel.EventSink {
+        final List<Map<String, Object>> events = new ArrayList<>();
+        final List<byte[]> lumaPlanes = new ArrayList<>();
+        final List<byte[]> lumaCopies = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void success(Object event) {
+            Map<String, Object> frame = (Map<String, Object>) event;
+            events.add(frame);
+            byte[] luma = (byte[]) ((List<Map<String, Object>>) frame.get("planes")).get(0).get("bytes");
+            lumaPlanes.add(luma);
+            lumaCopies.add(luma.clone());
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {}
+
+        @Override
+        public void endOfStream() {}
+    }
+
+    @Before
+    public void setUp() {
+        transport = new ImageStreamTransport(new Handler(Looper.getMainLooper()),
+                event -> event.put("lensAperture", 1.8));
+        reader = mock(ImageReader.class);
+        sink = new RecordingSink();
+    }
+
+    private Image nextImage(byte value) {
+        Image image = mock(Image.class);
+        Image.Plane[] planes = new Image.Plane[] {
+                plane(new byte[]{value, value, value, value}, 2, 1),
+                plane(new byte[]{value}, 1, 2),
+                plane(new byte[]{value}, 1, 2)
+        };
+        when(image.getPlanes()).thenReturn(planes);
+        when(image.getWidth()).thenReturn(2);
+        when(image.getHeight()).thenReturn(2);
+        when(image.getFormat()).thenReturn(ImageFormat.YUV_420_888);
+        when(reader.acquireNextImage()).thenReturn(image);
+        return image;
+    }
+
+    private static Image.Plane plane(byte[] bytes, int rowStride, int pixelStride) {
+        Image.Plane plane = mock(Image.Plane.class);
+        when(plane.getBuffer()).thenReturn(ByteBuffer.wrap(bytes));
+        when(plane.getRowStride()).thenReturn(rowStride);
+        when(plane.getPixelStride()).thenReturn(pixelStride);
+        return plane;
+    }
+
+    private void deliver(byte value) {
+        nextImage(value);
+        transport.onImageAvailable(reader);
+    }
+
+    @Test
+    public void sendsFramesWithTheirCountersAndMetadata() {
+        transport.start(sink, 1);
+
+        deliver((byte) 7);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(1, sink.events.size());
+        Map<String, Object> event = sink.events.get(0);
+        assertEquals(1L, event.get("sequence"));
+        assertEquals(0L, event.get("droppedFrames"));
+        assertEquals(1, event.get("inFlightFrames"));
+        assertEquals(2, event.get("width"));
+        assertEquals(ImageFormat.YUV_420_888, event.get("format"));
+        assertEquals(1.8, event.get("lensAperture"));
+        assertEquals(7, sink.lumaCopies.get(0)[0]);
+        assertEquals(1, transport.getSentCount());
+    }
+
+    @Test
+    public void dropsFramesAtTheSourceWithoutACredit() {
+        transport.start(sink, 1);
+
+        deliver((byte) 1);
+        Image dropped = nextImage((byte) 2);
+        transport.onImageAvailable(reader);
+        ShadowLooper.idleMainLooper();
+
+        verify(dropped).close();
+        assertEquals(1, sink.events.size());
+        assertEquals(1, transport.getDroppedCount());
+        assertEquals(1, transport.getInFlightCount());
+    }
+
+    @Test
+    public void anAcknowledgementReturnsTheCredit() {
+        transport.start(sink, 1);
+
+        deliver((byte) 1);
+        ShadowLooper.idleMainLooper();
+        transport.acknowledge();
+        deliver((byte) 2);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(2, sink.events.size());
+        assertEquals(2L, sink.events.get(1).get("sequence"));
+        assertEquals(0, transport.getDroppedCount());
+        assertEquals(1, transport.getAcknowledgedCount());
+    }
+
+    @Test
+    public void allowsAsManyFramesInFlightAsCredits() {
+        transport.start(sink, 2);
+
+        deliver((byte) 1);
+        deliver((byte) 2);
+        deliver((byte) 3);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(2, sink.events.size());
+        assertEquals(1, transport.getDroppedCount());
+        assertEquals(2, sink.events.get(1).get("inFlightFrames"));
+    }
+
+    @Test
+    public void reusesPlaneBuffersOnceAFrameHasBeenSent() {
+        transport.start(sink, 1);
+
+        deliver((byte) 1);
+        ShadowLooper.idleMainLooper();
+        transport.acknowledge();
+        deliver((byte) 2);
+        ShadowLooper.idleMainLooper();
+
+        assertSame(sink.lumaPlanes.get(0), sink.lumaPlanes.get(1));
+        assertEquals(1, sink.lumaCopies.get(0)[0]);
+        assertEquals(2, sink.lumaCopies.get(1)[0]);
+    }
+
+    @Test
+    public void framesPostedBeforeStopAreNotSent() {
+        transport.start(sink, 1);
+
+        deliver((byte) 1);
+        transport.stop();
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(0, sink.events.size());
+        assertEquals(0, transport.getInFlightCount());
+    }
+
+    @Test
+    public void framesOfAnEarlierStreamAreNotSentToANewOne() {
+        RecordingSink earlierSink = new RecordingSink();
+        transport.start(earlierSink, 1);
+        deliver((byte) 1);
+        transport.start(sink, 1);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(0, earlierSink.events.size());
+        assertEquals(0, sink.events.size());
+    }
+
+    @Test
+    public void sendsAnalysisFramesAsOneRgbaPlane() {
+        transport.start(sink, 1);
+        ByteBuffer pixels = ByteBuffer.allocateDirect(4 * 2 * 4);
+        pixels.put(0, (byte) 9);
+
+        assertTrue(transport.hasCredit());
+        transport.onAnalysisFrame(pixels, 4, 2);
+        ShadowLooper.idleMainLooper();
+
+        assertFalse(transport.hasCredit());
+        Map<String, Object> event = sink.events.get(0);
+        assertEquals(PixelFormat.RGBA_8888, event.get("format"));
+        assertEquals(4, event.get("width"));
+        List<?> planes = (List<?>) event.get("planes");
+        assertEquals(1, planes.size());
+        assertEquals(16, ((Map<?, ?>) planes.get(0)).get("bytesPerRow"));
+        assertEquals(32, sink.lumaCopies.get(0).length);
+        assertEquals(9, sink.lumaCopies.get(0)[0]);
+    }
+
+    @Test
+    public void analysisFramesWithoutACreditAreDropped() {
+        transport.start(sink, 1);
+        ByteBuffer pixels = ByteBuffer.allocateDirect(4 * 2 * 4);
+
+        transport.onAnalysisFrame(pixels, 4, 2);
+        transport.onAnalysisFrame(pixels, 4, 2);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(1, sink.events.size());
+        assertEquals(1, transport.getDroppedCount());
+    }
+
+    @Test
+    public void dropsFramesWhileStopped() {
+        Image image = nextImage((byte) 1);
+
+        transport.onImageAvailable(reader);
+
+        verify(image).close();
+        assertEquals(1, transport.getDroppedCount());
+    }
+}
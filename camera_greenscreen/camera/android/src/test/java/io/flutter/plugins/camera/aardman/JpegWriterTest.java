@@ -0,0 +1,175 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JpegWriterTest {
+
+    private static final int ORIENTATION_NORMAL = 1;
+    private static final int ORIENTATION_ROTATE_90 = 6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesTheJpegUnchangedWhenTheOrientationIsLeftAlone() throws IOException {
+        byte[] jpeg = jpeg(exifSegment(ByteOrder.BIG_ENDIAN, ORIENTATION_NORMAL));
+        File file = folder.newFile();
+
+        JpegWriter.write(ByteBuffer.wrap(jpeg), file, JpegWriter.ORIENTATION_UNCHANGED);
+
+        assertArrayEquals(jpeg, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void replacesTheBigEndianOrientationValue() throws IOException {
+        assertOrientationReplaced(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Test
+    public void replacesTheLittleEndianOrientationValue() throws IOException {
+        assertOrientationReplaced(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void insertsAnExifSegmentWhenThereIsNone() throws IOException {
+        byte[] jpeg = jpeg(jfifSegment());
+        File file = folder.newFile();
+
+        JpegWriter.write(ByteBuffer.wrap(jpeg), file, ORIENTATION_ROTATE_90);
+
+        byte[] written = Files.readAllBytes(file.toPath());
+        JpegWriter.OrientationEntry entry = JpegWriter.findOrientation(ByteBuffer.wrap(written));
+        assertTrue(entry.hasExifSegment);
+        assertEquals(ORIENTATION_ROTATE_90, readShort(written, entry.valueOffset, entry.byteOrder));
+        int inserted = JpegWriter.exifSegment(ORIENTATION_ROTATE_90).remaining();
+        assertEquals(jpeg.length + inserted, written.length);
+        //everything after the SOI follows the inserted segment unchanged
+        for (int i = 2; i < jpeg.length; i++) {
+            assertEquals(jpeg[i], written[i + inserted]);
+        }
+    }
+
+    @Test
+    public void writesFromTheBufferPositionAndLeavesItUnchanged() throws IOException {
+        byte[] jpeg = jpeg(exifSegment(ByteOrder.BIG_ENDIAN, ORIENTATION_NORMAL));
+        byte[] padded = new byte[jpeg.length + 7];
+        System.arraycopy(jpeg, 0, padded, 5, jpeg.length);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(padded.length);
+        buffer.put(padded);
+        buffer.position(5).limit(5 + jpeg.length);
+        File file = folder.newFile();
+
+        JpegWriter.write(buffer, file, ORIENTATION_ROTATE_90);
+
+        assertEquals(5, buffer.position());
+        assertEquals(5 + jpeg.length, buffer.limit());
+        byte[] written = Files.readAllBytes(file.toPath());
+        assertEquals(jpeg.length, written.length);
+        JpegWriter.OrientationEntry entry = JpegWriter.findOrientation(ByteBuffer.wrap(written));
+        assertEquals(ORIENTATION_ROTATE_90, readShort(written, entry.valueOffset, entry.byteOrder));
+    }
+
+    @Test
+    public void findsNoOrientationInAnExifSegmentWithoutTheEntry() {
+        byte[] jpeg = jpeg(exifSegmentWithoutOrientation());
+
+        JpegWriter.OrientationEntry entry = JpegWriter.findOrientation(ByteBuffer.wrap(jpeg));
+
+        assertTrue(entry.isJpeg);
+        assertTrue(entry.hasExifSegment);
+        assertEquals(-1, entry.valueOffset);
+    }
+
+    @Test
+    public void doesNotTreatOtherDataAsJpeg() {
+        JpegWriter.OrientationEntry entry = JpegWriter.findOrientation(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}));
+
+        assertFalse(entry.isJpeg);
+        assertEquals(-1, entry.valueOffset);
+    }
+
+    private void assertOrientationReplaced(ByteOrder byteOrder) throws IOException {
+        byte[] jpeg = jpeg(exifSegment(byteOrder, ORIENTATION_NORMAL));
+        File file = folder.newFile();
+
+        JpegWriter.write(ByteBuffer.wrap(jpeg), file, ORIENTATION_ROTATE_90);
+
+        byte[] written = Files.readAllBytes(file.toPath());
+        JpegWriter.OrientationEntry entry = JpegWriter.findOrientation(ByteBuffer.wrap(written));
+        assertEquals(byteOrder, entry.byteOrder);
+        assertEquals(ORIENTATION_ROTATE_90, readShort(written, entry.valueOffset, entry.byteOrder));
+        //only the orientation value differs
+        assertEquals(jpeg.length, written.length);
+        for (int i = 0; i < jpeg.length; i++) {
+            if (i != entry.valueOffset && i != entry.valueOffset + 1) {
+                assertEquals(jpeg[i], written[i]);
+            }
+        }
+    }
+
+    /*********************************************************************************
+     *                              Synthetic JPEGs
+     *********************************************************************************/
+
+    //SOI, the given segment, a quantisation table segment, SOS, some scan data and EOI
+    private static byte[] jpeg(byte[] segment) {
+        ByteBuffer jpeg = ByteBuffer.allocate(2 + segment.length + 8 + 4 + 6 + 2);
+        jpeg.put((byte) 0xFF).put((byte) 0xD8);
+        jpeg.put(segment);
+        jpeg.put((byte) 0xFF).put((byte) 0xDB).putShort((short) 6).putInt(0x01020304);
+        jpeg.put((byte) 0xFF).put((byte) 0xDA).putShort((short) 2);
+        jpeg.put(new byte[]{10, 20, 30, 40, 50, 60});
+        jpeg.put((byte) 0xFF).put((byte) 0xD9);
+        return jpeg.array();
+    }
+
+    private static byte[] jfifSegment() {
+        ByteBuffer segment = ByteBuffer.allocate(18);
+        segment.put((byte) 0xFF).put((byte) 0xE0).putShort((short) 16);
+        segment.put(new byte[]{'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+        return segment.array();
+    }
+
+    //IFD0 with an image width entry ahead of the orientation entry
+    private static byte[] exifSegment(ByteOrder byteOrder, int orientation) {
+        ByteBuffer segment = ByteBuffer.allocate(4 + 6 + 8 + 2 + 24 + 4).order(byteOrder);
+        segment.put((byte) 0xFF).put((byte) 0xE1);
+        segment.order(ByteOrder.BIG_ENDIAN).putShort((short) (segment.capacity() - 2)).order(byteOrder);
+        segment.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        byte order = byteOrder == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I';
+        segment.put(order).put(order).putShort((short) 42).putInt(8);
+        segment.putShort((short) 2);
+        segment.putShort((short) 0x0100).putShort((short) 4).putInt(1).putInt(4032);
+        segment.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        segment.putInt(0);
+        return segment.array();
+    }
+
+    private static byte[] exifSegmentWithoutOrientation() {
+        ByteBuffer segment = ByteBuffer.allocate(4 + 6 + 8 + 2 + 12 + 4);
+        segment.put((byte) 0xFF).put((byte) 0xE1).putShort((short) (segment.capacity() - 2));
+        segment.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        segment.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+        segment.putShort((short) 1);
+        segment.putShort((short) 0x0100).putShort((short) 4).putInt(1).putInt(4032);
+        segment.putInt(0);
+        return segment.array();
+    }
+
+    private static int readShort(byte[] data, int offset, ByteOrder byteOrder) {
+        return ByteBuffer.wrap(data).order(byteOrder).getShort(offset) & 0xFFFF;
+    }
+}
@@ -0,0 +1,65 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OnionSkinLayersTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void keepsTheFrameSizeWhenTheLayersFit() {
+        assertArrayEquals(new int[]{640, 480}, OnionSkinLayers.layerSize(640, 480, 4, 16 * MB));
+    }
+
+    @Test
+    public void halvesTheFrameSizeUntilTheLayersFit() {
+        int[] size = OnionSkinLayers.layerSize(1920, 1080, 4, 16 * MB);
+
+        assertArrayEquals(new int[]{960, 540}, size);
+        assertTrue((long) size[0] * size[1] * 4 * 4 <= 16 * MB);
+    }
+
+    @Test
+    public void moreLayersAreSmaller() {
+        int[] one = OnionSkinLayers.layerSize(1920, 1080, 1, 4 * MB);
+        int[] four = OnionSkinLayers.layerSize(1920, 1080, 4, 4 * MB);
+
+        assertArrayEquals(new int[]{960, 540}, one);
+        assertArrayEquals(new int[]{480, 270}, four);
+    }
+
+    @Test
+    public void cropsTheSidesOfAWiderCapture() {
+        //4:3 capture shown on a 16:9 preview keeps the full width
+        assertArrayEquals(new int[]{0, 375, 4000, 2250}, OnionSkinLayers.centerCrop(4000, 3000, 1920, 1080));
+        //16:9 capture shown on a 4:3 preview keeps the full height
+        assertArrayEquals(new int[]{240, 0, 1440, 1080}, OnionSkinLayers.centerCrop(1920, 1080, 640, 480));
+    }
+
+    @Test
+    public void doesNotCropACaptureWithTheSameAspect() {
+        assertArrayEquals(new int[]{0, 0, 4000, 2250}, OnionSkinLayers.centerCrop(4000, 2250, 1920, 1080));
+    }
+
+    @Test
+    public void layersWithoutACaptureAreTransparent() {
+        float[] visible = OnionSkinLayers.visibleOpacities(new float[]{0.5f, 0.3f, 0.2f}, 2);
+
+        assertEquals(OnionSkinFilter.MAX_LAYERS, visible.length);
+        assertEquals(0.5f, visible[0], 0f);
+        assertEquals(0.3f, visible[1], 0f);
+        assertEquals(0f, visible[2], 0f);
+        assertEquals(0f, visible[3], 0f);
+    }
+
+    @Test
+    public void opacitiesBeyondTheLayersAreIgnored() {
+        float[] visible = OnionSkinLayers.visibleOpacities(new float[]{0.5f, 0.4f, 0.3f, 0.2f, 0.1f}, 4);
+
+        assertArrayEquals(new float[]{0.5f, 0.4f, 0.3f, 0.2f}, visible, 0f);
+    }
+}
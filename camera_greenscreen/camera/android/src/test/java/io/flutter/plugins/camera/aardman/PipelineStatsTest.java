@@ -0,0 +1,108 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class PipelineStatsTest {
+
+    @Test
+    public void histogram_reportsPercentilesOfRecordedSamples() {
+        LatencyHistogram histogram = new LatencyHistogram(128);
+        for (int i = 100; i >= 1; i--) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertArrayEquals(new long[]{50, 95, 99, 100}, histogram.getPercentiles(50, 95, 99, 100));
+    }
+
+    @Test
+    public void histogram_isEmptyBeforeTheFirstSample() {
+        LatencyHistogram histogram = new LatencyHistogram(16);
+
+        assertArrayEquals(new long[]{0, 0}, histogram.getPercentiles(50, 99));
+    }
+
+    @Test
+    public void histogram_keepsOnlyTheMostRecentSamples() {
+        LatencyHistogram histogram = new LatencyHistogram(16);
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(1_000);
+        }
+        for (int i = 0; i < 16; i++) {
+            histogram.record(5);
+        }
+
+        assertEquals(1016, histogram.getCount());
+        assertArrayEquals(new long[]{5, 5}, histogram.getPercentiles(50, 99));
+    }
+
+    @Test
+    public void histogram_acceptsConcurrentWriters() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram(256);
+        final int writers = 4;
+        final int samplesPerWriter = 50_000;
+        final CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            new Thread(() -> {
+                for (int i = 0; i < samplesPerWriter; i++) {
+                    histogram.record(7);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        assertEquals(writers * samplesPerWriter, histogram.getCount());
+        assertArrayEquals(new long[]{7, 7}, histogram.getPercentiles(1, 100));
+    }
+
+    @Test
+    public void stats_recordTotalLatencyOnlyForUploadedFrames() {
+        PipelineStats stats = new PipelineStats();
+
+        stats.onFrameUploaded(1_000_000);
+        stats.onBuffersSwapped(3_000_000, 4_000_000);
+        //a redraw of the same frame does not add a total sample
+        stats.onBuffersSwapped(5_000_000, 6_000_000);
+
+        LatencyHistogram total = stats.getHistogram(PipelineStats.Stage.TOTAL);
+        assertEquals(1, total.getCount());
+        assertEquals(3_000_000, total.getPercentiles(50)[0]);
+        assertEquals(2, stats.getHistogram(PipelineStats.Stage.SWAP_BUFFERS).getCount());
+    }
+
+    @Test
+    public void stats_recordOrientationChangeUntilTheFirstSwapDrawnWithIt() {
+        PipelineStats stats = new PipelineStats();
+
+        stats.onOrientationApplied(1_000_000);
+        stats.onBuffersSwapped(7_000_000, 8_000_000);
+        stats.onBuffersSwapped(9_000_000, 10_000_000);
+
+        LatencyHistogram orientation = stats.getHistogram(PipelineStats.Stage.ORIENTATION_CHANGE);
+        assertEquals(1, orientation.getCount());
+        assertEquals(7_000_000, orientation.getPercentiles(50)[0]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void stats_toMapReportsMillisecondsPerStage() {
+        PipelineStats stats = new PipelineStats();
+        stats.record(PipelineStats.Stage.FILTER_DRAW, 0, 2_500_000);
+
+        Map<String, Object> map = stats.toMap();
+
+        assertEquals(PipelineStats.Stage.values().length, map.size());
+        Map<String, Object> draw = (Map<String, Object>) map.get("filterDraw");
+        assertEquals(1L, draw.get("count"));
+        assertEquals(2.5, (Double) draw.get("p99"), 1e-9);
+        assertTrue(map.containsKey("nv21Conversion"));
+    }
+}
@@ -0,0 +1,79 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PresentationTimelineTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void rejectsEverythingBeforeStart() {
+        PresentationTimeline timeline = new PresentationTimeline();
+        assertEquals(PresentationTimeline.REJECTED, timeline.toVideoNanos(100 * MS));
+        assertEquals(PresentationTimeline.REJECTED, timeline.toAudioNanos(100 * MS));
+    }
+
+    @Test
+    public void rebasesToTheStartAndRejectsEarlierFrames() {
+        PresentationTimeline timeline = new PresentationTimeline();
+        timeline.start(1000 * MS);
+
+        assertEquals(PresentationTimeline.REJECTED, timeline.toVideoNanos(990 * MS));
+        assertEquals(0, timeline.toVideoNanos(1000 * MS));
+        assertEquals(33 * MS, timeline.toVideoNanos(1033 * MS));
+    }
+
+    @Test
+    public void videoNeverGoesBackwards() {
+        PresentationTimeline timeline = new PresentationTimeline();
+        timeline.start(0);
+
+        assertEquals(66 * MS, timeline.toVideoNanos(66 * MS));
+        assertEquals(PresentationTimeline.REJECTED, timeline.toVideoNanos(66 * MS));
+        assertEquals(PresentationTimeline.REJECTED, timeline.toVideoNanos(33 * MS));
+        assertEquals(100 * MS, timeline.toVideoNanos(100 * MS));
+    }
+
+    @Test
+    public void lateAudioIsMovedAfterThePreviousBuffer() {
+        PresentationTimeline timeline = new PresentationTimeline();
+        timeline.start(0);
+
+        assertEquals(20 * MS, timeline.toAudioNanos(20 * MS));
+        assertEquals(20 * MS + 1000, timeline.toAudioNanos(19 * MS));
+    }
+
+    @Test
+    public void pausedIntervalIsCutOut() {
+        PresentationTimeline timeline = new PresentationTimeline();
+        timeline.start(0);
+        assertEquals(100 * MS, timeline.toVideoNanos(100 * MS));
+
+        timeline.pause(200 * MS);
+        assertTrue(timeline.isPaused());
+        assertEquals(PresentationTimeline.REJECTED, timeline.toVideoNanos(300 * MS));
+        assertEquals(PresentationTimeline.REJECTED, timeline.toAudioNanos(300 * MS));
+
+        timeline.resume(1200 * MS);
+        assertFalse(timeline.isPaused());
+        //a frame captured during the pause but drawn after it lands before the last frame
+        assertEquals(PresentationTimeline.REJECTED, timeline.toVideoNanos(1100 * MS));
+        assertEquals(250 * MS, timeline.toVideoNanos(1250 * MS));
+        assertEquals(250 * MS, timeline.toAudioNanos(1250 * MS));
+    }
+
+    @Test
+    public void restartClearsThePreviousRecording() {
+        PresentationTimeline timeline = new PresentationTimeline();
+        timeline.start(0);
+        timeline.pause(10 * MS);
+        timeline.start(500 * MS);
+
+        assertFalse(timeline.isPaused());
+        assertEquals(0, timeline.toVideoNanos(500 * MS));
+    }
+}
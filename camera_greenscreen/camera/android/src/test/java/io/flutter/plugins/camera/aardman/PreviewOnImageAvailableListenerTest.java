@@ -0,0 +1,183 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
+import android.media.ImageReader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreviewOnImageAvailableListenerTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    //Padded rows, as delivered by most camera HALs
+    private static final int ROW_STRIDE = 16;
+
+    private ImageReader mockReader;
+    private Image mockImage;
+
+    @Before
+    public void setUp() {
+        mockReader = mock(ImageReader.class);
+        mockImage = syntheticImage();
+        when(mockReader.acquireNextImage()).thenReturn(mockImage);
+    }
+
+    /**
+     * Builds a YUV_420_888 image whose U and V planes are interleaved with a pixel stride of 2,
+     * Y values are 0..31, U values are 100.., V values are 200..
+     */
+    private static Image syntheticImage() {
+        byte[] y = new byte[ROW_STRIDE * HEIGHT];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                y[row * ROW_STRIDE + col] = (byte) (row * WIDTH + col);
+            }
+        }
+        byte[] u = new byte[ROW_STRIDE * HEIGHT / 2];
+        byte[] v = new byte[ROW_STRIDE * HEIGHT / 2];
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                u[row * ROW_STRIDE + col * 2] = (byte) (100 + row * WIDTH / 2 + col);
+                v[row * ROW_STRIDE + col * 2] = (byte) (200 + row * WIDTH / 2 + col);
+            }
+        }
+
+        Image image = mock(Image.class);
+        Image.Plane[] planes = new Image.Plane[] {
+                plane(ByteBuffer.wrap(y), ROW_STRIDE, 1),
+                plane(ByteBuffer.wrap(u), ROW_STRIDE, 2),
+                plane(ByteBuffer.wrap(v), ROW_STRIDE, 2)
+        };
+        when(image.getPlanes()).thenReturn(planes);
+        when(image.getCropRect()).thenReturn(new Rect(0, 0, WIDTH, HEIGHT));
+        when(image.getFormat()).thenReturn(ImageFormat.YUV_420_888);
+        when(image.getWidth()).thenReturn(WIDTH);
+        when(image.getHeight()).thenReturn(HEIGHT);
+        return image;
+    }
+
+    private static Image.Plane plane(ByteBuffer buffer, int rowStride, int pixelStride) {
+        Image.Plane plane = mock(Image.Plane.class);
+        when(plane.getBuffer()).thenReturn(buffer);
+        when(plane.getRowStride()).thenReturn(rowStride);
+        when(plane.getPixelStride()).thenReturn(pixelStride);
+        return plane;
+    }
+
+    @Test
+    public void generateNV21Data_interleavesVuAfterLuma() {
+        byte[] data = PreviewOnImageAvailableListener.generateNV21Data(mockImage);
+
+        byte[] expected = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            expected[i] = (byte) i;
+        }
+        for (int i = 0; i < WIDTH * HEIGHT / 4; i++) {
+            expected[WIDTH * HEIGHT + i * 2] = (byte) (200 + i);
+            expected[WIDTH * HEIGHT + i * 2 + 1] = (byte) (100 + i);
+        }
+        assertArrayEquals(expected, data);
+    }
+
+    @Test
+    public void generateNV21Planes_matchesNV21DataInADirectBuffer() {
+        byte[] expected = PreviewOnImageAvailableListener.generateNV21Data(mockImage);
+        ByteBuffer planes = ByteBuffer.allocateDirect(expected.length);
+
+        PreviewOnImageAvailableListener.generateNV21Planes(mockImage, planes, new byte[0]);
+
+        byte[] actual = new byte[expected.length];
+        planes.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void onImageAvailable_fillsDirectFramesForYuvPlaneInput() {
+        FrameBufferPool pool = FrameBufferPool.forImageReader(2, PreviewInputMode.YUV_PLANES);
+        List<PreviewFrame> frames = new ArrayList<>();
+        PreviewOnImageAvailableListener listener = new PreviewOnImageAvailableListener(frames::add, pool);
+
+        listener.onImageAvailable(mockReader);
+
+        assertTrue(frames.get(0).isDirect());
+        assertEquals(0, frames.get(0).getPlanes().position());
+    }
+
+    @Test
+    public void onImageAvailable_reusesPooledBuffersAcrossFrames() {
+        FrameBufferPool pool = FrameBufferPool.forImageReader(2, PreviewInputMode.NV21_NATIVE);
+        List<byte[]> buffersSeen = new ArrayList<>();
+        PreviewOnImageAvailableListener listener = new PreviewOnImageAvailableListener(
+                frame -> {
+                    buffersSeen.add(frame.getData());
+                    frame.release();
+                },
+                pool);
+
+        for (int i = 0; i < 1000; i++) {
+            listener.onImageAvailable(mockReader);
+        }
+
+        assertEquals(1000, buffersSeen.size());
+        assertEquals(1, pool.getAllocationCount());
+        assertEquals(0, pool.getFramesInFlight());
+        for (byte[] buffer : buffersSeen) {
+            assertSame(buffersSeen.get(0), buffer);
+        }
+        verify(mockImage, times(1000)).close();
+    }
+
+    @Test
+    public void onImageAvailable_dropsFrameWhenAllBuffersAreInFlight() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        List<PreviewFrame> heldFrames = new ArrayList<>();
+        PreviewOnImageAvailableListener listener = new PreviewOnImageAvailableListener(heldFrames::add, pool);
+
+        listener.onImageAvailable(mockReader);
+        listener.onImageAvailable(mockReader);
+        listener.onImageAvailable(mockReader);
+
+        assertEquals(2, heldFrames.size());
+        assertEquals(2, pool.getAllocationCount());
+        assertNull(pool.acquire(WIDTH, HEIGHT));
+        verify(mockImage, times(3)).close();
+
+        //releasing makes the buffer available again without a new allocation
+        heldFrames.get(0).release();
+        listener.onImageAvailable(mockReader);
+        assertEquals(3, heldFrames.size());
+        assertEquals(2, pool.getAllocationCount());
+    }
+
+    @Test
+    public void acquire_reallocatesWhenCropSizeChanges() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        PreviewFrame frame = pool.acquire(WIDTH, HEIGHT);
+        frame.release();
+
+        PreviewFrame resized = pool.acquire(WIDTH * 2, HEIGHT * 2);
+
+        assertEquals(WIDTH * 2 * HEIGHT * 2 * 3 / 2, resized.getData().length);
+        assertEquals(2, pool.getAllocationCount());
+    }
+}
@@ -0,0 +1,85 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class RapidCaptureQueueTest {
+
+    @Test
+    public void numbersShotsInCallOrder() {
+        RapidCaptureQueue<String> queue = new RapidCaptureQueue<>(4);
+
+        assertEquals(1, queue.enqueue("a").sequence);
+        assertEquals(2, queue.enqueue("b").sequence);
+        assertEquals(3, queue.enqueue("c").sequence);
+        assertEquals(3, queue.getLastSequence());
+        assertEquals(3, queue.getPendingCount());
+    }
+
+    @Test
+    public void rejectsShotsBeyondCapacity() {
+        RapidCaptureQueue<String> queue = new RapidCaptureQueue<>(2);
+        queue.enqueue("a");
+        queue.enqueue("b");
+
+        assertNull(queue.enqueue("c"));
+        assertEquals(2, queue.getLastSequence());
+    }
+
+    @Test
+    public void matchesImagesBySensorTimestamp() {
+        RapidCaptureQueue<String> queue = new RapidCaptureQueue<>(4);
+        RapidCaptureQueue.Shot<String> first = queue.enqueue("a");
+        RapidCaptureQueue.Shot<String> second = queue.enqueue("b");
+        queue.onCaptureStarted(first, 1000);
+        queue.onCaptureStarted(second, 2000);
+
+        assertSame(second, queue.takeForImage(2000));
+        assertSame(first, queue.takeForImage(1000));
+        assertEquals(2, queue.getCompletedCount());
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void fallsBackToTheOldestShotWhenNoTimestampMatches() {
+        RapidCaptureQueue<String> queue = new RapidCaptureQueue<>(4);
+        RapidCaptureQueue.Shot<String> first = queue.enqueue("a");
+        RapidCaptureQueue.Shot<String> second = queue.enqueue("b");
+
+        assertSame(first, queue.takeForImage(5000));
+        assertSame(second, queue.takeForImage(6000));
+        assertNull(queue.takeForImage(7000));
+    }
+
+    @Test
+    public void failedShotsFreeTheirPlace() {
+        RapidCaptureQueue<String> queue = new RapidCaptureQueue<>(1);
+        RapidCaptureQueue.Shot<String> shot = queue.enqueue("a");
+
+        assertTrue(queue.fail(shot));
+        assertFalse(queue.fail(shot));
+        assertEquals(1, queue.getFailedCount());
+        assertEquals(2, queue.enqueue("b").sequence);
+    }
+
+    @Test
+    public void drainReturnsEveryWaitingShot() {
+        RapidCaptureQueue<String> queue = new RapidCaptureQueue<>(4);
+        queue.enqueue("a");
+        queue.enqueue("b");
+
+        List<RapidCaptureQueue.Shot<String>> drained = queue.drain();
+
+        assertEquals(2, drained.size());
+        assertEquals("a", drained.get(0).payload);
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(2, queue.getFailedCount());
+    }
+}
@@ -0,0 +1,208 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.graphics.SurfaceTexture;
+import android.os.Looper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RenderEngineTest {
+
+    private int created;
+
+    @Before
+    public void setUp() {
+        created = 0;
+        RenderEngine.setFactory(() -> {
+            created++;
+            GLBridge bridge = mock(GLBridge.class);
+            when(bridge.getRenderScheduler()).thenReturn(new RenderScheduler(Constants.DEFAULT_MAX_IDLE_REDRAW_INTERVAL_MS));
+            return new RenderEngine(mock(FilterRenderer.class), bridge, mock(StillRenderEngine.class), new PipelineStats());
+        });
+    }
+
+    @After
+    public void tearDown() {
+        RenderEngine.releaseIdle();
+        RenderEngine.setFactory(null);
+    }
+
+    private void idleFor(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void camerasShareOneEngine() {
+        SurfaceTexture first = mock(SurfaceTexture.class);
+        SurfaceTexture second = mock(SurfaceTexture.class);
+        Object firstCamera = new Object();
+        Object secondCamera = new Object();
+
+        RenderEngine engine = RenderEngine.acquire(firstCamera, first);
+        RenderEngine reused = RenderEngine.acquire(secondCamera, second);
+
+        assertSame(engine, reused);
+        assertEquals(1, created);
+        assertEquals(2, engine.getBindCount());
+        verify(engine.getBridge()).setOutputSurface(first, 0);
+        verify(engine.getBridge()).setOutputSurface(second, 0);
+
+        engine.release(firstCamera);
+        engine.release(secondCamera);
+    }
+
+    @Test
+    public void releasingAnEarlierCameraKeepsTheEngineAndItsOutput() {
+        Object firstCamera = new Object();
+        Object secondCamera = new Object();
+        RenderEngine engine = RenderEngine.acquire(firstCamera, mock(SurfaceTexture.class));
+        RenderEngine.acquire(secondCamera, mock(SurfaceTexture.class));
+
+        engine.release(firstCamera);
+
+        assertFalse(engine.isDisposed());
+        assertSame(engine, RenderEngine.getInstance());
+        //the second camera is still drawn into its texture
+        verify(engine.getBridge(), never()).setOutputSurface(null, Constants.RENDER_ENGINE_UNBIND_TIMEOUT_MS);
+        verify(engine.getBridge(), never()).onDispose();
+        verify(engine.getStillRenderEngine(), never()).release();
+
+        engine.release(secondCamera);
+    }
+
+    @Test
+    public void releasingTheLastCameraFreesEverythingAfterTheGracePeriod() {
+        Object firstCamera = new Object();
+        Object secondCamera = new Object();
+        RenderEngine engine = RenderEngine.acquire(firstCamera, mock(SurfaceTexture.class));
+        RenderEngine.acquire(secondCamera, mock(SurfaceTexture.class));
+
+        engine.release(secondCamera);
+        engine.release(firstCamera);
+        idleFor(Constants.RENDER_ENGINE_IDLE_GRACE_MS - 1);
+
+        assertFalse(engine.isDisposed());
+        verify(engine.getBridge(), never()).onDispose();
+
+        idleFor(1);
+
+        assertTrue(engine.isDisposed());
+        assertNull(RenderEngine.getInstance());
+        verify(engine.getBridge()).setOutputSurface(null, Constants.RENDER_ENGINE_UNBIND_TIMEOUT_MS);
+        verify(engine.getBridge()).onDispose();
+        verify(engine.getStillRenderEngine()).release();
+    }
+
+    @Test
+    public void aCameraCreatedWithinTheGracePeriodReusesTheEngine() {
+        //the old camera is disposed before the new one is created
+        Object oldCamera = new Object();
+        RenderEngine engine = RenderEngine.acquire(oldCamera, mock(SurfaceTexture.class));
+        engine.release(oldCamera);
+        idleFor(Constants.RENDER_ENGINE_IDLE_GRACE_MS / 2);
+
+        Object newCamera = new Object();
+        RenderEngine reused = RenderEngine.acquire(newCamera, mock(SurfaceTexture.class));
+        idleFor(Constants.RENDER_ENGINE_IDLE_GRACE_MS);
+
+        assertSame(engine, reused);
+        assertEquals(1, created);
+        assertEquals(2, engine.getBindCount());
+        //the timeout was cancelled
+        assertFalse(engine.isDisposed());
+        verify(engine.getBridge(), never()).onDispose();
+
+        engine.release(newCamera);
+    }
+
+    @Test
+    public void aCameraAfterTheGracePeriodCreatesANewEngine() {
+        Object camera = new Object();
+        RenderEngine engine = RenderEngine.acquire(camera, mock(SurfaceTexture.class));
+        engine.release(camera);
+        idleFor(Constants.RENDER_ENGINE_IDLE_GRACE_MS);
+
+        RenderEngine next = RenderEngine.acquire(camera, mock(SurfaceTexture.class));
+
+        assertNotSame(engine, next);
+        assertEquals(2, created);
+        assertFalse(next.isDisposed());
+
+        next.release(camera);
+    }
+
+    @Test
+    public void detachingThePluginFreesAnIdleEngineAtOnce() {
+        Object camera = new Object();
+        RenderEngine engine = RenderEngine.acquire(camera, mock(SurfaceTexture.class));
+        engine.release(camera);
+
+        RenderEngine.releaseIdle();
+
+        assertTrue(engine.isDisposed());
+        assertNull(RenderEngine.getInstance());
+        verify(engine.getStillRenderEngine()).release();
+
+        //the cancelled timeout does not dispose it again
+        idleFor(Constants.RENDER_ENGINE_IDLE_GRACE_MS);
+        verify(engine.getBridge()).onDispose();
+    }
+
+    @Test
+    public void detachingThePluginKeepsAnEngineInUse() {
+        Object camera = new Object();
+        RenderEngine engine = RenderEngine.acquire(camera, mock(SurfaceTexture.class));
+
+        RenderEngine.releaseIdle();
+
+        assertFalse(engine.isDisposed());
+
+        engine.release(camera);
+    }
+
+    @Test
+    public void releasingTwiceDoesNotDisposeAgain() {
+        Object camera = new Object();
+        RenderEngine engine = RenderEngine.acquire(camera, mock(SurfaceTexture.class));
+
+        engine.release(camera);
+        engine.release(camera);
+        idleFor(Constants.RENDER_ENGINE_IDLE_GRACE_MS);
+
+        verify(engine.getBridge()).onDispose();
+        verify(engine.getStillRenderEngine()).release();
+    }
+
+    @Test
+    public void bindingResetsTheStatsForTheNewCamera() {
+        Object firstCamera = new Object();
+        RenderEngine engine = RenderEngine.acquire(firstCamera, mock(SurfaceTexture.class));
+        engine.getPipelineStats().record(PipelineStats.Stage.TOTAL, 0, 1000);
+
+        Object secondCamera = new Object();
+        RenderEngine.acquire(secondCamera, mock(SurfaceTexture.class));
+
+        assertEquals(0, engine.getPipelineStats().getHistogram(PipelineStats.Stage.TOTAL).getCount());
+
+        engine.release(firstCamera);
+        engine.release(secondCamera);
+    }
+}
@@ -0,0 +1,99 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class RenderSchedulerTest {
+
+    @Test
+    public void awaitFrame_returnsImmediatelyWhenARenderWasRequested() {
+        RenderScheduler scheduler = new RenderScheduler(10_000);
+
+        scheduler.requestRender();
+
+        assertTrue(scheduler.awaitFrame());
+        scheduler.onFrameRendered();
+        assertEquals(1, scheduler.getRenderedFrameCount());
+        assertEquals(0, scheduler.getIdleRedrawCount());
+    }
+
+    @Test
+    public void requestRender_coalescesRequestsMadeBeforeTheNextDraw() {
+        RenderScheduler scheduler = new RenderScheduler(10_000);
+
+        scheduler.requestRender();
+        scheduler.requestRender();
+        scheduler.requestRender();
+        assertTrue(scheduler.awaitFrame());
+        scheduler.onFrameRendered();
+
+        assertEquals(1, scheduler.getRenderedFrameCount());
+        assertEquals(2, scheduler.getSkippedFrameCount());
+    }
+
+    @Test
+    public void awaitFrame_parksUntilARenderIsRequested() throws InterruptedException {
+        RenderScheduler scheduler = new RenderScheduler(10_000);
+        AtomicBoolean drew = new AtomicBoolean(false);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread glThread = new Thread(() -> {
+            drew.set(scheduler.awaitFrame());
+            done.countDown();
+        });
+        glThread.start();
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        scheduler.requestRender();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(drew.get());
+    }
+
+    @Test
+    public void awaitFrame_redrawsAfterTheMaximumIdleInterval() {
+        RenderScheduler scheduler = new RenderScheduler(20);
+        scheduler.onFrameRendered();
+
+        long start = System.nanoTime();
+        assertTrue(scheduler.awaitFrame());
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15));
+        assertEquals(1, scheduler.getIdleRedrawCount());
+    }
+
+    @Test
+    public void awaitFrame_neverParksInContinuousMode() {
+        RenderScheduler scheduler = new RenderScheduler(10_000);
+        scheduler.setRenderOnDemand(false);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(scheduler.awaitFrame());
+            scheduler.onFrameRendered();
+        }
+        assertEquals(10, scheduler.getRenderedFrameCount());
+    }
+
+    @Test
+    public void stop_wakesAParkedRenderLoop() throws InterruptedException {
+        RenderScheduler scheduler = new RenderScheduler(10_000);
+        AtomicBoolean drew = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread glThread = new Thread(() -> {
+            drew.set(scheduler.awaitFrame());
+            done.countDown();
+        });
+        glThread.start();
+        scheduler.stop();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(drew.get());
+    }
+}
@@ -0,0 +1,113 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RepeatingRequestCoalescerTest {
+
+    private RepeatingRequestCoalescer coalescer;
+    private int sends;
+    private String failure;
+    private final List<String> completed = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        coalescer = new RepeatingRequestCoalescer(new Handler(Looper.getMainLooper()), callback -> {
+            sends++;
+            if (failure != null) {
+                callback.onFailed("cameraAccess", failure);
+            } else {
+                callback.onSent();
+            }
+        });
+        coalescer.setMaxFrameRate(30);
+    }
+
+    private RepeatingRequestCoalescer.Callback completing(final String name) {
+        return new RepeatingRequestCoalescer.Callback() {
+            @Override
+            public void onSent() {
+                completed.add(name);
+            }
+
+            @Override
+            public void onFailed(String errorCode, String errorMessage) {
+                completed.add(name + " failed");
+            }
+        };
+    }
+
+    private void idleFor(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void request_sendsAtOnceAfterAQuietFrameInterval() {
+        coalescer.request(completing("flash"));
+        idleFor(100);
+        coalescer.request(completing("zoom"));
+
+        assertEquals(2, sends);
+        assertEquals(0, coalescer.getCoalescedCount());
+        assertEquals(2, completed.size());
+    }
+
+    @Test
+    public void request_sendsTheRequestsOfOneFrameIntervalTogether() {
+        //a restored scene, six settings in quick succession
+        String[] settings = {"flash", "exposureMode", "exposurePoint", "focusMode", "zoom", "exposureOffset"};
+        for (String setting : settings) {
+            coalescer.request(completing(setting));
+        }
+
+        assertEquals(1, sends);
+        assertEquals(1, completed.size());
+
+        idleFor(34);
+
+        assertEquals(2, sends);
+        assertEquals(4, coalescer.getCoalescedCount());
+        assertEquals(6, completed.size());
+    }
+
+    @Test
+    public void request_sendsAtMostOncePerFrameInterval() {
+        for (int i = 0; i < 20; i++) {
+            coalescer.request(completing("zoom " + i));
+            idleFor(10);
+        }
+        idleFor(34);
+
+        //200ms of requests every 10ms, the first at once and then one send per 34ms interval
+        assertTrue("sent " + sends + " times", sends <= 1 + 200 / 34 + 1);
+        assertEquals(20, completed.size());
+        assertEquals(20, sends + coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void request_failsEveryRequestSentTogether() {
+        coalescer.request(completing("flash"));
+        failure = "Camera is closed";
+        coalescer.request(completing("zoom"));
+        coalescer.request(completing("exposureOffset"));
+        idleFor(34);
+
+        assertEquals(3, completed.size());
+        assertEquals("zoom failed", completed.get(1));
+        assertEquals("exposureOffset failed", completed.get(2));
+    }
+}
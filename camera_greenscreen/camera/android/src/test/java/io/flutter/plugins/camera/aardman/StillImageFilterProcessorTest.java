@@ -0,0 +1,114 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+
+import io.flutter.plugins.camera.ImageSaver;
+
+@RunWith(RobolectricTestRunner.class)
+public class StillImageFilterProcessorTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    private final FilterPipelineController filterPipeline = mock(FilterPipelineController.class);
+    private final CameraExecutors executors = mock(CameraExecutors.class);
+    private final CameraExecutors.MonitoredExecutor imaging = mock(CameraExecutors.MonitoredExecutor.class);
+    private final CameraExecutors.MonitoredExecutor io = mock(CameraExecutors.MonitoredExecutor.class);
+    private final ImageSaver.Callback callback = mock(ImageSaver.Callback.class);
+
+    @Before
+    public void setUp() throws Exception {
+        //set by the constructor, which the mock skips
+        Field stats = FilterPipelineController.class.getDeclaredField("pipelineStats");
+        stats.setAccessible(true);
+        stats.set(filterPipeline, new PipelineStats());
+
+        when(executors.getImaging()).thenReturn(imaging);
+        when(executors.getIo()).thenReturn(io);
+    }
+
+    private static Image yuvImage() {
+        Image image = mock(Image.class);
+        Image.Plane[] planes = new Image.Plane[] {
+                plane(ByteBuffer.allocate(WIDTH * HEIGHT), WIDTH, 1),
+                plane(ByteBuffer.allocate(WIDTH * HEIGHT / 2), WIDTH, 2),
+                plane(ByteBuffer.allocate(WIDTH * HEIGHT / 2), WIDTH, 2)
+        };
+        when(image.getPlanes()).thenReturn(planes);
+        when(image.getCropRect()).thenReturn(new Rect(0, 0, WIDTH, HEIGHT));
+        when(image.getFormat()).thenReturn(ImageFormat.YUV_420_888);
+        when(image.getWidth()).thenReturn(WIDTH);
+        when(image.getHeight()).thenReturn(HEIGHT);
+        return image;
+    }
+
+    private static Image.Plane plane(ByteBuffer buffer, int rowStride, int pixelStride) {
+        Image.Plane plane = mock(Image.Plane.class);
+        when(plane.getBuffer()).thenReturn(buffer);
+        when(plane.getRowStride()).thenReturn(rowStride);
+        when(plane.getPixelStride()).thenReturn(pixelStride);
+        return plane;
+    }
+
+    @Test
+    public void aYuvStillIsFilteredFromItsPlanesAndEncodedOnce() {
+        when(filterPipeline.isFilterEnabled()).thenReturn(true);
+        Image image = yuvImage();
+
+        new StillImageFilterProcessor(image, new File("still.jpg"), executors, callback, filterPipeline).run();
+
+        ArgumentCaptor<ByteBuffer> planes = ArgumentCaptor.forClass(ByteBuffer.class);
+        ArgumentCaptor<StillRenderEngine.Callback> completion = ArgumentCaptor.forClass(StillRenderEngine.Callback.class);
+        verify(filterPipeline).filterStillPlanes(planes.capture(), eq(WIDTH), eq(HEIGHT), completion.capture());
+        assertEquals(FrameBufferPool.nv21Size(WIDTH, HEIGHT), planes.getValue().capacity());
+        //never decoded from JPEG
+        verify(filterPipeline, never()).filterStillImage(any(), any());
+        verify(image).close();
+
+        //the filtered result is the only encode
+        completion.getValue().onRendered(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+
+        ArgumentCaptor<Runnable> encode = ArgumentCaptor.forClass(Runnable.class);
+        verify(imaging, times(1)).execute(encode.capture());
+        assertTrue(encode.getValue() instanceof BitmapSaver);
+        verify(io, never()).execute(any());
+    }
+
+    @Test
+    public void aYuvStillFailsWithoutAFilteredResult() {
+        when(filterPipeline.isFilterEnabled()).thenReturn(true);
+
+        new StillImageFilterProcessor(yuvImage(), new File("still.jpg"), executors, callback, filterPipeline).run();
+
+        ArgumentCaptor<StillRenderEngine.Callback> completion = ArgumentCaptor.forClass(StillRenderEngine.Callback.class);
+        verify(filterPipeline).filterStillPlanes(any(), anyInt(), anyInt(), completion.capture());
+        completion.getValue().onRendered(null);
+
+        verify(callback).onError("filterFailed", "Failed filtering image");
+        verify(imaging, never()).execute(any());
+    }
+}
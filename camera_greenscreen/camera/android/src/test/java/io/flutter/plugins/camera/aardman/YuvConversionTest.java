@@ -0,0 +1,66 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The GPU conversion used by PreviewInputMode.YUV_PLANES must produce the same pixels
+ * as GPUImageNativeLibrary.YUVtoRBGA, these tests compare the CPU reference of the
+ * YuvToRgbFilter shader with a port of the native conversion
+ */
+public class YuvConversionTest {
+
+    @Test
+    public void yuvToRgba_matchesNativeConversionForEveryYuvValue() {
+        byte[] frame = new byte[6];
+        int[] rgba = new int[4];
+        for (int y = 0; y < 256; y++) {
+            for (int v = 0; v < 256; v++) {
+                for (int u = 0; u < 256; u++) {
+                    frame[0] = frame[1] = frame[2] = frame[3] = (byte) y;
+                    frame[4] = (byte) v;
+                    frame[5] = (byte) u;
+                    YuvConversion.nv21ToRgba(frame, 2, 2, rgba);
+
+                    int expected = rgba[0];
+                    int actual = YuvConversion.yuvToRgba(y, v, u);
+                    if (expected != actual) {
+                        assertEquals("y=" + y + " v=" + v + " u=" + u, expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void yuvToRgba_matchesNativeConversionForAFrameSampledLikeTheShader() {
+        int width = 64;
+        int height = 48;
+        byte[] frame = new byte[width * height * 3 / 2];
+        new Random(42).nextBytes(frame);
+
+        int[] expected = new int[width * height];
+        YuvConversion.nv21ToRgba(frame, width, height, expected);
+
+        //The VU texture is half resolution and sampled with GL_NEAREST
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int chroma = width * height + (row / 2) * width + (col / 2) * 2;
+                int actual = YuvConversion.yuvToRgba(
+                        frame[row * width + col] & 0xff,
+                        frame[chroma] & 0xff,
+                        frame[chroma + 1] & 0xff);
+                assertEquals(expected[row * width + col], actual);
+            }
+        }
+    }
+
+    @Test
+    public void yuvToRgba_isOpaqueAndClamped() {
+        assertEquals(0xff000000, YuvConversion.yuvToRgba(0, 128, 128) & 0xff000000);
+        assertEquals(0xffffffff, YuvConversion.yuvToRgba(255, 128, 128));
+    }
+}
@@ -0,0 +1,190 @@
+package io.flutter.plugins.camera.aardman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.media.Image;
+import android.media.ImageReader;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ZslRingBufferTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    //Y plane and two chroma planes of a WIDTH x HEIGHT YUV_420_888 image
+    private static final long FRAME_BYTES = WIDTH * HEIGHT + 2 * (WIDTH * HEIGHT / 4);
+
+    /**
+     * A YUV_420_888 image with the given sensor timestamp
+     */
+    private static Image image(long timestampNanos) {
+        Image image = mock(Image.class);
+        Image.Plane[] planes = new Image.Plane[] {
+                plane(WIDTH * HEIGHT),
+                plane(WIDTH * HEIGHT / 4),
+                plane(WIDTH * HEIGHT / 4)
+        };
+        when(image.getPlanes()).thenReturn(planes);
+        when(image.getTimestamp()).thenReturn(timestampNanos);
+        return image;
+    }
+
+    private static Image.Plane plane(int size) {
+        Image.Plane plane = mock(Image.Plane.class);
+        when(plane.getBuffer()).thenReturn(ByteBuffer.allocate(size));
+        return plane;
+    }
+
+    private static ZslRingBuffer ring(int maxImages) {
+        return new ZslRingBuffer(maxImages, Long.MAX_VALUE, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void takesTheImageClosestToTheTrigger() {
+        ZslRingBuffer ring = ring(4);
+        Image first = image(1_000_000);
+        Image second = image(34_000_000);
+        Image third = image(67_000_000);
+        ring.add(first);
+        ring.add(second);
+        ring.add(third);
+
+        assertSame(second, ring.takeClosest(40_000_000));
+        assertEquals(-6_000_000, ring.getLastSelectionErrorNanos());
+        assertSame(third, ring.takeClosest(100_000_000));
+        assertSame(first, ring.takeClosest(0));
+        assertEquals(3, ring.getTakenCount());
+    }
+
+    @Test
+    public void takesTheEarlierImageOnATie() {
+        ZslRingBuffer ring = ring(4);
+        Image first = image(10);
+        Image second = image(30);
+        ring.add(first);
+        ring.add(second);
+
+        assertSame(first, ring.takeClosest(20));
+    }
+
+    @Test
+    public void returnsNullWhenEmpty() {
+        ZslRingBuffer ring = ring(4);
+
+        assertNull(ring.takeClosest(1000));
+
+        ring.add(image(10));
+        ring.takeClosest(10);
+        assertNull(ring.takeClosest(10));
+    }
+
+    @Test
+    public void takenImagesAreNotClosedByTheRing() {
+        ZslRingBuffer ring = ring(1);
+        Image taken = image(10);
+        ring.add(taken);
+
+        ring.takeClosest(10);
+        ring.add(image(20));
+        ring.add(image(30));
+        ring.clear();
+
+        verify(taken, never()).close();
+    }
+
+    @Test
+    public void evictsAndClosesTheOldestImageWhenFull() {
+        ZslRingBuffer ring = ring(2);
+        Image first = image(10);
+        Image second = image(20);
+        Image third = image(30);
+        ring.add(first);
+        ring.add(second);
+        ring.add(third);
+
+        verify(first).close();
+        verify(second, never()).close();
+        assertEquals(2, ring.getSize());
+        assertEquals(1, ring.getEvictedCount());
+        assertSame(second, ring.takeClosest(0));
+    }
+
+    @Test
+    public void staysWithinTheByteBudget() {
+        //room for two images by size, the budget allows one and a half
+        ZslRingBuffer ring = new ZslRingBuffer(2, FRAME_BYTES * 3 / 2, WIDTH / 2, HEIGHT);
+        assertEquals(2, ring.getCapacity());
+        Image first = image(10);
+        ring.add(first);
+        ring.add(image(20));
+
+        verify(first).close();
+        assertEquals(1, ring.getSize());
+        assertEquals(FRAME_BYTES, ring.getHeldBytes());
+        assertEquals(FRAME_BYTES, ring.getPeakHeldBytes());
+    }
+
+    @Test
+    public void accountsBytesAsImagesAreTakenAndCleared() {
+        ZslRingBuffer ring = ring(4);
+        ring.add(image(10));
+        ring.add(image(20));
+        ring.add(image(30));
+        assertEquals(3 * FRAME_BYTES, ring.getHeldBytes());
+
+        ring.takeClosest(20);
+        assertEquals(2 * FRAME_BYTES, ring.getHeldBytes());
+
+        ring.clear();
+        assertEquals(0, ring.getHeldBytes());
+        assertEquals(0, ring.getSize());
+        assertEquals(3 * FRAME_BYTES, ring.getPeakHeldBytes());
+    }
+
+    @Test
+    public void capacityIsBoundedByTheByteBudget() {
+        assertEquals(4, ZslRingBuffer.capacityFor(4, Long.MAX_VALUE, 4000, 3000));
+        assertEquals(3, ZslRingBuffer.capacityFor(4, 64L * 1024 * 1024, 4000, 3000));
+        assertEquals(1, ZslRingBuffer.capacityFor(4, 1024, 4000, 3000));
+    }
+
+    @Test
+    public void evictsBeforeAcquiringFromTheReader() {
+        ZslRingBuffer ring = ring(2);
+        assertEquals(3, ring.getReaderMaxImages());
+        Image first = image(10);
+        ring.add(first);
+        ring.add(image(20));
+        ImageReader reader = mock(ImageReader.class);
+        Image acquired = image(30);
+        when(reader.acquireNextImage()).thenReturn(acquired);
+
+        ring.onImageAvailable(reader);
+
+        verify(first).close();
+        assertSame(acquired, ring.takeClosest(30));
+    }
+
+    @Test
+    public void countsFramesTheReaderCannotHandOut() {
+        ZslRingBuffer ring = ring(2);
+        ImageReader reader = mock(ImageReader.class);
+        when(reader.acquireNextImage()).thenThrow(new IllegalStateException("maxImages"));
+
+        ring.onImageAvailable(reader);
+
+        assertEquals(1, ring.getDroppedCount());
+        assertEquals(0, ring.getSize());
+    }
+}
@@ -4,12 +4,15 @@
 
 package io.flutter.plugins.camera.media;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 import android.media.CamcorderProfile;
 import android.media.EncoderProfiles;
 import android.media.MediaRecorder;
+import io.flutter.plugins.camera.aardman.FilteredVideoRecorder;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.List;
@@ -210,6 +213,35 @@ public class MediaRecorderBuilderTest {
     inOrder.verify(recorder).prepare();
   }
 
+  @Config(maxSdk = 30)
+  @SuppressWarnings("deprecation")
+  @Test
+  public void getFilteredVideoSettings_shouldUseProfileValuesAndPreviewSizeLegacy() {
+    CamcorderProfile recorderProfile = getEmptyCamcorderProfile();
+    recorderProfile.videoBitRate = 12000000;
+    recorderProfile.videoFrameRate = 30;
+    recorderProfile.audioBitRate = 96000;
+    recorderProfile.audioSampleRate = 48000;
+    recorderProfile.audioChannels = 2;
+    MediaRecorderBuilder builder =
+        new MediaRecorderBuilder(recorderProfile, "mock_video_file_path")
+            .setEnableAudio(true)
+            .setMediaOrientation(90);
+
+    FilteredVideoRecorder.Settings settings = builder.getFilteredVideoSettings(1280, 720, true);
+
+    assertEquals(1280, settings.width);
+    assertEquals(720, settings.height);
+    assertEquals(12000000, settings.videoBitRate);
+    assertEquals(30, settings.videoFrameRate);
+    assertTrue(settings.enableAudio);
+    assertEquals(96000, settings.audioBitRate);
+    assertEquals(48000, settings.audioSampleRate);
+    assertEquals(2, settings.audioChannels);
+    assertEquals(90, settings.orientationHint);
+    assertTrue(settings.realtimeTimestamps);
+  }
+
   private CamcorderProfile getEmptyCamcorderProfile() {
     try {
       Constructor<CamcorderProfile> constructor =
@@ -7,12 +7,15 @@ export 'package:camera_platform_interface/camera_platform_interface.dart'
         CameraDescription,
         CameraException,
         CameraLensDirection,
+        CameraSettings,
         FlashMode,
         ExposureMode,
         FocusMode,
         ResolutionPreset,
         XFile,
-        ImageFormatGroup;
+        ImageFormatGroup,
+        PreviewInput,
+        StillInput;
 
 export 'src/camera_controller.dart';
 export 'src/camera_image.dart';
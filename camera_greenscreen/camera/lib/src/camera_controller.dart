@@ -244,6 +244,8 @@ class CameraController extends ValueNotifier<CameraValue> {
     this.resolutionPreset, {
     this.enableAudio = true,
     this.imageFormatGroup,
+    this.previewInput = PreviewInput.surfaceTexture,
+    this.stillInput = StillInput.jpeg,
   }) : super(const CameraValue.uninitialized());
 
   /// The properties of the camera device controlled by this controller.
@@ -265,12 +267,26 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// When null the imageFormat will fallback to the platforms default.
   final ImageFormatGroup? imageFormatGroup;
 
+  /// How the preview frames reach the filters on Android.
+  ///
+  /// [PreviewInput.imageReader] is the fallback for devices where the default
+  /// SurfaceTexture input misbehaves.
+  final PreviewInput previewInput;
+
+  /// How still captures reach the filters on Android.
+  ///
+  /// [StillInput.yuv] filters the capture from its planes without a JPEG
+  /// decode and encode before the filter.
+  final StillInput stillInput;
+
   /// The id of a camera that hasn't been initialized.
   @visibleForTesting
   static const int kUninitializedCameraId = -1;
   int _cameraId = kUninitializedCameraId;
 
   bool _isDisposed = false;
+  bool _rapidCapture = false;
+  int _picturesInFlight = 0;
   StreamSubscription<dynamic>? _imageStreamSubscription;
   FutureOr<bool>? _initCalled;
   StreamSubscription<DeviceOrientationChangedEvent>?
@@ -312,6 +328,8 @@ class CameraController extends ValueNotifier<CameraValue> {
         description,
         resolutionPreset,
         enableAudio: enableAudio,
+        previewInput: previewInput,
+        stillInput: stillInput,
       );
 
       _unawaited(CameraPlatform.instance
@@ -400,6 +418,9 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// Throws a [CameraException] if the capture fails.
   Future<XFile> takePicture() async {
     _throwIfNotInitialized('takePicture');
+    if (_rapidCapture) {
+      return _takeRapidPicture();
+    }
     if (value.isTakingPicture) {
       throw CameraException(
         'Previous capture has not returned yet.',
@@ -417,6 +438,23 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
   }
 
+  // In rapid capture mode pictures overlap, isTakingPicture stays true while
+  // any of them is in flight
+  Future<XFile> _takeRapidPicture() async {
+    _picturesInFlight++;
+    value = value.copyWith(isTakingPicture: true);
+    try {
+      return await CameraPlatform.instance.takePicture(_cameraId);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    } finally {
+      _picturesInFlight--;
+      if (_picturesInFlight == 0 && !_isDisposed) {
+        value = value.copyWith(isTakingPicture: false);
+      }
+    }
+  }
+
   /// Start streaming images from platform camera.
   ///
   /// Settings for capturing images on iOS and Android is set to always use the
@@ -433,8 +471,22 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// The `startImageStream` method is only available on Android and iOS (other
   /// platforms won't be supported in current setup).
   ///
+  /// On Android each frame holds one of [credits] until [onAvailable] has
+  /// returned, or its returned future has completed. Frames arriving while no
+  /// credit is left are dropped by the camera instead of being queued.
+  ///
+  /// On Android a [source] other than [ImageStreamSource.camera] streams
+  /// frames of [analysisSize] rendered from the filtered preview, at most
+  /// [analysisFrameRate] per second, without restarting the preview.
+  ///
   // TODO(bmparr): Add settings for resolution and fps.
-  Future<void> startImageStream(onLatestImageAvailable onAvailable) async {
+  Future<void> startImageStream(
+    onLatestImageAvailable onAvailable, {
+    int credits = 1,
+    ImageStreamSource source = ImageStreamSource.camera,
+    Size analysisSize = const Size(256, 144),
+    double analysisFrameRate = 10,
+  }) async {
     assert(defaultTargetPlatform == TargetPlatform.android ||
         defaultTargetPlatform == TargetPlatform.iOS);
     _throwIfNotInitialized('startImageStream');
@@ -452,7 +504,16 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
 
     try {
-      await _channel.invokeMethod<void>('startImageStream');
+      await _channel.invokeMethod<void>(
+        'startImageStream',
+        <String, dynamic>{
+          'credits': credits,
+          'source': describeEnum(source),
+          'width': analysisSize.width.round(),
+          'height': analysisSize.height.round(),
+          'frameRate': analysisFrameRate,
+        },
+      );
       value = value.copyWith(isStreamingImages: true);
     } on PlatformException catch (e) {
       throw CameraException(e.code, e.message);
@@ -461,9 +522,20 @@ class CameraController extends ValueNotifier<CameraValue> {
         EventChannel('plugins.flutter.io/camera/imageStream');
     _imageStreamSubscription =
         cameraEventChannel.receiveBroadcastStream().listen(
-      (dynamic imageData) {
-        onAvailable(
-            CameraImage.fromPlatformData(imageData as Map<dynamic, dynamic>));
+      (dynamic imageData) async {
+        final CameraImage image =
+            CameraImage.fromPlatformData(imageData as Map<dynamic, dynamic>);
+        try {
+          final dynamic handled = onAvailable(image);
+          if (handled is Future) {
+            await handled;
+          }
+        } finally {
+          // Returns the credit of this frame, iOS does not use credits.
+          if (image.sequence != null && !_isDisposed) {
+            await _channel.invokeMethod<void>('imageStreamAck');
+          }
+        }
       },
     );
   }
@@ -878,5 +950,75 @@ class CameraController extends ValueNotifier<CameraValue> {
   Future<void> updateFilters(Map data) async {
     await CameraPlatform.instance.updateFilters(data);
   }
+
+  // Per stage latency percentiles of the filtered preview, in milliseconds
+  Future<Map<String, dynamic>> getPipelineStats() async {
+    return CameraPlatform.instance.getPipelineStats();
+  }
+
+  // Streams the pipeline stats every interval, Duration.zero stops them
+  Future<void> setPipelineStatsInterval(Duration interval) async {
+    await CameraPlatform.instance.setPipelineStatsInterval(interval);
+  }
+
+  // Locks focus and exposure once, takePicture calls then overlap and the
+  // preview keeps running, each call completes with its own picture
+  Future<void> setRapidCaptureMode(bool enabled) async {
+    _throwIfNotInitialized('setRapidCaptureMode');
+    try {
+      await CameraPlatform.instance.setRapidCaptureMode(enabled);
+      _rapidCapture = enabled;
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  // Zero shutter lag, takePicture saves the recent frame closest to the call
+  Future<void> setZslMode(bool enabled) async {
+    _throwIfNotInitialized('setZslMode');
+    try {
+      await CameraPlatform.instance.setZslMode(enabled);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  // Shows the last captures over the preview, most recent first, at most
+  // four are kept. Changing the opacities does not reload the captures,
+  // an empty list turns the onion skin off
+  Future<void> setOnionSkin(List<double> opacities) async {
+    _throwIfNotInitialized('setOnionSkin');
+    try {
+      await CameraPlatform.instance.setOnionSkin(opacities);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  // Starts the onion skin again from the next capture
+  Future<void> clearOnionSkin() async {
+    _throwIfNotInitialized('clearOnionSkin');
+    try {
+      await CameraPlatform.instance.clearOnionSkin();
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  // Changes several settings with one call and one preview update, as when
+  // restoring a saved scene. None of them change if one is not valid
+  Future<void> applySettings(CameraSettings settings) async {
+    _throwIfNotInitialized('applySettings');
+    try {
+      await CameraPlatform.instance.applySettings(_cameraId, settings);
+      value = value.copyWith(
+        flashMode: settings.flashMode,
+        exposureMode: settings.exposureMode,
+        focusMode: settings.focusMode,
+      );
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
   
 }
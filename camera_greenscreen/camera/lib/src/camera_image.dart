@@ -8,6 +8,20 @@ import 'package:camera_platform_interface/camera_platform_interface.dart';
 import 'package:flutter/foundation.dart';
 import 'package:flutter/material.dart';
 
+/// What an image stream delivers.
+enum ImageStreamSource {
+  /// Camera frames in the format the camera was initialized with.
+  camera,
+
+  /// The preview as shown, composited when filters are enabled, as small
+  /// [ImageFormatGroup.rgba8888] frames. Android only.
+  composite,
+
+  /// The chroma key matte as small [ImageFormatGroup.rgba8888] frames, white
+  /// where the camera frame is kept. Android only.
+  matte,
+}
+
 /// A single color plane of image data.
 ///
 /// The number and meaning of the planes in an image are determined by the
@@ -68,6 +82,9 @@ ImageFormatGroup _asImageFormatGroup(dynamic rawFormat) {
       // android.graphics.ImageFormat.JPEG
       case 256:
         return ImageFormatGroup.jpeg;
+      // android.graphics.PixelFormat.RGBA_8888
+      case 1:
+        return ImageFormatGroup.rgba8888;
     }
   }
 
@@ -103,6 +120,9 @@ class CameraImage {
         lensAperture = data['lensAperture'] as double?,
         sensorExposureTime = data['sensorExposureTime'] as int?,
         sensorSensitivity = data['sensorSensitivity'] as double?,
+        sequence = data['sequence'] as int?,
+        droppedFrames = data['droppedFrames'] as int?,
+        inFlightFrames = data['inFlightFrames'] as int?,
         planes = List<Plane>.unmodifiable((data['planes'] as List<dynamic>)
             .map<Plane>((dynamic planeData) =>
                 Plane._fromPlatformData(planeData as Map<dynamic, dynamic>)));
@@ -140,4 +160,19 @@ class CameraImage {
 
   /// The sensor sensitivity in standard ISO arithmetic units.
   final double? sensorSensitivity;
+
+  /// Number of this frame in the image stream, counting from 1.
+  ///
+  /// Will be `null` on iOS.
+  final int? sequence;
+
+  /// Frames dropped so far because no credit was available.
+  ///
+  /// Will be `null` on iOS.
+  final int? droppedFrames;
+
+  /// Frames sent and not yet acknowledged, this one included.
+  ///
+  /// Will be `null` on iOS.
+  final int? inFlightFrames;
 }
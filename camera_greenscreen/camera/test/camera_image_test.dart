@@ -109,6 +109,25 @@ void main() {
       });
       expect(cameraImage.format.group, ImageFormatGroup.bgra8888);
     });
+
+    test('$CameraImage has ImageFormatGroup.rgba8888 for Android', () {
+      debugDefaultTargetPlatformOverride = TargetPlatform.android;
+
+      final CameraImage cameraImage =
+          CameraImage.fromPlatformData(<dynamic, dynamic>{
+        'format': 1,
+        'height': 1,
+        'width': 1,
+        'planes': <dynamic>[
+          <dynamic, dynamic>{
+            'bytes': Uint8List.fromList(<int>[1, 2, 3, 4]),
+            'bytesPerPixel': 4,
+            'bytesPerRow': 4,
+          }
+        ]
+      });
+      expect(cameraImage.format.group, ImageFormatGroup.rgba8888);
+    });
     test('$CameraImage has ImageFormatGroup.unknown', () {
       final CameraImage cameraImage =
           CameraImage.fromPlatformData(<dynamic, dynamic>{
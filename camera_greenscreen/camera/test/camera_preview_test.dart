@@ -97,7 +97,13 @@ class FakeController extends ValueNotifier<CameraValue>
   Future<void> setZoomLevel(double zoom) async {}
 
   @override
-  Future<void> startImageStream(onLatestImageAvailable onAvailable) async {}
+  Future<void> startImageStream(
+    onLatestImageAvailable onAvailable, {
+    int credits = 1,
+    ImageStreamSource source = ImageStreamSource.camera,
+    Size analysisSize = const Size(256, 144),
+    double analysisFrameRate = 10,
+  }) async {}
 
   @override
   Future<void> startVideoRecording() async {}
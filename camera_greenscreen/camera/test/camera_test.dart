@@ -1406,6 +1406,8 @@ class MockCameraPlatform extends Mock
     CameraDescription description,
     ResolutionPreset? resolutionPreset, {
     bool enableAudio = false,
+    PreviewInput previewInput = PreviewInput.surfaceTexture,
+    StillInput stillInput = StillInput.jpeg,
   }) =>
       mockPlatformException
           ? throw PlatformException(code: 'foo', message: 'bar')
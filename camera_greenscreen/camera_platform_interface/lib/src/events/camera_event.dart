@@ -287,3 +287,43 @@ class VideoRecordedEvent extends CameraEvent {
   int get hashCode =>
       super.hashCode ^ file.hashCode ^ maxVideoDuration.hashCode;
 }
+
+/// An event carrying the latency statistics of the filtered preview pipeline.
+///
+/// Sent periodically once enabled with
+/// [CameraPlatform.setPipelineStatsInterval].
+class CameraPipelineStatsEvent extends CameraEvent {
+  /// Build a CameraPipelineStatsEvent triggered from the camera represented by
+  /// `cameraId`.
+  ///
+  /// The `stats` map holds per stage p50/p95/p99 latencies in milliseconds and
+  /// the render loop counters.
+  const CameraPipelineStatsEvent(int cameraId, this.stats) : super(cameraId);
+
+  /// Converts the supplied [Map] to an instance of the
+  /// [CameraPipelineStatsEvent] class.
+  CameraPipelineStatsEvent.fromJson(Map<String, dynamic> json)
+      : stats = Map<String, dynamic>.from(json['stats']! as Map),
+        super(json['cameraId']! as int);
+
+  /// Per stage latency percentiles and render loop counters.
+  final Map<String, dynamic> stats;
+
+  /// Converts the [CameraPipelineStatsEvent] instance into a [Map] instance
+  /// that can be serialized to JSON.
+  Map<String, dynamic> toJson() => <String, Object>{
+        'cameraId': cameraId,
+        'stats': stats,
+      };
+
+  @override
+  bool operator ==(Object other) =>
+      identical(this, other) ||
+      super == other &&
+          other is CameraPipelineStatsEvent &&
+          runtimeType == other.runtimeType &&
+          stats == other.stats;
+
+  @override
+  int get hashCode => super.hashCode ^ stats.hashCode;
+}
@@ -84,6 +84,8 @@ class MethodChannelCamera extends CameraPlatform {
     CameraDescription cameraDescription,
     ResolutionPreset? resolutionPreset, {
     bool enableAudio = false,
+    PreviewInput previewInput = PreviewInput.surfaceTexture,
+    StillInput stillInput = StillInput.jpeg,
   }) async {
     try {
       final Map<String, dynamic>? reply = await _channel
@@ -93,6 +95,8 @@ class MethodChannelCamera extends CameraPlatform {
             ? _serializeResolutionPreset(resolutionPreset)
             : null,
         'enableAudio': enableAudio,
+        'previewInput': _serializePreviewInput(previewInput),
+        'stillInput': _serializeStillInput(stillInput),
       });
 
       return reply!['cameraId']! as int;
@@ -175,6 +179,11 @@ class MethodChannelCamera extends CameraPlatform {
     return _cameraEvents(cameraId).whereType<CameraErrorEvent>();
   }
 
+  @override
+  Stream<CameraPipelineStatsEvent> onCameraPipelineStats(int cameraId) {
+    return _cameraEvents(cameraId).whereType<CameraPipelineStatsEvent>();
+  }
+
   @override
   Stream<VideoRecordedEvent> onVideoRecordedEvent(int cameraId) {
     return _cameraEvents(cameraId).whereType<VideoRecordedEvent>();
@@ -411,6 +420,21 @@ class MethodChannelCamera extends CameraPlatform {
     }
   }
 
+  @override
+  Future<void> applySettings(int cameraId, CameraSettings settings) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'applySettings',
+        <String, dynamic>{
+          'cameraId': cameraId,
+          'settings': _serializeCameraSettings(settings),
+        },
+      );
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
   @override
   Future<void> pausePreview(int cameraId) async {
     await _channel.invokeMethod<double>(
@@ -468,6 +492,77 @@ class MethodChannelCamera extends CameraPlatform {
     }
   }
 
+  /// Returns the previewInput value expected by the Android 'create' method.
+  String _serializePreviewInput(PreviewInput previewInput) {
+    switch (previewInput) {
+      case PreviewInput.surfaceTexture:
+        return 'surfaceTexture';
+      case PreviewInput.imageReader:
+        return 'imageReader';
+      default:
+        throw ArgumentError('Unknown PreviewInput value');
+    }
+  }
+
+  /// Returns the settings that are set, a point that is reset maps to null.
+  Map<String, dynamic> _serializeCameraSettings(CameraSettings settings) {
+    final Point<double>? exposurePoint = settings.exposurePoint;
+    final Point<double>? focusPoint = settings.focusPoint;
+    assert(exposurePoint == null ||
+        exposurePoint.x >= 0 && exposurePoint.x <= 1 &&
+            exposurePoint.y >= 0 && exposurePoint.y <= 1);
+    assert(focusPoint == null ||
+        focusPoint.x >= 0 && focusPoint.x <= 1 &&
+            focusPoint.y >= 0 && focusPoint.y <= 1);
+
+    final Map<String, dynamic> serialized = <String, dynamic>{};
+    if (settings.flashMode != null) {
+      serialized['flashMode'] = _serializeFlashMode(settings.flashMode!);
+    }
+    if (settings.exposureMode != null) {
+      serialized['exposureMode'] =
+          serializeExposureMode(settings.exposureMode!);
+    }
+    if (exposurePoint != null) {
+      serialized['exposurePoint'] = <String, double>{
+        'x': exposurePoint.x,
+        'y': exposurePoint.y,
+      };
+    } else if (settings.resetExposurePoint) {
+      serialized['exposurePoint'] = null;
+    }
+    if (settings.exposureOffset != null) {
+      serialized['exposureOffset'] = settings.exposureOffset;
+    }
+    if (settings.focusMode != null) {
+      serialized['focusMode'] = serializeFocusMode(settings.focusMode!);
+    }
+    if (focusPoint != null) {
+      serialized['focusPoint'] = <String, double>{
+        'x': focusPoint.x,
+        'y': focusPoint.y,
+      };
+    } else if (settings.resetFocusPoint) {
+      serialized['focusPoint'] = null;
+    }
+    if (settings.zoomLevel != null) {
+      serialized['zoomLevel'] = settings.zoomLevel;
+    }
+    return serialized;
+  }
+
+  /// Returns the stillInput value expected by the Android 'create' method.
+  String _serializeStillInput(StillInput stillInput) {
+    switch (stillInput) {
+      case StillInput.jpeg:
+        return 'jpeg';
+      case StillInput.yuv:
+        return 'yuv';
+      default:
+        throw ArgumentError('Unknown StillInput value');
+    }
+  }
+
   /// Converts messages received from the native platform into device events.
   ///
   /// This is only exposed for test purposes. It shouldn't be used by clients of
@@ -530,6 +625,12 @@ class MethodChannelCamera extends CameraPlatform {
           call.arguments['description']! as String,
         ));
         break;
+      case 'pipeline_stats':
+        cameraEventStreamController.add(CameraPipelineStatsEvent(
+          cameraId,
+          Map<String, dynamic>.from(call.arguments as Map),
+        ));
+        break;
       default:
         throw MissingPluginException();
     }
@@ -551,6 +652,50 @@ class MethodChannelCamera extends CameraPlatform {
     await _channel.invokeMethod<void>('updateFilters', data);
   }
 
+  @override
+  Future<Map<String, dynamic>> getPipelineStats() async {
+    final Map<String, dynamic>? stats =
+        await _channel.invokeMapMethod<String, dynamic>('getPipelineStats');
+    return stats ?? <String, dynamic>{};
+  }
+
+  @override
+  Future<void> setPipelineStatsInterval(Duration interval) async {
+    await _channel.invokeMethod<void>(
+      'setPipelineStatsInterval',
+      <String, dynamic>{'intervalMs': interval.inMilliseconds},
+    );
+  }
+
+  @override
+  Future<void> setRapidCaptureMode(bool enabled) async {
+    await _channel.invokeMethod<void>(
+      'setRapidCaptureMode',
+      <String, dynamic>{'enabled': enabled},
+    );
+  }
+
+  @override
+  Future<void> setZslMode(bool enabled) async {
+    await _channel.invokeMethod<void>(
+      'setZslMode',
+      <String, dynamic>{'enabled': enabled},
+    );
+  }
+
+  @override
+  Future<void> setOnionSkin(List<double> opacities) async {
+    await _channel.invokeMethod<void>(
+      'setOnionSkin',
+      <String, dynamic>{'opacities': opacities},
+    );
+  }
+
+  @override
+  Future<void> clearOnionSkin() async {
+    await _channel.invokeMethod<void>('clearOnionSkin');
+  }
+
 /*
 @override
   Future<void> setFocusPoint(int cameraId, Point<double>? point) {
@@ -55,6 +55,8 @@ abstract class CameraPlatform extends PlatformInterface {
     CameraDescription cameraDescription,
     ResolutionPreset? resolutionPreset, {
     bool enableAudio = false,
+    PreviewInput previewInput = PreviewInput.surfaceTexture,
+    StillInput stillInput = StillInput.jpeg,
   }) {
     throw UnimplementedError('createCamera() is not implemented.');
   }
@@ -93,6 +95,11 @@ abstract class CameraPlatform extends PlatformInterface {
     throw UnimplementedError('onCameraError() is not implemented.');
   }
 
+  /// Latency statistics of the filtered preview pipeline.
+  Stream<CameraPipelineStatsEvent> onCameraPipelineStats(int cameraId) {
+    throw UnimplementedError('onCameraPipelineStats() is not implemented.');
+  }
+
   /// The camera finished recording a video.
   Stream<VideoRecordedEvent> onVideoRecordedEvent(int cameraId) {
     throw UnimplementedError('onCameraTimeLimitReached() is not implemented.');
@@ -237,6 +244,14 @@ abstract class CameraPlatform extends PlatformInterface {
     throw UnimplementedError('setZoomLevel() is not implemented.');
   }
 
+  /// Applies several settings of the selected camera at once.
+  ///
+  /// The preview is updated once for all of them. Throws a `CameraException`
+  /// and changes none of them when one is not valid.
+  Future<void> applySettings(int cameraId, CameraSettings settings) {
+    throw UnimplementedError('applySettings() is not implemented.');
+  }
+
   /// Pause the active preview on the current frame for the selected camera.
   Future<void> pausePreview(int cameraId) {
     throw UnimplementedError('pausePreview() is not implemented.');
@@ -273,4 +288,38 @@ abstract class CameraPlatform extends PlatformInterface {
   Future<void> updateFilters(Map data) {
     throw UnimplementedError('updateFilters() is not implemented.');
   }
+
+  /// Returns the per stage latency percentiles of the filtered preview
+  Future<Map<String, dynamic>> getPipelineStats() {
+    throw UnimplementedError('getPipelineStats() is not implemented.');
+  }
+
+  /// Sends the pipeline statistics every [interval] on
+  /// [onCameraPipelineStats], [Duration.zero] stops them
+  Future<void> setPipelineStatsInterval(Duration interval) {
+    throw UnimplementedError('setPipelineStatsInterval() is not implemented.');
+  }
+
+  /// Locks focus and exposure and lets [takePicture] calls overlap without
+  /// stopping the preview, until disabled again
+  Future<void> setRapidCaptureMode(bool enabled) {
+    throw UnimplementedError('setRapidCaptureMode() is not implemented.');
+  }
+
+  /// Keeps recent full resolution frames so that [takePicture] saves the
+  /// frame closest to the call, without a precapture sequence
+  Future<void> setZslMode(bool enabled) {
+    throw UnimplementedError('setZslMode() is not implemented.');
+  }
+
+  /// Blends the most recent captures over the preview, most recent first,
+  /// each with its opacity. An empty list turns the onion skin off.
+  Future<void> setOnionSkin(List<double> opacities) {
+    throw UnimplementedError('setOnionSkin() is not implemented.');
+  }
+
+  /// Forgets the captures shown by the onion skin
+  Future<void> clearOnionSkin() {
+    throw UnimplementedError('clearOnionSkin() is not implemented.');
+  }
 }
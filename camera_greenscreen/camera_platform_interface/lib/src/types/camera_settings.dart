@@ -0,0 +1,59 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'dart:math';
+
+import 'package:flutter/foundation.dart';
+
+import 'exposure_mode.dart';
+import 'flash_mode.dart';
+import 'focus_mode.dart';
+
+/// Camera settings changed together, see [CameraPlatform.applySettings].
+///
+/// Settings left null keep their current value. A point is only returned to
+/// its default by setting [resetExposurePoint] or [resetFocusPoint].
+@immutable
+class CameraSettings {
+  /// Creates a set of settings to apply at once.
+  const CameraSettings({
+    this.flashMode,
+    this.exposureMode,
+    this.exposurePoint,
+    this.resetExposurePoint = false,
+    this.exposureOffset,
+    this.focusMode,
+    this.focusPoint,
+    this.resetFocusPoint = false,
+    this.zoomLevel,
+  })  : assert(exposurePoint == null || !resetExposurePoint),
+        assert(focusPoint == null || !resetFocusPoint);
+
+  /// The flash mode.
+  final FlashMode? flashMode;
+
+  /// The exposure mode.
+  final ExposureMode? exposureMode;
+
+  /// The exposure metering point, with coordinates between 0 and 1.
+  final Point<double>? exposurePoint;
+
+  /// Whether the exposure point returns to its default.
+  final bool resetExposurePoint;
+
+  /// The exposure offset, in EV units.
+  final double? exposureOffset;
+
+  /// The focus mode.
+  final FocusMode? focusMode;
+
+  /// The focus point, with coordinates between 0 and 1.
+  final Point<double>? focusPoint;
+
+  /// Whether the focus point returns to its default.
+  final bool resetFocusPoint;
+
+  /// The zoom level, between the minimum and maximum zoom levels.
+  final double? zoomLevel;
+}
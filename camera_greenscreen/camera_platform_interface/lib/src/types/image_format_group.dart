@@ -31,6 +31,13 @@ enum ImageFormatGroup {
   /// On Android, this is `android.graphics.ImageFormat.JPEG`. See
   /// https://developer.android.com/reference/android/graphics/ImageFormat#JPEG
   jpeg,
+
+  /// 32-bit RGBA, tightly packed in a single plane.
+  ///
+  /// On Android, this is `android.graphics.PixelFormat.RGBA_8888`, used by
+  /// the composite and matte image streams. See
+  /// https://developer.android.com/reference/android/graphics/PixelFormat#RGBA_8888
+  rgba8888,
 }
 
 /// Extension on [ImageFormatGroup] to stringify the enum
@@ -46,6 +53,8 @@ extension ImageFormatGroupName on ImageFormatGroup {
         return 'yuv420';
       case ImageFormatGroup.jpeg:
         return 'jpeg';
+      case ImageFormatGroup.rgba8888:
+        return 'rgba8888';
       case ImageFormatGroup.unknown:
       default:
         return 'unknown';
@@ -0,0 +1,15 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+/// How the camera preview frames reach the filters, on Android only.
+enum PreviewInput {
+  /// The camera draws into a SurfaceTexture sampled by the filters on the GPU,
+  /// preview frames never reach the CPU.
+  surfaceTexture,
+
+  /// The camera writes YUV frames into an ImageReader, which are copied and
+  /// uploaded to the GPU. Kept as a fallback for devices where the
+  /// SurfaceTexture input misbehaves.
+  imageReader,
+}
@@ -0,0 +1,14 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+/// How still captures reach the filters, on Android only.
+enum StillInput {
+  /// Stills are captured as JPEG, decoded for filtering and encoded again.
+  jpeg,
+
+  /// Stills are captured as YUV and filtered from their planes on the GPU, the
+  /// filtered result is the only JPEG encode. Falls back to [jpeg] on cameras
+  /// without a full resolution YUV stream.
+  yuv,
+}
@@ -4,8 +4,11 @@
 
 export 'camera_description.dart';
 export 'camera_exception.dart';
+export 'camera_settings.dart';
 export 'exposure_mode.dart';
 export 'flash_mode.dart';
 export 'focus_mode.dart';
 export 'image_format_group.dart';
+export 'preview_input.dart';
 export 'resolution_preset.dart';
+export 'still_input.dart';
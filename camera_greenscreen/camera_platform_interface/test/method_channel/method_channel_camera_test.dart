@@ -51,13 +51,52 @@ void main() {
             arguments: <String, Object?>{
               'cameraName': 'Test',
               'resolutionPreset': 'high',
-              'enableAudio': false
+              'enableAudio': false,
+              'previewInput': 'surfaceTexture',
+              'stillInput': 'jpeg'
             },
           ),
         ]);
         expect(cameraId, 1);
       });
 
+      test('Should send the still input chosen for creation', () async {
+        // Arrange
+        final MethodChannelMock cameraMockChannel = MethodChannelMock(
+            channelName: 'plugins.flutter.io/camera',
+            methods: <String, dynamic>{
+              'create': <String, dynamic>{
+                'cameraId': 1,
+                'imageFormatGroup': 'unknown',
+              }
+            });
+        final MethodChannelCamera camera = MethodChannelCamera();
+
+        // Act
+        await camera.createCamera(
+          const CameraDescription(
+              name: 'Test',
+              lensDirection: CameraLensDirection.back,
+              sensorOrientation: 0),
+          ResolutionPreset.high,
+          stillInput: StillInput.yuv,
+        );
+
+        // Assert
+        expect(cameraMockChannel.log, <Matcher>[
+          isMethodCall(
+            'create',
+            arguments: <String, Object?>{
+              'cameraName': 'Test',
+              'resolutionPreset': 'high',
+              'enableAudio': false,
+              'previewInput': 'surfaceTexture',
+              'stillInput': 'yuv'
+            },
+          ),
+        ]);
+      });
+
       test(
           'Should throw CameraException when create throws a PlatformException',
           () {
@@ -931,6 +970,40 @@ void main() {
         ]);
       });
 
+      test('Should apply only the settings that are set', () async {
+        // Arrange
+        final MethodChannelMock channel = MethodChannelMock(
+          channelName: 'plugins.flutter.io/camera',
+          methods: <String, dynamic>{'applySettings': null},
+        );
+
+        // Act
+        await camera.applySettings(
+          cameraId,
+          const CameraSettings(
+            flashMode: FlashMode.off,
+            exposureMode: ExposureMode.locked,
+            focusPoint: Point<double>(0.5, 0.25),
+            resetExposurePoint: true,
+            zoomLevel: 2.0,
+          ),
+        );
+
+        // Assert
+        expect(channel.log, <Matcher>[
+          isMethodCall('applySettings', arguments: <String, Object?>{
+            'cameraId': cameraId,
+            'settings': <String, Object?>{
+              'flashMode': 'off',
+              'exposureMode': 'locked',
+              'exposurePoint': null,
+              'focusPoint': <String, double>{'x': 0.5, 'y': 0.25},
+              'zoomLevel': 2.0,
+            },
+          }),
+        ]);
+      });
+
       test('Should set the zoom level', () async {
         // Arrange
         final MethodChannelMock channel = MethodChannelMock(
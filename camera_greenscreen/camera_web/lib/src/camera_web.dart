@@ -200,6 +200,8 @@ class CameraPlugin extends CameraPlatform {
     CameraDescription cameraDescription,
     ResolutionPreset? resolutionPreset, {
     bool enableAudio = false,
+    PreviewInput previewInput = PreviewInput.surfaceTexture,
+    StillInput stillInput = StillInput.jpeg,
   }) async {
     try {
       if (!camerasMetadata.containsKey(cameraDescription)) {
@@ -69,6 +69,8 @@ class CameraWindows extends CameraPlatform {
     CameraDescription cameraDescription,
     ResolutionPreset? resolutionPreset, {
     bool enableAudio = false,
+    PreviewInput previewInput = PreviewInput.surfaceTexture,
+    StillInput stillInput = StillInput.jpeg,
   }) async {
     try {
       // If resolutionPreset is not specified, plugin selects the highest resolution possible.